@@ -0,0 +1,105 @@
+package com.nigam.temporal.bench;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Gson tree vs streaming parse of a recorded option-chain-v3 payload. Both variants extract the same
+ * figures (strike count, total CE/PE open interest) so the difference is pure parsing cost.
+ */
+@State(Scope.Benchmark)
+public class OptionChainParseBenchmark {
+
+  private String payload;
+
+  @Setup
+  public void setUp() {
+    payload = Fixtures.string(Fixtures.OPTION_CHAIN_V3);
+  }
+
+  @Benchmark
+  public long gsonTree() {
+    JsonObject root = JsonParser.parseString(payload).getAsJsonObject();
+    JsonArray data = root.getAsJsonObject("records").getAsJsonArray("data");
+    long ceOi = 0;
+    long peOi = 0;
+    for (JsonElement element : data) {
+      JsonObject row = element.getAsJsonObject();
+      if (row.has("CE")) {
+        ceOi += row.getAsJsonObject("CE").get("openInterest").getAsLong();
+      }
+      if (row.has("PE")) {
+        peOi += row.getAsJsonObject("PE").get("openInterest").getAsLong();
+      }
+    }
+    return data.size() * 31L + ceOi * 7 + peOi;
+  }
+
+  @Benchmark
+  public long gsonStreaming() throws IOException {
+    long strikes = 0;
+    long ceOi = 0;
+    long peOi = 0;
+    try (JsonReader reader = new JsonReader(new StringReader(payload))) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if (!"records".equals(reader.nextName())) {
+          reader.skipValue();
+          continue;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+          if (!"data".equals(reader.nextName())) {
+            reader.skipValue();
+            continue;
+          }
+          reader.beginArray();
+          while (reader.hasNext()) {
+            strikes++;
+            reader.beginObject();
+            while (reader.hasNext()) {
+              String side = reader.nextName();
+              if ("CE".equals(side)) {
+                ceOi += readOpenInterest(reader);
+              } else if ("PE".equals(side)) {
+                peOi += readOpenInterest(reader);
+              } else {
+                reader.skipValue();
+              }
+            }
+            reader.endObject();
+          }
+          reader.endArray();
+        }
+        reader.endObject();
+      }
+      reader.endObject();
+    }
+    return strikes * 31L + ceOi * 7 + peOi;
+  }
+
+  private static long readOpenInterest(JsonReader reader) throws IOException {
+    long oi = 0;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if ("openInterest".equals(reader.nextName()) && reader.peek() == JsonToken.NUMBER) {
+        oi = reader.nextLong();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return oi;
+  }
+}
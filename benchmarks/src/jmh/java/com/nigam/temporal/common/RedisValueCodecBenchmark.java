@@ -0,0 +1,40 @@
+package com.nigam.temporal.common;
+
+import com.nigam.temporal.bench.Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Encode/decode cost of each Redis value codec on recorded option-chain payloads (sizes printed at setup). */
+@State(Scope.Benchmark)
+public class RedisValueCodecBenchmark {
+
+  @Param({"RAW", "LZ4", "ZSTD", "BINARY", "BINARY_ZSTD"})
+  public RedisValueCodec codec;
+
+  @Param({Fixtures.OPTION_CHAIN_V3, Fixtures.OPENALGO_OPTION_CHAIN})
+  public String fixture;
+
+  private String payload;
+  private byte[] encoded;
+
+  @Setup
+  public void setUp() {
+    payload = Fixtures.string(fixture);
+    encoded = codec.encode(payload);
+    System.out.printf("%n%s %s: %d chars -> %d bytes (%.1fx)%n", codec, fixture, payload.length(), encoded.length,
+        (double) payload.length() / encoded.length);
+  }
+
+  @Benchmark
+  public byte[] encode() {
+    return codec.encode(payload);
+  }
+
+  @Benchmark
+  public String decode() {
+    return RedisValueCodec.decode(encoded);
+  }
+}
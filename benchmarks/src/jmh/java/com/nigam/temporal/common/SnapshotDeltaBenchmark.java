@@ -0,0 +1,41 @@
+package com.nigam.temporal.common;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.nigam.temporal.bench.Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/** Delta between two consecutive option-chain-v3 snapshots where 20 strikes moved (flatten + diff of both). */
+@State(Scope.Benchmark)
+public class SnapshotDeltaBenchmark {
+
+  private String previous;
+  private String current;
+
+  @Setup
+  public void setUp() {
+    previous = Fixtures.string(Fixtures.OPTION_CHAIN_V3);
+    JsonObject doc = JsonParser.parseString(previous).getAsJsonObject();
+    JsonArray data = doc.getAsJsonObject("records").getAsJsonArray("data");
+    Random random = new Random(42);
+    for (int i = 0; i < 20; i++) {
+      JsonObject ce = data.get(random.nextInt(data.size())).getAsJsonObject().getAsJsonObject("CE");
+      ce.addProperty("lastPrice", ce.get("lastPrice").getAsDouble() + 0.05);
+      ce.addProperty("openInterest", ce.get("openInterest").getAsLong() + 75);
+    }
+    current = doc.toString();
+  }
+
+  @Benchmark
+  public JsonObject nextDelta() {
+    SnapshotDelta delta = new SnapshotDelta(true, 30);
+    delta.next("bench", previous, "t0");
+    return delta.next("bench", current, "t1");
+  }
+}
@@ -0,0 +1,67 @@
+package com.nigam.temporal.ltp;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.nigam.temporal.bench.Fixtures;
+import com.nigam.temporal.bench.NoOpPreparedStatement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Row binding of storeChainInDatabase and the summary aggregation over a recorded OpenAlgo chain. */
+@State(Scope.Benchmark)
+public class OptionChainPersistenceBenchmark {
+
+  private JsonArray chain;
+  private double underlyingLtp;
+  private double underlyingPrevClose;
+  private int atmStrike;
+  private Map<String, Long> previousCeOi;
+  private Map<String, Long> previousPeOi;
+  private PreparedStatement statement;
+  private final AtomicLong batchedRows = new AtomicLong();
+  private final Timestamp timestamp = Timestamp.valueOf("2025-10-17 10:00:00");
+
+  @Setup
+  public void setUp() {
+    JsonObject response = JsonParser.parseString(Fixtures.string(Fixtures.OPENALGO_OPTION_CHAIN)).getAsJsonObject();
+    chain = response.getAsJsonArray("chain");
+    underlyingLtp = response.get("underlying_ltp").getAsDouble();
+    underlyingPrevClose = response.get("underlying_prev_close").getAsDouble();
+    atmStrike = response.get("atm_strike").getAsInt();
+    previousCeOi = new HashMap<>();
+    previousPeOi = new HashMap<>();
+    for (int i = 0; i < chain.size(); i++) {
+      JsonObject entry = chain.get(i).getAsJsonObject();
+      JsonObject ce = entry.getAsJsonObject("ce");
+      JsonObject pe = entry.getAsJsonObject("pe");
+      previousCeOi.put(ce.get("symbol").getAsString(), ce.get("oi").getAsLong() - 1000);
+      previousPeOi.put(pe.get("symbol").getAsString(), pe.get("oi").getAsLong() + 1000);
+    }
+    statement = NoOpPreparedStatement.create(batchedRows);
+  }
+
+  @Benchmark
+  public long bindChainRows() throws Exception {
+    for (int i = 0; i < chain.size(); i++) {
+      JsonObject entry = chain.get(i).getAsJsonObject();
+      LtpCalculatorActivitiesImpl.insertStrikeRow(statement, "Angel", "NIFTY", underlyingLtp, underlyingPrevClose,
+          "21OCT25", atmStrike, entry.get("strike").getAsInt(),
+          entry.getAsJsonObject("ce"), entry.getAsJsonObject("pe"), timestamp);
+    }
+    return batchedRows.get();
+  }
+
+  @Benchmark
+  public OptionChainSummary aggregateSummary() {
+    return OptionChainSummary.fromChain(chain, underlyingLtp, previousCeOi, previousPeOi);
+  }
+}
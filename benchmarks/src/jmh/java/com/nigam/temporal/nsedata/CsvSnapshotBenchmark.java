@@ -0,0 +1,58 @@
+package com.nigam.temporal.nsedata;
+
+import com.nigam.temporal.bench.Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+
+/** allIndices / equity CSV: consumer-style String split parse vs byte[] tokenizer vs decoding the columnar encoding. */
+@State(Scope.Benchmark)
+public class CsvSnapshotBenchmark {
+
+  @Param({Fixtures.ALL_INDICES_CSV, Fixtures.EQUITY_DATA_CSV})
+  public String fixture;
+
+  private byte[] csv;
+  private byte[] columnar;
+
+  @Setup
+  public void setUp() {
+    csv = Fixtures.bytes(fixture);
+    columnar = ColumnarSnapshot.fromCsv(csv).toBytes();
+  }
+
+  /** What downstream consumers do today: decode, split lines and fields, strip quotes and commas, parseDouble. */
+  @Benchmark
+  public double stringSplit() {
+    String[] lines = new String(csv, StandardCharsets.UTF_8).split("\n");
+    double sum = 0;
+    for (int i = 1; i < lines.length; i++) {
+      String[] fields = lines[i].split("\",\"");
+      try {
+        sum += Double.parseDouble(fields[1].replace("\"", "").replace(",", ""));
+      } catch (NumberFormatException ignored) {
+        // "-" placeholders
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public ColumnarSnapshot tokenizeToColumnar() {
+    return ColumnarSnapshot.fromCsv(csv);
+  }
+
+  @Benchmark
+  public byte[] tokenizeAndEncode() {
+    return ColumnarSnapshot.fromCsv(csv).toBytes();
+  }
+
+  @Benchmark
+  public ColumnarSnapshot decodeColumnar() {
+    return ColumnarSnapshot.fromBytes(columnar);
+  }
+}
@@ -0,0 +1,62 @@
+package com.nigam.temporal.nsedata;
+
+import com.nigam.temporal.bench.Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.time.Clock;
+import java.time.LocalTime;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Expiry resolution for option-chain tasks: what used to run on every task (contract-info parsing and URL
+ * formatting) versus the in-process ExpiryDateCache hit that replaces it.
+ */
+@State(Scope.Benchmark)
+public class ExpiryDatesBenchmark {
+
+  @Param({"1", "3"})
+  public int numberOfExpiry;
+
+  @Param({"27JAN26", "03-Feb-2026", "2026-02-03", "03-Feb-26"})
+  public String expiry;
+
+  private String contractInfoJson;
+  private ExpiryDateCache cache;
+
+  @Setup
+  public void setUp() {
+    contractInfoJson = Fixtures.string(Fixtures.CONTRACT_INFO);
+    cache = new ExpiryDateCache((symbol, timeoutMs) -> contractInfoJson, Clock.system(ExpiryDateCache.IST),
+        LocalTime.of(8, 45), Collections.emptyList());
+    cache.get("NIFTY", 1000);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    cache.close();
+  }
+
+  @Benchmark
+  public List<String> extractExpiryDatesList() {
+    return NseDownloadHandler.extractExpiryDatesList(contractInfoJson, "NIFTY", numberOfExpiry);
+  }
+
+  @Benchmark
+  public String formatExpiryForUrl() {
+    return NseDownloadHandler.formatExpiryForUrl(expiry);
+  }
+
+  @Benchmark
+  public String cachedExpiries() {
+    ExpiryDateCache.Expiries expiries = cache.get("NIFTY", 1000);
+    List<String> dates = expiries.first(numberOfExpiry);
+    return expiries.urlDate(dates.get(dates.size() - 1));
+  }
+}
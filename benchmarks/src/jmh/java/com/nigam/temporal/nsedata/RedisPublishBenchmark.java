@@ -0,0 +1,52 @@
+package com.nigam.temporal.nsedata;
+
+import com.nigam.temporal.bench.EmbeddedRedisServer;
+import com.nigam.temporal.bench.Fixtures;
+import com.nigam.temporal.common.RedisValueCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.time.Instant;
+
+/** Current/previous rotation of one option-chain snapshot against an in-process Redis stand-in, per value codec. */
+@State(Scope.Benchmark)
+public class RedisPublishBenchmark {
+
+  private static final String KEY_BASE = "nse:optionchain:NIFTY:21-Oct-2025";
+
+  @Param({"RAW", "LZ4", "ZSTD", "BINARY", "BINARY_ZSTD"})
+  public RedisValueCodec codec;
+
+  private EmbeddedRedisServer redis;
+  private NseDataRedisPublisher publisher;
+  private String payload;
+  private Instant timestamp;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    redis = new EmbeddedRedisServer();
+    publisher = new NseDataRedisPublisher("127.0.0.1", redis.getPort(), "", codec);
+    payload = Fixtures.string(Fixtures.OPTION_CHAIN_V3);
+    timestamp = Instant.parse("2025-10-17T10:00:00Z");
+    publisher.rotateAndPublishWithTimestamp(KEY_BASE + ":current", KEY_BASE + ":previous", payload, timestamp.toString());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    System.out.println("\n" + codec + ": Redis value bytes for current+previous = " + redis.valueBytes());
+    publisher.getJedisPool().close();
+    redis.close();
+  }
+
+  /** Each call is a newer snapshot, so every call rotates (a repeated time would only rewrite current). */
+  @Benchmark
+  public void rotateAndPublishWithTimestamp() {
+    timestamp = timestamp.plusMillis(1);
+    publisher.rotateAndPublishWithTimestamp(KEY_BASE + ":current", KEY_BASE + ":previous", payload, timestamp.toString());
+  }
+}
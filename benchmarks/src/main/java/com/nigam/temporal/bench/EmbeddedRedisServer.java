@@ -0,0 +1,427 @@
+package com.nigam.temporal.bench;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Minimal in-process RESP2 server used as a Redis stand-in for benchmarks and load tests.
+ * Supports only the commands the workers issue (GET/SET/EXISTS/DEL, XADD/XRANGE/XLEN, MULTI/EXEC/DISCARD,
+ * WATCH/UNWATCH plus connection handshakes); values are kept as raw bytes so binary payloads round-trip
+ * unchanged. Transactions are queued per connection and run in order on EXEC, but are not isolated from other
+ * connections: WATCH is accepted and never aborts an EXEC.
+ */
+public class EmbeddedRedisServer implements AutoCloseable {
+
+  private static final Logger log = LogManager.getLogger(EmbeddedRedisServer.class);
+
+  private static final byte[] OK = "+OK\r\n".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] NIL = "$-1\r\n".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] QUEUED = "+QUEUED\r\n".getBytes(StandardCharsets.US_ASCII);
+
+  private final ServerSocket serverSocket;
+  private final ExecutorService executor;
+  protected final Map<Key, byte[]> store = new ConcurrentHashMap<>();
+  protected final Map<Key, ConcurrentNavigableMap<StreamId, List<byte[]>>> streams = new ConcurrentHashMap<>();
+  private volatile boolean running = true;
+
+  public EmbeddedRedisServer() throws IOException {
+    this(0);
+  }
+
+  /** Bind to the given port on loopback (0 = pick a free port). */
+  public EmbeddedRedisServer(int port) throws IOException {
+    serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    executor = Executors.newCachedThreadPool(r -> {
+      Thread t = new Thread(r, "embedded-redis");
+      t.setDaemon(true);
+      return t;
+    });
+    executor.submit(this::acceptLoop);
+    log.info("EmbeddedRedisServer listening on port {}", getPort());
+  }
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /** Number of keys currently stored. */
+  public int size() {
+    return store.size();
+  }
+
+  /** Total bytes held in values (a rough stand-in for Redis used_memory). */
+  public long valueBytes() {
+    long total = 0;
+    for (byte[] v : store.values()) {
+      total += v.length;
+    }
+    return total;
+  }
+
+  public void flushAll() {
+    store.clear();
+    streams.clear();
+  }
+
+  /** Number of entries in a stream (0 if absent). */
+  public int streamLength(String key) {
+    ConcurrentNavigableMap<StreamId, List<byte[]>> stream = streams.get(new Key(key.getBytes(StandardCharsets.UTF_8)));
+    return stream != null ? stream.size() : 0;
+  }
+
+  private void acceptLoop() {
+    while (running) {
+      try {
+        Socket socket = serverSocket.accept();
+        socket.setTcpNoDelay(true);
+        executor.submit(() -> serve(socket));
+      } catch (IOException e) {
+        if (running) {
+          log.warn("EmbeddedRedisServer accept failed: {}", e.getMessage());
+        }
+      }
+    }
+  }
+
+  private void serve(Socket socket) {
+    try (socket;
+         InputStream in = new BufferedInputStream(socket.getInputStream());
+         OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+      // Commands queued by MULTI, null outside a transaction
+      List<List<byte[]>> queued = null;
+      while (running) {
+        List<byte[]> command = readCommand(in);
+        if (command == null) {
+          return;
+        }
+        String name = new String(command.get(0), StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT);
+        if (name.equals("MULTI")) {
+          queued = new ArrayList<>();
+          out.write(OK);
+        } else if (name.equals("EXEC") && queued != null) {
+          out.write(("*" + queued.size() + "\r\n").getBytes(StandardCharsets.US_ASCII));
+          for (List<byte[]> q : queued) {
+            dispatch(q, out);
+          }
+          queued = null;
+        } else if (name.equals("DISCARD") && queued != null) {
+          queued = null;
+          out.write(OK);
+        } else if (queued != null) {
+          queued.add(command);
+          out.write(QUEUED);
+        } else {
+          dispatch(command, out);
+        }
+        if (in.available() == 0) {
+          out.flush();
+        }
+      }
+    } catch (EOFException ignored) {
+      // client closed the connection
+    } catch (IOException e) {
+      if (running) {
+        log.debug("EmbeddedRedisServer connection closed: {}", e.getMessage());
+      }
+    }
+  }
+
+  /** Execute one command and write its reply. */
+  protected void dispatch(List<byte[]> args, OutputStream out) throws IOException {
+    String name = new String(args.get(0), StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT);
+    switch (name) {
+      case "PING":
+        out.write("+PONG\r\n".getBytes(StandardCharsets.US_ASCII));
+        break;
+      case "AUTH":
+      case "SELECT":
+      case "CLIENT":
+      case "WATCH":
+      case "UNWATCH":
+        out.write(OK);
+        break;
+      case "SET":
+        store.put(new Key(args.get(1)), args.get(2));
+        out.write(OK);
+        break;
+      case "GET":
+        writeBulk(out, store.get(new Key(args.get(1))));
+        break;
+      case "EXISTS": {
+        long count = 0;
+        for (int i = 1; i < args.size(); i++) {
+          if (store.containsKey(new Key(args.get(i)))) {
+            count++;
+          }
+        }
+        writeInteger(out, count);
+        break;
+      }
+      case "DEL": {
+        long count = 0;
+        for (int i = 1; i < args.size(); i++) {
+          if (store.remove(new Key(args.get(i))) != null) {
+            count++;
+          }
+        }
+        writeInteger(out, count);
+        break;
+      }
+      case "FLUSHALL":
+      case "FLUSHDB":
+        store.clear();
+        streams.clear();
+        out.write(OK);
+        break;
+      case "XADD":
+        xadd(args, out);
+        break;
+      case "XRANGE":
+        xrange(args, out);
+        break;
+      case "XLEN": {
+        ConcurrentNavigableMap<StreamId, List<byte[]>> stream = streams.get(new Key(args.get(1)));
+        writeInteger(out, stream != null ? stream.size() : 0);
+        break;
+      }
+      case "DBSIZE":
+        writeInteger(out, store.size());
+        break;
+      default:
+        out.write(("-ERR unknown command '" + name + "'\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+  }
+
+  /** XADD key [NOMKSTREAM] [MAXLEN|MINID [=|~] threshold [LIMIT n]] id|* field value ... (trimming is always exact). */
+  private synchronized void xadd(List<byte[]> args, OutputStream out) throws IOException {
+    Key key = new Key(args.get(1));
+    long maxLen = -1;
+    StreamId minId = null;
+    int i = 2;
+    while (i < args.size()) {
+      String token = new String(args.get(i), StandardCharsets.US_ASCII).toUpperCase(Locale.ROOT);
+      if (token.equals("NOMKSTREAM")) {
+        i++;
+      } else if (token.equals("MAXLEN") || token.equals("MINID")) {
+        i++;
+        String next = new String(args.get(i), StandardCharsets.US_ASCII);
+        if (next.equals("~") || next.equals("=")) {
+          i++;
+        }
+        String threshold = new String(args.get(i++), StandardCharsets.US_ASCII);
+        if (token.equals("MAXLEN")) {
+          maxLen = Long.parseLong(threshold);
+        } else {
+          minId = StreamId.parse(threshold, 0);
+        }
+        if (i < args.size() && new String(args.get(i), StandardCharsets.US_ASCII).equalsIgnoreCase("LIMIT")) {
+          i += 2;
+        }
+      } else {
+        break;
+      }
+    }
+    ConcurrentNavigableMap<StreamId, List<byte[]>> stream = streams.computeIfAbsent(key, k -> new ConcurrentSkipListMap<>());
+    StreamId last = stream.isEmpty() ? new StreamId(0, 0) : stream.lastKey();
+    String idArg = new String(args.get(i++), StandardCharsets.US_ASCII);
+    StreamId id;
+    if (idArg.equals("*")) {
+      long now = System.currentTimeMillis();
+      id = now > last.millis ? new StreamId(now, 0) : new StreamId(last.millis, last.seq + 1);
+    } else if (idArg.endsWith("-*")) {
+      long millis = Long.parseLong(idArg.substring(0, idArg.length() - 2));
+      id = millis > last.millis ? new StreamId(millis, 0) : new StreamId(millis, last.seq + 1);
+    } else {
+      id = StreamId.parse(idArg, 0);
+    }
+    if (!stream.isEmpty() && id.compareTo(last) <= 0) {
+      out.write("-ERR The ID specified in XADD is equal or smaller than the target stream top item\r\n".getBytes(StandardCharsets.US_ASCII));
+      return;
+    }
+    stream.put(id, new ArrayList<>(args.subList(i, args.size())));
+    if (maxLen >= 0) {
+      while (stream.size() > maxLen) {
+        stream.pollFirstEntry();
+      }
+    }
+    if (minId != null) {
+      stream.headMap(minId).clear();
+    }
+    writeBulk(out, id.toString().getBytes(StandardCharsets.US_ASCII));
+  }
+
+  /** XRANGE key start end [COUNT n]; supports -, + and ms or ms-seq ids. */
+  private void xrange(List<byte[]> args, OutputStream out) throws IOException {
+    ConcurrentNavigableMap<StreamId, List<byte[]>> stream = streams.get(new Key(args.get(1)));
+    String start = new String(args.get(2), StandardCharsets.US_ASCII);
+    String end = new String(args.get(3), StandardCharsets.US_ASCII);
+    long count = args.size() > 5 ? Long.parseLong(new String(args.get(5), StandardCharsets.US_ASCII)) : Long.MAX_VALUE;
+    List<Map.Entry<StreamId, List<byte[]>>> selected = new ArrayList<>();
+    if (stream != null) {
+      StreamId from = start.equals("-") ? new StreamId(0, 0) : StreamId.parse(start, 0);
+      StreamId to = end.equals("+") ? new StreamId(Long.MAX_VALUE, Long.MAX_VALUE) : StreamId.parse(end, Long.MAX_VALUE);
+      for (Map.Entry<StreamId, List<byte[]>> entry : stream.subMap(from, true, to, true).entrySet()) {
+        if (selected.size() >= count) {
+          break;
+        }
+        selected.add(entry);
+      }
+    }
+    out.write(('*' + Integer.toString(selected.size()) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    for (Map.Entry<StreamId, List<byte[]>> entry : selected) {
+      out.write("*2\r\n".getBytes(StandardCharsets.US_ASCII));
+      writeBulk(out, entry.getKey().toString().getBytes(StandardCharsets.US_ASCII));
+      out.write(('*' + Integer.toString(entry.getValue().size()) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+      for (byte[] value : entry.getValue()) {
+        writeBulk(out, value);
+      }
+    }
+  }
+
+  protected static void writeBulk(OutputStream out, byte[] value) throws IOException {
+    if (value == null) {
+      out.write(NIL);
+      return;
+    }
+    out.write(('$' + Integer.toString(value.length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    out.write(value);
+    out.write('\r');
+    out.write('\n');
+  }
+
+  protected static void writeInteger(OutputStream out, long value) throws IOException {
+    out.write((':' + Long.toString(value) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private static List<byte[]> readCommand(InputStream in) throws IOException {
+    int first = in.read();
+    if (first == -1) {
+      return null;
+    }
+    if (first != '*') {
+      throw new IOException("Expected RESP array, got '" + (char) first + "'");
+    }
+    int count = (int) readLong(in);
+    List<byte[]> args = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      if (in.read() != '$') {
+        throw new IOException("Expected RESP bulk string");
+      }
+      int len = (int) readLong(in);
+      byte[] arg = in.readNBytes(len);
+      if (arg.length != len) {
+        throw new EOFException();
+      }
+      in.read();
+      in.read();
+      args.add(arg);
+    }
+    return args;
+  }
+
+  private static long readLong(InputStream in) throws IOException {
+    long value = 0;
+    boolean negative = false;
+    int b;
+    while ((b = in.read()) != '\r') {
+      if (b == -1) {
+        throw new EOFException();
+      }
+      if (b == '-') {
+        negative = true;
+      } else {
+        value = value * 10 + (b - '0');
+      }
+    }
+    in.read();
+    return negative ? -value : value;
+  }
+
+  @Override
+  public void close() throws IOException {
+    running = false;
+    serverSocket.close();
+    executor.shutdownNow();
+  }
+
+  /** byte[] wrapper with value semantics for use as a map key. */
+  protected static final class Key {
+    private final byte[] bytes;
+    private final int hash;
+
+    Key(byte[] bytes) {
+      this.bytes = bytes;
+      this.hash = Arrays.hashCode(bytes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Key && Arrays.equals(bytes, ((Key) o).bytes);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  /** Stream entry id (ms-seq). */
+  protected static final class StreamId implements Comparable<StreamId> {
+    final long millis;
+    final long seq;
+
+    StreamId(long millis, long seq) {
+      this.millis = millis;
+      this.seq = seq;
+    }
+
+    static StreamId parse(String id, long defaultSeq) {
+      int dash = id.indexOf('-');
+      return dash < 0
+          ? new StreamId(Long.parseLong(id), defaultSeq)
+          : new StreamId(Long.parseLong(id.substring(0, dash)), Long.parseLong(id.substring(dash + 1)));
+    }
+
+    @Override
+    public int compareTo(StreamId o) {
+      int c = Long.compare(millis, o.millis);
+      return c != 0 ? c : Long.compare(seq, o.seq);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof StreamId && compareTo((StreamId) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(millis) * 31 + Long.hashCode(seq);
+    }
+
+    @Override
+    public String toString() {
+      return millis + "-" + seq;
+    }
+  }
+}
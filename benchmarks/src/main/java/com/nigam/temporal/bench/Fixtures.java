@@ -0,0 +1,35 @@
+package com.nigam.temporal.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/** Loads recorded NSE / OpenAlgo payloads bundled under resources/fixtures. */
+public final class Fixtures {
+
+  public static final String OPTION_CHAIN_V3 = "option-chain-v3-NIFTY.json";
+  public static final String CONTRACT_INFO = "option-chain-contract-info-NIFTY.json";
+  public static final String OPENALGO_OPTION_CHAIN = "openalgo-optionchain-NIFTY.json";
+  public static final String OPENALGO_OPTION_GREEKS = "openalgo-optiongreeks.json";
+  public static final String ALL_INDICES_CSV = "allIndices.csv";
+  public static final String EQUITY_DATA_CSV = "equityData.csv";
+
+  private Fixtures() {
+  }
+
+  public static byte[] bytes(String name) {
+    try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+      if (in == null) {
+        throw new IllegalArgumentException("Fixture not found: " + name);
+      }
+      return in.readAllBytes();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public static String string(String name) {
+    return new String(bytes(name), StandardCharsets.UTF_8);
+  }
+}
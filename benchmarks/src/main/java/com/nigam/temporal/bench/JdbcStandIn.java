@@ -0,0 +1,151 @@
+package com.nigam.temporal.bench;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JDBC Connection stand-in: every statement succeeds, queries return no rows (INSERT ... RETURNING returns one
+ * row of zeros, as a generated key), batched rows and round trips
+ * are counted, and each round trip (execute*, executeQuery, executeBatch, commit) can be given a fixed
+ * latency to model a remote database.
+ */
+public final class JdbcStandIn {
+
+  private final long roundTripNanos;
+  private final AtomicLong roundTrips = new AtomicLong();
+  private final AtomicLong batchedRows = new AtomicLong();
+
+  public JdbcStandIn(long roundTripMicros) {
+    this.roundTripNanos = TimeUnit.MICROSECONDS.toNanos(roundTripMicros);
+  }
+
+  public long getRoundTrips() {
+    return roundTrips.get();
+  }
+
+  public long getBatchedRows() {
+    return batchedRows.get();
+  }
+
+  public Connection connection() {
+    return proxy(Connection.class, (proxy, method, args) -> {
+      switch (method.getName()) {
+        case "prepareStatement":
+          boolean returning = args[0] instanceof String && ((String) args[0]).contains(" RETURNING ");
+          return proxy(PreparedStatement.class, (p, m, a) -> statementCall(p, m, a, returning));
+        case "createStatement":
+          return proxy(Statement.class, (p, m, a) -> statementCall(p, m, a, false));
+        case "commit":
+          roundTrip();
+          return null;
+        case "getAutoCommit":
+        case "isValid":
+          return true;
+        default:
+          return common(proxy, method, args, "JdbcStandIn.Connection");
+      }
+    });
+  }
+
+  private Object statementCall(Object proxy, Method method, Object[] args, boolean returning) {
+    switch (method.getName()) {
+      case "addBatch":
+        batchedRows.incrementAndGet();
+        return null;
+      case "executeBatch":
+        roundTrip();
+        return new int[0];
+      case "executeQuery":
+        roundTrip();
+        return returning ? singleRowResultSet() : emptyResultSet();
+      case "executeUpdate":
+        roundTrip();
+        return 1;
+      case "executeLargeUpdate":
+        roundTrip();
+        return 1L;
+      case "execute":
+        roundTrip();
+        return defaultValue(method.getReturnType());
+      default:
+        return common(proxy, method, args, "JdbcStandIn.Statement");
+    }
+  }
+
+  private static ResultSet emptyResultSet() {
+    return proxy(ResultSet.class, (proxy, method, args) -> common(proxy, method, args, "JdbcStandIn.ResultSet"));
+  }
+
+  private static ResultSet singleRowResultSet() {
+    boolean[] read = {false};
+    return proxy(ResultSet.class, (proxy, method, args) -> {
+      if (method.getName().equals("next")) {
+        boolean first = !read[0];
+        read[0] = true;
+        return first;
+      }
+      return common(proxy, method, args, "JdbcStandIn.ResultSet");
+    });
+  }
+
+  private void roundTrip() {
+    roundTrips.incrementAndGet();
+    if (roundTripNanos > 0) {
+      long deadline = System.nanoTime() + roundTripNanos;
+      long remaining;
+      while ((remaining = deadline - System.nanoTime()) > 0) {
+        java.util.concurrent.locks.LockSupport.parkNanos(remaining);
+      }
+    }
+  }
+
+  private static Object common(Object proxy, Method method, Object[] args, String name) {
+    switch (method.getName()) {
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      case "equals":
+        return proxy == args[0];
+      case "toString":
+        return name;
+      default:
+        return defaultValue(method.getReturnType());
+    }
+  }
+
+  private static Object defaultValue(Class<?> type) {
+    if (type == boolean.class) {
+      return false;
+    }
+    if (type == int.class) {
+      return 0;
+    }
+    if (type == long.class) {
+      return 0L;
+    }
+    if (type == double.class) {
+      return 0.0;
+    }
+    if (type == float.class) {
+      return 0.0f;
+    }
+    if (type == short.class) {
+      return (short) 0;
+    }
+    if (type == byte.class) {
+      return (byte) 0;
+    }
+    return null;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+    return (T) Proxy.newProxyInstance(JdbcStandIn.class.getClassLoader(), new Class<?>[] {type}, handler);
+  }
+}
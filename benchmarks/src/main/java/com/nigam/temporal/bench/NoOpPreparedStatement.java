@@ -0,0 +1,44 @@
+package com.nigam.temporal.bench;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PreparedStatement stand-in that accepts every bind and counts batched rows, so row binding
+ * can be measured without a database round trip.
+ */
+public final class NoOpPreparedStatement {
+
+  private NoOpPreparedStatement() {
+  }
+
+  public static PreparedStatement create(AtomicLong batchedRows) {
+    return (PreparedStatement) Proxy.newProxyInstance(
+        NoOpPreparedStatement.class.getClassLoader(),
+        new Class<?>[] {PreparedStatement.class},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "addBatch":
+              batchedRows.incrementAndGet();
+              return null;
+            case "executeBatch":
+              return new int[0];
+            case "executeUpdate":
+              return 0;
+            case "execute":
+              return false;
+            case "isClosed":
+              return false;
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            case "equals":
+              return proxy == args[0];
+            case "toString":
+              return "NoOpPreparedStatement";
+            default:
+              return null;
+          }
+        });
+  }
+}
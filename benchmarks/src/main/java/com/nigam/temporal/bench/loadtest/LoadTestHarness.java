@@ -0,0 +1,183 @@
+package com.nigam.temporal.bench.loadtest;
+
+import com.nigam.temporal.bench.EmbeddedRedisServer;
+import com.nigam.temporal.bench.Fixtures;
+import com.nigam.temporal.ltp.LtpCalculatorActivitiesImpl;
+import com.nigam.temporal.nsedata.DownloadNseDataActivitiesImpl;
+import com.nigam.temporal.nsedata.DownloadNseDataInput;
+import com.nigam.temporal.nsedata.NseDataRedisPublisher;
+import com.nigam.temporal.nsedata.NseDownloadHandler;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Offline load test: starts local NSE / OpenAlgo HTTP stand-ins and an in-process Redis stand-in,
+ * then drives the real activity implementations at a fixed snapshot rate and reports per-stage
+ * p50/p99 latency, throughput and allocation rate.
+ *
+ * Usage: ./gradlew :benchmarks:runLoadTest -Pargs="--rate=2 --duration=60 --latency-ms=20 --error-rate=0.01"
+ *
+ * Options (all optional):
+ *   --rate=N              snapshots per second per stage (default 1)
+ *   --duration=S          run time in seconds (default 30)
+ *   --concurrency=N       activity threads (default 8)
+ *   --latency-ms=N        stand-in latency per response (default 0)
+ *   --jitter-ms=N         extra uniform random latency (default 0)
+ *   --error-rate=F        fraction of stand-in responses that fail (default 0)
+ *   --error-status=N      HTTP status used for injected failures (default 503)
+ *   --stages=a,b          any of allIndices,equityData,optionChain,ltp (default all)
+ *
+ * Latency is measured from each snapshot's scheduled start, so queueing behind a slow stage counts.
+ * Allocation is measured on the activity thread (HttpClient selector threads are not included).
+ * The LTP stage persists to the database configured by DB_* env; without one it logs and skips DB writes.
+ */
+public class LoadTestHarness {
+
+  private static final Logger log = LogManager.getLogger(LoadTestHarness.class);
+
+  private static final List<String> ALL_STAGES = Arrays.asList("allIndices", "equityData", "optionChain", "ltp");
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = parseArgs(args);
+    double rate = Double.parseDouble(options.getOrDefault("rate", "1"));
+    int durationSec = Integer.parseInt(options.getOrDefault("duration", "30"));
+    int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "8"));
+    long latencyMs = Long.parseLong(options.getOrDefault("latency-ms", "0"));
+    long jitterMs = Long.parseLong(options.getOrDefault("jitter-ms", "0"));
+    double errorRate = Double.parseDouble(options.getOrDefault("error-rate", "0"));
+    int errorStatus = Integer.parseInt(options.getOrDefault("error-status", "503"));
+    List<String> stages = options.containsKey("stages")
+        ? Arrays.asList(options.get("stages").split(","))
+        : ALL_STAGES;
+
+    System.out.printf("🚦 Load test: rate=%.2f/s per stage, duration=%ds, concurrency=%d, latency=%dms(+%dms), errorRate=%.3f, stages=%s%n",
+        rate, durationSec, concurrency, latencyMs, jitterMs, errorRate, stages);
+
+    try (EmbeddedRedisServer redis = new EmbeddedRedisServer();
+         StandInHttpServer nse = new StandInHttpServer(concurrency);
+         StandInHttpServer openAlgo = new StandInHttpServer(concurrency)) {
+
+      nse.route("/api/allIndices", "text/csv", Fixtures.bytes(Fixtures.ALL_INDICES_CSV))
+          .route("/api/live-analysis-variations", "text/csv", Fixtures.bytes(Fixtures.EQUITY_DATA_CSV))
+          .route("/api/option-chain-v3", "application/json", Fixtures.bytes(Fixtures.OPTION_CHAIN_V3))
+          .route("/api/option-chain-contract-info", "application/json", Fixtures.bytes(Fixtures.CONTRACT_INFO))
+          .latency(latencyMs, jitterMs)
+          .errors(errorRate, errorStatus);
+      openAlgo.route("/api/v1/optionchain", "application/json", Fixtures.bytes(Fixtures.OPENALGO_OPTION_CHAIN))
+          .route("/api/v1/optiongreeks", "application/json", Fixtures.bytes(Fixtures.OPENALGO_OPTION_GREEKS))
+          .latency(latencyMs, jitterMs)
+          .errors(errorRate, errorStatus);
+
+      NseDataRedisPublisher redisPublisher = new NseDataRedisPublisher("127.0.0.1", redis.getPort(), "");
+      DownloadNseDataActivitiesImpl nseActivities =
+          new DownloadNseDataActivitiesImpl(new NseDownloadHandler(redisPublisher, null, nse.getBaseUrl()));
+      JedisPoolConfig poolConfig = new JedisPoolConfig();
+      poolConfig.setMaxTotal(concurrency);
+      JedisPool ltpPool = new JedisPool(poolConfig, "127.0.0.1", redis.getPort(), 2000);
+      LtpCalculatorActivitiesImpl ltpActivities = new LtpCalculatorActivitiesImpl(ltpPool);
+
+      Map<String, Supplier<String>> stageCalls = new HashMap<>();
+      stageCalls.put("allIndices", () -> nseActivities.downloadNseData(new DownloadNseDataInput("allIndices")));
+      stageCalls.put("equityData", () -> nseActivities.downloadNseData(new DownloadNseDataInput("equityData")));
+      stageCalls.put("optionChain", () -> {
+        DownloadNseDataInput input = new DownloadNseDataInput("optionchain");
+        input.setSymbol("NIFTY");
+        return nseActivities.downloadNseData(input);
+      });
+      stageCalls.put("ltp", () -> ltpActivities.fetchOptionChain("LoadTest", "127.0.0.1", String.valueOf(openAlgo.getPort()),
+          "loadtest-api-key", "NIFTY", "NSE_INDEX", "21OCT25", 10, 0, null));
+
+      Map<String, StageStats> stats = new LinkedHashMap<>();
+      for (String stage : stages) {
+        if (!stageCalls.containsKey(stage)) {
+          throw new IllegalArgumentException("Unknown stage: " + stage + " (expected one of " + ALL_STAGES + ")");
+        }
+        stats.put(stage, new StageStats(stage));
+      }
+
+      run(stageCalls, stats, rate, durationSec, concurrency);
+
+      System.out.println("📊 Stand-in requests: nse=" + nse.getRequests() + " (injected errors " + nse.getInjectedErrors()
+          + "), openalgo=" + openAlgo.getRequests() + " (injected errors " + openAlgo.getInjectedErrors() + ")");
+      System.out.println("📊 Redis stand-in: keys=" + redis.size() + ", valueBytes=" + redis.valueBytes());
+
+      redisPublisher.getJedisPool().close();
+      ltpPool.close();
+    }
+  }
+
+  private static void run(Map<String, Supplier<String>> stageCalls, Map<String, StageStats> stats,
+                          double rate, int durationSec, int concurrency) throws InterruptedException {
+    com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+    ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+    long periodNanos = (long) (1_000_000_000L / rate);
+    long startNanos = System.nanoTime();
+
+    ticker.scheduleAtFixedRate(() -> {
+      long scheduledAt = System.nanoTime();
+      for (StageStats stage : stats.values()) {
+        Supplier<String> call = stageCalls.get(stage.getName());
+        workers.submit(() -> {
+          long threadId = Thread.currentThread().getId();
+          long allocBefore = threadBean.getThreadAllocatedBytes(threadId);
+          boolean error;
+          try {
+            String result = call.get();
+            error = result == null || result.startsWith("Error");
+          } catch (Exception e) {
+            log.warn("Stage {} threw: {}", stage.getName(), e.getMessage());
+            error = true;
+          }
+          long allocAfter = threadBean.getThreadAllocatedBytes(threadId);
+          stage.record(System.nanoTime() - scheduledAt, allocAfter - allocBefore, error);
+        });
+      }
+    }, 0, periodNanos, TimeUnit.NANOSECONDS);
+
+    Thread.sleep(TimeUnit.SECONDS.toMillis(durationSec));
+    ticker.shutdownNow();
+    workers.shutdown();
+    if (!workers.awaitTermination(60, TimeUnit.SECONDS)) {
+      System.out.println("⚠️ Some stage calls still running after 60s drain, reporting what completed");
+    }
+    double elapsedSeconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+
+    System.out.println("📊 Load test results over " + String.format("%.1f", elapsedSeconds) + "s:");
+    for (StageStats stage : stats.values()) {
+      System.out.println("   " + stage.report(elapsedSeconds));
+    }
+  }
+
+  private static Map<String, String> parseArgs(String[] args) {
+    Map<String, String> options = new HashMap<>();
+    List<String> unknown = new ArrayList<>();
+    for (String arg : args) {
+      if (arg.startsWith("--") && arg.contains("=")) {
+        int eq = arg.indexOf('=');
+        options.put(arg.substring(2, eq), arg.substring(eq + 1));
+      } else {
+        unknown.add(arg);
+      }
+    }
+    if (!unknown.isEmpty()) {
+      throw new IllegalArgumentException("Arguments must be --name=value, got: " + unknown);
+    }
+    return options;
+  }
+}
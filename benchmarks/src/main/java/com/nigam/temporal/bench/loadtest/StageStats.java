@@ -0,0 +1,67 @@
+package com.nigam.temporal.bench.loadtest;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Latency, error and allocation counters for one load-test stage. Latencies are kept raw so
+ * percentiles are exact; the harness runs minutes, not hours, so the array stays small.
+ */
+public class StageStats {
+
+  private final String name;
+  private long[] latenciesNanos = new long[1024];
+  private int count;
+  private long errors;
+  private long allocatedBytes;
+
+  public StageStats(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public synchronized void record(long latencyNanos, long allocated, boolean error) {
+    if (count == latenciesNanos.length) {
+      latenciesNanos = Arrays.copyOf(latenciesNanos, count * 2);
+    }
+    latenciesNanos[count++] = latencyNanos;
+    if (allocated > 0) {
+      allocatedBytes += allocated;
+    }
+    if (error) {
+      errors++;
+    }
+  }
+
+  public synchronized int getCount() {
+    return count;
+  }
+
+  public synchronized long getErrors() {
+    return errors;
+  }
+
+  /** Percentile (0..100) in milliseconds, nearest-rank. */
+  public synchronized double percentileMs(double percentile) {
+    if (count == 0) {
+      return 0.0;
+    }
+    long[] sorted = Arrays.copyOf(latenciesNanos, count);
+    Arrays.sort(sorted);
+    int rank = (int) Math.ceil(percentile / 100.0 * count) - 1;
+    return sorted[Math.max(0, Math.min(rank, count - 1))] / 1_000_000.0;
+  }
+
+  /** One report line: ops, errors, throughput, p50/p99/max latency and allocation rate over the elapsed time. */
+  public synchronized String report(double elapsedSeconds) {
+    double throughput = elapsedSeconds > 0 ? count / elapsedSeconds : 0.0;
+    double allocMbPerSec = elapsedSeconds > 0 ? allocatedBytes / elapsedSeconds / (1024.0 * 1024.0) : 0.0;
+    long allocPerOp = count > 0 ? allocatedBytes / count : 0;
+    return String.format(Locale.ROOT,
+        "%-22s ops=%-6d errors=%-5d throughput=%8.2f/s p50=%9.2fms p99=%9.2fms max=%9.2fms alloc=%8.2fMB/s (%d B/op)",
+        name, count, errors, throughput, percentileMs(50), percentileMs(99), percentileMs(100), allocMbPerSec, allocPerOp);
+  }
+}
@@ -0,0 +1,138 @@
+package com.nigam.temporal.bench.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local HTTP stand-in that replays recorded payloads by path (query string ignored), with configurable
+ * latency and error injection. Used in place of nseindia.com and an OpenAlgo broker during load tests.
+ */
+public class StandInHttpServer implements AutoCloseable {
+
+  private static final Logger log = LogManager.getLogger(StandInHttpServer.class);
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final Map<String, Route> routes = new ConcurrentHashMap<>();
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong injectedErrors = new AtomicLong();
+
+  private volatile long latencyMs;
+  private volatile long jitterMs;
+  private volatile double errorRate;
+  private volatile int errorStatus = 503;
+
+  public StandInHttpServer(int threads) throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    executor = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "stand-in-http");
+      t.setDaemon(true);
+      return t;
+    });
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    server.start();
+    log.info("StandInHttpServer listening on port {}", getPort());
+  }
+
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  public String getBaseUrl() {
+    return "http://127.0.0.1:" + getPort();
+  }
+
+  /** Serve body for any request whose path equals the given path. */
+  public StandInHttpServer route(String path, String contentType, byte[] body) {
+    routes.put(path, new Route(contentType, body));
+    return this;
+  }
+
+  /** Fixed latency added to every response, plus uniform random jitter in [0, jitterMs]. */
+  public StandInHttpServer latency(long latencyMs, long jitterMs) {
+    this.latencyMs = latencyMs;
+    this.jitterMs = jitterMs;
+    return this;
+  }
+
+  /** Fraction of requests (0..1) answered with errorStatus and an empty body. */
+  public StandInHttpServer errors(double errorRate, int errorStatus) {
+    this.errorRate = errorRate;
+    this.errorStatus = errorStatus;
+    return this;
+  }
+
+  public long getRequests() {
+    return requests.get();
+  }
+
+  public long getInjectedErrors() {
+    return injectedErrors.get();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      requests.incrementAndGet();
+      exchange.getRequestBody().readAllBytes();
+      sleepLatency();
+
+      Route route = routes.get(exchange.getRequestURI().getPath());
+      if (route == null) {
+        exchange.sendResponseHeaders(404, -1);
+        return;
+      }
+      if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+        injectedErrors.incrementAndGet();
+        exchange.sendResponseHeaders(errorStatus, -1);
+        return;
+      }
+      exchange.getResponseHeaders().add("Content-Type", route.contentType);
+      exchange.sendResponseHeaders(200, route.body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(route.body);
+      }
+    }
+  }
+
+  private void sleepLatency() {
+    long delay = latencyMs + (jitterMs > 0 ? ThreadLocalRandom.current().nextLong(jitterMs + 1) : 0);
+    if (delay <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(delay);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private static final class Route {
+    private final String contentType;
+    private final byte[] body;
+
+    private Route(String contentType, byte[] body) {
+      this.contentType = contentType;
+      this.body = body;
+    }
+  }
+}
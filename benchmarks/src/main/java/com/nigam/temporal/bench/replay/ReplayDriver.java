@@ -0,0 +1,339 @@
+package com.nigam.temporal.bench.replay;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.nigam.temporal.bench.EmbeddedRedisServer;
+import com.nigam.temporal.bench.Fixtures;
+import com.nigam.temporal.bench.JdbcStandIn;
+import com.nigam.temporal.bench.loadtest.StageStats;
+import com.nigam.temporal.common.SnapshotJournal;
+import com.nigam.temporal.ltp.LtpCalculatorActivitiesImpl;
+import com.nigam.temporal.nsedata.NseDataKafkaPublisher;
+import com.nigam.temporal.nsedata.NseDataRedisPublisher;
+import com.nigam.temporal.nsedata.NseDownloadHandler;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays journaled snapshots ({@link SnapshotJournal}) through the real publishing and persistence code:
+ * NSE records go through {@link NseDownloadHandler#replaySnapshot} (columnar copy, Redis rotation, option
+ * chain delta, Kafka notification) and OpenAlgo records through
+ * {@link LtpCalculatorActivitiesImpl#replayOptionChain} (Redis, rows, summary, rollups). Redis, Kafka and
+ * Postgres are local stand-ins by default, so no market, broker or database is needed.
+ *
+ * Usage: ./gradlew :benchmarks:runReplay -Pargs="--journal=journal --from=2026-10-16 --speed=max"
+ *
+ * Options (all optional):
+ *   --journal=DIR         JOURNAL_DIR root (every worker subdirectory is read) or one worker's directory
+ *                         (default JOURNAL_DIR env, else journal)
+ *   --from=yyyy-MM-dd     first journal day (default today in JOURNAL_ZONE)
+ *   --to=yyyy-MM-dd       last journal day (default --from)
+ *   --fixtures=N          ignore --journal and replay N minutes of the bundled fixtures instead
+ *   --speed=X             1 = recorded pace, N = N times faster, max = as fast as possible (default max)
+ *   --fanout=N            replay every record under N keys (extra expiries) to model more load (default 1)
+ *   --lanes=N             worker threads; records of one key always run on the same lane, in order (default 1)
+ *   --stages=a,b          any of allIndices,equityData,optionChain,ltp (default all)
+ *   --redis=standin|H:P   in-process Redis stand-in (default) or a real Redis
+ *   --kafka=standin|env|off  MockProducer (default), KAFKA_BOOTSTRAP_SERVERS, or no notifications
+ *   --db=standin|env      JDBC stand-in (default) or the database configured by DB_*
+ *   --db-latency-ms=N     stand-in latency per database round trip (default 0)
+ *
+ * Records are replayed in timestamp order (ties in journal order), so two runs over the same journal issue
+ * the same writes per key. With --speed=max latency is service time per record; with a paced speed it is
+ * measured from the record's scheduled time, so falling behind shows up as latency. Rollups and
+ * write-behind open their own connections from DB_*: set ROLLUP_ENABLED=false with --db=standin.
+ */
+public class ReplayDriver {
+
+  private static final Logger log = LogManager.getLogger(ReplayDriver.class);
+
+  private static final List<String> ALL_STAGES = Arrays.asList("allIndices", "equityData", "optionChain", "ltp");
+  private static final int QUEUED_PER_LANE = 64;
+  private static final String UNUSED_NSE_BASE_URL = "http://127.0.0.1:9";
+  private static final int FIXTURE_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = parseArgs(args);
+    ZoneId zone = ZoneId.of(System.getenv().getOrDefault("JOURNAL_ZONE", "Asia/Kolkata"));
+    String speedOption = options.getOrDefault("speed", "max");
+    double speed = "max".equalsIgnoreCase(speedOption) ? 0 : Double.parseDouble(speedOption);
+    int fanout = Math.max(1, Integer.parseInt(options.getOrDefault("fanout", "1")));
+    int lanes = Math.max(1, Integer.parseInt(options.getOrDefault("lanes", "1")));
+    List<String> stages = options.containsKey("stages")
+        ? Arrays.asList(options.get("stages").split(","))
+        : ALL_STAGES;
+    for (String stage : stages) {
+      if (!ALL_STAGES.contains(stage)) {
+        throw new IllegalArgumentException("Unknown stage: " + stage + " (expected one of " + ALL_STAGES + ")");
+      }
+    }
+
+    List<Path> journalDirs;
+    LocalDate from;
+    LocalDate to;
+    if (options.containsKey("fixtures")) {
+      Path dir = Files.createTempDirectory("replay-fixtures");
+      writeFixtureJournal(dir, zone, Integer.parseInt(options.get("fixtures")));
+      journalDirs = List.of(dir);
+      from = LocalDate.now(zone);
+      to = from;
+    } else {
+      journalDirs = journalDirs(Paths.get(options.getOrDefault("journal", System.getenv().getOrDefault("JOURNAL_DIR", "journal"))));
+      from = options.containsKey("from") ? LocalDate.parse(options.get("from")) : LocalDate.now(zone);
+      to = options.containsKey("to") ? LocalDate.parse(options.get("to")) : from;
+    }
+
+    List<SnapshotJournal.Record> records = load(journalDirs, from, to, stages);
+    if (records.isEmpty()) {
+      System.out.println("⚠️ Nothing to replay in " + journalDirs + " for " + from + ".." + to + " (stages " + stages + ")");
+      return;
+    }
+    long spanMillis = records.get(records.size() - 1).timestampMillis - records.get(0).timestampMillis;
+    System.out.printf(Locale.ROOT, "▶️ Replay: %d records spanning %.1f min from %s, speed=%s, fanout=%d, lanes=%d, stages=%s%n",
+        records.size(), spanMillis / 60000.0, journalDirs, speedOption, fanout, lanes, stages);
+
+    String redisOption = options.getOrDefault("redis", "standin");
+    String kafkaOption = options.getOrDefault("kafka", "standin");
+    String dbOption = options.getOrDefault("db", "standin");
+    EmbeddedRedisServer embeddedRedis = "standin".equals(redisOption) ? new EmbeddedRedisServer() : null;
+    String redisHost = embeddedRedis != null ? "127.0.0.1" : redisOption.substring(0, redisOption.lastIndexOf(':'));
+    int redisPort = embeddedRedis != null ? embeddedRedis.getPort() : Integer.parseInt(redisOption.substring(redisOption.lastIndexOf(':') + 1));
+    MockProducer<String, byte[]> mockProducer = null;
+    NseDataKafkaPublisher kafkaPublisher = null;
+    if ("standin".equals(kafkaOption)) {
+      mockProducer = new MockProducer<>(true, new StringSerializer(), new ByteArraySerializer());
+      kafkaPublisher = new NseDataKafkaPublisher(mockProducer);
+    } else if ("env".equals(kafkaOption)) {
+      kafkaPublisher = NseDataKafkaPublisher.createOrNull();
+    }
+    JdbcStandIn jdbc = "standin".equals(dbOption)
+        ? new JdbcStandIn(TimeUnit.MILLISECONDS.toMicros(Long.parseLong(options.getOrDefault("db-latency-ms", "0"))))
+        : null;
+
+    NseDataRedisPublisher redisPublisher = new NseDataRedisPublisher(redisHost, redisPort, System.getenv().getOrDefault("REDIS_PASSWORD", ""));
+    // Replays never call NSE: point the handler's client (and its warm-up / expiry prefetch) at a closed local port
+    NseDownloadHandler handler = new NseDownloadHandler(redisPublisher, kafkaPublisher, UNUSED_NSE_BASE_URL);
+    JedisPoolConfig poolConfig = new JedisPoolConfig();
+    poolConfig.setMaxTotal(lanes);
+    JedisPool ltpPool = new JedisPool(poolConfig, redisHost, redisPort, 2000);
+    LtpCalculatorActivitiesImpl ltp = jdbc != null
+        ? new LtpCalculatorActivitiesImpl(ltpPool, jdbc.connection())
+        : new LtpCalculatorActivitiesImpl(ltpPool);
+
+    Map<String, StageStats> stats = new LinkedHashMap<>();
+    for (String stage : stages) {
+      stats.put(stage, new StageStats(stage));
+    }
+    try {
+      double elapsedSeconds = replay(records, handler, ltp, stats, speed, fanout, lanes);
+      System.out.printf(Locale.ROOT, "📊 Replay results over %.1fs (%.1f min of recorded data, effective speed %.1fx):%n",
+          elapsedSeconds, spanMillis / 60000.0, elapsedSeconds > 0 ? spanMillis / 1000.0 / elapsedSeconds : 0.0);
+      for (StageStats stage : stats.values()) {
+        System.out.println("   " + stage.report(elapsedSeconds));
+      }
+      if (mockProducer != null) {
+        System.out.println("📊 Kafka stand-in: records=" + mockProducer.history().size());
+      }
+      if (jdbc != null) {
+        System.out.println("📊 JDBC stand-in: roundTrips=" + jdbc.getRoundTrips() + ", batchedRows=" + jdbc.getBatchedRows());
+      }
+      if (embeddedRedis != null) {
+        System.out.println("📊 Redis stand-in: keys=" + embeddedRedis.size() + ", valueBytes=" + embeddedRedis.valueBytes());
+      }
+    } finally {
+      redisPublisher.getJedisPool().close();
+      ltpPool.close();
+      if (kafkaPublisher != null) {
+        kafkaPublisher.close();
+      }
+      if (embeddedRedis != null) {
+        embeddedRedis.close();
+      }
+    }
+  }
+
+  /**
+   * Dispatch records in order, pacing them by their recorded timestamps (speed 0 = no pacing). Returns the
+   * elapsed wall time in seconds.
+   */
+  private static double replay(List<SnapshotJournal.Record> records, NseDownloadHandler handler, LtpCalculatorActivitiesImpl ltp,
+                               Map<String, StageStats> stats, double speed, int fanout, int lanes) throws InterruptedException {
+    com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    ExecutorService[] laneExecutors = new ExecutorService[lanes];
+    for (int i = 0; i < lanes; i++) {
+      laneExecutors[i] = Executors.newSingleThreadExecutor();
+    }
+    Semaphore queued = new Semaphore(lanes * QUEUED_PER_LANE);
+    long firstTimestamp = records.get(0).timestampMillis;
+    long startNanos = System.nanoTime();
+
+    for (SnapshotJournal.Record record : records) {
+      long dueNanos = speed > 0
+          ? startNanos + (long) ((record.timestampMillis - firstTimestamp) * 1_000_000L / speed)
+          : 0;
+      long waitNanos;
+      while (dueNanos > 0 && (waitNanos = dueNanos - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(waitNanos);
+      }
+      StageStats stage = stats.get(stageOf(record.kind));
+      for (int copy = 0; copy < fanout; copy++) {
+        String key = copy == 0 ? record.key : record.key + "_r" + copy;
+        queued.acquire();
+        laneExecutors[Math.floorMod(key.hashCode(), lanes)].execute(() -> {
+          long threadId = Thread.currentThread().getId();
+          long allocBefore = threadBean.getThreadAllocatedBytes(threadId);
+          long begin = dueNanos > 0 ? dueNanos : System.nanoTime();
+          boolean error = false;
+          try {
+            dispatch(record, key, handler, ltp);
+          } catch (Exception e) {
+            log.warn("Replay of {} at {} threw: {}", key, record.timestampMillis, e.getMessage());
+            error = true;
+          } finally {
+            queued.release();
+          }
+          stage.record(System.nanoTime() - begin, threadBean.getThreadAllocatedBytes(threadId) - allocBefore, error);
+        });
+      }
+    }
+    for (ExecutorService lane : laneExecutors) {
+      lane.shutdown();
+    }
+    for (ExecutorService lane : laneExecutors) {
+      lane.awaitTermination(1, TimeUnit.HOURS);
+    }
+    return (System.nanoTime() - startNanos) / 1_000_000_000.0;
+  }
+
+  private static void dispatch(SnapshotJournal.Record record, String key, NseDownloadHandler handler, LtpCalculatorActivitiesImpl ltp) {
+    Instant timestamp = Instant.ofEpochMilli(record.timestampMillis);
+    switch (record.kind) {
+      case SnapshotJournal.KIND_NSE_ALL_INDICES:
+        handler.replaySnapshot("allIndices", record.payloadString(), timestamp, key);
+        break;
+      case SnapshotJournal.KIND_NSE_EQUITY:
+        handler.replaySnapshot("equityData", record.payloadString(), timestamp, key);
+        break;
+      case SnapshotJournal.KIND_NSE_OPTION_CHAIN:
+        handler.replaySnapshot("optionchain", record.payloadString(), timestamp, key);
+        break;
+      case SnapshotJournal.KIND_OPENALGO_OPTION_CHAIN:
+        // openalgo:{server}:{index}:{expiry}, the fanout suffix lands on the expiry
+        String[] parts = key.split(":", 4);
+        JsonObject response = JsonParser.parseString(record.payloadString()).getAsJsonObject();
+        ltp.replayOptionChain(parts[1], parts[2], parts[3], response, record.timestampMillis);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown journal record kind " + record.kind);
+    }
+  }
+
+  private static String stageOf(byte kind) {
+    switch (kind) {
+      case SnapshotJournal.KIND_NSE_ALL_INDICES:
+        return "allIndices";
+      case SnapshotJournal.KIND_NSE_EQUITY:
+        return "equityData";
+      case SnapshotJournal.KIND_NSE_OPTION_CHAIN:
+        return "optionChain";
+      case SnapshotJournal.KIND_OPENALGO_OPTION_CHAIN:
+        return "ltp";
+      default:
+        return null;
+    }
+  }
+
+  /** The directory itself plus every subdirectory (one per worker), sorted so the merge order is stable. */
+  private static List<Path> journalDirs(Path root) throws IOException {
+    List<Path> dirs = new ArrayList<>();
+    dirs.add(root);
+    if (Files.isDirectory(root)) {
+      try (DirectoryStream<Path> children = Files.newDirectoryStream(root, Files::isDirectory)) {
+        children.forEach(dirs::add);
+      }
+    }
+    dirs.sort(Comparator.naturalOrder());
+    return dirs;
+  }
+
+  /** Every intact record of the selected stages, in timestamp order (stable, so ties keep journal order). */
+  private static List<SnapshotJournal.Record> load(List<Path> dirs, LocalDate from, LocalDate to, List<String> stages) throws IOException {
+    List<SnapshotJournal.Record> records = new ArrayList<>();
+    for (Path dir : dirs) {
+      for (Path segment : SnapshotJournal.segments(dir, from, to)) {
+        SnapshotJournal.read(segment, record -> {
+          String stage = stageOf(record.kind);
+          if (stage != null && stages.contains(stage)) {
+            records.add(record);
+          }
+        });
+      }
+    }
+    records.sort(Comparator.comparingLong(record -> record.timestampMillis));
+    return records;
+  }
+
+  /** A journal with one snapshot per stage per minute for the last N minutes, from the bundled fixtures. */
+  private static void writeFixtureJournal(Path dir, ZoneId zone, int minutes) {
+    byte[] allIndices = Fixtures.bytes(Fixtures.ALL_INDICES_CSV);
+    byte[] equity = Fixtures.bytes(Fixtures.EQUITY_DATA_CSV);
+    byte[] optionChain = Fixtures.bytes(Fixtures.OPTION_CHAIN_V3);
+    byte[] openAlgo = Fixtures.bytes(Fixtures.OPENALGO_OPTION_CHAIN);
+    long start = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(minutes);
+    try (SnapshotJournal journal = new SnapshotJournal(true, dir, FIXTURE_SEGMENT_BYTES, zone)) {
+      for (int minute = 0; minute < minutes; minute++) {
+        long timestamp = start + TimeUnit.MINUTES.toMillis(minute);
+        journal.append(SnapshotJournal.KIND_NSE_ALL_INDICES, "nse:allindices", timestamp, allIndices);
+        journal.append(SnapshotJournal.KIND_NSE_EQUITY, "nse:equitydata", timestamp, equity);
+        journal.append(SnapshotJournal.KIND_NSE_OPTION_CHAIN, "nse:optionchain:NIFTY:21-Oct-2025", timestamp, optionChain);
+        journal.append(SnapshotJournal.KIND_OPENALGO_OPTION_CHAIN, "openalgo:Replay:NIFTY:21OCT25", timestamp, openAlgo);
+      }
+    }
+    System.out.println("📼 Wrote " + minutes + " minutes of fixture snapshots to " + dir);
+  }
+
+  private static Map<String, String> parseArgs(String[] args) {
+    Map<String, String> options = new HashMap<>();
+    List<String> unknown = new ArrayList<>();
+    for (String arg : args) {
+      if (arg.startsWith("--") && arg.contains("=")) {
+        int eq = arg.indexOf('=');
+        options.put(arg.substring(2, eq), arg.substring(eq + 1));
+      } else {
+        unknown.add(arg);
+      }
+    }
+    if (!unknown.isEmpty()) {
+      throw new IllegalArgumentException("Arguments must be --name=value, got: " + unknown);
+    }
+    return options;
+  }
+}
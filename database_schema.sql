@@ -64,6 +64,15 @@ CREATE INDEX IF NOT EXISTS idx_strike ON openalgo_optionchain (strike);
 CREATE INDEX IF NOT EXISTS idx_ce_symbol ON openalgo_optionchain (ce_symbol);
 CREATE INDEX IF NOT EXISTS idx_pe_symbol ON openalgo_optionchain (pe_symbol);
 
+-- Snapshot identity: the workflow fixes each snapshot's datetime, so an activity retry or a replay inserts
+-- the same keys and the worker's INSERT ... ON CONFLICT DO NOTHING skips them. Creating this on a table that
+-- already holds duplicates fails; delete them first, e.g.
+--   DELETE FROM openalgo_optionchain a USING openalgo_optionchain b
+--   WHERE a.id > b.id AND a.server_name = b.server_name AND a.underlying = b.underlying
+--     AND a.expiry_date = b.expiry_date AND a.strike = b.strike AND a.datetime = b.datetime;
+CREATE UNIQUE INDEX IF NOT EXISTS uq_optionchain_snapshot
+    ON openalgo_optionchain (server_name, underlying, expiry_date, strike, datetime);
+
 -- Summary table for aggregated data (volume, OI, change in OI)
 -- Stores totals, above underlying, and below underlying sums
 CREATE TABLE IF NOT EXISTS openalgo_optionchain_summary (
@@ -93,9 +102,172 @@ CREATE TABLE IF NOT EXISTS openalgo_optionchain_summary (
     below_ce_oi BIGINT DEFAULT 0,
     below_pe_oi BIGINT DEFAULT 0,
     below_ce_oi_change BIGINT DEFAULT 0,
-    below_pe_oi_change BIGINT DEFAULT 0
+    below_pe_oi_change BIGINT DEFAULT 0,
+    -- Analytics: put/call ratios, max pain, ATM straddle (CE + PE LTP at the strike nearest the underlying)
+    pcr_oi NUMERIC(10, 4),
+    pcr_volume NUMERIC(10, 4),
+    max_pain_strike INTEGER,
+    atm_straddle NUMERIC(15, 2),
+    -- Buildup counts: price change vs previous close x OI change vs previous snapshot
+    ce_long_buildup INTEGER,
+    ce_short_buildup INTEGER,
+    ce_long_unwinding INTEGER,
+    ce_short_covering INTEGER,
+    pe_long_buildup INTEGER,
+    pe_short_buildup INTEGER,
+    pe_long_unwinding INTEGER,
+    pe_short_covering INTEGER
 );
 
 -- Create indexes for summary table
 CREATE INDEX IF NOT EXISTS idx_summary_server_underlying_expiry ON openalgo_optionchain_summary (server_name, underlying, expiry_date);
 CREATE INDEX IF NOT EXISTS idx_summary_datetime ON openalgo_optionchain_summary (datetime);
+CREATE UNIQUE INDEX IF NOT EXISTS uq_summary_snapshot
+    ON openalgo_optionchain_summary (server_name, underlying, expiry_date, datetime);
+
+-- Rollups maintained by the LTP worker (ROLLUP_ENABLED, ROLLUP_BUCKETS): one row per bucket ('5m', '15m', '1d')
+-- Per strike: CE/PE LTP OHLC, OI at bucket open/close and cumulative volume at bucket close
+CREATE TABLE IF NOT EXISTS openalgo_optionchain_rollup (
+    server_name VARCHAR(100) NOT NULL,
+    underlying VARCHAR(50) NOT NULL,
+    expiry_date VARCHAR(20) NOT NULL,
+    bucket VARCHAR(8) NOT NULL,
+    bucket_start TIMESTAMP NOT NULL,
+    strike INTEGER NOT NULL,
+    ce_open NUMERIC(15, 2), ce_high NUMERIC(15, 2), ce_low NUMERIC(15, 2), ce_close NUMERIC(15, 2),
+    ce_oi_open BIGINT, ce_oi_close BIGINT, ce_volume BIGINT,
+    pe_open NUMERIC(15, 2), pe_high NUMERIC(15, 2), pe_low NUMERIC(15, 2), pe_close NUMERIC(15, 2),
+    pe_oi_open BIGINT, pe_oi_close BIGINT, pe_volume BIGINT,
+    first_sample_at TIMESTAMP, last_sample_at TIMESTAMP,
+    samples INTEGER NOT NULL,
+    PRIMARY KEY (server_name, underlying, expiry_date, bucket, bucket_start, strike)
+);
+
+-- Per expiry: underlying OHLC, total OI open/close, volume, closing PCR and max pain
+CREATE TABLE IF NOT EXISTS openalgo_optionchain_summary_rollup (
+    server_name VARCHAR(100) NOT NULL,
+    underlying VARCHAR(50) NOT NULL,
+    expiry_date VARCHAR(20) NOT NULL,
+    bucket VARCHAR(8) NOT NULL,
+    bucket_start TIMESTAMP NOT NULL,
+    underlying_open NUMERIC(15, 2), underlying_high NUMERIC(15, 2),
+    underlying_low NUMERIC(15, 2), underlying_close NUMERIC(15, 2),
+    total_ce_oi_open BIGINT, total_ce_oi_close BIGINT, total_pe_oi_open BIGINT, total_pe_oi_close BIGINT,
+    total_ce_volume BIGINT, total_pe_volume BIGINT,
+    pcr_oi_close NUMERIC(10, 4), max_pain_strike_close INTEGER,
+    first_sample_at TIMESTAMP, last_sample_at TIMESTAMP,
+    samples INTEGER NOT NULL,
+    PRIMARY KEY (server_name, underlying, expiry_date, bucket, bucket_start)
+);
+
+-- Snapshot times of each rollup row's first and last sample: the upsert only replaces open values with an
+-- earlier part and close values with a later one, so several workers and late parts merge by snapshot time,
+-- and only adds samples for a part outside [first_sample_at, last_sample_at], so rewriting the same
+-- snapshots (retried flush, replay, second worker) is a no-op.
+-- Tables created before these columns existed get them from the worker at startup, or:
+-- ALTER TABLE openalgo_optionchain_rollup ADD COLUMN IF NOT EXISTS first_sample_at TIMESTAMP,
+--     ADD COLUMN IF NOT EXISTS last_sample_at TIMESTAMP;
+-- ALTER TABLE openalgo_optionchain_summary_rollup ADD COLUMN IF NOT EXISTS first_sample_at TIMESTAMP,
+--     ADD COLUMN IF NOT EXISTS last_sample_at TIMESTAMP;
+
+-- ---------------------------------------------------------------------------
+-- Optional: daily-partitioned (and Citus-distributed) layout
+-- The LTP worker creates this instead of the table above when DB_PARTITIONING_ENABLED=true
+-- and openalgo_optionchain does not exist yet. Same columns, except id is not a primary key
+-- (a partitioned/distributed table cannot have a unique key without the partition column).
+-- ---------------------------------------------------------------------------
+-- CREATE TABLE openalgo_optionchain (
+--     id BIGSERIAL,
+--     ... same columns as above ...
+--     datetime TIMESTAMP NOT NULL
+-- ) PARTITION BY RANGE (datetime);
+--
+-- One index and the snapshot key (it includes both datetime and underlying, as partitioning
+-- and Citus require), inherited by every partition:
+-- CREATE INDEX IF NOT EXISTS idx_server_underlying_expiry_datetime
+--     ON openalgo_optionchain (server_name, underlying, expiry_date, datetime);
+-- CREATE UNIQUE INDEX IF NOT EXISTS uq_optionchain_snapshot
+--     ON openalgo_optionchain (server_name, underlying, expiry_date, strike, datetime);
+--
+-- One partition per day, openalgo_optionchain_pYYYYMMDD (the worker pre-creates
+-- DB_PARTITION_PRECREATE_DAYS ahead and detaches those older than DB_PARTITION_RETENTION_DAYS):
+-- CREATE TABLE IF NOT EXISTS openalgo_optionchain_p20250102 PARTITION OF openalgo_optionchain
+--     FOR VALUES FROM ('2025-01-02 00:00:00') TO ('2025-01-03 00:00:00');
+--
+-- Citus (DB_CITUS_DISTRIBUTE=true), shard by underlying so one index's strikes stay on one worker,
+-- with the summary co-located. Citus rejects a unique key without underlying, so id is not a primary
+-- key on either table (partitioned or not); the worker drops an existing id-only primary key first:
+-- ALTER TABLE openalgo_optionchain DROP CONSTRAINT IF EXISTS openalgo_optionchain_pkey;
+-- ALTER TABLE openalgo_optionchain_summary DROP CONSTRAINT IF EXISTS openalgo_optionchain_summary_pkey;
+-- SELECT create_distributed_table('openalgo_optionchain', 'underlying');
+-- SELECT create_distributed_table('openalgo_optionchain_summary', 'underlying',
+--     colocate_with => 'openalgo_optionchain');
+-- The compact and rollup tables stay local.
+--
+-- Migrating an existing unpartitioned table: rename it, create the partitioned table and its
+-- partitions as above, then INSERT INTO openalgo_optionchain SELECT * FROM the renamed table.
+
+-- ---------------------------------------------------------------------------
+-- Optional: compact layout (DB_OPTIONCHAIN_LAYOUT=dual writes it next to openalgo_optionchain,
+-- DB_OPTIONCHAIN_LAYOUT=compact instead of it; the LTP worker creates these tables in either mode).
+-- Server / underlying / expiry become a 4-byte series id, prices INTEGER ticks of 0.01, IV and Greeks
+-- REAL, and a missing value is NULL instead of 0.0. Symbol and label columns are dropped: within a
+-- series a contract is its strike and side. Fixed-width columns go 8-byte first so rows carry no padding,
+-- and the primary key is the only index.
+-- ---------------------------------------------------------------------------
+CREATE TABLE IF NOT EXISTS openalgo_optionchain_series (
+    series_id SERIAL PRIMARY KEY,
+    server_name VARCHAR(100) NOT NULL,
+    underlying VARCHAR(50) NOT NULL,
+    expiry_date VARCHAR(20) NOT NULL,
+    UNIQUE (server_name, underlying, expiry_date)
+);
+
+CREATE TABLE IF NOT EXISTS openalgo_optionchain_compact (
+    datetime TIMESTAMP NOT NULL,
+    ce_volume BIGINT, ce_oi BIGINT, pe_volume BIGINT, pe_oi BIGINT,
+    series_id INTEGER NOT NULL,
+    strike INTEGER NOT NULL,
+    atm_strike INTEGER, lotsize INTEGER, tick_size INTEGER,
+    underlying_ltp INTEGER, underlying_prev_close INTEGER,
+    -- Prices in ticks of 0.01 (ce_ltp = 12345 is 123.45)
+    ce_ltp INTEGER, ce_bid INTEGER, ce_ask INTEGER, ce_open INTEGER, ce_high INTEGER, ce_low INTEGER,
+    ce_prev_close INTEGER, ce_spot_price INTEGER, ce_option_price INTEGER,
+    ce_implied_volatility REAL, ce_days_to_expiry REAL,
+    ce_delta REAL, ce_gamma REAL, ce_theta REAL, ce_vega REAL,
+    pe_ltp INTEGER, pe_bid INTEGER, pe_ask INTEGER, pe_open INTEGER, pe_high INTEGER, pe_low INTEGER,
+    pe_prev_close INTEGER, pe_spot_price INTEGER, pe_option_price INTEGER,
+    pe_implied_volatility REAL, pe_days_to_expiry REAL,
+    pe_delta REAL, pe_gamma REAL, pe_theta REAL, pe_vega REAL,
+    PRIMARY KEY (series_id, datetime, strike)
+);
+
+-- openalgo_optionchain_compact_v decodes names and rupees back, e.g. (the worker creates the full view):
+--   SELECT s.server_name, s.underlying, s.expiry_date, c.datetime, c.strike,
+--          c.ce_ltp / 100.0 AS ce_ltp, c.ce_oi, c.pe_ltp / 100.0 AS pe_ltp, c.pe_oi
+--   FROM openalgo_optionchain_compact c JOIN openalgo_optionchain_series s USING (series_id);
+--
+-- Backfill from openalgo_optionchain, one day per statement so each stays a short transaction
+-- (re-running a day is a no-op). The wide table stores missing prices as 0.0, so those carry over as 0;
+-- only a zero underlying, ATM strike, lot size or tick size is turned into NULL:
+-- INSERT INTO openalgo_optionchain_series (server_name, underlying, expiry_date)
+--     SELECT DISTINCT server_name, underlying, expiry_date FROM openalgo_optionchain
+--     ON CONFLICT DO NOTHING;
+-- INSERT INTO openalgo_optionchain_compact
+--     SELECT w.datetime, w.ce_volume, w.ce_oi, w.pe_volume, w.pe_oi, s.series_id, w.strike,
+--            NULLIF(w.atm_strike, 0), NULLIF(w.lotsize, 0), NULLIF(round(w.tick_size * 100)::int, 0),
+--            NULLIF(round(w.underlying_ltp * 100)::int, 0), NULLIF(round(w.underlying_prev_close * 100)::int, 0),
+--            round(w.ce_ltp * 100)::int, round(w.ce_bid * 100)::int, round(w.ce_ask * 100)::int,
+--            round(w.ce_open * 100)::int, round(w.ce_high * 100)::int, round(w.ce_low * 100)::int,
+--            round(w.ce_prev_close * 100)::int, round(w.ce_spot_price * 100)::int, round(w.ce_option_price * 100)::int,
+--            w.ce_implied_volatility, w.ce_days_to_expiry, w.ce_delta, w.ce_gamma, w.ce_theta, w.ce_vega,
+--            round(w.pe_ltp * 100)::int, round(w.pe_bid * 100)::int, round(w.pe_ask * 100)::int,
+--            round(w.pe_open * 100)::int, round(w.pe_high * 100)::int, round(w.pe_low * 100)::int,
+--            round(w.pe_prev_close * 100)::int, round(w.pe_spot_price * 100)::int, round(w.pe_option_price * 100)::int,
+--            w.pe_implied_volatility, w.pe_days_to_expiry, w.pe_delta, w.pe_gamma, w.pe_theta, w.pe_vega
+--     FROM openalgo_optionchain w JOIN openalgo_optionchain_series s USING (server_name, underlying, expiry_date)
+--     WHERE w.datetime >= '2025-01-02' AND w.datetime < '2025-01-03'
+--     ON CONFLICT DO NOTHING;
+--
+-- Once readers use the view (or the compact table) and the backfill is done, switch to
+-- DB_OPTIONCHAIN_LAYOUT=compact and drop or archive openalgo_optionchain.
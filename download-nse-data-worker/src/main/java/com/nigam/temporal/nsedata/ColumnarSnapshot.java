@@ -0,0 +1,224 @@
+package com.nigam.temporal.nsedata;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Columnar view of an NSE CSV snapshot (allIndices or equity data): a symbol dictionary plus one
+ * double[] per column, indexed by symbol id. Missing values ("-" in NSE CSVs, absent columns) are NaN.
+ *
+ * Binary layout (big-endian), published next to the raw CSV under {redisKeyBase}:current:columnar:
+ *   magic "NCS" + version byte (1), int rowCount,
+ *   rowCount x (unsigned short length + UTF-8 symbol bytes),
+ *   then the last, change, pctChange and volume columns, each rowCount x double.
+ */
+public class ColumnarSnapshot {
+
+  private static final byte[] MAGIC = {'N', 'C', 'S'};
+  private static final byte VERSION = 1;
+
+  // Header names tried in order; allIndices uses INDEX/CURRENT and has no CHNG or volume column.
+  private static final String[] SYMBOL_HEADERS = {"SYMBOL", "INDEX"};
+  private static final String[] LAST_HEADERS = {"LTP", "CURRENT", "LAST", "LAST PRICE"};
+  private static final String[] CHANGE_HEADERS = {"CHNG", "CHANGE"};
+  private static final String[] PCT_CHANGE_HEADERS = {"%CHNG", "% CHNG", "PCHANGE"};
+  private static final String[] VOLUME_HEADERS = {"VOLUME (shares)", "VOLUME", "TOTAL TRADED VOLUME"};
+  private static final String[] PREV_CLOSE_HEADERS = {"PREV. CLOSE", "PREV CLOSE", "PREVIOUS CLOSE"};
+
+  private final String[] symbols;
+  private final double[] last;
+  private final double[] change;
+  private final double[] pctChange;
+  private final double[] volume;
+  private Map<String, Integer> symbolIds;
+
+  public ColumnarSnapshot(String[] symbols, double[] last, double[] change, double[] pctChange, double[] volume) {
+    this.symbols = symbols;
+    this.last = last;
+    this.change = change;
+    this.pctChange = pctChange;
+    this.volume = volume;
+  }
+
+  /**
+   * Tokenize the CSV bytes once and pick out the symbol, last, change, %change and volume columns by header.
+   * When there is no change column but a previous close is present, change is derived as last - prevClose.
+   */
+  public static ColumnarSnapshot fromCsv(byte[] csv) {
+    CsvTokenizer tokenizer = new CsvTokenizer(csv);
+    if (!tokenizer.nextRecord()) {
+      return new ColumnarSnapshot(new String[0], new double[0], new double[0], new double[0], new double[0]);
+    }
+    int symbolCol = findColumn(tokenizer, SYMBOL_HEADERS);
+    int lastCol = findColumn(tokenizer, LAST_HEADERS);
+    int changeCol = findColumn(tokenizer, CHANGE_HEADERS);
+    int pctCol = findColumn(tokenizer, PCT_CHANGE_HEADERS);
+    int volumeCol = findColumn(tokenizer, VOLUME_HEADERS);
+    int prevCloseCol = changeCol < 0 ? findColumn(tokenizer, PREV_CLOSE_HEADERS) : -1;
+    if (symbolCol < 0) {
+      symbolCol = 0;
+    }
+
+    // Row count is bounded by the number of newlines; size once and trim at the end
+    int capacity = countLines(csv);
+    String[] symbols = new String[capacity];
+    double[] last = new double[capacity];
+    double[] change = new double[capacity];
+    double[] pctChange = new double[capacity];
+    double[] volume = new double[capacity];
+
+    int rows = 0;
+    while (tokenizer.nextRecord()) {
+      int fields = tokenizer.fieldCount();
+      if (symbolCol >= fields) {
+        continue;
+      }
+      symbols[rows] = tokenizer.fieldAsString(symbolCol).trim();
+      last[rows] = column(tokenizer, lastCol);
+      pctChange[rows] = column(tokenizer, pctCol);
+      volume[rows] = column(tokenizer, volumeCol);
+      if (changeCol >= 0) {
+        change[rows] = column(tokenizer, changeCol);
+      } else if (prevCloseCol >= 0) {
+        change[rows] = last[rows] - column(tokenizer, prevCloseCol);
+      } else {
+        change[rows] = Double.NaN;
+      }
+      rows++;
+    }
+    if (rows == capacity) {
+      return new ColumnarSnapshot(symbols, last, change, pctChange, volume);
+    }
+    return new ColumnarSnapshot(Arrays.copyOf(symbols, rows), Arrays.copyOf(last, rows),
+        Arrays.copyOf(change, rows), Arrays.copyOf(pctChange, rows), Arrays.copyOf(volume, rows));
+  }
+
+  /** Encode to the compact binary layout described on the class. */
+  public byte[] toBytes() {
+    byte[][] encodedSymbols = new byte[symbols.length][];
+    int size = MAGIC.length + 1 + Integer.BYTES;
+    for (int i = 0; i < symbols.length; i++) {
+      byte[] encoded = symbols[i].getBytes(StandardCharsets.UTF_8);
+      if (encoded.length > 0xFFFF) {
+        throw new IllegalStateException("Symbol too long for columnar encoding: " + encoded.length + " bytes");
+      }
+      encodedSymbols[i] = encoded;
+      size += Short.BYTES + encoded.length;
+    }
+    size += 4 * symbols.length * Double.BYTES;
+
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    buffer.put(MAGIC).put(VERSION).putInt(symbols.length);
+    for (byte[] encoded : encodedSymbols) {
+      buffer.putShort((short) encoded.length).put(encoded);
+    }
+    putColumn(buffer, last);
+    putColumn(buffer, change);
+    putColumn(buffer, pctChange);
+    putColumn(buffer, volume);
+    return buffer.array();
+  }
+
+  /** Decode bytes produced by {@link #toBytes()}. */
+  public static ColumnarSnapshot fromBytes(byte[] bytes) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    for (byte b : MAGIC) {
+      if (buffer.get() != b) {
+        throw new IllegalArgumentException("Not a columnar snapshot (bad magic)");
+      }
+    }
+    byte version = buffer.get();
+    if (version != VERSION) {
+      throw new IllegalArgumentException("Unsupported columnar snapshot version " + version);
+    }
+    int rows = buffer.getInt();
+    String[] symbols = new String[rows];
+    for (int i = 0; i < rows; i++) {
+      int length = Short.toUnsignedInt(buffer.getShort());
+      symbols[i] = new String(bytes, buffer.position(), length, StandardCharsets.UTF_8);
+      buffer.position(buffer.position() + length);
+    }
+    double[] last = getColumn(buffer, rows);
+    double[] change = getColumn(buffer, rows);
+    double[] pctChange = getColumn(buffer, rows);
+    double[] volume = getColumn(buffer, rows);
+    return new ColumnarSnapshot(symbols, last, change, pctChange, volume);
+  }
+
+  public int size() {
+    return symbols.length;
+  }
+
+  /** Symbol id for a symbol, or -1 if absent. The lookup map is built on first use. */
+  public int idOf(String symbol) {
+    if (symbolIds == null) {
+      Map<String, Integer> ids = new HashMap<>(symbols.length * 2);
+      for (int i = 0; i < symbols.length; i++) {
+        ids.putIfAbsent(symbols[i], i);
+      }
+      symbolIds = ids;
+    }
+    Integer id = symbolIds.get(symbol);
+    return id != null ? id : -1;
+  }
+
+  public String symbol(int id) {
+    return symbols[id];
+  }
+
+  public double last(int id) {
+    return last[id];
+  }
+
+  public double change(int id) {
+    return change[id];
+  }
+
+  public double pctChange(int id) {
+    return pctChange[id];
+  }
+
+  public double volume(int id) {
+    return volume[id];
+  }
+
+  private static int findColumn(CsvTokenizer header, String[] candidates) {
+    for (String candidate : candidates) {
+      for (int i = 0; i < header.fieldCount(); i++) {
+        if (header.fieldEqualsIgnoreCase(i, candidate)) {
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  private static double column(CsvTokenizer tokenizer, int col) {
+    return col >= 0 && col < tokenizer.fieldCount() ? tokenizer.fieldAsDouble(col) : Double.NaN;
+  }
+
+  private static int countLines(byte[] csv) {
+    int lines = 1;
+    for (byte b : csv) {
+      if (b == '\n') {
+        lines++;
+      }
+    }
+    return lines;
+  }
+
+  private static void putColumn(ByteBuffer buffer, double[] column) {
+    buffer.asDoubleBuffer().put(column);
+    buffer.position(buffer.position() + column.length * Double.BYTES);
+  }
+
+  private static double[] getColumn(ByteBuffer buffer, int rows) {
+    double[] column = new double[rows];
+    buffer.asDoubleBuffer().get(column);
+    buffer.position(buffer.position() + rows * Double.BYTES);
+    return column;
+  }
+}
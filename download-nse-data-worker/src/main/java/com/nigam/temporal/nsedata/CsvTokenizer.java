@@ -0,0 +1,203 @@
+package com.nigam.temporal.nsedata;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Allocation-free CSV tokenizer over a response byte[] (RFC 4180 quoting, LF or CRLF, optional UTF-8 BOM).
+ * Each call to {@link #nextRecord()} records field offsets for the current row; fields are only turned into
+ * Strings when {@link #fieldAsString(int)} is called, and numbers are parsed straight from the bytes.
+ */
+public class CsvTokenizer {
+
+  private static final int INITIAL_FIELDS = 32;
+
+  private static final double[] POWERS_OF_TEN = new double[19];
+  static {
+    double p = 1;
+    for (int i = 0; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = p;
+      p *= 10;
+    }
+  }
+
+  private final byte[] data;
+  private final int end;
+  private int pos;
+
+  private int[] fieldStart = new int[INITIAL_FIELDS];
+  private int[] fieldEnd = new int[INITIAL_FIELDS];
+  private boolean[] fieldEscaped = new boolean[INITIAL_FIELDS];
+  private int fieldCount;
+
+  public CsvTokenizer(byte[] data) {
+    this(data, 0, data.length);
+  }
+
+  public CsvTokenizer(byte[] data, int offset, int length) {
+    this.data = data;
+    this.end = offset + length;
+    this.pos = offset;
+    if (length >= 3 && (data[offset] & 0xFF) == 0xEF && (data[offset + 1] & 0xFF) == 0xBB && (data[offset + 2] & 0xFF) == 0xBF) {
+      pos += 3;
+    }
+  }
+
+  /** Advance to the next non-empty record. Returns false at end of input. */
+  public boolean nextRecord() {
+    while (pos < end && (data[pos] == '\n' || data[pos] == '\r')) {
+      pos++;
+    }
+    if (pos >= end) {
+      fieldCount = 0;
+      return false;
+    }
+    fieldCount = 0;
+    while (true) {
+      ensureCapacity(fieldCount + 1);
+      boolean escaped = false;
+      int start;
+      int stop;
+      if (pos < end && data[pos] == '"') {
+        pos++;
+        start = pos;
+        while (true) {
+          if (pos >= end) {
+            stop = pos;
+            break;
+          }
+          if (data[pos] == '"') {
+            if (pos + 1 < end && data[pos + 1] == '"') {
+              escaped = true;
+              pos += 2;
+              continue;
+            }
+            stop = pos;
+            pos++;
+            break;
+          }
+          pos++;
+        }
+        // skip anything between the closing quote and the delimiter
+        while (pos < end && data[pos] != ',' && data[pos] != '\n' && data[pos] != '\r') {
+          pos++;
+        }
+      } else {
+        start = pos;
+        while (pos < end && data[pos] != ',' && data[pos] != '\n' && data[pos] != '\r') {
+          pos++;
+        }
+        stop = pos;
+      }
+      fieldStart[fieldCount] = start;
+      fieldEnd[fieldCount] = stop;
+      fieldEscaped[fieldCount] = escaped;
+      fieldCount++;
+
+      if (pos < end && data[pos] == ',') {
+        pos++;
+        continue;
+      }
+      if (pos < end && data[pos] == '\r') {
+        pos++;
+      }
+      if (pos < end && data[pos] == '\n') {
+        pos++;
+      }
+      return true;
+    }
+  }
+
+  public int fieldCount() {
+    return fieldCount;
+  }
+
+  /** Field as a String (the only place this tokenizer allocates per field). */
+  public String fieldAsString(int field) {
+    int start = fieldStart[field];
+    String value = new String(data, start, fieldEnd[field] - start, StandardCharsets.UTF_8);
+    return fieldEscaped[field] ? value.replace("\"\"", "\"") : value;
+  }
+
+  /** Case-insensitive, whitespace-trimmed ASCII comparison without allocating. */
+  public boolean fieldEqualsIgnoreCase(int field, String expected) {
+    int start = fieldStart[field];
+    int stop = fieldEnd[field];
+    while (start < stop && data[start] == ' ') {
+      start++;
+    }
+    while (stop > start && data[stop - 1] == ' ') {
+      stop--;
+    }
+    if (stop - start != expected.length()) {
+      return false;
+    }
+    for (int i = 0; i < expected.length(); i++) {
+      int a = data[start + i];
+      int b = expected.charAt(i);
+      if (a != b && Character.toUpperCase(a) != Character.toUpperCase(b)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Parse a number such as "38,913.35", "-2.67" or "14,944,176" straight from the bytes.
+   * Thousands separators and surrounding spaces are ignored; "-", blanks and anything unparseable give NaN.
+   */
+  public double fieldAsDouble(int field) {
+    int i = fieldStart[field];
+    int stop = fieldEnd[field];
+    while (i < stop && data[i] == ' ') {
+      i++;
+    }
+    while (stop > i && data[stop - 1] == ' ') {
+      stop--;
+    }
+    boolean negative = false;
+    if (i < stop && (data[i] == '-' || data[i] == '+')) {
+      negative = data[i] == '-';
+      i++;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int scale = 0;
+    boolean seenDot = false;
+    for (; i < stop; i++) {
+      byte b = data[i];
+      if (b >= '0' && b <= '9') {
+        if (digits < 18) {
+          mantissa = mantissa * 10 + (b - '0');
+          digits++;
+          if (seenDot) {
+            scale++;
+          }
+        } else if (!seenDot) {
+          scale--;
+        }
+      } else if (b == ',') {
+        // thousands separator
+      } else if (b == '.' && !seenDot) {
+        seenDot = true;
+      } else {
+        return Double.NaN;
+      }
+    }
+    if (digits == 0) {
+      return Double.NaN;
+    }
+    double value = scale >= 0 ? mantissa / POWERS_OF_TEN[Math.min(scale, 18)] : mantissa * POWERS_OF_TEN[Math.min(-scale, 18)];
+    return negative ? -value : value;
+  }
+
+  private void ensureCapacity(int size) {
+    if (size <= fieldStart.length) {
+      return;
+    }
+    int newSize = fieldStart.length * 2;
+    fieldStart = Arrays.copyOf(fieldStart, newSize);
+    fieldEnd = Arrays.copyOf(fieldEnd, newSize);
+    fieldEscaped = Arrays.copyOf(fieldEscaped, newSize);
+  }
+}
@@ -14,8 +14,13 @@ public class DownloadNseDataActivitiesImpl implements DownloadNseDataActivities
   }
 
   public DownloadNseDataActivitiesImpl(NseDataRedisPublisher redis, NseDataKafkaPublisher kafka) {
+    this(new NseDownloadHandler(redis, kafka));
     log.info("DownloadNseDataActivitiesImpl(redis={}, kafka={})", redis != null, kafka != null);
-    this.downloadHandler = new NseDownloadHandler(redis, kafka);
+  }
+
+  /** Use a pre-configured handler, e.g. one pointed at a local NSE stand-in. */
+  public DownloadNseDataActivitiesImpl(NseDownloadHandler downloadHandler) {
+    this.downloadHandler = downloadHandler;
     log.info("DownloadNseDataActivitiesImpl NseDownloadHandler created");
   }
 
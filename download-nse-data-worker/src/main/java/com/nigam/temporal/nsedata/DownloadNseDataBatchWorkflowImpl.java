@@ -1,5 +1,6 @@
 package com.nigam.temporal.nsedata;
 
+import com.nigam.temporal.common.SnapshotTime;
 import io.temporal.activity.ActivityOptions;
 import io.temporal.common.RetryOptions;
 import io.temporal.workflow.Workflow;
@@ -27,6 +28,8 @@ public class DownloadNseDataBatchWorkflowImpl implements DownloadNseDataBatchWor
 
     List<String> results = new ArrayList<>();
     int taskIndex = 0;
+    // One scheduled run, one snapshot time: every task of the batch is stamped with the batch's start bucket
+    long batchStartMillis = Workflow.currentTimeMillis();
 
     for (DownloadNseDataInput task : batchInput.getTasks()) {
       taskIndex++;
@@ -40,6 +43,10 @@ public class DownloadNseDataBatchWorkflowImpl implements DownloadNseDataBatchWor
         continue;
       }
 
+      if (task.getSnapshotTimeMillis() == null) {
+        task.setSnapshotTimeMillis(SnapshotTime.align(batchStartMillis, SnapshotTime.bucketSeconds(task.getSnapshotBucketSeconds())));
+      }
+
       // Use task-specific timeout and retry, or defaults
       int timeoutMs = task.getTaskTimeout() != null ? task.getTaskTimeout() : 600000;
       int retries = task.getTaskretries() != null ? task.getTaskretries() : 0;
@@ -53,11 +60,12 @@ public class DownloadNseDataBatchWorkflowImpl implements DownloadNseDataBatchWor
 
       if (retries > 0) {
         long retryDelay = delayMs > 0 ? delayMs : 100;
+        long maxRetryDelay = Math.max(retryDelay, Math.min(retryDelay * 16, 60000));
         RetryOptions retryOptions = RetryOptions.newBuilder()
             .setMaximumAttempts(retries + 1)
             .setInitialInterval(Duration.ofMillis(retryDelay))
-            .setMaximumInterval(Duration.ofMillis(retryDelay))
-            .setBackoffCoefficient(1.0)
+            .setMaximumInterval(Duration.ofMillis(maxRetryDelay))
+            .setBackoffCoefficient(2.0)
             .build();
         optionsBuilder.setRetryOptions(retryOptions);
       }
@@ -12,11 +12,15 @@ public class DownloadNseDataInput implements Serializable {
   private String taskType;
   private String date;        // yyyyMMdd or similar when applicable
   private String targetPath;  // optional local/store path
+  private String endDate;     // last date (inclusive) of a bhav/participant backfill; date is the first
+  private Integer parallelism; // concurrent archive downloads for bhav/participant backfills
   private String symbol;     // Symbol for option chain (e.g., "NIFTY", "BANKNIFTY")
   private Integer numberOfExpiry; // Number of expiry dates to process for option chain (default: 1)
   private Integer taskdelay;  // delay in milliseconds after each call (including first and retry)
   private Integer taskTimeout; // timeout in milliseconds for task execution
   private Integer taskretries; // number of retries on failure (0 = no retry, 1 = retry once)
+  private Integer snapshotBucketSeconds; // snapshot time is workflow time floored to this (default 60, 0 = exact)
+  private Long snapshotTimeMillis; // set by the workflow: stored as the snapshot's timestamp instead of the clock
 
   public DownloadNseDataInput() {
   }
@@ -54,6 +58,22 @@ public class DownloadNseDataInput implements Serializable {
     this.targetPath = targetPath;
   }
 
+  public String getEndDate() {
+    return endDate;
+  }
+
+  public void setEndDate(String endDate) {
+    this.endDate = endDate;
+  }
+
+  public Integer getParallelism() {
+    return parallelism;
+  }
+
+  public void setParallelism(Integer parallelism) {
+    this.parallelism = parallelism;
+  }
+
   public Integer getTaskdelay() {
     return taskdelay;
   }
@@ -93,4 +113,20 @@ public class DownloadNseDataInput implements Serializable {
   public void setNumberOfExpiry(Integer numberOfExpiry) {
     this.numberOfExpiry = numberOfExpiry;
   }
+
+  public Integer getSnapshotBucketSeconds() {
+    return snapshotBucketSeconds;
+  }
+
+  public void setSnapshotBucketSeconds(Integer snapshotBucketSeconds) {
+    this.snapshotBucketSeconds = snapshotBucketSeconds;
+  }
+
+  public Long getSnapshotTimeMillis() {
+    return snapshotTimeMillis;
+  }
+
+  public void setSnapshotTimeMillis(Long snapshotTimeMillis) {
+    this.snapshotTimeMillis = snapshotTimeMillis;
+  }
 }
@@ -1,5 +1,6 @@
 package com.nigam.temporal.nsedata;
 
+import com.nigam.temporal.common.SnapshotTime;
 import io.temporal.activity.ActivityOptions;
 import io.temporal.common.RetryOptions;
 import io.temporal.workflow.Workflow;
@@ -33,16 +34,19 @@ public class DownloadNseDataWorkflowImpl implements DownloadNseDataWorkflow {
         .setStartToCloseTimeout(Duration.ofMillis(timeoutMs));
 
     if (retries > 0) {
-      // Use user's delay as retry interval (delay between retry attempts)
+      // User's delay is the first retry interval; later retries back off exponentially (capped at 16x / 60s)
+      // so a degraded NSE is not hit at a fixed rate
       long retryDelay = delayMs > 0 ? delayMs : 100; // use user delay or default 100ms
+      long maxRetryDelay = Math.max(retryDelay, Math.min(retryDelay * 16, 60000));
       RetryOptions retryOptions = RetryOptions.newBuilder()
           .setMaximumAttempts(retries + 1) // retries + 1 = total attempts (1 initial + retries)
-          .setInitialInterval(Duration.ofMillis(retryDelay)) // delay before retry
-          .setMaximumInterval(Duration.ofMillis(retryDelay)) // same delay (no backoff)
-          .setBackoffCoefficient(1.0) // no exponential backoff
+          .setInitialInterval(Duration.ofMillis(retryDelay)) // delay before first retry
+          .setMaximumInterval(Duration.ofMillis(maxRetryDelay))
+          .setBackoffCoefficient(2.0)
           .build();
       optionsBuilder.setRetryOptions(retryOptions);
-      logger.info("downloadNseData workflow: retry policy set, maxAttempts={}, retryDelay={}ms", retries + 1, retryDelay);
+      logger.info("downloadNseData workflow: retry policy set, maxAttempts={}, retryDelay={}ms, maxRetryDelay={}ms",
+          retries + 1, retryDelay, maxRetryDelay);
     }
 
     DownloadNseDataActivities activities = Workflow.newActivityStub(
@@ -50,7 +54,14 @@ public class DownloadNseDataWorkflowImpl implements DownloadNseDataWorkflow {
         optionsBuilder.build()
     );
 
-    logger.info("downloadNseData workflow invoking activity for taskType={}", input.getTaskType());
+    // Canonical snapshot time (workflow time floored to the bucket), unless the caller fixed one
+    if (input.getSnapshotTimeMillis() == null) {
+      input.setSnapshotTimeMillis(SnapshotTime.align(Workflow.currentTimeMillis(),
+          SnapshotTime.bucketSeconds(input.getSnapshotBucketSeconds())));
+    }
+
+    logger.info("downloadNseData workflow invoking activity for taskType={}, snapshotTimeMillis={}",
+        input.getTaskType(), input.getSnapshotTimeMillis());
     String result = activities.downloadNseData(input);
     logger.info("downloadNseData workflow activity returned: {}", result);
     return result;
@@ -0,0 +1,223 @@
+package com.nigam.temporal.nsedata;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-symbol in-process cache of parsed expiry dates, valid for one IST trading day.
+ *
+ * Option chain tasks read the list from memory; the contract-info JSON is parsed and every expiry
+ * formatted for the URL once per symbol per day. An entry expires at IST midnight (not the JVM's zone),
+ * and a background refresh reloads every known symbol shortly before the session opens
+ * (EXPIRY_REFRESH_TIME_IST, default 08:45) so the first task of the day does not wait on NSE.
+ * Only a cold miss (new symbol, or the refresh failed) loads on the caller's thread. If a reload fails,
+ * the previous day's list is served with a warning rather than failing the task, minus the expiries that
+ * have passed (so the day after an expiry the nearest one is still live).
+ *
+ * The loader is the shared Redis copy with NSE as its fallback (see NseDownloadHandler), so other
+ * workers still benefit from one worker's fetch.
+ *
+ * Env: EXPIRY_REFRESH_TIME_IST (HH:mm, default 08:45), EXPIRY_PREFETCH_SYMBOLS (comma-separated, default NIFTY).
+ */
+public class ExpiryDateCache implements AutoCloseable {
+
+  private static final Logger log = LogManager.getLogger(ExpiryDateCache.class);
+
+  public static final ZoneId IST = ZoneId.of("Asia/Kolkata");
+
+  private static final int REFRESH_TIMEOUT_MS = 30000;
+  private static final DateTimeFormatter URL_DATE = DateTimeFormatter.ofPattern("dd-MMM-yyyy", Locale.ENGLISH);
+
+  /** Loads the contract-info JSON for a symbol; null if unavailable. */
+  public interface Loader {
+    String load(String symbol, int timeoutMs) throws Exception;
+  }
+
+  /** Expiry dates of one symbol as NSE lists them, with the URL form of each. */
+  public static final class Expiries {
+    final LocalDate tradingDay;
+    final List<String> dates;
+    final Map<String, String> urlDates;
+
+    Expiries(LocalDate tradingDay, List<String> dates, Map<String, String> urlDates) {
+      this.tradingDay = tradingDay;
+      this.dates = dates;
+      this.urlDates = urlDates;
+    }
+
+    /** First n expiries (nearest first). */
+    public List<String> first(int n) {
+      return dates.subList(0, Math.min(Math.max(n, 0), dates.size()));
+    }
+
+    /** This list without the expiries before today; dates that cannot be parsed are kept. */
+    Expiries withoutExpired(LocalDate today) {
+      List<String> live = new ArrayList<>();
+      for (String date : dates) {
+        try {
+          if (LocalDate.parse(urlDate(date), URL_DATE).isBefore(today)) {
+            continue;
+          }
+        } catch (DateTimeParseException e) {
+          // Keep it: better a possibly stale expiry than none
+        }
+        live.add(date);
+      }
+      return live.size() == dates.size() ? this : new Expiries(tradingDay, Collections.unmodifiableList(live), urlDates);
+    }
+
+    /** Expiry formatted for the option-chain URL, e.g. 03-Feb-2026. */
+    public String urlDate(String expiry) {
+      String formatted = urlDates.get(expiry);
+      return formatted != null ? formatted : NseDownloadHandler.formatExpiryForUrl(expiry);
+    }
+  }
+
+  private final Loader loader;
+  private final Clock clock;
+  private final LocalTime refreshTime;
+  private final Map<String, Expiries> bySymbol = new ConcurrentHashMap<>();
+  private final Map<String, Object> loadLocks = new ConcurrentHashMap<>();
+  private final Set<String> symbols = Collections.synchronizedSet(new LinkedHashSet<>());
+  private final ScheduledExecutorService refresher;
+
+  public ExpiryDateCache(Loader loader, Clock clock, LocalTime refreshTime, List<String> prefetchSymbols) {
+    this.loader = loader;
+    this.clock = clock;
+    this.refreshTime = refreshTime;
+    this.symbols.addAll(prefetchSymbols);
+    this.refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "expiry-date-refresh");
+      thread.setDaemon(true);
+      return thread;
+    });
+    // Warm up now, then every day before the session opens
+    refresher.execute(this::refreshAll);
+    scheduleNextRefresh();
+    log.info("ExpiryDateCache refreshTime={} IST, prefetchSymbols={}", refreshTime, prefetchSymbols);
+  }
+
+  public static ExpiryDateCache fromEnv(Loader loader) {
+    List<String> prefetch = new ArrayList<>();
+    for (String symbol : System.getenv().getOrDefault("EXPIRY_PREFETCH_SYMBOLS", "NIFTY").split(",")) {
+      if (!symbol.trim().isEmpty()) {
+        prefetch.add(symbol.trim());
+      }
+    }
+    return new ExpiryDateCache(loader, Clock.system(IST),
+        LocalTime.parse(System.getenv().getOrDefault("EXPIRY_REFRESH_TIME_IST", "08:45")), prefetch);
+  }
+
+  /**
+   * Expiries for today's IST trading day. Served from memory except on a cold miss, which loads
+   * on the caller's thread (using timeoutMs). Returns null only if nothing could ever be loaded.
+   */
+  public Expiries get(String symbol, int timeoutMs) {
+    LocalDate today = LocalDate.now(clock);
+    Expiries cached = bySymbol.get(symbol);
+    if (cached != null && cached.tradingDay.equals(today)) {
+      return cached;
+    }
+    symbols.add(symbol);
+    synchronized (loadLocks.computeIfAbsent(symbol, s -> new Object())) {
+      cached = bySymbol.get(symbol);
+      if (cached != null && cached.tradingDay.equals(today)) {
+        return cached;
+      }
+      Expiries loaded = load(symbol, today, timeoutMs);
+      if (loaded != null) {
+        return loaded;
+      }
+      if (cached == null) {
+        return null;
+      }
+      Expiries stale = cached.withoutExpired(today);
+      System.out.println("⚠️ EXPIRY DATES: Reload failed for " + symbol + ", using list from " + cached.tradingDay
+          + " (" + (cached.dates.size() - stale.dates.size()) + " expired dropped)");
+      log.warn("get() reload failed for {}, serving {} live expiries from {}", symbol, stale.dates.size(), cached.tradingDay);
+      return stale;
+    }
+  }
+
+  private Expiries load(String symbol, LocalDate today, int timeoutMs) {
+    try {
+      String json = loader.load(symbol, timeoutMs);
+      List<String> dates = NseDownloadHandler.extractExpiryDatesList(json, symbol, Integer.MAX_VALUE);
+      if (dates.isEmpty()) {
+        return null;
+      }
+      Map<String, String> urlDates = new HashMap<>();
+      for (String date : dates) {
+        urlDates.put(date, NseDownloadHandler.formatExpiryForUrl(date));
+      }
+      Expiries expiries = new Expiries(today, Collections.unmodifiableList(new ArrayList<>(dates)), urlDates);
+      bySymbol.put(symbol, expiries);
+      log.info("load() cached {} expiries for {} on trading day {}", dates.size(), symbol, today);
+      return expiries;
+    } catch (Exception e) {
+      log.warn("load() failed for {}: {}", symbol, e.getMessage());
+      return null;
+    }
+  }
+
+  private void refreshAll() {
+    LocalDate today = LocalDate.now(clock);
+    List<String> toRefresh;
+    synchronized (symbols) {
+      toRefresh = new ArrayList<>(symbols);
+    }
+    for (String symbol : toRefresh) {
+      Expiries cached = bySymbol.get(symbol);
+      if (cached != null && cached.tradingDay.equals(today)) {
+        continue;
+      }
+      synchronized (loadLocks.computeIfAbsent(symbol, s -> new Object())) {
+        if (load(symbol, today, REFRESH_TIMEOUT_MS) == null) {
+          log.warn("refreshAll() could not refresh expiries for {}, will load on demand", symbol);
+        }
+      }
+    }
+  }
+
+  private void scheduleNextRefresh() {
+    ZonedDateTime now = ZonedDateTime.now(clock);
+    ZonedDateTime next = now.toLocalDate().atTime(refreshTime).atZone(IST);
+    if (!next.isAfter(now)) {
+      next = next.plusDays(1);
+    }
+    long delayMs = Duration.between(now, next).toMillis();
+    refresher.schedule(() -> {
+      try {
+        refreshAll();
+      } finally {
+        scheduleNextRefresh();
+      }
+    }, delayMs, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void close() {
+    refresher.shutdownNow();
+  }
+}
@@ -0,0 +1,126 @@
+package com.nigam.temporal.nsedata;
+
+import com.google.gson.JsonObject;
+import com.nigam.temporal.common.RedisValueCodec;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Kafka payload mode (env KAFKA_PAYLOAD_MODE):
+ *   pointer (default) - only the {"taskName","timestamp"} notification on nse.data; consumers read Redis
+ *   inline            - the snapshot itself on a per-task topic, no nse.data notification
+ *   both              - both, for migrating consumers
+ *
+ * Inline records go to {KAFKA_INLINE_TOPIC_PREFIX}{task} (default nse.snapshot.allindices,
+ * nse.snapshot.equitydata, nse.snapshot.optionchain), keyed by the Redis key base (nse:allindices,
+ * nse:optionchain:NIFTY:27-Feb-2026, ...) so each symbol/expiry stays on one partition, in order.
+ * The value is encoded with KAFKA_INLINE_CODEC (any {@link RedisValueCodec} name, default raw; readers use
+ * RedisValueCodec.decode, which detects the codec). With KAFKA_INLINE_DELTA=true option chains carry the
+ * {@link com.nigam.temporal.common.SnapshotDelta} patch between keyframes instead of the full document.
+ *
+ * Headers (UTF-8 strings): taskName, timestamp, content-sha256 (hex SHA-256 of the full snapshot, also on
+ * deltas), encoding (full | delta), codec, and for deltas delta-seq and base-timestamp.
+ * With KAFKA_LATEST_TOPICS the full snapshot is also written to the compacted {topic}.latest.
+ */
+public class InlineSnapshotPublisher {
+
+  private static final Logger log = LogManager.getLogger(InlineSnapshotPublisher.class);
+
+  public enum Mode { POINTER, INLINE, BOTH }
+
+  private final Mode mode;
+  private final String topicPrefix;
+  private final RedisValueCodec codec;
+  private final boolean deltas;
+
+  public InlineSnapshotPublisher(Mode mode, String topicPrefix, RedisValueCodec codec, boolean deltas) {
+    this.mode = mode;
+    this.topicPrefix = topicPrefix;
+    this.codec = codec;
+    this.deltas = deltas;
+  }
+
+  public static InlineSnapshotPublisher fromEnv() {
+    String modeName = System.getenv().getOrDefault("KAFKA_PAYLOAD_MODE", "pointer").trim().toUpperCase(Locale.ROOT);
+    Mode mode;
+    try {
+      mode = Mode.valueOf(modeName);
+    } catch (IllegalArgumentException e) {
+      log.warn("Unknown KAFKA_PAYLOAD_MODE '{}', using pointer", modeName);
+      mode = Mode.POINTER;
+    }
+    InlineSnapshotPublisher publisher = new InlineSnapshotPublisher(mode,
+        System.getenv().getOrDefault("KAFKA_INLINE_TOPIC_PREFIX", "nse.snapshot."),
+        RedisValueCodec.fromName(System.getenv().getOrDefault("KAFKA_INLINE_CODEC", "raw")),
+        Boolean.parseBoolean(System.getenv().getOrDefault("KAFKA_INLINE_DELTA", "false")));
+    log.info("InlineSnapshotPublisher mode={}, topicPrefix={}, codec={}, deltas={}",
+        publisher.mode, publisher.topicPrefix, publisher.codec, publisher.deltas);
+    return publisher;
+  }
+
+  /** True unless the mode is inline only. */
+  public boolean publishesPointer() {
+    return mode != Mode.INLINE;
+  }
+
+  public boolean publishesInline() {
+    return mode != Mode.POINTER;
+  }
+
+  public String topicFor(String taskName) {
+    return topicPrefix + taskName.toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Publish one snapshot inline.
+   * @param delta the snapshot's SnapshotDelta result, or null (then the full document is sent)
+   */
+  public void publish(NseDataKafkaPublisher kafka, String taskName, String redisKeyBase, String data, String timestamp,
+                      JsonObject delta) {
+    boolean sendDelta = deltas && delta != null && "delta".equals(delta.get("type").getAsString());
+    Map<String, String> headers = new LinkedHashMap<>();
+    headers.put("taskName", taskName);
+    headers.put("timestamp", timestamp);
+    headers.put("content-sha256", sha256Hex(data));
+    headers.put("encoding", sendDelta ? "delta" : "full");
+    headers.put("codec", codec.name().toLowerCase(Locale.ROOT));
+    if (sendDelta) {
+      headers.put("delta-seq", delta.get("seq").getAsString());
+      headers.put("base-timestamp", delta.get("baseTimestamp").getAsString());
+    }
+    byte[] value = codec.encode(sendDelta ? delta.toString() : data);
+    String topic = topicFor(taskName);
+    log.info("publish() inline topic={}, key={}, encoding={}, valueBytes={}", topic, redisKeyBase, headers.get("encoding"), value.length);
+    kafka.publish(topic, redisKeyBase, value, headers);
+    if (kafka.latestTopicsEnabled()) {
+      // The compacted latest topic must always hold the full document
+      if (sendDelta) {
+        headers.put("encoding", "full");
+        headers.remove("delta-seq");
+        headers.remove("base-timestamp");
+        value = codec.encode(data);
+      }
+      kafka.publishLatest(topic, redisKeyBase, value, headers);
+    }
+  }
+
+  static String sha256Hex(String data) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(data.getBytes(StandardCharsets.UTF_8));
+      StringBuilder hex = new StringBuilder(hash.length * 2);
+      for (byte b : hash) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+}
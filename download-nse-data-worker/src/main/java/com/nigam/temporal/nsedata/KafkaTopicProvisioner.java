@@ -0,0 +1,173 @@
+package com.nigam.temporal.nsedata;
+
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.NewPartitions;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.admin.TopicDescription;
+import org.apache.kafka.common.config.TopicConfig;
+import org.apache.kafka.common.errors.TopicExistsException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the worker's Kafka topics with a configured layout, once per topic per process.
+ *
+ * Env (defaults for every topic; override per topic with KAFKA_TOPIC_{NAME}_{SETTING}, where NAME is the
+ * topic upper-cased with non-alphanumerics as '_', e.g. KAFKA_TOPIC_NSE_DATA_PARTITIONS):
+ *   KAFKA_TOPIC_PARTITIONS          default 6
+ *   KAFKA_TOPIC_REPLICATION_FACTOR  default 0 = min(3, brokers in the cluster)
+ *   KAFKA_TOPIC_RETENTION_MS        default unset (broker default)
+ *   KAFKA_TOPIC_CLEANUP_POLICY      default unset (broker default, normally delete)
+ *   KAFKA_TOPIC_ALLOW_PARTITION_INCREASE  default false; when true an existing topic with fewer partitions
+ *                                   (e.g. the old single-partition nse.data) is expanded. Keys move to new
+ *                                   partitions once, so per-key order is only guaranteed from then on.
+ *
+ * With KAFKA_LATEST_TOPICS=true every topic T also gets a compacted T.latest holding the newest record per key,
+ * so a consumer can bootstrap the current state of every key by reading it from the beginning
+ * (KAFKA_LATEST_SEGMENT_MS, default 600000, bounds how long superseded records linger before compaction).
+ */
+public class KafkaTopicProvisioner {
+
+  private static final Logger log = LogManager.getLogger(KafkaTopicProvisioner.class);
+
+  public static final String LATEST_SUFFIX = ".latest";
+  private static final int ADMIN_TIMEOUT_SEC = 30;
+
+  private final Properties adminProps;
+  private final boolean latestTopics;
+  private final Set<String> provisioned = ConcurrentHashMap.newKeySet();
+
+  public KafkaTopicProvisioner(Properties adminProps, boolean latestTopics) {
+    this.adminProps = adminProps;
+    this.latestTopics = latestTopics;
+  }
+
+  public static KafkaTopicProvisioner fromEnv(Properties adminProps) {
+    boolean latest = Boolean.parseBoolean(System.getenv().getOrDefault("KAFKA_LATEST_TOPICS", "false"));
+    log.info("KafkaTopicProvisioner latestTopics={}, defaults: partitions={}, replication={}, retentionMs={}, cleanupPolicy={}",
+        latest, setting("nse.data", "PARTITIONS", "6"), setting("nse.data", "REPLICATION_FACTOR", "0"),
+        setting("nse.data", "RETENTION_MS", null), setting("nse.data", "CLEANUP_POLICY", null));
+    return new KafkaTopicProvisioner(adminProps, latest);
+  }
+
+  public boolean latestTopicsEnabled() {
+    return latestTopics;
+  }
+
+  public static String latestTopic(String topic) {
+    return topic + LATEST_SUFFIX;
+  }
+
+  /**
+   * Make sure topic exists with its configured layout. Only the first call per topic talks to the cluster;
+   * returns true if that call created the topic (callers may wait for it to show up in producer metadata).
+   * Failures are logged and retried on the next call.
+   */
+  public boolean ensure(String topic) {
+    if (provisioned.contains(topic)) {
+      return false;
+    }
+    try (AdminClient admin = AdminClient.create(adminProps)) {
+      boolean created = ensure(admin, topic);
+      provisioned.add(topic);
+      return created;
+    } catch (Exception e) {
+      log.warn("ensure({}) failed (will publish anyway and retry next time): {}", topic, e.getMessage());
+      return false;
+    }
+  }
+
+  private boolean ensure(AdminClient admin, String topic) throws Exception {
+    int partitions = Integer.parseInt(setting(topic, "PARTITIONS", "6"));
+    Set<String> names = admin.listTopics().names().get(ADMIN_TIMEOUT_SEC, TimeUnit.SECONDS);
+    if (names.contains(topic)) {
+      expandIfAllowed(admin, topic, partitions);
+      return false;
+    }
+    short replication = Short.parseShort(setting(topic, "REPLICATION_FACTOR", "0"));
+    if (replication <= 0) {
+      int brokers = admin.describeCluster().nodes().get(ADMIN_TIMEOUT_SEC, TimeUnit.SECONDS).size();
+      replication = (short) Math.max(1, Math.min(3, brokers));
+    }
+    Map<String, String> configs = topicConfigs(topic);
+    log.info("Creating Kafka topic {} partitions={}, replication={}, configs={}", topic, partitions, replication, configs);
+    try {
+      admin.createTopics(Collections.singleton(new NewTopic(topic, partitions, replication).configs(configs)))
+          .all().get(ADMIN_TIMEOUT_SEC, TimeUnit.SECONDS);
+      System.out.println("🧵 KAFKA: Created topic " + topic + " (partitions=" + partitions + ", replication=" + replication + ")");
+      return true;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof TopicExistsException) {
+        log.info("Kafka topic {} already existed (created elsewhere)", topic);
+        return false;
+      }
+      throw e;
+    }
+  }
+
+  private void expandIfAllowed(AdminClient admin, String topic, int partitions) throws Exception {
+    TopicDescription description = admin.describeTopics(Collections.singleton(topic)).allTopicNames()
+        .get(ADMIN_TIMEOUT_SEC, TimeUnit.SECONDS).get(topic);
+    int existing = description.partitions().size();
+    if (existing >= partitions) {
+      return;
+    }
+    if (!Boolean.parseBoolean(setting(topic, "ALLOW_PARTITION_INCREASE", "false"))) {
+      log.warn("Kafka topic {} has {} partitions, configured {}; set KAFKA_TOPIC_ALLOW_PARTITION_INCREASE=true to expand",
+          topic, existing, partitions);
+      return;
+    }
+    admin.createPartitions(Collections.singletonMap(topic, NewPartitions.increaseTo(partitions)))
+        .all().get(ADMIN_TIMEOUT_SEC, TimeUnit.SECONDS);
+    System.out.println("🧵 KAFKA: Expanded topic " + topic + " from " + existing + " to " + partitions + " partitions");
+  }
+
+  /** Topic-level configs: retention / cleanup policy from env; latest topics are always compacted. */
+  Map<String, String> topicConfigs(String topic) {
+    Map<String, String> configs = new LinkedHashMap<>();
+    String retentionMs = setting(topic, "RETENTION_MS", null);
+    String cleanupPolicy = setting(topic, "CLEANUP_POLICY", null);
+    if (topic.endsWith(LATEST_SUFFIX)) {
+      cleanupPolicy = TopicConfig.CLEANUP_POLICY_COMPACT;
+      retentionMs = null;
+      configs.put(TopicConfig.SEGMENT_MS_CONFIG, System.getenv().getOrDefault("KAFKA_LATEST_SEGMENT_MS", "600000"));
+      configs.put(TopicConfig.MIN_CLEANABLE_DIRTY_RATIO_CONFIG, "0.1");
+    }
+    if (retentionMs != null) {
+      configs.put(TopicConfig.RETENTION_MS_CONFIG, retentionMs);
+    }
+    if (cleanupPolicy != null) {
+      configs.put(TopicConfig.CLEANUP_POLICY_CONFIG, cleanupPolicy);
+    }
+    return configs;
+  }
+
+  /**
+   * KAFKA_TOPIC_{NAME}_{key}, then KAFKA_TOPIC_{key}, then the default. A latest topic falls back to its base
+   * topic's per-topic settings, so both get the same partition count.
+   */
+  static String setting(String topic, String key, String defaultValue) {
+    String value = System.getenv("KAFKA_TOPIC_" + envName(topic) + "_" + key);
+    if ((value == null || value.trim().isEmpty()) && topic.endsWith(LATEST_SUFFIX)) {
+      value = System.getenv("KAFKA_TOPIC_" + envName(topic.substring(0, topic.length() - LATEST_SUFFIX.length())) + "_" + key);
+    }
+    if (value == null || value.trim().isEmpty()) {
+      value = System.getenv("KAFKA_TOPIC_" + key);
+    }
+    return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+  }
+
+  static String envName(String topic) {
+    return topic.toUpperCase(Locale.ROOT).replaceAll("[^A-Z0-9]", "_");
+  }
+}
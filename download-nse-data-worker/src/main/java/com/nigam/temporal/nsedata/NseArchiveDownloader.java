@@ -0,0 +1,409 @@
+package com.nigam.temporal.nsedata;
+
+import com.nigam.temporal.common.UpstreamGuard;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Bulk download of NSE daily archives (bhav copy, F&O participant-wise OI, securities list) over a date range,
+ * for backfills.
+ *
+ * Each date becomes targetPath/{type}/{yyyy}/{type}_{yyyyMMdd}.csv. The run can be repeated safely:
+ * - dates whose file already exists are skipped;
+ * - dates NSE answered 404 for (holidays) are recorded in {type}/_missing.txt and skipped next time
+ *   (only dates before today, since today's file may not be published yet);
+ * - bytes land in a ".part" file first, and an interrupted download resumes with an HTTP Range request.
+ * Weekends are never requested.
+ *
+ * Dates are fetched in parallel (input parallelism, default NSE_ARCHIVE_PARALLELISM=4) through the archive
+ * host's {@link UpstreamGuard}, so the AIMD rate limit and circuit breaker apply as for live NSE calls.
+ * Zipped archives are inflated from the .part file straight into the target with FileChannel transfers,
+ * without holding a whole file in memory; the .csv appears under its final name only once complete.
+ * If the task has a timeout, dates not started before it (less a margin) are reported as deferred for the
+ * next run instead of being cut off mid-file.
+ *
+ * Env: NSE_ARCHIVE_BASE_URL (default https://nsearchives.nseindia.com), NSE_ARCHIVE_DIR (default nse-archive,
+ * used when the input has no targetPath), NSE_ARCHIVE_PARALLELISM, NSE_ARCHIVE_REQUEST_TIMEOUT_MS (default 60000),
+ * NSE_ARCHIVE_SLOT_WAIT_MS (longest wait for a rate-limit slot, default 60000).
+ */
+public class NseArchiveDownloader {
+
+  private static final Logger log = LogManager.getLogger(NseArchiveDownloader.class);
+
+  /** Bhav copies switched to the UDiFF file format and URL on this date. */
+  static final LocalDate UDIFF_BHAV_FROM = LocalDate.of(2024, 7, 8);
+
+  private static final DateTimeFormatter YYYYMMDD = DateTimeFormatter.BASIC_ISO_DATE;
+  private static final DateTimeFormatter DDMMYYYY = DateTimeFormatter.ofPattern("ddMMyyyy", Locale.ENGLISH);
+  private static final DateTimeFormatter DDMMMYYYY = DateTimeFormatter.ofPattern("ddMMMyyyy", Locale.ENGLISH);
+  private static final DateTimeFormatter MMM = DateTimeFormatter.ofPattern("MMM", Locale.ENGLISH);
+  private static final List<DateTimeFormatter> INPUT_DATE_FORMATS = List.of(
+      YYYYMMDD, DateTimeFormatter.ISO_LOCAL_DATE, DateTimeFormatter.ofPattern("dd-MM-yyyy", Locale.ENGLISH),
+      DateTimeFormatter.ofPattern("dd-MMM-yyyy", Locale.ENGLISH));
+  private static final String REFERER = "https://www.nseindia.com/all-reports";
+  private static final long DEADLINE_MARGIN_MS = 15000;
+
+  public enum Archive {
+    BHAV("bhav"), PARTICIPANT("participant"), SEC_LIST("sec_list");
+
+    final String dir;
+
+    Archive(String dir) {
+      this.dir = dir;
+    }
+  }
+
+  enum Outcome { DOWNLOADED, EXISTING, MISSING, DEFERRED, FAILED }
+
+  private final HttpClient client;
+  private final String archiveBaseUrl;
+  private final Path defaultRoot;
+  private final int defaultParallelism;
+  private final Duration requestTimeout;
+  private final long slotWaitMs;
+  private final UpstreamGuard guard;
+
+  public NseArchiveDownloader(HttpClient client, String archiveBaseUrl, Path defaultRoot, int defaultParallelism,
+                              Duration requestTimeout, long slotWaitMs) {
+    this.client = client;
+    this.archiveBaseUrl = archiveBaseUrl.endsWith("/") ? archiveBaseUrl.substring(0, archiveBaseUrl.length() - 1) : archiveBaseUrl;
+    this.defaultRoot = defaultRoot;
+    this.defaultParallelism = Math.max(1, defaultParallelism);
+    this.requestTimeout = requestTimeout;
+    this.slotWaitMs = slotWaitMs;
+    this.guard = UpstreamGuard.of("NSE", URI.create(this.archiveBaseUrl).getHost(), "archive");
+  }
+
+  public static NseArchiveDownloader fromEnv(HttpClient client) {
+    NseArchiveDownloader downloader = new NseArchiveDownloader(client,
+        System.getenv().getOrDefault("NSE_ARCHIVE_BASE_URL", "https://nsearchives.nseindia.com"),
+        Paths.get(System.getenv().getOrDefault("NSE_ARCHIVE_DIR", "nse-archive")),
+        Integer.parseInt(System.getenv().getOrDefault("NSE_ARCHIVE_PARALLELISM", "4")),
+        Duration.ofMillis(Long.parseLong(System.getenv().getOrDefault("NSE_ARCHIVE_REQUEST_TIMEOUT_MS", "60000"))),
+        Long.parseLong(System.getenv().getOrDefault("NSE_ARCHIVE_SLOT_WAIT_MS", "60000")));
+    log.info("NseArchiveDownloader baseUrl={}, defaultRoot={}, parallelism={}", downloader.archiveBaseUrl,
+        downloader.defaultRoot, downloader.defaultParallelism);
+    return downloader;
+  }
+
+  /**
+   * Download one archive type for input.date .. input.endDate (inclusive; a single date if endDate is empty,
+   * today in IST if both are empty). sec_list has no history, so it is fetched once, filed under input.date.
+   */
+  public String download(Archive archive, DownloadNseDataInput input) {
+    LocalDate today = LocalDate.now(ExpiryDateCache.IST);
+    LocalDate from;
+    LocalDate to;
+    try {
+      from = input.getDate() != null && !input.getDate().trim().isEmpty() ? parseDate(input.getDate()) : today;
+      to = input.getEndDate() != null && !input.getEndDate().trim().isEmpty() ? parseDate(input.getEndDate()) : from;
+    } catch (DateTimeParseException e) {
+      return "Error: " + archive.dir + " invalid date - " + e.getParsedString();
+    }
+    if (to.isBefore(from)) {
+      return "Error: " + archive.dir + " endDate " + to + " is before date " + from;
+    }
+    if (archive == Archive.SEC_LIST) {
+      to = from;
+    }
+    Path root = input.getTargetPath() != null && !input.getTargetPath().trim().isEmpty()
+        ? Paths.get(input.getTargetPath()) : defaultRoot;
+    Path dir = root.resolve(archive.dir);
+    int parallelism = input.getParallelism() != null && input.getParallelism() > 0 ? input.getParallelism() : defaultParallelism;
+    long deadline = input.getTaskTimeout() != null
+        ? System.currentTimeMillis() + input.getTaskTimeout() - DEADLINE_MARGIN_MS : Long.MAX_VALUE;
+
+    List<LocalDate> dates = new ArrayList<>();
+    for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+      if (archive == Archive.SEC_LIST || (date.getDayOfWeek() != DayOfWeek.SATURDAY && date.getDayOfWeek() != DayOfWeek.SUNDAY)) {
+        dates.add(date);
+      }
+    }
+    System.out.println("🗄️ ARCHIVE: " + archive.dir + " " + from + ".." + to + " (" + dates.size() + " dates) -> " + dir
+        + ", parallelism=" + parallelism);
+    log.info("download() archive={}, from={}, to={}, dates={}, dir={}, parallelism={}", archive, from, to, dates.size(), dir, parallelism);
+
+    Map<Outcome, Integer> counts = new EnumMap<>(Outcome.class);
+    for (Outcome outcome : Outcome.values()) {
+      counts.put(outcome, 0);
+    }
+    List<String> failures = Collections.synchronizedList(new ArrayList<>());
+    ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, dates.size())));
+    try {
+      Files.createDirectories(dir);
+      Set<LocalDate> missing = readMissing(dir);
+      List<Future<Outcome>> futures = new ArrayList<>();
+      for (LocalDate date : dates) {
+        futures.add(pool.submit(() -> downloadDate(archive, dir, date, today, missing, deadline, failures)));
+      }
+      for (Future<Outcome> future : futures) {
+        Outcome outcome;
+        try {
+          outcome = future.get();
+        } catch (ExecutionException e) {
+          outcome = Outcome.FAILED;
+          failures.add(e.getMessage());
+        }
+        counts.merge(outcome, 1, Integer::sum);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return "Error: " + archive.dir + " interrupted";
+    } catch (IOException e) {
+      log.error("download() {} failed: {}", archive, e.getMessage(), e);
+      return "Error: " + archive.dir + " " + e.getMessage();
+    } finally {
+      pool.shutdownNow();
+    }
+
+    String summary = archive.dir + " " + from + ".." + to + " -> " + dir + ": downloaded=" + counts.get(Outcome.DOWNLOADED)
+        + ", existing=" + counts.get(Outcome.EXISTING) + ", missing=" + counts.get(Outcome.MISSING)
+        + ", deferred=" + counts.get(Outcome.DEFERRED) + ", failed=" + counts.get(Outcome.FAILED);
+    if (counts.get(Outcome.FAILED) > 0) {
+      String result = "Error: " + summary + " (rerun to resume; first failure: " + failures.get(0) + ")";
+      System.out.println("❌ ARCHIVE: " + result);
+      log.warn("download() {}", result);
+      return result;
+    }
+    String result = "OK: " + summary + (counts.get(Outcome.DEFERRED) > 0 ? " (rerun to continue)" : "");
+    System.out.println("✅ ARCHIVE: " + result);
+    log.info("download() {}", result);
+    return result;
+  }
+
+  private Outcome downloadDate(Archive archive, Path dir, LocalDate date, LocalDate today, Set<LocalDate> missing,
+                               long deadline, List<String> failures) {
+    Path target = targetFile(dir, archive, date);
+    try {
+      if (Files.exists(target) && Files.size(target) > 0) {
+        return Outcome.EXISTING;
+      }
+      if (missing.contains(date)) {
+        return Outcome.MISSING;
+      }
+      if (System.currentTimeMillis() > deadline) {
+        return Outcome.DEFERRED;
+      }
+      String rejected = guard.tryAcquire(slotWaitMs);
+      if (rejected != null) {
+        failures.add(date + ": " + rejected);
+        return Outcome.FAILED;
+      }
+      String url = sourceUrl(archive, date);
+      Path part = target.resolveSibling(target.getFileName() + ".part");
+      int code = fetchToPart(url, part);
+      if (code == 404) {
+        guard.recordSuccess();
+        if (date.isBefore(today)) {
+          recordMissing(dir, date, missing);
+        }
+        log.info("downloadDate() {} {} not published (404), url={}", archive, date, url);
+        return Outcome.MISSING;
+      }
+      if (code != 200 && code != 206 && code != 416) {
+        guard.recordHttp(code, null);
+        failures.add(date + ": HTTP " + code);
+        return Outcome.FAILED;
+      }
+      if (Files.size(part) == 0) {
+        guard.recordFailure("empty body");
+        failures.add(date + ": empty body");
+        return Outcome.FAILED;
+      }
+      guard.recordSuccess();
+      Files.createDirectories(target.getParent());
+      if (isZipped(archive)) {
+        inflate(part, target);
+      } else {
+        Files.move(part, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      }
+      Files.deleteIfExists(part);
+      log.info("downloadDate() {} {} -> {} ({} bytes)", archive, date, target, Files.size(target));
+      return Outcome.DOWNLOADED;
+    } catch (ZipException e) {
+      // Not a zip (e.g. an HTML error page served with 200): drop the .part so the next run starts clean
+      deleteQuietly(target.resolveSibling(target.getFileName() + ".part"));
+      failures.add(date + ": bad archive - " + e.getMessage());
+      return Outcome.FAILED;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Outcome.DEFERRED;
+    } catch (Exception e) {
+      guard.recordError(e.getClass().getSimpleName() + ": " + e.getMessage());
+      failures.add(date + ": " + e.getMessage());
+      log.warn("downloadDate() {} {} failed: {}", archive, date, e.getMessage());
+      return Outcome.FAILED;
+    }
+  }
+
+  /**
+   * GET url into part, resuming with a Range request if part already has bytes. Returns the HTTP status;
+   * the body is only written for 200 (from scratch) and 206 (appended). 416 means part is already complete.
+   */
+  private int fetchToPart(String url, Path part) throws IOException, InterruptedException {
+    Files.createDirectories(part.getParent());
+    long have = Files.exists(part) ? Files.size(part) : 0;
+    HttpRequest.Builder request = HttpRequest.newBuilder()
+        .uri(URI.create(url))
+        .header("Accept", "*/*")
+        .header("Referer", REFERER)
+        .header("User-Agent", NseDownloadHandler.USER_AGENT)
+        .timeout(requestTimeout)
+        .GET();
+    if (have > 0) {
+      request.header("Range", "bytes=" + have + "-");
+    }
+    HttpResponse<InputStream> response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+    int code = response.statusCode();
+    try (InputStream body = response.body()) {
+      if (code != 200 && code != 206) {
+        return code;
+      }
+      try (ReadableByteChannel source = Channels.newChannel(body);
+           FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+        long position = code == 206 ? have : 0;
+        if (code == 200) {
+          out.truncate(0);
+        }
+        long transferred;
+        while ((transferred = out.transferFrom(source, position, 1 << 20)) > 0) {
+          position += transferred;
+        }
+      }
+    }
+    return code;
+  }
+
+  /** Inflate the first file entry of the zip in part into target (via target.tmp, moved into place when complete). */
+  static void inflate(Path part, Path target) throws IOException {
+    Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+    try (FileChannel in = FileChannel.open(part, StandardOpenOption.READ);
+         ZipInputStream zip = new ZipInputStream(Channels.newInputStream(in))) {
+      ZipEntry entry;
+      while ((entry = zip.getNextEntry()) != null && entry.isDirectory()) {
+        // skip directories
+      }
+      if (entry == null) {
+        throw new ZipException("no file entry in " + part.getFileName());
+      }
+      try (ReadableByteChannel source = Channels.newChannel(zip);
+           FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+               StandardOpenOption.TRUNCATE_EXISTING)) {
+        long position = 0;
+        long transferred;
+        while ((transferred = out.transferFrom(source, position, 1 << 20)) > 0) {
+          position += transferred;
+        }
+      }
+    }
+    Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  String sourceUrl(Archive archive, LocalDate date) {
+    switch (archive) {
+      case BHAV:
+        if (!date.isBefore(UDIFF_BHAV_FROM)) {
+          return archiveBaseUrl + "/content/cm/BhavCopy_NSE_CM_0_0_0_" + date.format(YYYYMMDD) + "_F_0000.csv.zip";
+        }
+        return archiveBaseUrl + "/content/historical/EQUITIES/" + date.getYear() + "/"
+            + date.format(MMM).toUpperCase(Locale.ROOT) + "/cm" + date.format(DDMMMYYYY).toUpperCase(Locale.ROOT) + "bhav.csv.zip";
+      case PARTICIPANT:
+        return archiveBaseUrl + "/content/nsccl/fao_participant_oi_" + date.format(DDMMYYYY) + ".csv";
+      case SEC_LIST:
+      default:
+        return archiveBaseUrl + "/content/equities/sec_list.csv";
+    }
+  }
+
+  static boolean isZipped(Archive archive) {
+    return archive == Archive.BHAV;
+  }
+
+  static Path targetFile(Path dir, Archive archive, LocalDate date) {
+    return dir.resolve(String.valueOf(date.getYear())).resolve(archive.dir + "_" + date.format(YYYYMMDD) + ".csv");
+  }
+
+  static LocalDate parseDate(String text) {
+    String trimmed = text.trim();
+    for (DateTimeFormatter format : INPUT_DATE_FORMATS) {
+      try {
+        return LocalDate.parse(trimmed, format);
+      } catch (DateTimeParseException ignored) {
+        // try the next format
+      }
+    }
+    throw new DateTimeParseException("Unsupported date, use yyyyMMdd or yyyy-MM-dd", trimmed, 0);
+  }
+
+  private static Set<LocalDate> readMissing(Path dir) throws IOException {
+    Set<LocalDate> missing = Collections.synchronizedSet(new HashSet<>());
+    Path file = dir.resolve("_missing.txt");
+    if (Files.exists(file)) {
+      for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+        if (!line.trim().isEmpty()) {
+          missing.add(LocalDate.parse(line.trim(), YYYYMMDD));
+        }
+      }
+    }
+    return missing;
+  }
+
+  private static void recordMissing(Path dir, LocalDate date, Set<LocalDate> missing) {
+    synchronized (missing) {
+      if (!missing.add(date)) {
+        return;
+      }
+      try {
+        Files.write(dir.resolve("_missing.txt"), (date.format(YYYYMMDD) + "\n").getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      } catch (IOException e) {
+        log.warn("recordMissing() {} failed: {}", date, e.getMessage());
+        // Don't throw - the date is just requested again next run
+      }
+    }
+  }
+
+  private static void deleteQuietly(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException ignored) {
+      // best effort
+    }
+  }
+}
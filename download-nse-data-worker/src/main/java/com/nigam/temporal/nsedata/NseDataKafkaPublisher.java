@@ -1,50 +1,64 @@
 package com.nigam.temporal.nsedata;
 
+import com.nigam.temporal.common.SnapshotKeyPartitioner;
+import com.nigam.temporal.common.WorkerResources;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.kafka.clients.admin.AdminClient;
-import org.apache.kafka.clients.admin.CreateTopicsResult;
-import org.apache.kafka.clients.admin.NewTopic;
-import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
-import org.apache.kafka.common.serialization.StringSerializer;
-import org.apache.kafka.common.errors.TopicExistsException;
+import org.apache.kafka.common.header.internals.RecordHeader;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
+import java.util.Map;
 import java.util.Properties;
-import java.util.Set;
-import java.util.concurrent.TimeUnit;
 
 /**
- * Publishes processed NSE data to Kafka. Uses env KAFKA_BOOTSTRAP_SERVERS (default localhost:29092,localhost:29093,localhost:29094).
- * Creates the topic before every publish if it is not available (create-on-use).
+ * Publishes processed NSE data to Kafka through the process-wide producer from {@link WorkerResources}
+ * (env KAFKA_BOOTSTRAP_SERVERS, default localhost:29092,localhost:29093,localhost:29094, and KAFKA_COMPRESSION_TYPE:
+ * none, gzip, snappy, lz4 or zstd; default none).
+ * Topics are created on first use with the layout configured for them (see {@link KafkaTopicProvisioner}), and
+ * records are partitioned per snapshot stream by {@link SnapshotKeyPartitioner}.
+ * Values are sent as bytes; String values are UTF-8, exactly what StringSerializer produced.
  */
 public class NseDataKafkaPublisher {
 
   private static final Logger log = LogManager.getLogger(NseDataKafkaPublisher.class);
 
-  private static final int TOPIC_CREATE_TIMEOUT_SEC = 30;
   private static final int METADATA_WAIT_MS = 3000;
   private static final int METADATA_POLL_MS = 200;
 
-  private final KafkaProducer<String, String> producer;
+  private final Producer<String, byte[]> producer;
   private final String bootstrapServers;
-  private final Properties adminProps;
+  private final KafkaTopicProvisioner topics;
+  // The shared producer belongs to WorkerResources, which closes it at shutdown
+  private final boolean sharedProducer;
 
   public NseDataKafkaPublisher() {
-    bootstrapServers = System.getenv().getOrDefault("KAFKA_BOOTSTRAP_SERVERS", "localhost:29092,localhost:29093,localhost:29094");
+    WorkerResources resources = WorkerResources.shared();
+    bootstrapServers = resources.kafkaBootstrapServers();
     log.info("NseDataKafkaPublisher init: bootstrapServers={}", bootstrapServers);
-    Properties props = new Properties();
-    props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-    props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
-    props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
-    producer = new KafkaProducer<>(props);
-    adminProps = new Properties();
+    producer = resources.kafkaProducer();
+    sharedProducer = true;
+    Properties adminProps = new Properties();
     adminProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+    topics = KafkaTopicProvisioner.fromEnv(adminProps);
     log.info("NseDataKafkaPublisher KafkaProducer created");
   }
 
+  /**
+   * Use an existing producer (e.g. kafka-clients' MockProducer as a stand-in for replays). No admin client
+   * is created, so topics are not checked or created; latest topics follow KAFKA_LATEST_TOPICS.
+   */
+  public NseDataKafkaPublisher(Producer<String, byte[]> producer) {
+    this.producer = producer;
+    this.bootstrapServers = null;
+    this.topics = null;
+    this.sharedProducer = false;
+    log.info("NseDataKafkaPublisher init with provided producer {}", producer.getClass().getSimpleName());
+  }
+
   /** Allow null for tests / when Kafka is disabled. */
   public static NseDataKafkaPublisher createOrNull() {
     log.debug("NseDataKafkaPublisher.createOrNull() attempting to create instance");
@@ -58,37 +72,6 @@ public class NseDataKafkaPublisher {
     }
   }
 
-  /**
-   * Create topic if not available. Called before every publish so the topic exists whenever needed.
-   * Handles "topic already exists" (e.g. created by another process) and waits for metadata after create.
-   */
-  private void ensureTopicExists(String topic) {
-    try (AdminClient admin = AdminClient.create(adminProps)) {
-      Set<String> names = admin.listTopics().names().get(TOPIC_CREATE_TIMEOUT_SEC, TimeUnit.SECONDS);
-      if (names != null && names.contains(topic)) {
-        log.debug("Kafka topic already exists: {}", topic);
-        return;
-      }
-      log.info("Kafka topic {} not present, creating (partitions=1, replication=1)", topic);
-      NewTopic newTopic = new NewTopic(topic, 1, (short) 1);
-      CreateTopicsResult result = admin.createTopics(Collections.singleton(newTopic));
-      try {
-        result.all().get(TOPIC_CREATE_TIMEOUT_SEC, TimeUnit.SECONDS);
-        log.info("Kafka topic created: {}", topic);
-      } catch (Exception createEx) {
-        if (createEx.getCause() instanceof TopicExistsException
-            || (createEx.getMessage() != null && createEx.getMessage().contains("already exists"))) {
-          log.info("Kafka topic {} already existed (created elsewhere): {}", topic, createEx.getMessage());
-          return;
-        }
-        throw createEx;
-      }
-      waitForTopicInMetadata(topic);
-    } catch (Exception e) {
-      log.warn("Kafka ensureTopicExists({}) failed (will try publish anyway): {}", topic, e.getMessage());
-    }
-  }
-
   /** After creating a topic, wait until it appears in producer metadata to avoid "not present in metadata" on first send. */
   private void waitForTopicInMetadata(String topic) {
     long deadline = System.currentTimeMillis() + METADATA_WAIT_MS;
@@ -109,10 +92,21 @@ public class NseDataKafkaPublisher {
   }
 
   public void publish(String topic, String key, String value) {
-    log.info("Kafka publish() topic={}, key={}, valueLength={}", topic, key, value != null ? value.length() : 0);
+    publish(topic, key, value != null ? value.getBytes(StandardCharsets.UTF_8) : null, Collections.emptyMap());
+  }
+
+  /** Publish a binary value with string headers (UTF-8). */
+  public void publish(String topic, String key, byte[] value, Map<String, String> headers) {
+    log.info("Kafka publish() topic={}, key={}, valueLength={}, headers={}", topic, key, value != null ? value.length : 0, headers.keySet());
     try {
-      ensureTopicExists(topic);
-      producer.send(new ProducerRecord<>(topic, key, value), (metadata, exception) -> {
+      if (topics != null && topics.ensure(topic)) {
+        waitForTopicInMetadata(topic);
+      }
+      ProducerRecord<String, byte[]> record = new ProducerRecord<>(topic, key, value);
+      for (Map.Entry<String, String> header : headers.entrySet()) {
+        record.headers().add(new RecordHeader(header.getKey(), header.getValue().getBytes(StandardCharsets.UTF_8)));
+      }
+      producer.send(record, (metadata, exception) -> {
         if (exception != null) {
           log.error("Kafka publish() callback error topic={} key={}: {}", topic, key, exception.getMessage(), exception);
         } else {
@@ -126,7 +120,23 @@ public class NseDataKafkaPublisher {
     }
   }
 
+  /** True when KAFKA_LATEST_TOPICS is set: callers mirror the newest full record per key with {@link #publishLatest}. */
+  public boolean latestTopicsEnabled() {
+    return topics != null ? topics.latestTopicsEnabled()
+        : Boolean.parseBoolean(System.getenv().getOrDefault("KAFKA_LATEST_TOPICS", "false"));
+  }
+
+  /** Publish to the compacted {topic}.latest; value must be a full record, never a delta. */
+  public void publishLatest(String topic, String key, byte[] value, Map<String, String> headers) {
+    publish(KafkaTopicProvisioner.latestTopic(topic), key, value, headers);
+  }
+
+  /** Close an injected producer; the shared one is only flushed (WorkerResources closes it). */
   public void close() {
-    producer.close();
+    if (sharedProducer) {
+      producer.flush();
+    } else {
+      producer.close();
+    }
   }
 }
@@ -1,13 +1,29 @@
 package com.nigam.temporal.nsedata;
 
+import com.nigam.temporal.common.RedisSnapshotBatch;
+import com.nigam.temporal.common.RedisValueCodec;
+import com.nigam.temporal.common.SnapshotHistory;
+import com.nigam.temporal.common.WorkerResources;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
 /**
- * Publishes processed NSE data to Redis. Uses env REDIS_HOST, REDIS_PORT, REDIS_PASSWORD.
+ * Publishes processed NSE data to Redis, by default through the process-wide pool from {@link WorkerResources}
+ * (env REDIS_HOST, REDIS_PORT, REDIS_PASSWORD, REDIS_POOL_*).
+ * Snapshot data values are written with the codec from env REDIS_VALUE_CODEC (see {@link RedisValueCodec}),
+ * and optionally appended to a {baseKey}:history stream (see {@link SnapshotHistory}).
+ * Rotations go through {@link RedisSnapshotBatch} (env REDIS_SNAPSHOT_BATCH), like the LTP worker's: each is
+ * checked against the stored snapshot time under WATCH/MULTI, so a retried download of the same snapshot only
+ * rewrites current and an older one is skipped instead of rotating previous.
+ * With REDIS_CLIENT_CACHE_ENABLED, {@link #getCached} serves repeat reads from a local cache that Redis
+ * invalidates when the key is written (see {@link RedisReadCache}).
  */
 public class NseDataRedisPublisher {
 
@@ -16,22 +32,43 @@ public class NseDataRedisPublisher {
   private final JedisPool pool;
   private final String host;
   private final int port;
+  private final RedisValueCodec codec;
+  private final SnapshotHistory history = SnapshotHistory.fromEnv();
+  private final RedisSnapshotBatch.Mode batchMode = RedisSnapshotBatch.modeFromEnv();
+  private final RedisReadCache readCache;
 
   public NseDataRedisPublisher() {
-    host = System.getenv().getOrDefault("REDIS_HOST", "localhost");
-    port = Integer.parseInt(System.getenv().getOrDefault("REDIS_PORT", "6379"));
-    String password = System.getenv().getOrDefault("REDIS_PASSWORD", "");
-    log.info("NseDataRedisPublisher init: host={}, port={}, passwordSet={}", host, port, password != null && !password.isEmpty());
+    this(WorkerResources.shared().redisPool(), WorkerResources.shared().redisHost(), WorkerResources.shared().redisPort(),
+        WorkerResources.shared().redisPassword(), RedisValueCodec.fromEnv());
+  }
+
+  /** Explicit connection settings and a pool of its own, e.g. for benchmarks against a local Redis stand-in. */
+  public NseDataRedisPublisher(String host, int port, String password) {
+    this(host, port, password, RedisValueCodec.fromEnv());
+  }
+
+  public NseDataRedisPublisher(String host, int port, String password, RedisValueCodec codec) {
+    this(newPool(host, port, password), host, port, password, codec);
+    log.info("NseDataRedisPublisher JedisPool created");
+  }
 
+  private NseDataRedisPublisher(JedisPool pool, String host, int port, String password, RedisValueCodec codec) {
+    this.pool = pool;
+    this.host = host;
+    this.port = port;
+    this.codec = codec;
+    log.info("NseDataRedisPublisher init: host={}, port={}, passwordSet={}, codec={}", host, port, password != null && !password.isEmpty(), codec);
+    readCache = RedisReadCache.fromEnvOrNull(host, port, password);
+  }
+
+  private static JedisPool newPool(String host, int port, String password) {
     JedisPoolConfig config = new JedisPoolConfig();
     config.setMaxTotal(8);
     config.setMaxIdle(4);
     if (password != null && !password.isEmpty()) {
-      pool = new JedisPool(config, host, port, 2000, password);
-    } else {
-      pool = new JedisPool(config, host, port, 2000);
+      return new JedisPool(config, host, port, 2000, password);
     }
-    log.info("NseDataRedisPublisher JedisPool created");
+    return new JedisPool(config, host, port, 2000);
   }
 
   /** Allow null for tests / when Redis is disabled. */
@@ -61,7 +98,7 @@ public class NseDataRedisPublisher {
   public String get(String key) {
     log.debug("Redis get() key={}", key);
     try (Jedis jedis = pool.getResource()) {
-      String value = jedis.get(key);
+      String value = RedisValueCodec.decode(jedis.get(key.getBytes(StandardCharsets.UTF_8)));
       log.debug("Redis get() key={}, valueLength={}", key, value != null ? value.length() : 0);
       return value;
     } catch (Exception e) {
@@ -70,6 +107,33 @@ public class NseDataRedisPublisher {
     }
   }
 
+  /**
+   * {@link #get} through the client-side cache when REDIS_CLIENT_CACHE_ENABLED=true: repeat reads of a key are
+   * local until the key is written (by any client) or evicted. Plain {@link #get} otherwise.
+   */
+  public String getCached(String key) {
+    if (readCache == null) {
+      return get(key);
+    }
+    return readCache.get(key, this::get);
+  }
+
+  /** Client-side cache hit/miss counters, or null when the cache is disabled. */
+  public String readCacheStats() {
+    return readCache != null ? readCache.stats() : null;
+  }
+
+  public RedisValueCodec getCodec() {
+    return codec;
+  }
+
+  /** Snapshots for a base key (e.g. nse:optionchain:NIFTY:27-Jan-2026) between two epoch-millis timestamps. */
+  public List<SnapshotHistory.Entry> history(String redisKeyBase, long fromMillis, long toMillis, int count) {
+    try (Jedis jedis = pool.getResource()) {
+      return SnapshotHistory.range(jedis, redisKeyBase + ":history", fromMillis, toMillis, count);
+    }
+  }
+
   public boolean exists(String key) {
     log.debug("Redis exists() key={}", key);
     try (Jedis jedis = pool.getResource()) {
@@ -87,29 +151,20 @@ public class NseDataRedisPublisher {
     return pool;
   }
 
-  /** Copy current to previous, then set current to value (same pattern as optionchain). */
-  public void rotateAndPublish(String currentKey, String previousKey, String value) {
+  /**
+   * Copy current to previous, then set current to value (same pattern as optionchain), unless the snapshot is
+   * not newer than the stored one (see {@link #rotateAndPublishBytes}).
+   */
+  public void rotateAndPublish(String currentKey, String previousKey, String value, String timestamp) {
     log.info("Redis rotateAndPublish() currentKey={}, previousKey={}, valueLength={}", currentKey, previousKey, value != null ? value.length() : 0);
-    try (Jedis jedis = pool.getResource()) {
-      boolean hasCurrent = jedis.exists(currentKey);
-      log.debug("Redis rotateAndPublish() exists(currentKey)={}", hasCurrent);
-      if (hasCurrent) {
-        String existing = jedis.get(currentKey);
-        log.debug("Redis rotateAndPublish() copying current->previous, existingLength={}", existing != null ? existing.length() : 0);
-        jedis.set(previousKey, existing);
-      }
-      jedis.set(currentKey, value);
-      log.info("Redis rotateAndPublish() done: currentKey set, previousKey rotated={}", hasCurrent);
-    } catch (Exception e) {
-      log.error("Redis rotateAndPublish() failed: {}", e.getMessage(), e);
-      throw e;
-    }
+    rotateAndPublishBytes(currentKey, previousKey, codec.encode(value), timestamp);
   }
 
   /**
    * Rotate and publish data and timestamp separately.
    * Copies current:data -> previous:data and current:timestamp -> previous:timestamp,
-   * then sets new current:data and current:timestamp.
+   * then sets new current:data and current:timestamp. A snapshot with the stored current:timestamp only
+   * rewrites current:data; an older one is skipped.
    */
   public void rotateAndPublishWithTimestamp(String baseCurrentKey, String basePreviousKey, String data, String timestamp) {
     String currentDataKey = baseCurrentKey + ":data";
@@ -119,27 +174,55 @@ public class NseDataRedisPublisher {
     
     log.info("Redis rotateAndPublishWithTimestamp() currentDataKey={}, currentTimestampKey={}, previousDataKey={}, previousTimestampKey={}, dataLength={}", 
         currentDataKey, currentTimestampKey, previousDataKey, previousTimestampKey, data != null ? data.length() : 0);
+    // Previous is copied as stored bytes, so rotation never decodes or re-encodes
+    byte[] encoded = codec.encode(data);
+    try {
+      RedisSnapshotBatch batch = new RedisSnapshotBatch(batchMode, history);
+      batch.put(currentDataKey, previousDataKey, currentTimestampKey, previousTimestampKey, encoded,
+          Instant.parse(timestamp).toEpochMilli(), timestamp, SnapshotHistory.streamKeyFor(baseCurrentKey));
+      long micros = batch.flush(pool);
+      log.info("Redis rotateAndPublishWithTimestamp() done: current:data ({} bytes, codec={}) in {} us",
+          encoded.length, codec, micros);
+    } catch (Exception e) {
+      log.error("Redis rotateAndPublishWithTimestamp() failed: {}", e.getMessage(), e);
+      throw e;
+    }
+  }
+
+  /**
+   * Store the latest snapshot delta/keyframe marker under {baseCurrentKey}:delta and, when history is enabled,
+   * append it to the {base}:history:delta stream.
+   */
+  public void publishDelta(String baseCurrentKey, String deltaJson, String timestamp) {
+    String deltaKey = baseCurrentKey + ":delta";
+    log.info("Redis publishDelta() key={}, deltaLength={}", deltaKey, deltaJson.length());
     try (Jedis jedis = pool.getResource()) {
-      boolean hasCurrentData = jedis.exists(currentDataKey);
-      boolean hasCurrentTimestamp = jedis.exists(currentTimestampKey);
-      log.debug("Redis rotateAndPublishWithTimestamp() exists: currentData={}, currentTimestamp={}", hasCurrentData, hasCurrentTimestamp);
-      
-      if (hasCurrentData) {
-        String existingData = jedis.get(currentDataKey);
-        log.debug("Redis rotateAndPublishWithTimestamp() copying current:data->previous:data, existingLength={}", existingData != null ? existingData.length() : 0);
-        jedis.set(previousDataKey, existingData);
-      }
-      if (hasCurrentTimestamp) {
-        String existingTimestamp = jedis.get(currentTimestampKey);
-        log.debug("Redis rotateAndPublishWithTimestamp() copying current:timestamp->previous:timestamp, existingTimestamp={}", existingTimestamp);
-        jedis.set(previousTimestampKey, existingTimestamp);
+      jedis.set(deltaKey, deltaJson);
+      if (history.isEnabled()) {
+        history.append(jedis, SnapshotHistory.streamKeyFor(baseCurrentKey) + ":delta", Instant.parse(timestamp).toEpochMilli(),
+            deltaJson.getBytes(StandardCharsets.UTF_8));
       }
-      
-      jedis.set(currentDataKey, data);
-      jedis.set(currentTimestampKey, timestamp);
-      log.info("Redis rotateAndPublishWithTimestamp() done: current:data and current:timestamp set, previous rotated={}", hasCurrentData || hasCurrentTimestamp);
     } catch (Exception e) {
-      log.error("Redis rotateAndPublishWithTimestamp() failed: {}", e.getMessage(), e);
+      log.error("Redis publishDelta() failed: {}", e.getMessage(), e);
+      throw e;
+    }
+  }
+
+  /**
+   * Binary variant of {@link #rotateAndPublish}: copy current to previous, then set current to the given bytes
+   * as-is. The snapshot time is kept under {currentKey}:timestamp and rotated with it; a snapshot with the stored
+   * time only rewrites current and an older one is skipped.
+   */
+  public void rotateAndPublishBytes(String currentKey, String previousKey, byte[] value, String timestamp) {
+    log.info("Redis rotateAndPublishBytes() currentKey={}, previousKey={}, valueBytes={}", currentKey, previousKey, value != null ? value.length : 0);
+    try {
+      RedisSnapshotBatch batch = new RedisSnapshotBatch(batchMode, history);
+      batch.put(currentKey, previousKey, currentKey + RedisSnapshotBatch.TIMESTAMP_SUFFIX,
+          previousKey + RedisSnapshotBatch.TIMESTAMP_SUFFIX, value, Instant.parse(timestamp).toEpochMilli(), timestamp, null);
+      long micros = batch.flush(pool);
+      log.info("Redis rotateAndPublishBytes() done: currentKey={} in {} us", currentKey, micros);
+    } catch (Exception e) {
+      log.error("Redis rotateAndPublishBytes() failed: {}", e.getMessage(), e);
       throw e;
     }
   }
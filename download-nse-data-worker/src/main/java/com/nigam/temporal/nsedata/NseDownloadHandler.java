@@ -1,17 +1,18 @@
 package com.nigam.temporal.nsedata;
 
+import com.nigam.temporal.common.SnapshotDelta;
+import com.nigam.temporal.common.SnapshotJournal;
+import com.nigam.temporal.common.UpstreamGuard;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
-import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
@@ -29,13 +30,15 @@ public class NseDownloadHandler {
 
   private static final Logger log = LogManager.getLogger(NseDownloadHandler.class);
 
-  private static final String NSE_ALL_INDICES_URL = "https://www.nseindia.com/api/allIndices?csv=true";
-  private static final String NSE_EQUITY_DATA_URL = "https://www.nseindia.com/api/live-analysis-variations?index=gainers&type=allSec&csv=true";
+  /** Default NSE origin; override with env NSE_BASE_URL (e.g. a local stand-in for load tests). */
+  private static final String DEFAULT_NSE_BASE_URL = "https://www.nseindia.com";
+  private static final String NSE_ALL_INDICES_PATH = "/api/allIndices?csv=true";
+  private static final String NSE_EQUITY_DATA_PATH = "/api/live-analysis-variations?index=gainers&type=allSec&csv=true";
   private static final String NSE_REFERER_INDICES = "https://www.nseindia.com/market-data/live-market-indices";
   private static final String NSE_REFERER_OPTIONS = "https://www.nseindia.com/option-chain";
-  private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/144.0.0.0 Safari/537.36";
+  static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/144.0.0.0 Safari/537.36";
   
-  /** Common Kafka topic for all NSE data downloads to avoid race conditions at client side */
+  /** Common Kafka topic for all NSE data downloads; consumers get per-stream (record key) ordering only */
   private static final String KAFKA_TOPIC_COMMON = "nse.data";
   
   /** Default symbol for option chain */
@@ -52,15 +55,28 @@ public class NseDownloadHandler {
 
   private final NseDataRedisPublisher redisPublisher;
   private final NseDataKafkaPublisher kafkaPublisher;
-  private final HttpClient httpClient;
+  private final NseHttpClient nseHttp;
+  private final NseArchiveDownloader archiveDownloader;
+  private final String nseBaseUrl;
+  private final String nseHost;
+  private final SnapshotDelta snapshotDelta = SnapshotDelta.fromEnv();
+  private final ExpiryDateCache expiryCache;
+  private final SnapshotJournal journal = SnapshotJournal.shared("download-nse-data");
+  private final InlineSnapshotPublisher inlineSnapshots = InlineSnapshotPublisher.fromEnv();
 
   public NseDownloadHandler(NseDataRedisPublisher redisPublisher, NseDataKafkaPublisher kafkaPublisher) {
+    this(redisPublisher, kafkaPublisher, System.getenv().getOrDefault("NSE_BASE_URL", DEFAULT_NSE_BASE_URL));
+  }
+
+  public NseDownloadHandler(NseDataRedisPublisher redisPublisher, NseDataKafkaPublisher kafkaPublisher, String nseBaseUrl) {
     this.redisPublisher = redisPublisher;
     this.kafkaPublisher = kafkaPublisher;
-    this.httpClient = HttpClient.newBuilder()
-        .connectTimeout(Duration.ofSeconds(15))
-        .followRedirects(HttpClient.Redirect.NORMAL)
-        .build();
+    this.nseBaseUrl = nseBaseUrl.endsWith("/") ? nseBaseUrl.substring(0, nseBaseUrl.length() - 1) : nseBaseUrl;
+    this.nseHost = URI.create(this.nseBaseUrl).getHost();
+    log.info("NseDownloadHandler nseBaseUrl={}", this.nseBaseUrl);
+    this.nseHttp = NseHttpClient.shared(this.nseBaseUrl);
+    this.archiveDownloader = NseArchiveDownloader.fromEnv(nseHttp.client());
+    this.expiryCache = ExpiryDateCache.fromEnv(this::getOrRefreshExpiryDates);
   }
 
   /**
@@ -106,21 +122,90 @@ public class NseDownloadHandler {
         System.out.println("✅ NseDownloadHandler: downloadEquityData returned: " + equityResult);
         log.info("handle() downloadEquityData returned: {}", equityResult);
         return equityResult;
-      // future: case "bhav": return downloadBhav(input);
-      // future: case "participant": return downloadParticipant(input);
-      // future: case "sec_list": return downloadSecList(input);
+      case "bhav":
+      case "bhavcopy":
+      case "bhav_copy":
+        return downloadArchive(NseArchiveDownloader.Archive.BHAV, input);
+      case "participant":
+      case "participant_oi":
+      case "participant-oi":
+        return downloadArchive(NseArchiveDownloader.Archive.PARTICIPANT, input);
+      case "sec_list":
+      case "seclist":
+      case "sec-list":
+        return downloadArchive(NseArchiveDownloader.Archive.SEC_LIST, input);
       default:
         log.warn("handle() unknown taskType='{}'", input.getTaskType());
         return "Error: unknown taskType=" + input.getTaskType();
     }
   }
 
+  /** GET with the browser-like headers NSE expects; compressed responses are decoded by {@link NseHttpClient}. */
+  private static HttpRequest nseRequest(String url, String referer, Duration timeout) {
+    return HttpRequest.newBuilder()
+        .uri(URI.create(url))
+        .header("Accept", "*/*")
+        .header("Accept-Encoding", NseHttpClient.ACCEPT_ENCODING)
+        .header("Accept-Language", "en-US,en;q=0.9,hi;q=0.8")
+        .header("Referer", referer)
+        .header("User-Agent", USER_AGENT)
+        .header("X-Requested-With", "XMLHttpRequest")
+        .header("sec-ch-ua", "\"Not(A:Brand\";v=\"8\", \"Chromium\";v=\"144\", \"Google Chrome\";v=\"144\"")
+        .header("sec-ch-ua-mobile", "?0")
+        .header("sec-ch-ua-platform", "\"Windows\"")
+        .header("sec-fetch-dest", "empty")
+        .header("sec-fetch-mode", "cors")
+        .header("sec-fetch-site", "same-origin")
+        .GET()
+        .timeout(timeout)
+        .build();
+  }
+
+  /**
+   * Send an NSE request through the endpoint's circuit breaker and the host's adaptive rate limit.
+   * Throws UpstreamGuard.RejectedException without calling NSE when the circuit is open or no slot frees
+   * up in time, so a degraded NSE fails the task fast; otherwise records the outcome and returns the response.
+   */
+  private HttpResponse<byte[]> sendGuarded(String endpoint, HttpRequest request) throws Exception {
+    UpstreamGuard guard = UpstreamGuard.of("NSE", nseHost, endpoint);
+    guard.acquireOrThrow();
+    HttpResponse<byte[]> response;
+    try {
+      response = nseHttp.send(request);
+    } catch (Exception e) {
+      guard.recordError(e.getClass().getSimpleName() + ": " + e.getMessage());
+      throw e;
+    }
+    guard.recordHttp(response.statusCode(), response.body());
+    return response;
+  }
+
+  /**
+   * Archive files (bhav copy, participant OI, securities list) for input.date .. input.endDate, written under
+   * targetPath; see {@link NseArchiveDownloader}. Nothing is published to Redis/Kafka.
+   */
+  private String downloadArchive(NseArchiveDownloader.Archive archive, DownloadNseDataInput input) {
+    log.info("handle() dispatching to downloadArchive({})", archive);
+    String result = archiveDownloader.download(archive, input);
+    log.info("handle() downloadArchive({}) returned: {}", archive, result);
+    return result;
+  }
+
+  /**
+   * The snapshot time the workflow fixed for this run (bucket-aligned, shared by every task and index of the
+   * same scheduled minute), or the download time for callers that did not set one.
+   */
+  private static Instant snapshotTimestamp(DownloadNseDataInput input) {
+    return input.getSnapshotTimeMillis() != null ? Instant.ofEpochMilli(input.getSnapshotTimeMillis()) : Instant.now();
+  }
+
   /**
    * First page: GET https://www.nseindia.com/api/allIndices?csv=true
    * Returns CSV; we store raw CSV and parsed summary in Redis/Kafka.
    */
   private String downloadAllIndices(DownloadNseDataInput input) {
-    log.info("downloadAllIndices() started, url={}", NSE_ALL_INDICES_URL);
+    String allIndicesUrl = nseBaseUrl + NSE_ALL_INDICES_PATH;
+    log.info("downloadAllIndices() started, url={}", allIndicesUrl);
     try {
       // Use taskTimeout from input for NSE API call timeout, default 30 seconds
       int apiTimeoutMs = input.getTaskTimeout() != null ? input.getTaskTimeout() : 30000;
@@ -128,25 +213,10 @@ public class NseDownloadHandler {
       log.info("downloadAllIndices() NSE API timeout set to {}ms", apiTimeoutMs);
       
       log.debug("downloadAllIndices() building HTTP request");
-      HttpRequest request = HttpRequest.newBuilder()
-          .uri(URI.create(NSE_ALL_INDICES_URL))
-          .header("Accept", "*/*")
-          .header("Accept-Language", "en-US,en;q=0.9,hi;q=0.8")
-          .header("Referer", NSE_REFERER_INDICES)
-          .header("User-Agent", USER_AGENT)
-          .header("X-Requested-With", "XMLHttpRequest")
-          .header("sec-ch-ua", "\"Not(A:Brand\";v=\"8\", \"Chromium\";v=\"144\", \"Google Chrome\";v=\"144\"")
-          .header("sec-ch-ua-mobile", "?0")
-          .header("sec-ch-ua-platform", "\"Windows\"")
-          .header("sec-fetch-dest", "empty")
-          .header("sec-fetch-mode", "cors")
-          .header("sec-fetch-site", "same-origin")
-          .GET()
-          .timeout(apiTimeout)
-          .build();
+      HttpRequest request = nseRequest(allIndicesUrl, NSE_REFERER_INDICES, apiTimeout);
       log.info("downloadAllIndices() sending HTTP GET with timeout {}ms", apiTimeoutMs);
 
-      HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+      HttpResponse<byte[]> response = sendGuarded("allIndices", request);
       int code = response.statusCode();
       int bodyLength = response.body() != null ? response.body().length : 0;
       log.info("downloadAllIndices() HTTP response: status={}, bodyLength={}", code, bodyLength);
@@ -156,7 +226,7 @@ public class NseDownloadHandler {
       }
 
       String csv = new String(response.body(), StandardCharsets.UTF_8);
-      Instant downloadTimestamp = Instant.now();
+      Instant downloadTimestamp = snapshotTimestamp(input);
       String timestampStr = downloadTimestamp.toString();
       int dataSizeBytes = csv.getBytes(StandardCharsets.UTF_8).length;
       int dataSizeChars = csv.length();
@@ -165,7 +235,8 @@ public class NseDownloadHandler {
       
       String taskName = "allIndices";
       String redisKeyBase = "nse:allindices";
-      publishDataAndNotify(taskName, csv, timestampStr, redisKeyBase);
+      publishColumnarSnapshot(taskName, response.body(), timestampStr, redisKeyBase);
+      publishDataAndNotify(taskName, csv, timestampStr, redisKeyBase, true);
 
       String okMsg = "OK: allIndices downloaded, length=" + csv.length() + ", redisKeys=" + redisKeyBase + ":current:data," + redisKeyBase + ":current:timestamp";
       log.info("downloadAllIndices() completed successfully: {}", okMsg);
@@ -184,33 +255,15 @@ public class NseDownloadHandler {
   private String downloadEquityData(DownloadNseDataInput input) {
     System.out.println("📊 EQUITY DATA: Starting download");
     log.info("downloadEquityData() started");
+    String equityDataUrl = nseBaseUrl + NSE_EQUITY_DATA_PATH;
     try {
       int apiTimeoutMs = input.getTaskTimeout() != null ? input.getTaskTimeout() : 600000;
       Duration apiTimeout = Duration.ofMillis(apiTimeoutMs);
-      HttpClient httpClient = HttpClient.newBuilder()
-          .connectTimeout(Duration.ofSeconds(30))
-          .build();
-
-      HttpRequest request = HttpRequest.newBuilder()
-          .uri(URI.create(NSE_EQUITY_DATA_URL))
-          .header("Accept", "*/*")
-          .header("Accept-Language", "en-US,en;q=0.9,hi;q=0.8")
-          .header("Referer", NSE_REFERER_INDICES)
-          .header("User-Agent", USER_AGENT)
-          .header("X-Requested-With", "XMLHttpRequest")
-          .header("sec-ch-ua", "\"Not(A:Brand\";v=\"8\", \"Chromium\";v=\"144\", \"Google Chrome\";v=\"144\"")
-          .header("sec-ch-ua-mobile", "?0")
-          .header("sec-ch-ua-platform", "\"Windows\"")
-          .header("sec-fetch-dest", "empty")
-          .header("sec-fetch-mode", "cors")
-          .header("sec-fetch-site", "same-origin")
-          .GET()
-          .timeout(apiTimeout)
-          .build();
-      log.info("downloadEquityData() sending HTTP GET with timeout {}ms, URL={}", apiTimeoutMs, NSE_EQUITY_DATA_URL);
-      System.out.println("📊 EQUITY DATA: Request URL: " + NSE_EQUITY_DATA_URL);
-
-      HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+      HttpRequest request = nseRequest(equityDataUrl, NSE_REFERER_INDICES, apiTimeout);
+      log.info("downloadEquityData() sending HTTP GET with timeout {}ms, URL={}", apiTimeoutMs, equityDataUrl);
+      System.out.println("📊 EQUITY DATA: Request URL: " + equityDataUrl);
+
+      HttpResponse<byte[]> response = sendGuarded("equityData", request);
       int code = response.statusCode();
       int bodyLength = response.body() != null ? response.body().length : 0;
       log.info("downloadEquityData() HTTP response: status={}, bodyLength={}", code, bodyLength);
@@ -224,7 +277,7 @@ public class NseDownloadHandler {
       }
 
       String csv = new String(response.body(), StandardCharsets.UTF_8);
-      Instant downloadTimestamp = Instant.now();
+      Instant downloadTimestamp = snapshotTimestamp(input);
       String timestampStr = downloadTimestamp.toString();
       int dataSizeBytes = csv.getBytes(StandardCharsets.UTF_8).length;
       int dataSizeChars = csv.length();
@@ -240,7 +293,8 @@ public class NseDownloadHandler {
       
       String taskName = "equityData";
       String redisKeyBase = "nse:equitydata";
-      publishDataAndNotify(taskName, csv, timestampStr, redisKeyBase);
+      publishColumnarSnapshot(taskName, response.body(), timestampStr, redisKeyBase);
+      publishDataAndNotify(taskName, csv, timestampStr, redisKeyBase, true);
 
       String okMsg = "OK: equityData downloaded, length=" + csv.length() + ", redisKeys=" + redisKeyBase + ":current:data," + redisKeyBase + ":current:timestamp";
       log.info("downloadEquityData() completed successfully: {}", okMsg);
@@ -270,11 +324,10 @@ public class NseDownloadHandler {
     System.out.println("🔗 OPTION CHAIN: Starting download, symbol=" + symbol + ", numberOfExpiry=" + numberOfExpiry);
     log.info("downloadOptionChain() started, symbol={}, numberOfExpiry={}", symbol, numberOfExpiry);
     
-    // Get or refresh expiry dates (refresh daily on first call)
-    String expiryDatesJson = getOrRefreshExpiryDates(input, symbol);
-    
-    // Extract expiry dates list
-    java.util.List<String> expiryDates = extractExpiryDatesList(expiryDatesJson, symbol, numberOfExpiry);
+    // Expiry dates come from the in-process cache (refreshed before the session opens)
+    int apiTimeoutMs = input.getTaskTimeout() != null ? input.getTaskTimeout() : 30000;
+    ExpiryDateCache.Expiries expiries = expiryCache.get(symbol, apiTimeoutMs);
+    java.util.List<String> expiryDates = expiries != null ? expiries.first(numberOfExpiry) : null;
     
     if (expiryDates == null || expiryDates.isEmpty()) {
       String errorMsg = "Error: Could not extract expiry dates for symbol " + symbol;
@@ -293,7 +346,7 @@ public class NseDownloadHandler {
       System.out.println("🔗 OPTION CHAIN: Processing expiry " + (i + 1) + "/" + expiryDates.size() + ": " + expiryDate);
       log.info("downloadOptionChain() processing expiry {}/{}: {}", i + 1, expiryDates.size(), expiryDate);
       
-      String result = downloadOptionChainForExpiry(input, symbol, expiryDate);
+      String result = downloadOptionChainForExpiry(input, symbol, expiryDate, expiries.urlDate(expiryDate));
       results.add("Expiry " + expiryDate + ": " + result);
       
       // Apply delay between expiry downloads if not the last one
@@ -315,10 +368,8 @@ public class NseDownloadHandler {
   /**
    * Download option chain data for a specific symbol and expiry date.
    */
-  private String downloadOptionChainForExpiry(DownloadNseDataInput input, String symbol, String expiryDate) {
-    // Format expiry date for URL (convert to DD-MMM-YYYY format like "03-Feb-2026")
-    String formattedExpiry = formatExpiryForUrl(expiryDate);
-    String optionChainUrl = "https://www.nseindia.com/api/option-chain-v3?type=Indices&symbol=" + symbol + "&expiry=" + formattedExpiry;
+  private String downloadOptionChainForExpiry(DownloadNseDataInput input, String symbol, String expiryDate, String formattedExpiry) {
+    String optionChainUrl = nseBaseUrl + "/api/option-chain-v3?type=Indices&symbol=" + symbol + "&expiry=" + formattedExpiry;
     System.out.println("🔗 OPTION CHAIN: Downloading from URL: " + optionChainUrl);
     System.out.println("🔗 OPTION CHAIN: symbol=" + symbol + ", expiry=" + expiryDate + " (formatted: " + formattedExpiry + ")");
     log.info("downloadOptionChainForExpiry() url={}, symbol={}, expiry={}, formattedExpiry={}", optionChainUrl, symbol, expiryDate, formattedExpiry);
@@ -329,25 +380,10 @@ public class NseDownloadHandler {
       log.info("downloadOptionChain() NSE API timeout set to {}ms", apiTimeoutMs);
       
       log.debug("downloadOptionChain() building HTTP request for URL: {}", optionChainUrl);
-      HttpRequest request = HttpRequest.newBuilder()
-          .uri(URI.create(optionChainUrl))
-          .header("Accept", "*/*")
-          .header("Accept-Language", "en-US,en;q=0.9,hi;q=0.8")
-          .header("Referer", NSE_REFERER_OPTIONS)
-          .header("User-Agent", USER_AGENT)
-          .header("X-Requested-With", "XMLHttpRequest")
-          .header("sec-ch-ua", "\"Not(A:Brand\";v=\"8\", \"Chromium\";v=\"144\", \"Google Chrome\";v=\"144\"")
-          .header("sec-ch-ua-mobile", "?0")
-          .header("sec-ch-ua-platform", "\"Windows\"")
-          .header("sec-fetch-dest", "empty")
-          .header("sec-fetch-mode", "cors")
-          .header("sec-fetch-site", "same-origin")
-          .GET()
-          .timeout(apiTimeout)
-          .build();
+      HttpRequest request = nseRequest(optionChainUrl, NSE_REFERER_OPTIONS, apiTimeout);
       log.info("downloadOptionChain() sending HTTP GET to URL: {} with timeout {}ms", optionChainUrl, apiTimeoutMs);
 
-      HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+      HttpResponse<byte[]> response = sendGuarded("optionChain", request);
       int code = response.statusCode();
       int bodyLength = response.body() != null ? response.body().length : 0;
       System.out.println("🔗 OPTION CHAIN: HTTP response from " + optionChainUrl + " - status=" + code + ", bodyLength=" + bodyLength);
@@ -363,7 +399,7 @@ public class NseDownloadHandler {
       }
 
       String json = new String(response.body(), StandardCharsets.UTF_8);
-      Instant downloadTimestamp = Instant.now();
+      Instant downloadTimestamp = snapshotTimestamp(input);
       String timestampStr = downloadTimestamp.toString();
       int dataSizeBytes = json.getBytes(StandardCharsets.UTF_8).length;
       int dataSizeChars = json.length();
@@ -384,7 +420,7 @@ public class NseDownloadHandler {
       String redisKeyBase = "nse:optionchain:" + symbol + ":" + expiryDate;
       System.out.println("🔗 OPTION CHAIN: Using Redis key base: " + redisKeyBase);
       log.info("downloadOptionChainForExpiry() Redis key base: {}", redisKeyBase);
-      publishDataAndNotify(taskName, json, timestampStr, redisKeyBase);
+      publishDataAndNotify(taskName, json, timestampStr, redisKeyBase, true);
 
       String okMsg = "OK: optionChain downloaded for " + symbol + " expiry " + expiryDate + ", length=" + json.length() + ", redisKeys=" + redisKeyBase + ":current:data," + redisKeyBase + ":current:timestamp";
       log.info("downloadOptionChainForExpiry() completed successfully: {}", okMsg);
@@ -398,8 +434,9 @@ public class NseDownloadHandler {
 
   /**
    * Extract list of expiry dates from expiry dates JSON. Returns up to numberOfExpiry dates.
+   * Package-private and static so the benchmarks module can measure it in isolation.
    */
-  private List<String> extractExpiryDatesList(String expiryDatesJson, String symbol, int numberOfExpiry) {
+  static List<String> extractExpiryDatesList(String expiryDatesJson, String symbol, int numberOfExpiry) {
     List<String> expiryDates = new ArrayList<>();
     
     if (expiryDatesJson == null || expiryDatesJson.trim().isEmpty() || expiryDatesJson.trim().equals("{}")) {
@@ -461,10 +498,10 @@ public class NseDownloadHandler {
   }
 
   /**
-   * Get expiry dates from Redis or fetch fresh from NSE API if not available or needs daily refresh.
-   * Refreshes on first call of the day, otherwise uses cached dates from Redis.
+   * Loader behind {@link ExpiryDateCache}: expiry dates from Redis if another worker (or this one) fetched them
+   * during the current IST trading day, otherwise fresh from the NSE API.
    */
-  private String getOrRefreshExpiryDates(DownloadNseDataInput input, String symbol) {
+  private String getOrRefreshExpiryDates(String symbol, int apiTimeoutMs) {
     String expiriesDataKey = getExpiriesDataKey(symbol);
     String expiriesTimestampKey = getExpiriesTimestampKey(symbol);
     
@@ -474,19 +511,20 @@ public class NseDownloadHandler {
     
     if (redisPublisher == null) {
       log.warn("getOrRefreshExpiryDates() Redis publisher null, fetching fresh expiry dates");
-      return fetchExpiryDatesFromNse(input, symbol);
+      return fetchExpiryDatesFromNse(apiTimeoutMs, symbol);
     }
     
     try {
-      String cachedData = redisPublisher.get(expiriesDataKey);
-      String cachedTimestamp = redisPublisher.get(expiriesTimestampKey);
+      // Client-side cached when REDIS_CLIENT_CACHE_ENABLED; a new fetch (here or on another worker) invalidates both keys
+      String cachedData = redisPublisher.getCached(expiriesDataKey);
+      String cachedTimestamp = redisPublisher.getCached(expiriesTimestampKey);
       
       if (cachedData != null && cachedTimestamp != null && !cachedData.isEmpty()) {
-        // Check if cached data is from today (refresh daily)
+        // Check if cached data is from today's IST trading day (refresh daily)
         Instant cachedTime = Instant.parse(cachedTimestamp);
         Instant now = Instant.now();
-        LocalDate cachedDate = cachedTime.atZone(ZoneId.systemDefault()).toLocalDate();
-        LocalDate today = now.atZone(ZoneId.systemDefault()).toLocalDate();
+        LocalDate cachedDate = cachedTime.atZone(ExpiryDateCache.IST).toLocalDate();
+        LocalDate today = now.atZone(ExpiryDateCache.IST).toLocalDate();
         
         if (cachedDate.equals(today)) {
           System.out.println("📅 EXPIRY DATES: Using cached expiry dates from Redis (cached today)");
@@ -505,41 +543,25 @@ public class NseDownloadHandler {
     }
     
     // Fetch fresh expiry dates and store in Redis
-    return fetchExpiryDatesFromNse(input, symbol);
+    return fetchExpiryDatesFromNse(apiTimeoutMs, symbol);
   }
 
   /**
    * Fetch expiry dates from NSE API and store in Redis.
    */
-  private String fetchExpiryDatesFromNse(DownloadNseDataInput input, String symbol) {
-    String contractInfoUrl = "https://www.nseindia.com/api/option-chain-contract-info?symbol=" + symbol;
+  private String fetchExpiryDatesFromNse(int apiTimeoutMs, String symbol) {
+    String contractInfoUrl = nseBaseUrl + "/api/option-chain-contract-info?symbol=" + symbol;
     String expiriesDataKey = getExpiriesDataKey(symbol);
     String expiriesTimestampKey = getExpiriesTimestampKey(symbol);
     System.out.println("📅 EXPIRY DATES: Fetching from NSE API: " + contractInfoUrl);
     log.info("fetchExpiryDatesFromNse() fetching from URL: {}", contractInfoUrl);
     
     try {
-      int apiTimeoutMs = input.getTaskTimeout() != null ? input.getTaskTimeout() : 30000;
       Duration apiTimeout = Duration.ofMillis(apiTimeoutMs);
       
-      HttpRequest request = HttpRequest.newBuilder()
-          .uri(URI.create(contractInfoUrl))
-          .header("Accept", "*/*")
-          .header("Accept-Language", "en-US,en;q=0.9,hi;q=0.8")
-          .header("Referer", NSE_REFERER_OPTIONS)
-          .header("User-Agent", USER_AGENT)
-          .header("X-Requested-With", "XMLHttpRequest")
-          .header("sec-ch-ua", "\"Not(A:Brand\";v=\"8\", \"Chromium\";v=\"144\", \"Google Chrome\";v=\"144\"")
-          .header("sec-ch-ua-mobile", "?0")
-          .header("sec-ch-ua-platform", "\"Windows\"")
-          .header("sec-fetch-dest", "empty")
-          .header("sec-fetch-mode", "cors")
-          .header("sec-fetch-site", "same-origin")
-          .GET()
-          .timeout(apiTimeout)
-          .build();
-      
-      HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+      HttpRequest request = nseRequest(contractInfoUrl, NSE_REFERER_OPTIONS, apiTimeout);
+      
+      HttpResponse<byte[]> response = sendGuarded("contractInfo", request);
       int code = response.statusCode();
       int bodyLength = response.body() != null ? response.body().length : 0;
       System.out.println("📅 EXPIRY DATES: HTTP response from " + contractInfoUrl + " - status=" + code + ", bodyLength=" + bodyLength);
@@ -663,7 +685,7 @@ public class NseDownloadHandler {
    * Format expiry date for NSE API URL. Converts various formats to "DD-MMM-YYYY" (e.g., "03-Feb-2026").
    * Handles formats like: "03FEB26", "2026-02-03", "03-Feb-2026", "27JAN26", etc.
    */
-  private String formatExpiryForUrl(String expiryDate) {
+  static String formatExpiryForUrl(String expiryDate) {
     if (expiryDate == null || expiryDate.trim().isEmpty()) {
       return "EXPIRY";
     }
@@ -731,6 +753,46 @@ public class NseDownloadHandler {
     }
   }
 
+  /**
+   * Tokenize the raw CSV bytes into a {@link ColumnarSnapshot} and store its binary encoding next to the CSV:
+   *   - {redisKeyBase}:current:columnar (and :current:columnar:timestamp)
+   *   - {redisKeyBase}:previous:columnar (rotated from current, with its timestamp)
+   * Called before publishDataAndNotify so the columnar key is in place when the Kafka notification arrives.
+   */
+  private void publishColumnarSnapshot(String taskName, byte[] csv, String timestamp, String redisKeyBase) {
+    if (redisPublisher == null) {
+      return;
+    }
+    try {
+      long startNanos = System.nanoTime();
+      ColumnarSnapshot snapshot = ColumnarSnapshot.fromCsv(csv);
+      byte[] encoded = snapshot.toBytes();
+      long parseMicros = (System.nanoTime() - startNanos) / 1000;
+      redisPublisher.rotateAndPublishBytes(redisKeyBase + ":current:columnar", redisKeyBase + ":previous:columnar", encoded,
+          timestamp);
+      log.info("publishColumnarSnapshot() taskName={}, rows={}, csvBytes={}, columnarBytes={}, parseMicros={}",
+          taskName, snapshot.size(), csv.length, encoded.length, parseMicros);
+    } catch (Exception e) {
+      // Don't throw - the raw CSV is already published
+      log.warn("publishColumnarSnapshot() failed for {}: {}", taskName, e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Publish a recorded snapshot the way a live download of taskName would be published (columnar copy for
+   * the CSV tasks, Redis current/previous rotation, option chain delta, Kafka notification), without
+   * journaling it again. Used by the replay driver in the benchmarks module.
+   * @param taskName     allIndices, equityData or optionchain
+   * @param timestamp    the snapshot's original download time
+   * @param redisKeyBase e.g. nse:allindices or nse:optionchain:NIFTY:27-Feb-2026
+   */
+  public void replaySnapshot(String taskName, String data, Instant timestamp, String redisKeyBase) {
+    if (("allIndices".equals(taskName) || "equityData".equals(taskName)) && data != null) {
+      publishColumnarSnapshot(taskName, data.getBytes(StandardCharsets.UTF_8), timestamp.toString(), redisKeyBase);
+    }
+    publishDataAndNotify(taskName, data, timestamp.toString(), redisKeyBase, false);
+  }
+
   /**
    * Common method to publish data to Redis and notify via Kafka.
    * 
@@ -739,39 +801,96 @@ public class NseDownloadHandler {
    *   - {redisKeyBase}:current:timestamp
    *   - {redisKeyBase}:previous:data (rotated from current)
    *   - {redisKeyBase}:previous:timestamp (rotated from current)
+   *   - {redisKeyBase}:current:delta (option chain only, see {@link SnapshotDelta})
    * 
    * Kafka: Publishes notification with taskName and timestamp to common topic:
-   *   - Topic: nse.data (common for all tasks to avoid race conditions)
-   *   - Key: {redisKeyBase}:current
+   *   - Topic: nse.data (common for all tasks; may have several partitions)
+   *   - Key: {redisKeyBase}:current, partitioned by {@link com.nigam.temporal.common.SnapshotKeyPartitioner}, so
+   *     notifications are ordered per stream (task, symbol, expiry) only, not across streams or tasks
    *   - Value: JSON with taskName and timestamp: {"taskName":"...","timestamp":"..."}
+   *     For option chains the value also carries the delta against the previous snapshot (type, seq,
+   *     baseTimestamp, set, remove) or type=keyframe, so consumers can patch instead of re-reading :data.
+   *   KAFKA_PAYLOAD_MODE=inline|both sends the snapshot itself to a per-task topic instead of / as well as
+   *   the notification (see {@link InlineSnapshotPublisher}).
+   *
+   * With journal set the snapshot is also appended to the local {@link SnapshotJournal} (when enabled).
    */
-  private void publishDataAndNotify(String taskName, String data, String timestamp, String redisKeyBase) {
+  private void publishDataAndNotify(String taskName, String data, String timestamp, String redisKeyBase, boolean journal) {
     String redisKeyCurrent = redisKeyBase + ":current";
     String redisKeyPrevious = redisKeyBase + ":previous";
     
     log.info("publishDataAndNotify() taskName={}, redisKeyBase={}, kafkaTopic={}, dataLength={}", 
         taskName, redisKeyBase, KAFKA_TOPIC_COMMON, data != null ? data.length() : 0);
 
+    if (journal) {
+      journalSnapshot(taskName, data, timestamp, redisKeyBase);
+    }
+
+    JsonObject delta = "optionchain".equals(taskName) ? snapshotDelta.next(redisKeyBase, data, timestamp) : null;
+
     // Store full data and timestamp separately in Redis (current and previous)
     if (redisPublisher != null) {
       log.info("publishDataAndNotify() publishing to Redis (rotateAndPublishWithTimestamp)");
       redisPublisher.rotateAndPublishWithTimestamp(redisKeyCurrent, redisKeyPrevious, data, timestamp);
       log.info("publishDataAndNotify() Redis publish done: data stored in {}:data, timestamp in {}:timestamp", 
           redisKeyCurrent, redisKeyCurrent);
+      if (delta != null) {
+        try {
+          redisPublisher.publishDelta(redisKeyCurrent, delta.toString(), timestamp);
+        } catch (Exception e) {
+          // Don't throw - full data is already published
+          log.warn("publishDataAndNotify() delta publish failed for {}: {}", redisKeyBase, e.getMessage());
+        }
+      }
     } else {
       log.debug("publishDataAndNotify() Redis publisher null, skipping");
     }
 
-    // Kafka: publish notification with taskName and timestamp to common topic (avoids race conditions)
-    if (kafkaPublisher != null) {
+    // Kafka: publish notification with taskName and timestamp to common topic (in order per key / stream)
+    if (kafkaPublisher != null && inlineSnapshots.publishesPointer()) {
       // Create JSON notification: {"taskName":"allIndices","timestamp":"2026-01-28T12:34:56.789Z"}
-      String kafkaValue = String.format("{\"taskName\":\"%s\",\"timestamp\":\"%s\"}", taskName, timestamp);
-      log.info("publishDataAndNotify() publishing to Kafka topic={} key={} value={}", KAFKA_TOPIC_COMMON, redisKeyCurrent, kafkaValue);
+      String kafkaValue;
+      if (delta != null) {
+        JsonObject notification = new JsonObject();
+        notification.addProperty("taskName", taskName);
+        notification.addProperty("timestamp", timestamp);
+        for (java.util.Map.Entry<String, JsonElement> entry : delta.entrySet()) {
+          notification.add(entry.getKey(), entry.getValue());
+        }
+        kafkaValue = notification.toString();
+      } else {
+        kafkaValue = String.format("{\"taskName\":\"%s\",\"timestamp\":\"%s\"}", taskName, timestamp);
+      }
+      log.info("publishDataAndNotify() publishing to Kafka topic={} key={} valueLength={}", KAFKA_TOPIC_COMMON, redisKeyCurrent, kafkaValue.length());
       kafkaPublisher.publish(KAFKA_TOPIC_COMMON, redisKeyCurrent, kafkaValue);
+      if (kafkaPublisher.latestTopicsEnabled()) {
+        // Compacted nse.data.latest keeps the newest pointer per key (without the delta) for consumer bootstrap
+        String pointer = String.format("{\"taskName\":\"%s\",\"timestamp\":\"%s\"}", taskName, timestamp);
+        kafkaPublisher.publishLatest(KAFKA_TOPIC_COMMON, redisKeyCurrent, pointer.getBytes(StandardCharsets.UTF_8), java.util.Collections.emptyMap());
+      }
       log.info("publishDataAndNotify() Kafka publish done: notification sent to common topic {} with taskName={}, timestamp={}", KAFKA_TOPIC_COMMON, taskName, timestamp);
-    } else {
+    } else if (kafkaPublisher == null) {
       log.debug("publishDataAndNotify() Kafka publisher null, skipping");
     }
+
+    // Kafka inline mode: the snapshot itself on the per-task topic (KAFKA_PAYLOAD_MODE=inline|both)
+    if (kafkaPublisher != null && inlineSnapshots.publishesInline() && data != null) {
+      inlineSnapshots.publish(kafkaPublisher, taskName, redisKeyBase, data, timestamp, delta);
+    }
+  }
+
+  /** Append the raw snapshot to the local journal (JOURNAL_ENABLED) keyed by redisKeyBase. */
+  private void journalSnapshot(String taskName, String data, String timestamp, String redisKeyBase) {
+    if (!journal.isEnabled() || data == null) {
+      return;
+    }
+    long timestampMillis;
+    try {
+      timestampMillis = Instant.parse(timestamp).toEpochMilli();
+    } catch (DateTimeParseException e) {
+      timestampMillis = System.currentTimeMillis();
+    }
+    journal.append(SnapshotJournal.kindForNseTask(taskName), redisKeyBase, timestampMillis, data.getBytes(StandardCharsets.UTF_8));
   }
 
 }
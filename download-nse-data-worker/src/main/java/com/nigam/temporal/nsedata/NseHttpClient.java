@@ -0,0 +1,193 @@
+package com.nigam.temporal.nsedata;
+
+import com.nigam.temporal.common.WorkerResources;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The worker's one HttpClient for NSE, shared by every task type so connections, TLS sessions and
+ * cookies are reused across tasks.
+ *
+ * HTTP/2 is preferred (the JDK falls back to HTTP/1.1 when the server does not negotiate it). Requests
+ * advertise gzip/deflate and {@link #BODY} decompresses by Content-Encoding, so callers always see plain
+ * bytes. Brotli is not advertised: the JDK has no decoder for it. The HttpClient itself is the process-wide
+ * one from {@link WorkerResources} (small daemon pool, HTTP_CLIENT_THREADS or NSE_HTTP_THREADS, default 4).
+ *
+ * {@link #warmUp()} opens the connection (and picks up NSE's session cookies) as soon as the worker
+ * starts. During market hours a HEAD to the base URL every NSE_KEEPWARM_SECONDS (default 45; 0 = off)
+ * stops the idle connection from being dropped between the once-a-minute tasks.
+ *
+ * Env: NSE_KEEPWARM_SECONDS, NSE_KEEPWARM_START_IST (default 09:00),
+ * NSE_KEEPWARM_END_IST (default 15:35).
+ */
+public class NseHttpClient {
+
+  private static final Logger log = LogManager.getLogger(NseHttpClient.class);
+
+  /** Accept-Encoding sent on every NSE request; must match what {@link #decode} understands. */
+  public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+  /** Body handler that returns the decompressed body. */
+  public static final HttpResponse.BodyHandler<byte[]> BODY = responseInfo -> HttpResponse.BodySubscribers.mapping(
+      HttpResponse.BodySubscribers.ofByteArray(),
+      bytes -> decode(bytes, responseInfo.headers().firstValue("Content-Encoding").orElse(null)));
+
+  private static final Map<String, NseHttpClient> SHARED = new ConcurrentHashMap<>();
+
+  private final URI baseUri;
+  private final HttpClient client;
+  private final Executor executor;
+  private final ScheduledExecutorService keepWarm;
+  private final LocalTime keepWarmStart;
+  private final LocalTime keepWarmEnd;
+
+  NseHttpClient(String baseUrl, HttpClient client, Executor executor, int keepWarmSeconds, LocalTime keepWarmStart,
+                LocalTime keepWarmEnd) {
+    this.baseUri = URI.create(baseUrl.endsWith("/") ? baseUrl : baseUrl + "/");
+    this.keepWarmStart = keepWarmStart;
+    this.keepWarmEnd = keepWarmEnd;
+    this.executor = executor;
+    this.client = client;
+    if (keepWarmSeconds > 0) {
+      this.keepWarm = Executors.newSingleThreadScheduledExecutor(daemonFactory("nse-keepwarm"));
+      keepWarm.scheduleWithFixedDelay(this::keepWarmTick, keepWarmSeconds, keepWarmSeconds, TimeUnit.SECONDS);
+    } else {
+      this.keepWarm = null;
+    }
+    log.info("NseHttpClient baseUri={}, keepWarmSeconds={}, keepWarm {}-{} IST",
+        baseUri, keepWarmSeconds, keepWarmStart, keepWarmEnd);
+  }
+
+  /** The worker-wide client for an NSE base URL, created (and warmed up in the background) on first use. */
+  public static NseHttpClient shared(String baseUrl) {
+    return SHARED.computeIfAbsent(baseUrl, url -> {
+      WorkerResources resources = WorkerResources.shared();
+      NseHttpClient nse = new NseHttpClient(url, resources.httpClient(), resources.httpExecutor(),
+          Integer.parseInt(System.getenv().getOrDefault("NSE_KEEPWARM_SECONDS", "45")),
+          LocalTime.parse(System.getenv().getOrDefault("NSE_KEEPWARM_START_IST", "09:00")),
+          LocalTime.parse(System.getenv().getOrDefault("NSE_KEEPWARM_END_IST", "15:35")));
+      nse.warmUpAsync();
+      return nse;
+    });
+  }
+
+  public HttpClient client() {
+    return client;
+  }
+
+  public HttpResponse<byte[]> send(HttpRequest request) throws IOException, InterruptedException {
+    return client.send(request, BODY);
+  }
+
+  /** Establish the connection in the background so the first task does not pay for DNS, TCP and TLS. */
+  public void warmUpAsync() {
+    executor.execute(this::warmUp);
+  }
+
+  /** HEAD the base URL; returns the status, or -1 if the request failed. */
+  public int warmUp() {
+    long start = System.nanoTime();
+    try {
+      HttpRequest request = HttpRequest.newBuilder(baseUri)
+          .method("HEAD", HttpRequest.BodyPublishers.noBody())
+          .header("User-Agent", NseDownloadHandler.USER_AGENT)
+          .header("Accept-Encoding", ACCEPT_ENCODING)
+          .timeout(Duration.ofSeconds(15))
+          .build();
+      HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+      log.info("warmUp() {} status={}, version={}, took {}ms", baseUri, response.statusCode(), response.version(),
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      return response.statusCode();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return -1;
+    } catch (Exception e) {
+      log.warn("warmUp() {} failed: {}", baseUri, e.getMessage());
+      // Don't throw - the first real request will connect instead
+      return -1;
+    }
+  }
+
+  private void keepWarmTick() {
+    ZonedDateTime now = ZonedDateTime.now(ExpiryDateCache.IST);
+    if (now.getDayOfWeek() == DayOfWeek.SATURDAY || now.getDayOfWeek() == DayOfWeek.SUNDAY) {
+      return;
+    }
+    LocalTime time = now.toLocalTime();
+    if (time.isBefore(keepWarmStart) || time.isAfter(keepWarmEnd)) {
+      return;
+    }
+    warmUp();
+  }
+
+  /** Stop the keep-warm timer; the HttpClient and its threads belong to WorkerResources. */
+  public void close() {
+    if (keepWarm != null) {
+      keepWarm.shutdownNow();
+    }
+  }
+
+  /** Decompress a body by its Content-Encoding (gzip, x-gzip, deflate; anything else is returned as is). */
+  static byte[] decode(byte[] body, String contentEncoding) {
+    if (body == null || body.length == 0 || contentEncoding == null) {
+      return body;
+    }
+    String encoding = contentEncoding.trim().toLowerCase(Locale.ROOT);
+    try {
+      switch (encoding) {
+        case "gzip":
+        case "x-gzip":
+          try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return in.readAllBytes();
+          }
+        case "deflate":
+          // Usually zlib-wrapped; some servers send raw deflate
+          try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(body))) {
+            return in.readAllBytes();
+          } catch (IOException zlibFailed) {
+            try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(body), new Inflater(true))) {
+              return in.readAllBytes();
+            }
+          }
+        default:
+          return body;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to decode " + encoding + " body", e);
+    }
+  }
+
+  private static ThreadFactory daemonFactory(String prefix) {
+    AtomicInteger count = new AtomicInteger();
+    return r -> {
+      Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
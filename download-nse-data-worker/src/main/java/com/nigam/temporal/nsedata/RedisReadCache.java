@@ -0,0 +1,296 @@
+package com.nigam.temporal.nsedata;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisClientConfig;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Client-side cache for Redis reads, kept coherent by server-assisted invalidation (CLIENT TRACKING, Redis 6+).
+ *
+ * Jedis 5.1 has no built-in client-side cache, so this uses RESP2 broadcasting mode on two dedicated
+ * connections: one subscribed to __redis__:invalidate, and one that registers
+ * CLIENT TRACKING ON REDIRECT {subscriber id} BCAST PREFIX {prefix}. Every write to a key under the prefixes
+ * (e.g. rotating nse:...:current:data) then publishes an invalidation that evicts the key from a bounded LRU,
+ * whichever client wrote it. Misses are loaded by the caller (through its pool) and cached.
+ *
+ * Until the subscriber is connected, and whenever it or the tracking connection drops, the cache is cleared
+ * and bypassed while a background thread reconnects. Entries also expire after the TTL as a safety net.
+ *
+ * Env: REDIS_CLIENT_CACHE_ENABLED (default false), REDIS_CLIENT_CACHE_MAX_KEYS (default 1024),
+ * REDIS_CLIENT_CACHE_TTL_SECONDS (default 300), REDIS_CLIENT_CACHE_PREFIXES (comma-separated, default nse:).
+ */
+public class RedisReadCache implements AutoCloseable {
+
+  private static final Logger log = LogManager.getLogger(RedisReadCache.class);
+
+  private static final String INVALIDATE_CHANNEL = "__redis__:invalidate";
+  private static final long TRACKER_CHECK_MS = 10_000;
+  private static final long MAX_RECONNECT_DELAY_MS = 60_000;
+
+  private static final class Entry {
+    final String value;
+    final long expiresAt;
+
+    Entry(String value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private final HostAndPort address;
+  private final String password;
+  private final List<String> prefixes;
+  private final long ttlMillis;
+  // Access-ordered, so the eldest entry is the least recently read; guarded by this
+  private final LinkedHashMap<String, Entry> entries;
+  // Loads in flight; an invalidation removes the token so a value read before it is not cached; guarded by this
+  private final Map<String, Object> pending = new HashMap<>();
+  private final Object trackerLock = new Object();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+  private final Thread listener;
+
+  private volatile boolean running = true;
+  private volatile boolean tracking;
+  private volatile Connection subscriber;
+  private Connection tracker;
+  private volatile long trackerCheckedAt;
+
+  public RedisReadCache(String host, int port, String password, int maxKeys, long ttlSeconds, List<String> prefixes) {
+    this.address = new HostAndPort(host, port);
+    this.password = password != null && !password.isEmpty() ? password : null;
+    this.prefixes = prefixes;
+    this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+    this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > maxKeys;
+      }
+    };
+    listener = new Thread(this::listen, "redis-invalidation");
+    listener.setDaemon(true);
+    listener.start();
+    log.info("RedisReadCache started: {}:{}, maxKeys={}, ttlSeconds={}, prefixes={}", host, port, maxKeys, ttlSeconds, prefixes);
+  }
+
+  /** Cache for the given server if REDIS_CLIENT_CACHE_ENABLED=true, otherwise null. */
+  public static RedisReadCache fromEnvOrNull(String host, int port, String password) {
+    if (!Boolean.parseBoolean(System.getenv().getOrDefault("REDIS_CLIENT_CACHE_ENABLED", "false"))) {
+      return null;
+    }
+    List<String> prefixes = new ArrayList<>();
+    for (String prefix : System.getenv().getOrDefault("REDIS_CLIENT_CACHE_PREFIXES", "nse:").split(",")) {
+      if (!prefix.trim().isEmpty()) {
+        prefixes.add(prefix.trim());
+      }
+    }
+    return new RedisReadCache(host, port, password,
+        Integer.parseInt(System.getenv().getOrDefault("REDIS_CLIENT_CACHE_MAX_KEYS", "1024")),
+        Long.parseLong(System.getenv().getOrDefault("REDIS_CLIENT_CACHE_TTL_SECONDS", "300")),
+        prefixes);
+  }
+
+  /** True while invalidations are being received, i.e. while reads are actually cached. */
+  public boolean isTracking() {
+    return tracking;
+  }
+
+  /**
+   * Cached value of key, or loader's value (cached unless the key was invalidated while loading).
+   * Null values are not cached.
+   */
+  public String get(String key, Function<String, String> loader) {
+    if (!tracking || !trackerAlive()) {
+      misses.incrementAndGet();
+      return loader.apply(key);
+    }
+    Object token = new Object();
+    synchronized (this) {
+      Entry entry = entries.get(key);
+      if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+        hits.incrementAndGet();
+        return entry.value;
+      }
+      entries.remove(key);
+      pending.put(key, token);
+    }
+    misses.incrementAndGet();
+    String value = loader.apply(key);
+    synchronized (this) {
+      if (pending.remove(key, token) && value != null && tracking) {
+        entries.put(key, new Entry(value, System.currentTimeMillis() + ttlMillis));
+      }
+    }
+    return value;
+  }
+
+  public String stats() {
+    int size;
+    synchronized (this) {
+      size = entries.size();
+    }
+    return "hits=" + hits.get() + ", misses=" + misses.get() + ", invalidations=" + invalidations.get() + ", keys=" + size;
+  }
+
+  private synchronized void invalidate(String key) {
+    entries.remove(key);
+    pending.remove(key);
+  }
+
+  private synchronized void clear() {
+    entries.clear();
+    pending.clear();
+  }
+
+  private void listen() {
+    long delay = 1000;
+    while (running) {
+      try {
+        connect();
+        delay = 1000;
+        while (running) {
+          onMessage(subscriber.getUnflushedObject());
+        }
+      } catch (JedisDataException | ClassCastException e) {
+        log.warn("RedisReadCache: server does not support client tracking (Redis 6+ needed), reads stay uncached: {}", e.getMessage());
+        System.out.println("⚠️ REDIS: Client-side cache disabled, server rejected CLIENT TRACKING");
+        running = false;
+      } catch (Exception e) {
+        if (running) {
+          log.warn("RedisReadCache: invalidation connection lost, cache bypassed until reconnect in {} ms: {}", delay, e.getMessage());
+        }
+      } finally {
+        disconnect();
+      }
+      if (running) {
+        try {
+          Thread.sleep(delay);
+        } catch (InterruptedException e) {
+          return;
+        }
+        delay = Math.min(delay * 2, MAX_RECONNECT_DELAY_MS);
+      }
+    }
+  }
+
+  private void connect() {
+    Connection sub = new Connection(address, DefaultJedisClientConfig.builder().password(password).socketTimeoutMillis(0).build());
+    subscriber = sub;
+    sub.sendCommand(Protocol.Command.CLIENT, "ID");
+    long id = sub.getIntegerReply();
+    sub.sendCommand(Protocol.Command.SUBSCRIBE, INVALIDATE_CHANNEL);
+    sub.getOne();
+
+    JedisClientConfig trackerConfig = DefaultJedisClientConfig.builder().password(password).socketTimeoutMillis(2000).build();
+    Connection trk = new Connection(address, trackerConfig);
+    List<String> args = new ArrayList<>(Arrays.asList("TRACKING", "ON", "REDIRECT", Long.toString(id), "BCAST"));
+    for (String prefix : prefixes) {
+      args.add("PREFIX");
+      args.add(prefix);
+    }
+    try {
+      trk.sendCommand(Protocol.Command.CLIENT, args.toArray(new String[0]));
+      trk.getStatusCodeReply();
+    } catch (RuntimeException e) {
+      trk.close();
+      throw e;
+    }
+    synchronized (trackerLock) {
+      tracker = trk;
+      trackerCheckedAt = System.currentTimeMillis();
+    }
+    clear();
+    tracking = true;
+    log.info("RedisReadCache tracking on: subscriber client id={}, prefixes={}", id, prefixes);
+    System.out.println("🧠 REDIS: Client-side cache tracking " + prefixes + " (invalidations via " + INVALIDATE_CHANNEL + ")");
+  }
+
+  private void onMessage(Object reply) {
+    List<?> message = (List<?>) reply;
+    if (!"message".equals(new String((byte[]) message.get(0), StandardCharsets.UTF_8))) {
+      return;
+    }
+    Object payload = message.get(2);
+    if (payload instanceof List) {
+      for (Object key : (List<?>) payload) {
+        invalidations.incrementAndGet();
+        invalidate(new String((byte[]) key, StandardCharsets.UTF_8));
+      }
+    } else {
+      // A null key list means the server flushed its tracking table (FLUSHALL / FLUSHDB)
+      log.info("RedisReadCache: server flushed its tracking table, clearing cache ({})", stats());
+      clear();
+    }
+  }
+
+  /**
+   * Ping the tracking connection every TRACKER_CHECK_MS: if it is gone, the server has stopped tracking
+   * and invalidations no longer arrive, so go uncached and make the listener reconnect.
+   */
+  private boolean trackerAlive() {
+    if (System.currentTimeMillis() - trackerCheckedAt < TRACKER_CHECK_MS) {
+      return true;
+    }
+    synchronized (trackerLock) {
+      if (System.currentTimeMillis() - trackerCheckedAt < TRACKER_CHECK_MS) {
+        return true;
+      }
+      try {
+        tracker.sendCommand(Protocol.Command.PING);
+        tracker.getStatusCodeReply();
+        trackerCheckedAt = System.currentTimeMillis();
+        return true;
+      } catch (Exception e) {
+        log.warn("RedisReadCache: tracking connection lost, cache bypassed until reconnect: {}", e.getMessage());
+        tracking = false;
+        clear();
+        Connection sub = subscriber;
+        if (sub != null) {
+          // Unblocks the listener, which reconnects both connections
+          sub.close();
+        }
+        return false;
+      }
+    }
+  }
+
+  private void disconnect() {
+    tracking = false;
+    clear();
+    Connection sub = subscriber;
+    if (sub != null) {
+      sub.close();
+    }
+    synchronized (trackerLock) {
+      if (tracker != null) {
+        tracker.close();
+        tracker = null;
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    log.info("RedisReadCache closing: {}", stats());
+    disconnect();
+    listener.interrupt();
+  }
+}
@@ -5,6 +5,10 @@ import io.temporal.activity.ActivityMethod;
 
 @ActivityInterface
 public interface LtpCalculatorActivities {
+  /**
+   * @param snapshotTimeMillis the snapshot's identity in storage, fixed by the workflow so retries write the same
+   *                           rows; null (e.g. histories from before it was added) means the time of the call
+   */
   @ActivityMethod
-  String fetchOptionChain(String serverName, String serverIP, String port, String apiKey, String indexName, String exchange, String expiry, Integer strikeRange, Integer apiCallPauseMs);
+  String fetchOptionChain(String serverName, String serverIP, String port, String apiKey, String indexName, String exchange, String expiry, Integer strikeRange, Integer apiCallPauseMs, Long snapshotTimeMillis);
 }
@@ -3,55 +3,147 @@ package com.nigam.temporal.ltp;
 import com.google.gson.JsonObject;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
-import redis.clients.jedis.Jedis;
+import com.nigam.temporal.common.RedisSnapshotBatch;
+import com.nigam.temporal.common.RedisValueCodec;
+import com.nigam.temporal.common.SnapshotHistory;
+import com.nigam.temporal.common.SnapshotJournal;
+import com.nigam.temporal.common.UpstreamGuard;
+import com.nigam.temporal.common.WorkerResources;
 import redis.clients.jedis.JedisPool;
-import redis.clients.jedis.JedisPoolConfig;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.Timestamp;
-import java.time.LocalDateTime;
 
 public class LtpCalculatorActivitiesImpl implements LtpCalculatorActivities {
   
-  private static JedisPool jedisPool = null;
+  private JedisPool jedisPool = null;
   private static Connection dbConnection = null;
+  private static final OptionChainPartitions partitions = OptionChainPartitions.fromEnv();
+  private static final OptionChainCompactTable compact = OptionChainCompactTable.fromEnv();
+  private static OptionChainWriteBehind writeBehind = null;
+  private static OptionChainRollups rollups = null;
+  // Latest snapshot OI seen by this worker, keyed by server|underlying|expiry (write-behind mode only)
+  private static final java.util.Map<String, SnapshotOi> lastOi = new java.util.concurrent.ConcurrentHashMap<>();
+  private final RedisValueCodec redisCodec = RedisValueCodec.fromEnv();
+  private final SnapshotHistory redisHistory = SnapshotHistory.fromEnv();
+  private final RedisSnapshotBatch.Mode redisBatchMode = RedisSnapshotBatch.modeFromEnv();
+  private final SnapshotJournal journal = SnapshotJournal.shared("ltp-calculator");
   
-  private JedisPool getJedisPool() {
-    if (jedisPool == null) {
-      // Get Redis connection details from environment variables
-      String redisHost = System.getenv().getOrDefault("REDIS_HOST", "localhost");
-      int redisPort = Integer.parseInt(System.getenv().getOrDefault("REDIS_PORT", "6379"));
-      String redisPassword = System.getenv().getOrDefault("REDIS_PASSWORD", null);
-      
-      JedisPoolConfig poolConfig = new JedisPoolConfig();
-      poolConfig.setMaxTotal(10);
-      poolConfig.setMaxIdle(5);
-      poolConfig.setMinIdle(1);
-      
-      if (redisPassword != null && !redisPassword.isEmpty()) {
-        jedisPool = new JedisPool(poolConfig, redisHost, redisPort, 2000, redisPassword);
-      } else {
-        jedisPool = new JedisPool(poolConfig, redisHost, redisPort, 2000);
-      }
-      
-      System.out.println("✅ Redis connection pool created: " + redisHost + ":" + redisPort);
+  /**
+   * Insert for one strike row, CE and PE side by side; bound by {@link #insertStrikeRow}. A row for a snapshot
+   * that is already stored (activity retry, replay) hits uq_optionchain_snapshot and is skipped.
+   */
+  static final String INSERT_CHAIN_SQL = "INSERT INTO openalgo_optionchain (" +
+      "server_name, underlying, underlying_ltp, underlying_prev_close, expiry_date, atm_strike, strike, " +
+      // CE fields
+      "ce_symbol, ce_label, ce_ltp, ce_bid, ce_ask, ce_open, ce_high, ce_low, ce_prev_close, " +
+      "ce_volume, ce_oi, ce_spot_price, ce_option_price, ce_implied_volatility, ce_days_to_expiry, " +
+      "ce_delta, ce_gamma, ce_theta, ce_vega, " +
+      // PE fields
+      "pe_symbol, pe_label, pe_ltp, pe_bid, pe_ask, pe_open, pe_high, pe_low, pe_prev_close, " +
+      "pe_volume, pe_oi, pe_spot_price, pe_option_price, pe_implied_volatility, pe_days_to_expiry, " +
+      "pe_delta, pe_gamma, pe_theta, pe_vega, " +
+      // Common fields
+      "lotsize, tick_size, datetime" +
+      ") VALUES (?, ?, ?, ?, ?, ?, ?, " +
+      "?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, " +
+      "?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, " +
+      "?, ?, ?) ON CONFLICT DO NOTHING";
+  
+  /** Insert for one summary row; bound by {@link #bindSummaryRow}. Skipped like chain rows (uq_summary_snapshot). */
+  static final String INSERT_SUMMARY_SQL = "INSERT INTO openalgo_optionchain_summary (" +
+      "server_name, underlying, underlying_ltp, expiry_date, datetime, " +
+      "total_ce_volume, total_pe_volume, total_ce_oi, total_pe_oi, " +
+      "total_ce_oi_change, total_pe_oi_change, " +
+      "above_ce_volume, above_pe_volume, above_ce_oi, above_pe_oi, " +
+      "above_ce_oi_change, above_pe_oi_change, " +
+      "below_ce_volume, below_pe_volume, below_ce_oi, below_pe_oi, " +
+      "below_ce_oi_change, below_pe_oi_change, " +
+      "pcr_oi, pcr_volume, max_pain_strike, atm_straddle, " +
+      "ce_long_buildup, ce_short_buildup, ce_long_unwinding, ce_short_covering, " +
+      "pe_long_buildup, pe_short_buildup, pe_long_unwinding, pe_short_covering" +
+      ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, " +
+      "?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT DO NOTHING";
+  
+  /** Analytics columns of openalgo_optionchain_summary (see {@link OptionChainAnalytics}). */
+  private static final String[] SUMMARY_ANALYTICS_COLUMNS = {
+      "pcr_oi NUMERIC(10, 4)", "pcr_volume NUMERIC(10, 4)", "max_pain_strike INTEGER", "atm_straddle NUMERIC(15, 2)",
+      "ce_long_buildup INTEGER", "ce_short_buildup INTEGER", "ce_long_unwinding INTEGER", "ce_short_covering INTEGER",
+      "pe_long_buildup INTEGER", "pe_short_buildup INTEGER", "pe_long_unwinding INTEGER", "pe_short_covering INTEGER"
+  };
+  
+  /** OI per symbol of one snapshot and the OI it was compared against, reused when the snapshot is retried. */
+  private static final class SnapshotOi {
+    final Timestamp timestamp;
+    final java.util.Map<String, Long> ceOi;
+    final java.util.Map<String, Long> peOi;
+    final java.util.Map<String, Long> previousCeOi;
+    final java.util.Map<String, Long> previousPeOi;
+    
+    SnapshotOi(Timestamp timestamp, java.util.Map<String, Long> ceOi, java.util.Map<String, Long> peOi,
+               java.util.Map<String, Long> previousCeOi, java.util.Map<String, Long> previousPeOi) {
+      this.timestamp = timestamp;
+      this.ceOi = ceOi;
+      this.peOi = peOi;
+      this.previousCeOi = previousCeOi;
+      this.previousPeOi = previousPeOi;
     }
+  }
+  
+  /** Redis and the database come from the process-wide {@link WorkerResources}. */
+  public LtpCalculatorActivitiesImpl() {
+    this.jedisPool = WorkerResources.shared().redisPool();
+  }
+  
+  /** Use an existing Redis pool instead of one built from REDIS_* env (e.g. a local stand-in for load tests). */
+  public LtpCalculatorActivitiesImpl(JedisPool jedisPool) {
+    this.jedisPool = jedisPool;
+  }
+  
+  /**
+   * Use an existing Redis pool and database connection instead of REDIS_* / DB_* env (e.g. stand-ins for
+   * replays). The connection is used as is: no table or index creation.
+   */
+  public LtpCalculatorActivitiesImpl(JedisPool jedisPool, Connection connection) {
+    this.jedisPool = jedisPool;
+    dbConnection = connection;
+  }
+  
+  private JedisPool getJedisPool() {
     return jedisPool;
   }
   
   @Override
-  public String fetchOptionChain(String serverName, String serverIP, String port, String apiKey, String indexName, String exchange, String expiry, Integer strikeRange, Integer apiCallPauseMs) {
+  public String fetchOptionChain(String serverName, String serverIP, String port, String apiKey, String indexName, String exchange, String expiry, Integer strikeRange, Integer apiCallPauseMs, Long snapshotTimeMillis) {
     try {
+      long snapshotMillis = snapshotTimeMillis != null ? snapshotTimeMillis : System.currentTimeMillis();
+      Timestamp snapshotTime = new Timestamp(snapshotMillis);
+      System.out.println("🆔 Snapshot " + serverName + ":" + indexName + ":" + expiry + " @ " + snapshotTime);
+      
       // Build the host URL
       String hostUrl = "http://" + serverIP + ":" + port;
       
       // Create OpenAlgo client with custom host
       Object client = createOpenAlgoClient(apiKey, hostUrl);
       
-      // Call optionchain API with parameters from input
+      // Call optionchain API with parameters from input, through the server's circuit breaker / rate limit
       // Parameters: symbol, exchange, expiry, strikeRange
-      JsonObject response = callOptionChainMethod(client, indexName, exchange, expiry, strikeRange);
+      String openAlgoHost = serverIP + ":" + port;
+      UpstreamGuard chainGuard = UpstreamGuard.of("OPENALGO", openAlgoHost, "optionchain");
+      String rejected = chainGuard.tryAcquire();
+      if (rejected != null) {
+        System.err.println("⛔ Skipping option chain call: " + rejected);
+        return "Error: " + rejected;
+      }
+      JsonObject response;
+      try {
+        response = callOptionChainMethod(client, indexName, exchange, expiry, strikeRange);
+      } catch (Exception e) {
+        chainGuard.recordError(errorMessage(e));
+        throw e;
+      }
+      recordOpenAlgoOutcome(chainGuard, response);
       
       // Extract and format response
       String status = response.has("status") ? response.get("status").getAsString() : "unknown";
@@ -65,21 +157,33 @@ public class LtpCalculatorActivitiesImpl implements LtpCalculatorActivities {
       if (response.has("chain") && response.get("chain").isJsonArray()) {
         System.out.println("🔄 Enhancing response with Greeks data...");
         int pauseMs = apiCallPauseMs != null ? apiCallPauseMs : 500;
-        enhanceResponseWithGreeks(client, response, exchange, pauseMs);
+        enhanceResponseWithGreeks(client, response, exchange, pauseMs,
+            UpstreamGuard.of("OPENALGO", openAlgoHost, "optiongreeks"));
         System.out.println("✅ Response enhanced with Greeks data");
       }
       
-      // Store enhanced response in Redis
-      String redisKey = buildRedisKey(serverName, indexName, expiry);
-      storeInRedis(redisKey, response);
-      System.out.println("✅ Stored enhanced response in Redis with key: " + redisKey);
+      // Keep the enhanced response in the local journal (JOURNAL_ENABLED) for replays and backfills
+      if (journal.isEnabled()) {
+        journal.append(SnapshotJournal.KIND_OPENALGO_OPTION_CHAIN, String.format("openalgo:%s:%s:%s", serverName, indexName, expiry),
+            snapshotMillis, response.toString().getBytes(StandardCharsets.UTF_8));
+      }
       
-      // Store chain data row by row in database
-      if (response.has("chain") && response.get("chain").isJsonArray()) {
-        System.out.println("💾 Storing chain data in database...");
-        storeChainInDatabase(serverName, indexName, expiry, response);
-        System.out.println("✅ Chain data stored in database");
+      // Enhanced response and its summary go to Redis in one batch, flushed before the rows are inserted
+      RedisSnapshotBatch redisBatch = new RedisSnapshotBatch(redisBatchMode, redisHistory);
+      String redisKey = buildRedisKey(serverName, indexName, expiry);
+      storeInRedis(redisBatch, redisKey, response, snapshotMillis);
+      try {
+        // Store chain data row by row in database
+        if (response.has("chain") && response.get("chain").isJsonArray()) {
+          System.out.println("💾 Storing chain data in database...");
+          storeChainInDatabase(redisBatch, serverName, indexName, expiry, response, snapshotTime);
+          System.out.println("✅ Chain data stored in database");
+        }
+      } finally {
+        // No-op when storeChainInDatabase already flushed it
+        flushRedis(redisBatch);
       }
+      System.out.println("✅ Stored enhanced response in Redis with key: " + redisKey);
       
       // Check if there's an error message
       if (response.has("error") || response.has("message")) {
@@ -98,6 +202,25 @@ public class LtpCalculatorActivitiesImpl implements LtpCalculatorActivities {
     }
   }
   
+  /**
+   * Run a recorded (already Greeks-enhanced) OpenAlgo option chain through the same persistence path as
+   * {@link #fetchOptionChain}: Redis current/previous, then rows, summary and rollups. Not journaled.
+   * Used by the replay driver in the benchmarks module; replaying a snapshot at its recorded time again
+   * leaves the stored rows as they are.
+   */
+  public void replayOptionChain(String serverName, String indexName, String expiry, JsonObject response,
+                                long snapshotTimeMillis) {
+    RedisSnapshotBatch redisBatch = new RedisSnapshotBatch(redisBatchMode, redisHistory);
+    storeInRedis(redisBatch, buildRedisKey(serverName, indexName, expiry), response, snapshotTimeMillis);
+    try {
+      if (response.has("chain") && response.get("chain").isJsonArray()) {
+        storeChainInDatabase(redisBatch, serverName, indexName, expiry, response, new Timestamp(snapshotTimeMillis));
+      }
+    } finally {
+      flushRedis(redisBatch);
+    }
+  }
+  
   private String buildRedisKey(String serverName, String indexName, String expiry) {
     // Format: openalgo:Angel:IndexName:expiry:currentoptionchain
     return String.format("openalgo:%s:%s:%s:current:optionchain", serverName, indexName, expiry);
@@ -108,23 +231,33 @@ public class LtpCalculatorActivitiesImpl implements LtpCalculatorActivities {
     return String.format("openalgo:%s:%s:%s:current:summary", serverName, indexName, expiry);
   }
   
-  private void storeInRedis(String key, JsonObject response) {
-    try (Jedis jedis = getJedisPool().getResource()) {
-      // Move current data to previous if it exists
-      if (jedis.exists(key)) {
-        String previousKey = key.replace(":current:", ":previous:");
-        String currentData = jedis.get(key);
-        jedis.set(previousKey, currentData);
-        System.out.println("📦 Moved current data to previous - Key: " + previousKey);
-      }
-      
+  /**
+   * Queue a key for the snapshot's Redis batch. On flush the current value is copied to previous (as stored
+   * bytes, whatever the codec) and, with REDIS_HISTORY_ENABLED, appended to the capped history stream under the
+   * snapshot's time.
+   */
+  private void storeInRedis(RedisSnapshotBatch batch, String key, JsonObject response, long snapshotMillis) {
+    try {
       // Convert JsonObject to JSON string
       Gson gson = new Gson();
       String jsonString = gson.toJson(response);
       
-      // Store new data in current key
-      jedis.set(key, jsonString);
-      System.out.println("✅ Stored in Redis - Key: " + key + ", Value length: " + jsonString.length() + " chars");
+      // Store new data in current key, encoded with REDIS_VALUE_CODEC (raw by default)
+      byte[] encoded = redisCodec.encode(jsonString);
+      batch.put(key, encoded, snapshotMillis);
+      System.out.println("🧺 Queued for Redis - Key: " + key + ", Value length: " + jsonString.length() + " chars, "
+          + encoded.length + " bytes (" + redisCodec + ")");
+    } catch (Exception e) {
+      System.err.println("⚠️ Failed to store in Redis: " + e.getMessage());
+      e.printStackTrace();
+      // Don't throw - continue even if Redis fails
+    }
+  }
+  
+  /** Write a batch's queued keys in one pipeline / transaction (REDIS_SNAPSHOT_BATCH). */
+  private void flushRedis(RedisSnapshotBatch batch) {
+    try {
+      batch.flush(getJedisPool());
     } catch (Exception e) {
       System.err.println("⚠️ Failed to store in Redis: " + e.getMessage());
       e.printStackTrace();
@@ -168,7 +301,35 @@ public class LtpCalculatorActivitiesImpl implements LtpCalculatorActivities {
     }
   }
   
-  private void enhanceResponseWithGreeks(Object client, JsonObject response, String exchange, int pauseMs) {
+  /**
+   * Record an OpenAlgo call that returned normally: a status "error" response counts as throttling when its
+   * message looks like a rate limit and as a failure otherwise.
+   */
+  private static void recordOpenAlgoOutcome(UpstreamGuard guard, JsonObject response) {
+    String status = response != null && response.has("status") && !response.get("status").isJsonNull()
+        ? response.get("status").getAsString() : "";
+    if (!"error".equalsIgnoreCase(status)) {
+      guard.recordSuccess();
+      return;
+    }
+    String message = response.has("message") && !response.get("message").isJsonNull()
+        ? response.get("message").getAsString() : "status error";
+    guard.recordError(message);
+  }
+
+  /** Message of a reflective call failure (the cause of InvocationTargetException). */
+  private static String errorMessage(Throwable e) {
+    Throwable cause = e instanceof java.lang.reflect.InvocationTargetException && e.getCause() != null ? e.getCause() : e;
+    return cause.getClass().getSimpleName() + ": " + cause.getMessage();
+  }
+
+  /**
+   * Fetch Greeks for every CE/PE symbol. Calls go through the OpenAlgo server's "optiongreeks" guard: while its
+   * circuit is open (or the adaptive rate limit has no slot in time) the remaining options are skipped instead
+   * of each waiting on a failing server. The configured pause stays as the minimum spacing between calls.
+   */
+  private void enhanceResponseWithGreeks(Object client, JsonObject response, String exchange, int pauseMs,
+                                         UpstreamGuard greeksGuard) {
     try {
       if (!response.has("chain") || !response.get("chain").isJsonArray()) {
         System.out.println("⚠️ No chain array found in response");
@@ -179,6 +340,8 @@ public class LtpCalculatorActivitiesImpl implements LtpCalculatorActivities {
       int totalOptions = 0;
       int successCount = 0;
       int errorCount = 0;
+      int skippedCount = 0;
+      String lastRejection = null;
       
       System.out.println("🔄 Processing " + chain.size() + " chain entries for Greeks data...");
       
@@ -191,23 +354,36 @@ public class LtpCalculatorActivitiesImpl implements LtpCalculatorActivities {
           if (ce.has("symbol") && !ce.get("symbol").isJsonNull()) {
             String ceSymbol = ce.get("symbol").getAsString();
             totalOptions++;
-            System.out.println("  📞 Fetching Greeks for CE: " + ceSymbol);
-            try {
-              JsonObject greeksResponse = callOptionGreeksMethod(client, ceSymbol, exchange);
-              System.out.println("  📥 Received Greeks response for " + ceSymbol);
-              addGreeksToOption(ce, greeksResponse);
-              successCount++;
-              
-              // Add configurable delay between calls to avoid rate limiting
-              Thread.sleep(pauseMs);
-            } catch (InterruptedException e) {
-              Thread.currentThread().interrupt();
-              System.err.println("⚠️ Thread interrupted while waiting between Greeks calls");
-              errorCount++;
-            } catch (Exception e) {
-              System.err.println("⚠️ Failed to fetch Greeks for CE: " + ceSymbol + " - " + e.getMessage());
-              e.printStackTrace();
-              errorCount++;
+            String rejected = greeksGuard.tryAcquire();
+            if (rejected != null) {
+              skippedCount++;
+              lastRejection = rejected;
+            } else {
+              System.out.println("  📞 Fetching Greeks for CE: " + ceSymbol);
+              try {
+                JsonObject greeksResponse;
+                try {
+                  greeksResponse = callOptionGreeksMethod(client, ceSymbol, exchange);
+                } catch (Exception e) {
+                  greeksGuard.recordError(errorMessage(e));
+                  throw e;
+                }
+                recordOpenAlgoOutcome(greeksGuard, greeksResponse);
+                System.out.println("  📥 Received Greeks response for " + ceSymbol);
+                addGreeksToOption(ce, greeksResponse);
+                successCount++;
+                
+                // Add configurable delay between calls to avoid rate limiting
+                Thread.sleep(pauseMs);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.err.println("⚠️ Thread interrupted while waiting between Greeks calls");
+                errorCount++;
+              } catch (Exception e) {
+                System.err.println("⚠️ Failed to fetch Greeks for CE: " + ceSymbol + " - " + errorMessage(e));
+                e.printStackTrace();
+                errorCount++;
+              }
             }
           }
         }
@@ -218,29 +394,45 @@ public class LtpCalculatorActivitiesImpl implements LtpCalculatorActivities {
           if (pe.has("symbol") && !pe.get("symbol").isJsonNull()) {
             String peSymbol = pe.get("symbol").getAsString();
             totalOptions++;
-            System.out.println("  📞 Fetching Greeks for PE: " + peSymbol);
-            try {
-              JsonObject greeksResponse = callOptionGreeksMethod(client, peSymbol, exchange);
-              System.out.println("  📥 Received Greeks response for " + peSymbol);
-              addGreeksToOption(pe, greeksResponse);
-              successCount++;
-              
-              // Add configurable delay between calls to avoid rate limiting
-              Thread.sleep(pauseMs);
-            } catch (InterruptedException e) {
-              Thread.currentThread().interrupt();
-              System.err.println("⚠️ Thread interrupted while waiting between Greeks calls");
-              errorCount++;
-            } catch (Exception e) {
-              System.err.println("⚠️ Failed to fetch Greeks for PE: " + peSymbol + " - " + e.getMessage());
-              e.printStackTrace();
-              errorCount++;
+            String rejected = greeksGuard.tryAcquire();
+            if (rejected != null) {
+              skippedCount++;
+              lastRejection = rejected;
+            } else {
+              System.out.println("  📞 Fetching Greeks for PE: " + peSymbol);
+              try {
+                JsonObject greeksResponse;
+                try {
+                  greeksResponse = callOptionGreeksMethod(client, peSymbol, exchange);
+                } catch (Exception e) {
+                  greeksGuard.recordError(errorMessage(e));
+                  throw e;
+                }
+                recordOpenAlgoOutcome(greeksGuard, greeksResponse);
+                System.out.println("  📥 Received Greeks response for " + peSymbol);
+                addGreeksToOption(pe, greeksResponse);
+                successCount++;
+                
+                // Add configurable delay between calls to avoid rate limiting
+                Thread.sleep(pauseMs);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.err.println("⚠️ Thread interrupted while waiting between Greeks calls");
+                errorCount++;
+              } catch (Exception e) {
+                System.err.println("⚠️ Failed to fetch Greeks for PE: " + peSymbol + " - " + errorMessage(e));
+                e.printStackTrace();
+                errorCount++;
+              }
             }
           }
         }
       }
       
-      System.out.println("📊 Greeks enhancement complete: " + successCount + "/" + totalOptions + " successful, " + errorCount + " errors");
+      System.out.println("📊 Greeks enhancement complete: " + successCount + "/" + totalOptions + " successful, " + errorCount + " errors, " + skippedCount + " skipped");
+      if (skippedCount > 0) {
+        System.out.println("⛔ Skipped Greeks for " + skippedCount + " options: " + lastRejection);
+      }
     } catch (Exception e) {
       System.err.println("⚠️ Error enhancing response with Greeks: " + e.getMessage());
       e.printStackTrace();
@@ -277,20 +469,12 @@ public class LtpCalculatorActivitiesImpl implements LtpCalculatorActivities {
     }
   }
   
-  private Connection getDbConnection() throws Exception {
+  private static synchronized Connection getDbConnection() throws Exception {
     if (dbConnection == null || dbConnection.isClosed()) {
-      // Get database connection details from environment variables
-      String dbHost = System.getenv().getOrDefault("DB_HOST", "localhost");
-      String dbPort = System.getenv().getOrDefault("DB_PORT", "5432");
-      String dbName = System.getenv().getOrDefault("DB_NAME", "pgdb");
-      String dbUser = System.getenv().getOrDefault("DB_USER", "pguser");
-      String dbPassword = System.getenv().getOrDefault("DB_PASSWORD", "pgpass");
-      
-      // PostgreSQL/Citus connection URL
-      String dbUrl = "jdbc:postgresql://" + dbHost + ":" + dbPort + "/" + dbName;
-      
-      dbConnection = DriverManager.getConnection(dbUrl, dbUser, dbPassword);
-      System.out.println("✅ Database connection established: " + dbHost + ":" + dbPort + "/" + dbName);
+      if (dbConnection == null) {
+        WorkerResources.shared().register("ltp-db-connection", LtpCalculatorActivitiesImpl::closeDbConnection);
+      }
+      dbConnection = openDbConnection();
       
       // Create table if it doesn't exist
       createTableIfNotExists();
@@ -298,11 +482,65 @@ public class LtpCalculatorActivitiesImpl implements LtpCalculatorActivities {
     return dbConnection;
   }
   
-  private void createTableIfNotExists() {
+  /**
+   * Open a new connection from the shared DataSource (DB_* env). The write-behind writer holds its own so it
+   * never shares one with activities.
+   */
+  static Connection openDbConnection() throws java.sql.SQLException {
+    Connection connection = WorkerResources.shared().dataSource().getConnection();
+    System.out.println("✅ Database connection established: " + WorkerResources.shared().dataSourceDescription());
+    return connection;
+  }
+  
+  private static synchronized void closeDbConnection() throws java.sql.SQLException {
+    if (dbConnection != null && !dbConnection.isClosed()) {
+      dbConnection.close();
+    }
+  }
+  
+  /** Write-behind writer when DB_WRITE_BEHIND_ENABLED is set, created on first use; null means write inline. */
+  private static synchronized OptionChainWriteBehind getWriteBehind() {
+    if (writeBehind == null && OptionChainWriteBehind.isEnabledInEnv()) {
+      // getDbConnection() first so the writer's inserts find the table (and today's partition)
+      writeBehind = OptionChainWriteBehind.fromEnv(() -> {
+        getDbConnection();
+        return openDbConnection();
+      }, partitions, compact);
+      OptionChainWriteBehind writer = writeBehind;
+      WorkerResources.shared().register("optionchain-writer", () -> writer.close(10_000));
+    }
+    return writeBehind;
+  }
+  
+  /** Rollup accumulators when ROLLUP_ENABLED is set (the default), created on first use. */
+  private static synchronized OptionChainRollups getRollups() {
+    if (rollups == null && OptionChainRollups.isEnabledInEnv()) {
+      rollups = OptionChainRollups.fromEnv(LtpCalculatorActivitiesImpl::openDbConnection);
+      OptionChainRollups created = rollups;
+      WorkerResources.shared().register("optionchain-rollups", created::close);
+    }
+    return rollups;
+  }
+  
+  /** Fold a snapshot into the 5m/15m/daily rollups; never fails the caller. */
+  private static void addToRollups(String serverName, String underlying, String expiry, Timestamp timestamp,
+                                   double underlyingLtp, JsonArray chain, OptionChainSummary summary) {
+    try {
+      OptionChainRollups rollupAccumulators = getRollups();
+      if (rollupAccumulators != null) {
+        rollupAccumulators.add(serverName, underlying, expiry, timestamp, underlyingLtp, chain, summary);
+      }
+    } catch (Exception e) {
+      System.err.println("⚠️ Failed to update rollups: " + e.getMessage());
+      // Don't throw - rollups are derived data
+    }
+  }
+  
+  private static void createTableIfNotExists() {
     try {
       // PostgreSQL/Citus compatible table creation
       String createTableSql = "CREATE TABLE IF NOT EXISTS openalgo_optionchain (" +
-          "id BIGSERIAL PRIMARY KEY, " +
+          partitions.idColumn() +
           "server_name VARCHAR(100) NOT NULL, " +
           "underlying VARCHAR(50) NOT NULL, " +
           "underlying_ltp NUMERIC(15, 2), " +
@@ -354,21 +592,38 @@ public class LtpCalculatorActivitiesImpl implements LtpCalculatorActivities {
           "lotsize INTEGER, " +
           "tick_size NUMERIC(10, 2), " +
           "datetime TIMESTAMP NOT NULL" +
-          ")";
+          ")" + partitions.partitionClause();
       
       try (java.sql.Statement stmt = dbConnection.createStatement()) {
         stmt.execute(createTableSql);
         System.out.println("✅ Table 'openalgo_optionchain' created or already exists");
         
-        // Create indexes separately (PostgreSQL syntax)
-        createIndexIfNotExists("idx_server_underlying_expiry", "openalgo_optionchain", "server_name, underlying, expiry_date");
-        createIndexIfNotExists("idx_datetime", "openalgo_optionchain", "datetime");
-        createIndexIfNotExists("idx_strike", "openalgo_optionchain", "strike");
-        createIndexIfNotExists("idx_ce_symbol", "openalgo_optionchain", "ce_symbol");
-        createIndexIfNotExists("idx_pe_symbol", "openalgo_optionchain", "pe_symbol");
+        if (partitions.isEnabled() && OptionChainPartitions.isPartitioned(dbConnection)) {
+          // Partitions are already pruned by day, so one index serves both inserts and previous-OI lookups
+          createIndexIfNotExists("idx_server_underlying_expiry_datetime", "openalgo_optionchain", "server_name, underlying, expiry_date, datetime");
+          createSnapshotKeyIfNotExists("uq_optionchain_snapshot", "openalgo_optionchain", "server_name, underlying, expiry_date, strike, datetime");
+          partitions.distributeIfRequested(dbConnection);
+          partitions.maintain(dbConnection, java.time.LocalDate.now());
+        } else {
+          if (partitions.isEnabled()) {
+            System.out.println("⚠️ DB_PARTITIONING_ENABLED is set but 'openalgo_optionchain' already exists unpartitioned - keeping it as is");
+          }
+          // Create indexes separately (PostgreSQL syntax)
+          createIndexIfNotExists("idx_server_underlying_expiry", "openalgo_optionchain", "server_name, underlying, expiry_date");
+          createIndexIfNotExists("idx_datetime", "openalgo_optionchain", "datetime");
+          createIndexIfNotExists("idx_strike", "openalgo_optionchain", "strike");
+          createIndexIfNotExists("idx_ce_symbol", "openalgo_optionchain", "ce_symbol");
+          createIndexIfNotExists("idx_pe_symbol", "openalgo_optionchain", "pe_symbol");
+          createSnapshotKeyIfNotExists("uq_optionchain_snapshot", "openalgo_optionchain", "server_name, underlying, expiry_date, strike, datetime");
+          partitions.distributeIfRequested(dbConnection);
+        }
         
         // Create summary table for aggregated data
         createSummaryTableIfNotExists();
+        
+        if (compact.writesCompact()) {
+          compact.createTablesIfNotExists(dbConnection);
+        }
       }
     } catch (Exception e) {
       System.err.println("⚠️ Failed to create table: " + e.getMessage());
@@ -377,10 +632,10 @@ public class LtpCalculatorActivitiesImpl implements LtpCalculatorActivities {
     }
   }
   
-  private void createSummaryTableIfNotExists() {
+  private static void createSummaryTableIfNotExists() {
     try {
       String createSummaryTableSql = "CREATE TABLE IF NOT EXISTS openalgo_optionchain_summary (" +
-          "id BIGSERIAL PRIMARY KEY, " +
+          partitions.idColumn(false) +
           "server_name VARCHAR(100) NOT NULL, " +
           "underlying VARCHAR(50) NOT NULL, " +
           "underlying_ltp NUMERIC(15, 2), " +
@@ -406,16 +661,25 @@ public class LtpCalculatorActivitiesImpl implements LtpCalculatorActivities {
           "below_ce_oi BIGINT DEFAULT 0, " +
           "below_pe_oi BIGINT DEFAULT 0, " +
           "below_ce_oi_change BIGINT DEFAULT 0, " +
-          "below_pe_oi_change BIGINT DEFAULT 0" +
+          "below_pe_oi_change BIGINT DEFAULT 0, " +
+          // Analytics
+          String.join(", ", SUMMARY_ANALYTICS_COLUMNS) +
           ")";
       
       try (java.sql.Statement stmt = dbConnection.createStatement()) {
         stmt.execute(createSummaryTableSql);
         System.out.println("✅ Table 'openalgo_optionchain_summary' created or already exists");
         
+        // Tables created before the analytics columns existed
+        for (String column : SUMMARY_ANALYTICS_COLUMNS) {
+          stmt.execute("ALTER TABLE openalgo_optionchain_summary ADD COLUMN IF NOT EXISTS " + column);
+        }
+        
         // Create indexes for summary table
         createIndexIfNotExists("idx_summary_server_underlying_expiry", "openalgo_optionchain_summary", "server_name, underlying, expiry_date");
         createIndexIfNotExists("idx_summary_datetime", "openalgo_optionchain_summary", "datetime");
+        createSnapshotKeyIfNotExists("uq_summary_snapshot", "openalgo_optionchain_summary", "server_name, underlying, expiry_date, datetime");
+        partitions.distributeIfRequested(dbConnection, "openalgo_optionchain_summary");
       }
     } catch (Exception e) {
       System.err.println("⚠️ Failed to create summary table: " + e.getMessage());
@@ -423,7 +687,7 @@ public class LtpCalculatorActivitiesImpl implements LtpCalculatorActivities {
     }
   }
   
-  private void createIndexIfNotExists(String indexName, String tableName, String columns) {
+  private static void createIndexIfNotExists(String indexName, String tableName, String columns) {
     try {
       String createIndexSql = "CREATE INDEX IF NOT EXISTS " + indexName + " ON " + tableName + " (" + columns + ")";
       try (java.sql.Statement stmt = dbConnection.createStatement()) {
@@ -435,13 +699,35 @@ public class LtpCalculatorActivitiesImpl implements LtpCalculatorActivities {
     }
   }
   
-  private void storeChainInDatabase(String serverName, String indexName, String expiry, JsonObject response) {
+  /**
+   * Unique index the inserts' ON CONFLICT DO NOTHING relies on to skip an already stored snapshot. Fails on a
+   * table that already holds duplicate snapshots; inserts then keep working, just without the check.
+   */
+  private static void createSnapshotKeyIfNotExists(String indexName, String tableName, String columns) {
+    try {
+      try (java.sql.Statement stmt = dbConnection.createStatement()) {
+        stmt.execute("CREATE UNIQUE INDEX IF NOT EXISTS " + indexName + " ON " + tableName + " (" + columns + ")");
+      }
+    } catch (Exception e) {
+      System.err.println("⚠️ Failed to create unique index " + indexName + " (duplicate snapshots in " + tableName
+          + "? retried snapshots will be stored twice until they are removed): " + e.getMessage());
+      // Don't throw - continue even if index creation fails
+    }
+  }
+  
+  private void storeChainInDatabase(RedisSnapshotBatch redisBatch, String serverName, String indexName, String expiry,
+                                    JsonObject response, Timestamp timestamp) {
+    OptionChainWriteBehind writer = getWriteBehind();
+    if (writer != null) {
+      storeChainWriteBehind(redisBatch, writer, serverName, indexName, expiry, response, timestamp);
+      return;
+    }
     try {
       Connection conn = getDbConnection();
-      
-      // Get current datetime with full precision
-      LocalDateTime now = LocalDateTime.now();
-      Timestamp timestamp = Timestamp.valueOf(now);
+      if (!partitions.ensureDay(conn, timestamp.toLocalDateTime().toLocalDate())) {
+        System.err.println("⚠️ Snapshot at " + timestamp + " is older than DB_PARTITION_RETENTION_DAYS, not stored in database");
+        return;
+      }
       
       // Extract chain data
       JsonArray chain = response.getAsJsonArray("chain");
@@ -450,44 +736,20 @@ public class LtpCalculatorActivitiesImpl implements LtpCalculatorActivities {
       double underlyingPrevClose = response.has("underlying_prev_close") ? response.get("underlying_prev_close").getAsDouble() : 0.0;
       int atmStrike = response.has("atm_strike") ? response.get("atm_strike").getAsInt() : 0;
       
-      // Prepare insert statement - CE and PE in single row
-      String insertSql = "INSERT INTO openalgo_optionchain (" +
-          "server_name, underlying, underlying_ltp, underlying_prev_close, expiry_date, atm_strike, strike, " +
-          // CE fields
-          "ce_symbol, ce_label, ce_ltp, ce_bid, ce_ask, ce_open, ce_high, ce_low, ce_prev_close, " +
-          "ce_volume, ce_oi, ce_spot_price, ce_option_price, ce_implied_volatility, ce_days_to_expiry, " +
-          "ce_delta, ce_gamma, ce_theta, ce_vega, " +
-          // PE fields
-          "pe_symbol, pe_label, pe_ltp, pe_bid, pe_ask, pe_open, pe_high, pe_low, pe_prev_close, " +
-          "pe_volume, pe_oi, pe_spot_price, pe_option_price, pe_implied_volatility, pe_days_to_expiry, " +
-          "pe_delta, pe_gamma, pe_theta, pe_vega, " +
-          // Common fields
-          "lotsize, tick_size, datetime" +
-          ") VALUES (?, ?, ?, ?, ?, ?, ?, " +
-          "?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, " +
-          "?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, " +
-          "?, ?, ?)";
-      
-      PreparedStatement pstmt = conn.prepareStatement(insertSql);
-      
-      // Initialize aggregation counters
-      long totalCeVolume = 0, totalPeVolume = 0;
-      long totalCeOi = 0, totalPeOi = 0;
-      long totalCeOiChange = 0, totalPeOiChange = 0;
-      
-      long aboveCeVolume = 0, abovePeVolume = 0;
-      long aboveCeOi = 0, abovePeOi = 0;
-      long aboveCeOiChange = 0, abovePeOiChange = 0;
-      
-      long belowCeVolume = 0, belowPeVolume = 0;
-      long belowCeOi = 0, belowPeOi = 0;
-      long belowCeOiChange = 0, belowPeOiChange = 0;
+      // Prepare insert statements - CE and PE in single row, wide and/or compact per DB_OPTIONCHAIN_LAYOUT
+      PreparedStatement pstmt = compact.writesWide() ? conn.prepareStatement(INSERT_CHAIN_SQL) : null;
+      PreparedStatement compactStmt = compact.writesCompact() ? conn.prepareStatement(OptionChainCompactTable.INSERT_SQL) : null;
+      int seriesId = compact.writesCompact() ? compact.seriesId(conn, serverName, underlying, expiry) : 0;
       
       int insertedRows = 0;
       
-      // Query previous OI values for change calculation
-      java.util.Map<String, Long> previousCeOi = getPreviousOi(conn, serverName, underlying, expiry, "ce");
-      java.util.Map<String, Long> previousPeOi = getPreviousOi(conn, serverName, underlying, expiry, "pe");
+      // Query previous OI values for change calculation (snapshots before this one, so a retry compares alike)
+      java.util.Map<String, Long> previousCeOi = new java.util.HashMap<>();
+      java.util.Map<String, Long> previousPeOi = new java.util.HashMap<>();
+      loadPreviousOi(conn, serverName, underlying, expiry, chain, timestamp, previousCeOi, previousPeOi);
+      
+      // Aggregate volume / OI / OI change while binding rows
+      OptionChainSummary summary = new OptionChainSummary(underlyingLtp);
       
       for (int i = 0; i < chain.size(); i++) {
         com.google.gson.JsonObject chainEntry = chain.get(i).getAsJsonObject();
@@ -504,74 +766,44 @@ public class LtpCalculatorActivitiesImpl implements LtpCalculatorActivities {
           pe = chainEntry.getAsJsonObject("pe");
         }
         
-        // Extract values for aggregation
-        long ceVolume = (ce != null && ce.has("volume") && !ce.get("volume").isJsonNull()) 
-            ? ce.get("volume").getAsLong() : 0;
-        long peVolume = (pe != null && pe.has("volume") && !pe.get("volume").isJsonNull()) 
-            ? pe.get("volume").getAsLong() : 0;
-        long ceOi = (ce != null && ce.has("oi") && !ce.get("oi").isJsonNull()) 
-            ? ce.get("oi").getAsLong() : 0;
-        long peOi = (pe != null && pe.has("oi") && !pe.get("oi").isJsonNull()) 
-            ? pe.get("oi").getAsLong() : 0;
-        
-        // Calculate change in OI (current OI - previous OI)
-        String ceSymbol = (ce != null && ce.has("symbol") && !ce.get("symbol").isJsonNull()) 
-            ? ce.get("symbol").getAsString() : null;
-        String peSymbol = (pe != null && pe.has("symbol") && !pe.get("symbol").isJsonNull()) 
-            ? pe.get("symbol").getAsString() : null;
-        
-        long prevCeOi = (ceSymbol != null && previousCeOi.containsKey(ceSymbol)) 
-            ? previousCeOi.get(ceSymbol) : 0;
-        long prevPeOi = (peSymbol != null && previousPeOi.containsKey(peSymbol)) 
-            ? previousPeOi.get(peSymbol) : 0;
-        
-        long ceOiChange = ceOi - prevCeOi;
-        long peOiChange = peOi - prevPeOi;
-        
-        // Add to total sums
-        totalCeVolume += ceVolume;
-        totalPeVolume += peVolume;
-        totalCeOi += ceOi;
-        totalPeOi += peOi;
-        totalCeOiChange += ceOiChange;
-        totalPeOiChange += peOiChange;
-        
-        // Check if strike is above or below underlying
-        boolean isAboveUnderlying = strike > underlyingLtp;
-        boolean isBelowUnderlying = strike < underlyingLtp;
-        
-        if (isAboveUnderlying) {
-          aboveCeVolume += ceVolume;
-          abovePeVolume += peVolume;
-          aboveCeOi += ceOi;
-          abovePeOi += peOi;
-          aboveCeOiChange += ceOiChange;
-          abovePeOiChange += peOiChange;
-        } else if (isBelowUnderlying) {
-          belowCeVolume += ceVolume;
-          belowPeVolume += peVolume;
-          belowCeOi += ceOi;
-          belowPeOi += peOi;
-          belowCeOiChange += ceOiChange;
-          belowPeOiChange += peOiChange;
-        }
+        summary.addStrike(chainEntry, previousCeOi, previousPeOi);
         
         // Insert both CE and PE in single row
-        insertStrikeRow(pstmt, serverName, underlying, underlyingLtp, underlyingPrevClose, expiry, 
-                       atmStrike, strike, ce, pe, timestamp);
+        if (pstmt != null) {
+          insertStrikeRow(pstmt, serverName, underlying, underlyingLtp, underlyingPrevClose, expiry, 
+                         atmStrike, strike, ce, pe, timestamp);
+        }
+        if (compactStmt != null) {
+          OptionChainCompactTable.addStrikeRow(compactStmt, seriesId, timestamp, underlyingLtp, underlyingPrevClose,
+              atmStrike, strike, ce, pe);
+        }
         insertedRows++;
       }
       
-      pstmt.executeBatch();
-      pstmt.close();
+      // Summary is complete once the rows are bound: write it to Redis with the chain before any insert runs
+      storeSummaryInRedis(redisBatch, serverName, indexName, expiry, underlying, timestamp, summary);
+      flushRedis(redisBatch);
+      
+      int skippedRows = 0;
+      if (pstmt != null) {
+        skippedRows = countSkipped(pstmt.executeBatch());
+        pstmt.close();
+      }
+      if (compactStmt != null) {
+        int skippedCompact = countSkipped(compactStmt.executeBatch());
+        compactStmt.close();
+        skippedRows = pstmt != null ? skippedRows : skippedCompact;
+      }
       
-      System.out.println("  ✅ Inserted " + insertedRows + " rows into database");
+      if (skippedRows > 0) {
+        System.out.println("  ♻️ Snapshot already stored: skipped " + skippedRows + " of " + insertedRows + " rows");
+      } else {
+        System.out.println("  ✅ Inserted " + insertedRows + " rows into database");
+      }
       
       // Store aggregated summary data
-      storeSummaryData(conn, serverName, indexName, underlying, underlyingLtp, expiry, timestamp,
-          totalCeVolume, totalPeVolume, totalCeOi, totalPeOi, totalCeOiChange, totalPeOiChange,
-          aboveCeVolume, abovePeVolume, aboveCeOi, abovePeOi, aboveCeOiChange, abovePeOiChange,
-          belowCeVolume, belowPeVolume, belowCeOi, belowPeOi, belowCeOiChange, belowPeOiChange);
+      storeSummaryData(conn, serverName, underlying, expiry, timestamp, summary);
+      addToRollups(serverName, underlying, expiry, timestamp, underlyingLtp, chain, summary);
       
     } catch (Exception e) {
       System.err.println("⚠️ Failed to store chain in database: " + e.getMessage());
@@ -580,7 +812,79 @@ public class LtpCalculatorActivitiesImpl implements LtpCalculatorActivities {
     }
   }
   
-  private void insertStrikeRow(PreparedStatement pstmt, String serverName, String underlying, 
+  /**
+   * Write-behind variant of {@link #storeChainInDatabase}: the summary is computed against the OI this worker saw
+   * last (the DB may not have caught up yet) and flushed to Redis with the chain; the rows are handed to the writer.
+   */
+  private void storeChainWriteBehind(RedisSnapshotBatch redisBatch, OptionChainWriteBehind writer, String serverName,
+                                     String indexName, String expiry, JsonObject response, Timestamp timestamp) {
+    try {
+      JsonArray chain = response.getAsJsonArray("chain");
+      String underlying = response.has("underlying") ? response.get("underlying").getAsString() : indexName;
+      double underlyingLtp = response.has("underlying_ltp") ? response.get("underlying_ltp").getAsDouble() : 0.0;
+      double underlyingPrevClose = response.has("underlying_prev_close") ? response.get("underlying_prev_close").getAsDouble() : 0.0;
+      int atmStrike = response.has("atm_strike") ? response.get("atm_strike").getAsInt() : 0;
+      
+      String oiKey = serverName + "|" + underlying + "|" + expiry;
+      SnapshotOi last = lastOi.get(oiKey);
+      java.util.Map<String, Long> previousCeOi;
+      java.util.Map<String, Long> previousPeOi;
+      if (last != null && last.timestamp.equals(timestamp)) {
+        // Retry of the snapshot seen last: compare against what that attempt compared against
+        previousCeOi = last.previousCeOi;
+        previousPeOi = last.previousPeOi;
+      } else if (last != null) {
+        previousCeOi = last.ceOi;
+        previousPeOi = last.peOi;
+      } else {
+        // First snapshot for this key in this process: seed from the DB if it is reachable
+        previousCeOi = new java.util.HashMap<>();
+        previousPeOi = new java.util.HashMap<>();
+        try {
+          loadPreviousOi(getDbConnection(), serverName, underlying, expiry, chain, timestamp, previousCeOi, previousPeOi);
+        } catch (Exception e) {
+          System.err.println("⚠️ Database unavailable for previous OI, OI change starts from zero: " + e.getMessage());
+          previousCeOi = new java.util.HashMap<>();
+          previousPeOi = new java.util.HashMap<>();
+        }
+      }
+      
+      OptionChainSummary summary = new OptionChainSummary(underlyingLtp);
+      java.util.Map<String, Long> currentCeOi = new java.util.HashMap<>();
+      java.util.Map<String, Long> currentPeOi = new java.util.HashMap<>();
+      for (int i = 0; i < chain.size(); i++) {
+        JsonObject chainEntry = chain.get(i).getAsJsonObject();
+        summary.addStrike(chainEntry, previousCeOi, previousPeOi);
+        collectOi(chainEntry, "ce", currentCeOi);
+        collectOi(chainEntry, "pe", currentPeOi);
+      }
+      lastOi.put(oiKey, new SnapshotOi(timestamp, currentCeOi, currentPeOi, previousCeOi, previousPeOi));
+      
+      storeSummaryInRedis(redisBatch, serverName, indexName, expiry, underlying, timestamp, summary);
+      flushRedis(redisBatch);
+      addToRollups(serverName, underlying, expiry, timestamp, underlyingLtp, chain, summary);
+      writer.submit(new OptionChainWriteBehind.Snapshot(serverName, underlying, underlyingLtp, underlyingPrevClose,
+          expiry, atmStrike, chain, timestamp, summary));
+      System.out.println("  📨 Queued " + chain.size() + " rows for database write-behind (pending: " + writer.pending() + ")");
+    } catch (Exception e) {
+      System.err.println("⚠️ Failed to queue chain for database: " + e.getMessage());
+      e.printStackTrace();
+      // Don't throw - continue even if database fails
+    }
+  }
+  
+  private static void collectOi(JsonObject chainEntry, String side, java.util.Map<String, Long> oiBySymbol) {
+    if (!chainEntry.has(side) || !chainEntry.get(side).isJsonObject()) {
+      return;
+    }
+    JsonObject option = chainEntry.getAsJsonObject(side);
+    if (option.has("symbol") && !option.get("symbol").isJsonNull() && option.has("oi") && !option.get("oi").isJsonNull()) {
+      oiBySymbol.put(option.get("symbol").getAsString(), option.get("oi").getAsLong());
+    }
+  }
+  
+  /** Bind one strike row (CE and PE side by side) and add it to the batch. Static so it can be benchmarked. */
+  static void insertStrikeRow(PreparedStatement pstmt, String serverName, String underlying, 
                                double underlyingLtp, double underlyingPrevClose, String expiry, 
                                int atmStrike, int strike, 
                                com.google.gson.JsonObject ce, com.google.gson.JsonObject pe, 
@@ -618,7 +922,7 @@ public class LtpCalculatorActivitiesImpl implements LtpCalculatorActivities {
     pstmt.addBatch();
   }
   
-  private void setOptionFields(PreparedStatement pstmt, int[] paramIndex, com.google.gson.JsonObject option) throws Exception {
+  private static void setOptionFields(PreparedStatement pstmt, int[] paramIndex, com.google.gson.JsonObject option) throws Exception {
     
     if (option == null) {
       // Set all fields to null
@@ -678,7 +982,39 @@ public class LtpCalculatorActivitiesImpl implements LtpCalculatorActivities {
     pstmt.setDouble(paramIndex[0]++, vega);
   }
   
-  private java.util.Map<String, Long> getPreviousOi(Connection conn, String serverName, String underlying, String expiry, String optionType) {
+  /**
+   * Latest CE and PE OI per symbol from snapshots before the given one, into the two maps: from
+   * openalgo_optionchain, or from the compact table (by strike) when that is the only one written.
+   */
+  private void loadPreviousOi(Connection conn, String serverName, String underlying, String expiry, JsonArray chain,
+                              Timestamp before, java.util.Map<String, Long> previousCeOi,
+                              java.util.Map<String, Long> previousPeOi) throws java.sql.SQLException {
+    if (compact.readsCompact()) {
+      compact.previousOi(conn, compact.seriesId(conn, serverName, underlying, expiry), before, chain, previousCeOi, previousPeOi);
+    } else {
+      previousCeOi.putAll(getPreviousOi(conn, serverName, underlying, expiry, "ce", before));
+      previousPeOi.putAll(getPreviousOi(conn, serverName, underlying, expiry, "pe", before));
+    }
+  }
+  
+  /**
+   * Latest OI per symbol from snapshots before the given one. Looks at that day's rows first so a partitioned
+   * table only scans one partition; the first snapshot of the day falls back to the few days before it
+   * ({@link OptionChainPartitions#previousOiFloor}), never the whole table.
+   */
+  private java.util.Map<String, Long> getPreviousOi(Connection conn, String serverName, String underlying, String expiry,
+                                                    String optionType, Timestamp before) {
+    java.util.Map<String, Long> previousOi = getPreviousOi(conn, serverName, underlying, expiry, optionType,
+        OptionChainPartitions.startOfDay(before), before);
+    if (previousOi.isEmpty()) {
+      previousOi = getPreviousOi(conn, serverName, underlying, expiry, optionType,
+          OptionChainPartitions.previousOiFloor(before), before);
+    }
+    return previousOi;
+  }
+  
+  private java.util.Map<String, Long> getPreviousOi(Connection conn, String serverName, String underlying, String expiry,
+                                                    String optionType, Timestamp since, Timestamp before) {
     java.util.Map<String, Long> previousOi = new java.util.HashMap<>();
     try {
       // Get the most recent OI values for each symbol from the previous record
@@ -692,7 +1028,7 @@ public class LtpCalculatorActivitiesImpl implements LtpCalculatorActivities {
           "  SELECT " + symbolColumn + ", " + oiColumn + ", " +
           "    ROW_NUMBER() OVER (PARTITION BY " + symbolColumn + " ORDER BY datetime DESC) as rn " +
           "  FROM openalgo_optionchain " +
-          "  WHERE server_name = ? AND underlying = ? AND expiry_date = ? " +
+          "  WHERE server_name = ? AND underlying = ? AND expiry_date = ? AND datetime < ? AND datetime >= ? " +
           "    AND " + symbolColumn + " IS NOT NULL " +
           ") ranked " +
           "WHERE rn = 1";
@@ -701,6 +1037,8 @@ public class LtpCalculatorActivitiesImpl implements LtpCalculatorActivities {
         pstmt.setString(1, serverName);
         pstmt.setString(2, underlying);
         pstmt.setString(3, expiry);
+        pstmt.setTimestamp(4, before);
+        pstmt.setTimestamp(5, since);
         
         try (java.sql.ResultSet rs = pstmt.executeQuery()) {
           while (rs.next()) {
@@ -719,131 +1057,115 @@ public class LtpCalculatorActivitiesImpl implements LtpCalculatorActivities {
     return previousOi;
   }
   
-  private void storeSummaryData(Connection conn, String serverName, String indexName, String underlying, double underlyingLtp, 
-                                String expiry, Timestamp timestamp,
-                                long totalCeVolume, long totalPeVolume, long totalCeOi, long totalPeOi, 
-                                long totalCeOiChange, long totalPeOiChange,
-                                long aboveCeVolume, long abovePeVolume, long aboveCeOi, long abovePeOi, 
-                                long aboveCeOiChange, long abovePeOiChange,
-                                long belowCeVolume, long belowPeVolume, long belowCeOi, long belowPeOi, 
-                                long belowCeOiChange, long belowPeOiChange) {
+  private void storeSummaryData(Connection conn, String serverName, String underlying, String expiry,
+                                Timestamp timestamp, OptionChainSummary summary) {
     try {
-      String insertSummarySql = "INSERT INTO openalgo_optionchain_summary (" +
-          "server_name, underlying, underlying_ltp, expiry_date, datetime, " +
-          "total_ce_volume, total_pe_volume, total_ce_oi, total_pe_oi, " +
-          "total_ce_oi_change, total_pe_oi_change, " +
-          "above_ce_volume, above_pe_volume, above_ce_oi, above_pe_oi, " +
-          "above_ce_oi_change, above_pe_oi_change, " +
-          "below_ce_volume, below_pe_volume, below_ce_oi, below_pe_oi, " +
-          "below_ce_oi_change, below_pe_oi_change" +
-          ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-      
-      try (PreparedStatement pstmt = conn.prepareStatement(insertSummarySql)) {
-        int paramIndex = 1;
-        pstmt.setString(paramIndex++, serverName);
-        pstmt.setString(paramIndex++, underlying);
-        pstmt.setDouble(paramIndex++, underlyingLtp);
-        pstmt.setString(paramIndex++, expiry);
-        pstmt.setTimestamp(paramIndex++, timestamp);
-        
-        // Total sums
-        pstmt.setLong(paramIndex++, totalCeVolume);
-        pstmt.setLong(paramIndex++, totalPeVolume);
-        pstmt.setLong(paramIndex++, totalCeOi);
-        pstmt.setLong(paramIndex++, totalPeOi);
-        pstmt.setLong(paramIndex++, totalCeOiChange);
-        pstmt.setLong(paramIndex++, totalPeOiChange);
-        
-        // Above underlying sums
-        pstmt.setLong(paramIndex++, aboveCeVolume);
-        pstmt.setLong(paramIndex++, abovePeVolume);
-        pstmt.setLong(paramIndex++, aboveCeOi);
-        pstmt.setLong(paramIndex++, abovePeOi);
-        pstmt.setLong(paramIndex++, aboveCeOiChange);
-        pstmt.setLong(paramIndex++, abovePeOiChange);
-        
-        // Below underlying sums
-        pstmt.setLong(paramIndex++, belowCeVolume);
-        pstmt.setLong(paramIndex++, belowPeVolume);
-        pstmt.setLong(paramIndex++, belowCeOi);
-        pstmt.setLong(paramIndex++, belowPeOi);
-        pstmt.setLong(paramIndex++, belowCeOiChange);
-        pstmt.setLong(paramIndex++, belowPeOiChange);
+      try (PreparedStatement pstmt = conn.prepareStatement(INSERT_SUMMARY_SQL)) {
+        bindSummaryRow(pstmt, serverName, underlying, expiry, timestamp, summary);
         
-        pstmt.executeUpdate();
-        System.out.println("  ✅ Stored aggregated summary data in database");
-        System.out.println("     Total - CE Volume: " + totalCeVolume + ", PE Volume: " + totalPeVolume + 
-            ", CE OI: " + totalCeOi + ", PE OI: " + totalPeOi);
-        System.out.println("     Above - CE Volume: " + aboveCeVolume + ", PE Volume: " + abovePeVolume + 
-            ", CE OI: " + aboveCeOi + ", PE OI: " + abovePeOi);
-        System.out.println("     Below - CE Volume: " + belowCeVolume + ", PE Volume: " + belowPeVolume + 
-            ", CE OI: " + belowCeOi + ", PE OI: " + belowPeOi);
-      }
-      
-      // Store summary data in Redis
-      storeSummaryInRedis(serverName, indexName, expiry, underlying, underlyingLtp, timestamp,
-          totalCeVolume, totalPeVolume, totalCeOi, totalPeOi, totalCeOiChange, totalPeOiChange,
-          aboveCeVolume, abovePeVolume, aboveCeOi, abovePeOi, aboveCeOiChange, abovePeOiChange,
-          belowCeVolume, belowPeVolume, belowCeOi, belowPeOi, belowCeOiChange, belowPeOiChange);
+        if (pstmt.executeUpdate() == 0) {
+          System.out.println("  ♻️ Summary for this snapshot already stored, skipped");
+        } else {
+          System.out.println("  ✅ Stored aggregated summary data in database");
+        }
+        System.out.println("     Total - CE Volume: " + summary.totalCeVolume + ", PE Volume: " + summary.totalPeVolume + 
+            ", CE OI: " + summary.totalCeOi + ", PE OI: " + summary.totalPeOi);
+        System.out.println("     Above - CE Volume: " + summary.aboveCeVolume + ", PE Volume: " + summary.abovePeVolume + 
+            ", CE OI: " + summary.aboveCeOi + ", PE OI: " + summary.abovePeOi);
+        System.out.println("     Below - CE Volume: " + summary.belowCeVolume + ", PE Volume: " + summary.belowPeVolume + 
+            ", CE OI: " + summary.belowCeOi + ", PE OI: " + summary.belowPeOi);
+        OptionChainAnalytics analytics = summary.analytics();
+        System.out.println("     PCR (OI): " + analytics.pcrOi + ", Max pain: " + analytics.maxPainStrike + 
+            ", ATM straddle: " + analytics.atmStraddle + " @ " + analytics.atmStrike);
+      }
     } catch (Exception e) {
       System.err.println("⚠️ Failed to store summary data: " + e.getMessage());
       e.printStackTrace();
     }
   }
   
-  private void storeSummaryInRedis(String serverName, String indexName, String expiry, String underlying, 
-                                   double underlyingLtp, Timestamp timestamp,
-                                   long totalCeVolume, long totalPeVolume, long totalCeOi, long totalPeOi, 
-                                   long totalCeOiChange, long totalPeOiChange,
-                                   long aboveCeVolume, long abovePeVolume, long aboveCeOi, long abovePeOi, 
-                                   long aboveCeOiChange, long abovePeOiChange,
-                                   long belowCeVolume, long belowPeVolume, long belowCeOi, long belowPeOi, 
-                                   long belowCeOiChange, long belowPeOiChange) {
+  /** Bind one summary row. Static so the write-behind writer can reuse it for batches. */
+  static void bindSummaryRow(PreparedStatement pstmt, String serverName, String underlying, String expiry,
+                             Timestamp timestamp, OptionChainSummary summary) throws java.sql.SQLException {
+    int paramIndex = 1;
+    pstmt.setString(paramIndex++, serverName);
+    pstmt.setString(paramIndex++, underlying);
+    pstmt.setDouble(paramIndex++, summary.getUnderlyingLtp());
+    pstmt.setString(paramIndex++, expiry);
+    pstmt.setTimestamp(paramIndex++, timestamp);
+    
+    // Total sums
+    pstmt.setLong(paramIndex++, summary.totalCeVolume);
+    pstmt.setLong(paramIndex++, summary.totalPeVolume);
+    pstmt.setLong(paramIndex++, summary.totalCeOi);
+    pstmt.setLong(paramIndex++, summary.totalPeOi);
+    pstmt.setLong(paramIndex++, summary.totalCeOiChange);
+    pstmt.setLong(paramIndex++, summary.totalPeOiChange);
+    
+    // Above underlying sums
+    pstmt.setLong(paramIndex++, summary.aboveCeVolume);
+    pstmt.setLong(paramIndex++, summary.abovePeVolume);
+    pstmt.setLong(paramIndex++, summary.aboveCeOi);
+    pstmt.setLong(paramIndex++, summary.abovePeOi);
+    pstmt.setLong(paramIndex++, summary.aboveCeOiChange);
+    pstmt.setLong(paramIndex++, summary.abovePeOiChange);
+    
+    // Below underlying sums
+    pstmt.setLong(paramIndex++, summary.belowCeVolume);
+    pstmt.setLong(paramIndex++, summary.belowPeVolume);
+    pstmt.setLong(paramIndex++, summary.belowCeOi);
+    pstmt.setLong(paramIndex++, summary.belowPeOi);
+    pstmt.setLong(paramIndex++, summary.belowCeOiChange);
+    pstmt.setLong(paramIndex++, summary.belowPeOiChange);
+    
+    // Analytics
+    OptionChainAnalytics analytics = summary.analytics();
+    setNullableDouble(pstmt, paramIndex++, analytics.pcrOi);
+    setNullableDouble(pstmt, paramIndex++, analytics.pcrVolume);
+    if (analytics.maxPainStrike != null) {
+      pstmt.setInt(paramIndex++, analytics.maxPainStrike);
+    } else {
+      pstmt.setNull(paramIndex++, java.sql.Types.INTEGER);
+    }
+    setNullableDouble(pstmt, paramIndex++, analytics.atmStraddle);
+    for (int count : analytics.ceBuildup) {
+      pstmt.setInt(paramIndex++, count);
+    }
+    for (int count : analytics.peBuildup) {
+      pstmt.setInt(paramIndex++, count);
+    }
+  }
+  
+  /** Rows of a batch the database skipped as already stored (update count 0). */
+  static int countSkipped(int[] updateCounts) {
+    int skipped = 0;
+    for (int count : updateCounts) {
+      if (count == 0) {
+        skipped++;
+      }
+    }
+    return skipped;
+  }
+  
+  private static void setNullableDouble(PreparedStatement pstmt, int index, Double value) throws java.sql.SQLException {
+    if (value != null) {
+      pstmt.setDouble(index, value);
+    } else {
+      pstmt.setNull(index, java.sql.Types.DOUBLE);
+    }
+  }
+  
+  private void storeSummaryInRedis(RedisSnapshotBatch redisBatch, String serverName, String indexName, String expiry,
+                                   String underlying, Timestamp timestamp, OptionChainSummary summary) {
     try {
       // Build Redis key for summary
       String redisKey = buildSummaryRedisKey(serverName, indexName, expiry);
       
       // Create JsonObject for summary data
-      JsonObject summaryJson = new JsonObject();
-      summaryJson.addProperty("server_name", serverName);
-      summaryJson.addProperty("underlying", underlying);
-      summaryJson.addProperty("underlying_ltp", underlyingLtp);
-      summaryJson.addProperty("expiry_date", expiry);
-      summaryJson.addProperty("datetime", timestamp.toString());
-      
-      // Total sums
-      JsonObject totalSums = new JsonObject();
-      totalSums.addProperty("ce_volume", totalCeVolume);
-      totalSums.addProperty("pe_volume", totalPeVolume);
-      totalSums.addProperty("ce_oi", totalCeOi);
-      totalSums.addProperty("pe_oi", totalPeOi);
-      totalSums.addProperty("ce_oi_change", totalCeOiChange);
-      totalSums.addProperty("pe_oi_change", totalPeOiChange);
-      summaryJson.add("total", totalSums);
-      
-      // Above underlying sums
-      JsonObject aboveSums = new JsonObject();
-      aboveSums.addProperty("ce_volume", aboveCeVolume);
-      aboveSums.addProperty("pe_volume", abovePeVolume);
-      aboveSums.addProperty("ce_oi", aboveCeOi);
-      aboveSums.addProperty("pe_oi", abovePeOi);
-      aboveSums.addProperty("ce_oi_change", aboveCeOiChange);
-      aboveSums.addProperty("pe_oi_change", abovePeOiChange);
-      summaryJson.add("above_underlying", aboveSums);
-      
-      // Below underlying sums
-      JsonObject belowSums = new JsonObject();
-      belowSums.addProperty("ce_volume", belowCeVolume);
-      belowSums.addProperty("pe_volume", belowPeVolume);
-      belowSums.addProperty("ce_oi", belowCeOi);
-      belowSums.addProperty("pe_oi", belowPeOi);
-      belowSums.addProperty("ce_oi_change", belowCeOiChange);
-      belowSums.addProperty("pe_oi_change", belowPeOiChange);
-      summaryJson.add("below_underlying", belowSums);
-      
-      // Store in Redis using existing method
-      storeInRedis(redisKey, summaryJson);
-      System.out.println("  ✅ Stored summary data in Redis with key: " + redisKey);
+      JsonObject summaryJson = summary.toJson(serverName, underlying, expiry, timestamp.toString());
+      
+      // Queued next to the chain key, written by the snapshot's flush
+      storeInRedis(redisBatch, redisKey, summaryJson, timestamp.getTime());
     } catch (Exception e) {
       System.err.println("⚠️ Failed to store summary in Redis: " + e.getMessage());
       e.printStackTrace();
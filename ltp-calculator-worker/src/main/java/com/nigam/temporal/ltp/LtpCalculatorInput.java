@@ -22,6 +22,7 @@ public class LtpCalculatorInput {
     private String scheduleStartTime;  // Format: "HH:mm" (e.g., "09:07")
     private String scheduleEndTime;     // Format: "HH:mm" (e.g., "15:30")
     private Integer apiCallPauseMs;  // Pause between API calls in milliseconds (default: 500)
+    private Integer snapshotBucketSeconds;  // Snapshot time is workflow time floored to this (default: 60, 0 = exact)
 
     public LtpCalculatorInput() {
     }
@@ -128,6 +129,14 @@ public class LtpCalculatorInput {
         this.apiCallPauseMs = apiCallPauseMs;
     }
 
+    public Integer getSnapshotBucketSeconds() {
+        return snapshotBucketSeconds;
+    }
+
+    public void setSnapshotBucketSeconds(Integer snapshotBucketSeconds) {
+        this.snapshotBucketSeconds = snapshotBucketSeconds;
+    }
+
     public static class Deserializer extends JsonDeserializer<LtpCalculatorInput> {
         @Override
         public LtpCalculatorInput deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
@@ -179,6 +188,9 @@ public class LtpCalculatorInput {
                         Object pauseObj = map.get("apiCallPauseMs");
                         input.setApiCallPauseMs(pauseObj instanceof Number ? ((Number) pauseObj).intValue() : 500);
                     }
+                    if (map.get("snapshotBucketSeconds") instanceof Number) {
+                        input.setSnapshotBucketSeconds(((Number) map.get("snapshotBucketSeconds")).intValue());
+                    }
                     return input;
                 }
             }
@@ -1,5 +1,6 @@
 package com.nigam.temporal.ltp;
 
+import com.nigam.temporal.common.SnapshotTime;
 import io.temporal.activity.ActivityOptions;
 import io.temporal.common.RetryOptions;
 import io.temporal.workflow.Workflow;
@@ -61,6 +62,11 @@ public class LtpCalculatorWorkflowImpl implements LtpCalculatorWorkflow {
     
     // Call the activity to fetch option chain
     Integer apiCallPauseMs = input.getApiCallPauseMs() != null ? input.getApiCallPauseMs() : 500;
+    // Snapshot identity: workflow time (stable across replays) floored to the snapshot bucket, so every retry
+    // of the activity writes the same (server, underlying, expiry, strike, datetime) rows and the duplicates
+    // are skipped, and every index scheduled for the same minute stores the same datetime
+    long snapshotTimeMillis = SnapshotTime.align(Workflow.currentTimeMillis(),
+        SnapshotTime.bucketSeconds(input.getSnapshotBucketSeconds()));
     String result = activities.fetchOptionChain(
         input.getServerName(),
         input.getServerIP(),
@@ -70,7 +76,8 @@ public class LtpCalculatorWorkflowImpl implements LtpCalculatorWorkflow {
         input.getExchange(),
         input.getExpiry(),
         input.getStrikeRange(),
-        apiCallPauseMs
+        apiCallPauseMs,
+        snapshotTimeMillis
     );
     
     System.out.println("LTP Calculation Result: " + result);
@@ -0,0 +1,210 @@
+package com.nigam.temporal.ltp;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.Arrays;
+
+/**
+ * Per-snapshot analytics derived while the summary is aggregated: put/call ratios, max pain, ATM straddle
+ * and OI buildup counts. Strike data is kept in primitive arrays and everything is computed once in
+ * {@link #finish}; max pain sorts the strikes once and sweeps prefix sums, so it is O(n log n) rather than
+ * pricing every strike against every other.
+ *
+ * Buildup classifies each option by the sign of its price change since the previous close and of its OI
+ * change since the previous snapshot:
+ *   price up + OI up = long buildup, price down + OI up = short buildup,
+ *   price down + OI down = long unwinding, price up + OI down = short covering.
+ * Options with no price or OI change are not counted, nor are options without a previous OI (first snapshot
+ * after a cold start, a new strike or expiry), whose whole OI would otherwise read as buildup.
+ */
+public class OptionChainAnalytics {
+
+  static final int LONG_BUILDUP = 0;
+  static final int SHORT_BUILDUP = 1;
+  static final int LONG_UNWINDING = 2;
+  static final int SHORT_COVERING = 3;
+  /** OI change of an option that has no previous OI to compare against; never classified. */
+  static final long NO_PREVIOUS_OI = Long.MIN_VALUE;
+  private static final String[] BUILDUP_NAMES = {"long_buildup", "short_buildup", "long_unwinding", "short_covering"};
+
+  private int size;
+  private int[] strikes = new int[64];
+  private long[] ceOi = new long[64];
+  private long[] peOi = new long[64];
+  private double[] ceLtp = new double[64];
+  private double[] peLtp = new double[64];
+
+  final int[] ceBuildup = new int[4];
+  final int[] peBuildup = new int[4];
+
+  // Results, valid after finish() (or fromJson)
+  Double pcrOi;
+  Double pcrVolume;
+  Integer maxPainStrike;
+  Integer atmStrike;
+  Double atmStraddle;
+  private boolean finished;
+
+  /** Record one strike. Missing LTPs are NaN, an OI change without a previous OI is {@link #NO_PREVIOUS_OI}. */
+  public void addStrike(int strike, long ceOiValue, long peOiValue, double ceLtpValue, double peLtpValue,
+                        double cePriceChange, double pePriceChange, long ceOiChange, long peOiChange) {
+    if (size == strikes.length) {
+      int capacity = size * 2;
+      strikes = Arrays.copyOf(strikes, capacity);
+      ceOi = Arrays.copyOf(ceOi, capacity);
+      peOi = Arrays.copyOf(peOi, capacity);
+      ceLtp = Arrays.copyOf(ceLtp, capacity);
+      peLtp = Arrays.copyOf(peLtp, capacity);
+    }
+    strikes[size] = strike;
+    ceOi[size] = ceOiValue;
+    peOi[size] = peOiValue;
+    ceLtp[size] = ceLtpValue;
+    peLtp[size] = peLtpValue;
+    size++;
+    classify(ceBuildup, cePriceChange, ceOiChange);
+    classify(peBuildup, pePriceChange, peOiChange);
+  }
+
+  /** Compute the ratios, max pain and ATM straddle from the recorded strikes and the summary totals. */
+  public void finish(double underlyingLtp, long totalCeOi, long totalPeOi, long totalCeVolume, long totalPeVolume) {
+    if (finished) {
+      return;
+    }
+    finished = true;
+    pcrOi = totalCeOi > 0 ? (double) totalPeOi / totalCeOi : null;
+    pcrVolume = totalCeVolume > 0 ? (double) totalPeVolume / totalCeVolume : null;
+    maxPainStrike = maxPainStrike(strikes, ceOi, peOi, size);
+
+    int atm = -1;
+    double bestDistance = Double.MAX_VALUE;
+    if (underlyingLtp > 0) {
+      for (int i = 0; i < size; i++) {
+        double distance = Math.abs(strikes[i] - underlyingLtp);
+        if (distance < bestDistance) {
+          bestDistance = distance;
+          atm = i;
+        }
+      }
+    }
+    if (atm >= 0) {
+      atmStrike = strikes[atm];
+      atmStraddle = Double.isNaN(ceLtp[atm]) || Double.isNaN(peLtp[atm]) ? null : ceLtp[atm] + peLtp[atm];
+    }
+  }
+
+  /**
+   * Strike at which option writers pay out least at expiry: argmin over K of
+   * sum(ceOi_i * max(0, K - s_i)) + sum(peOi_i * max(0, s_i - K)). Null when no strike has OI.
+   *
+   * With strikes sorted ascending and K = s_j, the call part is K * C - CS over strikes <= K and the put part
+   * is PS - K * P over strikes > K, where C/P are OI sums and CS/PS are OI * strike sums; one sweep keeps them.
+   */
+  static Integer maxPainStrike(int[] strikes, long[] ceOi, long[] peOi, int size) {
+    if (size == 0) {
+      return null;
+    }
+    // Sort indexes by strike without boxing: strike in the high bits, index in the low bits
+    long[] order = new long[size];
+    long totalPe = 0;
+    long totalPeStrike = 0;
+    for (int i = 0; i < size; i++) {
+      order[i] = ((long) strikes[i] << 32) | i;
+      totalPe += peOi[i];
+      totalPeStrike += peOi[i] * strikes[i];
+    }
+    Arrays.sort(order);
+
+    long ceBelow = 0;
+    long ceStrikeBelow = 0;
+    long peBelow = 0;
+    long peStrikeBelow = 0;
+    long bestPain = Long.MAX_VALUE;
+    Integer best = null;
+    boolean anyOi = false;
+    for (int j = 0; j < size; j++) {
+      int i = (int) order[j];
+      long strike = strikes[i];
+      ceBelow += ceOi[i];
+      ceStrikeBelow += ceOi[i] * strike;
+      peBelow += peOi[i];
+      peStrikeBelow += peOi[i] * strike;
+      anyOi |= ceOi[i] != 0 || peOi[i] != 0;
+      if (j + 1 < size && strikes[(int) order[j + 1]] == strike) {
+        continue; // finish all rows at this strike first
+      }
+      long pain = (strike * ceBelow - ceStrikeBelow) + ((totalPeStrike - peStrikeBelow) - strike * (totalPe - peBelow));
+      if (pain < bestPain) {
+        bestPain = pain;
+        best = (int) strike;
+      }
+    }
+    return anyOi ? best : null;
+  }
+
+  private static void classify(int[] counts, double priceChange, long oiChange) {
+    if (Double.isNaN(priceChange) || priceChange == 0 || oiChange == 0 || oiChange == NO_PREVIOUS_OI) {
+      return;
+    }
+    if (oiChange > 0) {
+      counts[priceChange > 0 ? LONG_BUILDUP : SHORT_BUILDUP]++;
+    } else {
+      counts[priceChange < 0 ? LONG_UNWINDING : SHORT_COVERING]++;
+    }
+  }
+
+  /** "analytics" object of the summary JSON. */
+  public JsonObject toJson() {
+    JsonObject json = new JsonObject();
+    json.addProperty("pcr_oi", pcrOi);
+    json.addProperty("pcr_volume", pcrVolume);
+    json.addProperty("max_pain_strike", maxPainStrike);
+    json.addProperty("atm_strike", atmStrike);
+    json.addProperty("atm_straddle", atmStraddle);
+    json.add("ce_buildup", buildupJson(ceBuildup));
+    json.add("pe_buildup", buildupJson(peBuildup));
+    return json;
+  }
+
+  /** Restore results from {@link #toJson} output; the per-strike arrays are not kept. */
+  public static OptionChainAnalytics fromJson(JsonObject json) {
+    OptionChainAnalytics analytics = new OptionChainAnalytics();
+    analytics.finished = true;
+    if (json == null) {
+      return analytics;
+    }
+    analytics.pcrOi = doubleOrNull(json.get("pcr_oi"));
+    analytics.pcrVolume = doubleOrNull(json.get("pcr_volume"));
+    Double maxPain = doubleOrNull(json.get("max_pain_strike"));
+    analytics.maxPainStrike = maxPain != null ? maxPain.intValue() : null;
+    Double atm = doubleOrNull(json.get("atm_strike"));
+    analytics.atmStrike = atm != null ? atm.intValue() : null;
+    analytics.atmStraddle = doubleOrNull(json.get("atm_straddle"));
+    readBuildup(json.getAsJsonObject("ce_buildup"), analytics.ceBuildup);
+    readBuildup(json.getAsJsonObject("pe_buildup"), analytics.peBuildup);
+    return analytics;
+  }
+
+  private static JsonObject buildupJson(int[] counts) {
+    JsonObject json = new JsonObject();
+    for (int i = 0; i < BUILDUP_NAMES.length; i++) {
+      json.addProperty(BUILDUP_NAMES[i], counts[i]);
+    }
+    return json;
+  }
+
+  private static void readBuildup(JsonObject json, int[] counts) {
+    if (json == null) {
+      return;
+    }
+    for (int i = 0; i < BUILDUP_NAMES.length; i++) {
+      JsonElement value = json.get(BUILDUP_NAMES[i]);
+      counts[i] = value != null && !value.isJsonNull() ? value.getAsInt() : 0;
+    }
+  }
+
+  private static Double doubleOrNull(JsonElement value) {
+    return value != null && !value.isJsonNull() ? value.getAsDouble() : null;
+  }
+}
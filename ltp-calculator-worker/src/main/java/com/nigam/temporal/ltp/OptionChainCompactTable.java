@@ -0,0 +1,343 @@
+package com.nigam.temporal.ltp;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact layout of option chain rows, openalgo_optionchain_compact:
+ *   - server / underlying / expiry are a dictionary id (openalgo_optionchain_series) instead of three VARCHARs
+ *   - prices are INTEGER ticks of 0.01 (paise), IV / days to expiry / Greeks are REAL, volume and OI BIGINT
+ *   - a missing value is NULL, not 0.0 (an underlying, ATM strike or lot size of 0 is stored as NULL too)
+ *   - no symbol or label columns: within a series a contract is its strike and side
+ *   - fixed-width columns ordered 8-byte first, then 4-byte, so rows carry no alignment padding
+ *   - PRIMARY KEY (series_id, datetime, strike) is both the snapshot key and the only index
+ * View openalgo_optionchain_compact_v decodes it back to names and rupees.
+ *
+ * Env DB_OPTIONCHAIN_LAYOUT: wide (default, openalgo_optionchain only), dual (both tables; for migrating
+ * readers) or compact (compact only; previous OI is then read from it by strike). See database_schema.sql
+ * for the DDL and a backfill from the wide table.
+ */
+public class OptionChainCompactTable {
+
+  public enum Layout { WIDE, DUAL, COMPACT }
+
+  static final String TABLE = "openalgo_optionchain_compact";
+  static final String SERIES_TABLE = "openalgo_optionchain_series";
+  static final String VIEW = TABLE + "_v";
+  /** Ticks per rupee. INTEGER holds prices up to about 21.4 million; anything larger is stored as NULL. */
+  static final int PRICE_SCALE = 100;
+
+  private static final String[] TICK_FIELDS = {"ltp", "bid", "ask", "open", "high", "low", "prev_close", "spot_price", "option_price"};
+  private static final String[] REAL_FIELDS = {"implied_volatility", "days_to_expiry"};
+  private static final String[] GREEK_FIELDS = {"delta", "gamma", "theta", "vega"};
+  private static final String[] SIDES = {"ce", "pe"};
+
+  /** Insert for one strike row; bound by {@link #addStrikeRow}. Already stored snapshots are skipped. */
+  static final String INSERT_SQL = buildInsertSql();
+
+  private final Layout layout;
+  // (server|underlying|expiry) -> series_id; only ids read back from the table are cached
+  private final Map<String, Integer> seriesIds = new ConcurrentHashMap<>();
+
+  public OptionChainCompactTable(Layout layout) {
+    this.layout = layout;
+  }
+
+  public static OptionChainCompactTable fromEnv() {
+    String name = System.getenv().getOrDefault("DB_OPTIONCHAIN_LAYOUT", "wide").trim().toUpperCase(Locale.ROOT);
+    try {
+      return new OptionChainCompactTable(Layout.valueOf(name));
+    } catch (IllegalArgumentException e) {
+      System.err.println("⚠️ Unknown DB_OPTIONCHAIN_LAYOUT '" + name + "', using wide");
+      return new OptionChainCompactTable(Layout.WIDE);
+    }
+  }
+
+  public Layout layout() {
+    return layout;
+  }
+
+  /** True unless the layout is compact only. */
+  public boolean writesWide() {
+    return layout != Layout.COMPACT;
+  }
+
+  public boolean writesCompact() {
+    return layout != Layout.WIDE;
+  }
+
+  /** Previous-OI lookups use the compact table when the wide one is no longer written. */
+  public boolean readsCompact() {
+    return layout == Layout.COMPACT;
+  }
+
+  /** Create the series dictionary, the compact table and its decoding view. */
+  public void createTablesIfNotExists(Connection conn) throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("CREATE TABLE IF NOT EXISTS " + SERIES_TABLE + " (" +
+          "series_id SERIAL PRIMARY KEY, " +
+          "server_name VARCHAR(100) NOT NULL, " +
+          "underlying VARCHAR(50) NOT NULL, " +
+          "expiry_date VARCHAR(20) NOT NULL, " +
+          "UNIQUE (server_name, underlying, expiry_date))");
+      stmt.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " (" +
+          "datetime TIMESTAMP NOT NULL, " +
+          "ce_volume BIGINT, ce_oi BIGINT, pe_volume BIGINT, pe_oi BIGINT, " +
+          "series_id INTEGER NOT NULL, " +
+          "strike INTEGER NOT NULL, " +
+          "atm_strike INTEGER, lotsize INTEGER, tick_size INTEGER, " +
+          "underlying_ltp INTEGER, underlying_prev_close INTEGER, " +
+          sideColumnsDdl("ce") + ", " +
+          sideColumnsDdl("pe") + ", " +
+          "PRIMARY KEY (series_id, datetime, strike))");
+      stmt.execute("CREATE OR REPLACE VIEW " + VIEW + " AS SELECT " +
+          "s.server_name, s.underlying, s.expiry_date, c.datetime, c.strike, c.atm_strike, " +
+          "c.underlying_ltp / " + PRICE_SCALE + ".0 AS underlying_ltp, " +
+          "c.underlying_prev_close / " + PRICE_SCALE + ".0 AS underlying_prev_close, " +
+          sideColumnsView("ce") + ", " +
+          sideColumnsView("pe") + ", " +
+          "c.lotsize, c.tick_size / " + PRICE_SCALE + ".0 AS tick_size " +
+          "FROM " + TABLE + " c JOIN " + SERIES_TABLE + " s USING (series_id)");
+    }
+    System.out.println("✅ Tables '" + SERIES_TABLE + "' and '" + TABLE + "' created or already exist (layout " + layout + ")");
+  }
+
+  /**
+   * Dictionary id of a series, created on first use in one round trip (the no-op update makes RETURNING yield
+   * the existing row too). Call it with autocommit on, or before the batch's transaction: ids are cached.
+   */
+  public int seriesId(Connection conn, String serverName, String underlying, String expiry) throws SQLException {
+    String key = serverName + "|" + underlying + "|" + expiry;
+    Integer cached = seriesIds.get(key);
+    if (cached != null) {
+      return cached;
+    }
+    try (PreparedStatement upsert = conn.prepareStatement("INSERT INTO " + SERIES_TABLE +
+        " (server_name, underlying, expiry_date) VALUES (?, ?, ?)" +
+        " ON CONFLICT (server_name, underlying, expiry_date) DO UPDATE SET server_name = EXCLUDED.server_name" +
+        " RETURNING series_id")) {
+      upsert.setString(1, serverName);
+      upsert.setString(2, underlying);
+      upsert.setString(3, expiry);
+      try (ResultSet rs = upsert.executeQuery()) {
+        if (!rs.next()) {
+          throw new SQLException("No " + SERIES_TABLE + " row for " + key);
+        }
+        int id = rs.getInt(1);
+        seriesIds.put(key, id);
+        return id;
+      }
+    }
+  }
+
+  /** Bind one strike row (CE and PE side by side) and add it to the batch. */
+  static void addStrikeRow(PreparedStatement pstmt, int seriesId, Timestamp timestamp, double underlyingLtp,
+                           double underlyingPrevClose, int atmStrike, int strike, JsonObject ce, JsonObject pe)
+      throws SQLException {
+    int p = 1;
+    pstmt.setTimestamp(p++, timestamp);
+    setLong(pstmt, p++, ce, "volume");
+    setLong(pstmt, p++, ce, "oi");
+    setLong(pstmt, p++, pe, "volume");
+    setLong(pstmt, p++, pe, "oi");
+    pstmt.setInt(p++, seriesId);
+    pstmt.setInt(p++, strike);
+    setPositiveInt(pstmt, p++, atmStrike);
+    JsonObject optionForCommon = ce != null ? ce : pe;
+    Double lotsize = number(optionForCommon, "lotsize");
+    setPositiveInt(pstmt, p++, lotsize != null ? lotsize.intValue() : 0);
+    setTicks(pstmt, p++, number(optionForCommon, "tick_size"));
+    setTicks(pstmt, p++, underlyingLtp > 0 ? underlyingLtp : null);
+    setTicks(pstmt, p++, underlyingPrevClose > 0 ? underlyingPrevClose : null);
+    for (JsonObject option : new JsonObject[] {ce, pe}) {
+      for (String field : TICK_FIELDS) {
+        setTicks(pstmt, p++, number(option, field));
+      }
+      for (String field : REAL_FIELDS) {
+        setReal(pstmt, p++, number(option, field));
+      }
+      JsonObject greeks = option != null && option.has("greeks") && option.get("greeks").isJsonObject()
+          ? option.getAsJsonObject("greeks") : null;
+      for (String field : GREEK_FIELDS) {
+        setReal(pstmt, p++, number(greeks, field));
+      }
+    }
+    pstmt.addBatch();
+  }
+
+  /**
+   * Latest CE / PE OI per symbol of chain from this series' rows before the given time. Rows are looked up by
+   * strike and keyed by the symbols in chain. Looks at that day first, then the few days before it.
+   */
+  public void previousOi(Connection conn, int seriesId, Timestamp before, JsonArray chain,
+                         Map<String, Long> previousCeOi, Map<String, Long> previousPeOi) {
+    if (!previousOi(conn, seriesId, before, OptionChainPartitions.startOfDay(before), chain, previousCeOi, previousPeOi)) {
+      previousOi(conn, seriesId, before, OptionChainPartitions.previousOiFloor(before), chain, previousCeOi, previousPeOi);
+    }
+  }
+
+  private boolean previousOi(Connection conn, int seriesId, Timestamp before, Timestamp since, JsonArray chain,
+                             Map<String, Long> previousCeOi, Map<String, Long> previousPeOi) {
+    Map<Integer, Long> ceByStrike = new java.util.HashMap<>();
+    Map<Integer, Long> peByStrike = new java.util.HashMap<>();
+    String sql = "SELECT DISTINCT ON (strike) strike, ce_oi, pe_oi FROM " + TABLE +
+        " WHERE series_id = ? AND datetime < ? AND datetime >= ?" +
+        " ORDER BY strike, datetime DESC";
+    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+      pstmt.setInt(1, seriesId);
+      pstmt.setTimestamp(2, before);
+      pstmt.setTimestamp(3, since);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        while (rs.next()) {
+          int strike = rs.getInt(1);
+          long ceOi = rs.getLong(2);
+          if (!rs.wasNull()) {
+            ceByStrike.put(strike, ceOi);
+          }
+          long peOi = rs.getLong(3);
+          if (!rs.wasNull()) {
+            peByStrike.put(strike, peOi);
+          }
+        }
+      }
+    } catch (Exception e) {
+      System.err.println("⚠️ Failed to get previous OI values from " + TABLE + ": " + e.getMessage());
+      // Return empty maps if query fails - first run will have no previous data
+      return false;
+    }
+    if (ceByStrike.isEmpty() && peByStrike.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < chain.size(); i++) {
+      JsonObject chainEntry = chain.get(i).getAsJsonObject();
+      if (!chainEntry.has("strike")) {
+        continue;
+      }
+      int strike = chainEntry.get("strike").getAsInt();
+      putBySymbol(chainEntry, "ce", ceByStrike.get(strike), previousCeOi);
+      putBySymbol(chainEntry, "pe", peByStrike.get(strike), previousPeOi);
+    }
+    return true;
+  }
+
+  private static void putBySymbol(JsonObject chainEntry, String side, Long oi, Map<String, Long> oiBySymbol) {
+    if (oi == null || !chainEntry.has(side) || !chainEntry.get(side).isJsonObject()) {
+      return;
+    }
+    JsonElement symbol = chainEntry.getAsJsonObject(side).get("symbol");
+    if (symbol != null && !symbol.isJsonNull()) {
+      oiBySymbol.put(symbol.getAsString(), oi);
+    }
+  }
+
+  private static String buildInsertSql() {
+    List<String> columns = new ArrayList<>(List.of("datetime", "ce_volume", "ce_oi", "pe_volume", "pe_oi",
+        "series_id", "strike", "atm_strike", "lotsize", "tick_size", "underlying_ltp", "underlying_prev_close"));
+    for (String side : SIDES) {
+      columns.addAll(sideColumns(side));
+    }
+    return "INSERT INTO " + TABLE + " (" + String.join(", ", columns) + ") VALUES (" +
+        String.join(", ", java.util.Collections.nCopies(columns.size(), "?")) + ") ON CONFLICT DO NOTHING";
+  }
+
+  private static List<String> sideColumns(String side) {
+    List<String> columns = new ArrayList<>();
+    for (String field : TICK_FIELDS) {
+      columns.add(side + "_" + field);
+    }
+    for (String field : REAL_FIELDS) {
+      columns.add(side + "_" + field);
+    }
+    for (String field : GREEK_FIELDS) {
+      columns.add(side + "_" + field);
+    }
+    return columns;
+  }
+
+  private static String sideColumnsDdl(String side) {
+    List<String> ddl = new ArrayList<>();
+    for (String column : sideColumns(side)) {
+      ddl.add(column + (isTickColumn(column) ? " INTEGER" : " REAL"));
+    }
+    return String.join(", ", ddl);
+  }
+
+  private static String sideColumnsView(String side) {
+    List<String> view = new ArrayList<>();
+    for (String column : sideColumns(side)) {
+      view.add(isTickColumn(column) ? "c." + column + " / " + PRICE_SCALE + ".0 AS " + column : "c." + column);
+    }
+    return String.join(", ", view);
+  }
+
+  private static boolean isTickColumn(String column) {
+    String field = column.substring(3);
+    for (String tickField : TICK_FIELDS) {
+      if (tickField.equals(field)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Double number(JsonObject object, String field) {
+    if (object == null || !object.has(field) || object.get(field).isJsonNull()) {
+      return null;
+    }
+    try {
+      return object.get(field).getAsDouble();
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+
+  /** Price in ticks, NULL when missing or out of INTEGER range. */
+  private static void setTicks(PreparedStatement pstmt, int index, Double price) throws SQLException {
+    if (price != null) {
+      long ticks = Math.round(price * PRICE_SCALE);
+      if (ticks >= Integer.MIN_VALUE && ticks <= Integer.MAX_VALUE) {
+        pstmt.setInt(index, (int) ticks);
+        return;
+      }
+    }
+    pstmt.setNull(index, Types.INTEGER);
+  }
+
+  private static void setReal(PreparedStatement pstmt, int index, Double value) throws SQLException {
+    if (value != null) {
+      pstmt.setFloat(index, value.floatValue());
+    } else {
+      pstmt.setNull(index, Types.REAL);
+    }
+  }
+
+  private static void setLong(PreparedStatement pstmt, int index, JsonObject option, String field) throws SQLException {
+    if (number(option, field) != null) {
+      pstmt.setLong(index, option.get(field).getAsLong());
+    } else {
+      pstmt.setNull(index, Types.BIGINT);
+    }
+  }
+
+  private static void setPositiveInt(PreparedStatement pstmt, int index, int value) throws SQLException {
+    if (value > 0) {
+      pstmt.setInt(index, value);
+    } else {
+      pstmt.setNull(index, Types.INTEGER);
+    }
+  }
+}
@@ -0,0 +1,333 @@
+package com.nigam.temporal.ltp;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Optional daily range partitioning (and Citus distribution) of openalgo_optionchain.
+ *
+ * When enabled, the table is created as PARTITION BY RANGE (datetime) with one partition per day named
+ * openalgo_optionchain_pYYYYMMDD, covering [day 00:00, next day 00:00) in the worker's local time (the same
+ * clock the inserts use). {@link #maintain} creates today's partition plus the next few days and detaches
+ * (and optionally drops) partitions older than the retention window; {@link #ensureCurrent} reruns it once
+ * per day from the insert path so a worker that stays up across midnight never writes into a missing range.
+ * Inserts go by the snapshot's own day ({@link #ensureDay}), not the wall clock: a late or replayed snapshot
+ * gets its partition created if it is still inside the retention window, and is refused if it is older.
+ *
+ * An existing unpartitioned table is left as it is - converting it needs a manual copy (see database_schema.sql).
+ *
+ * With Citus, openalgo_optionchain and openalgo_optionchain_summary are distributed on underlying and
+ * co-located, so a snapshot's rows and summary land on the same worker. Neither keeps a primary key on id
+ * (Citus needs the distribution column in every unique key; the snapshot keys include it). The compact and
+ * rollup tables stay local.
+ *
+ * Env: DB_PARTITIONING_ENABLED (default false), DB_PARTITION_PRECREATE_DAYS (default 3),
+ * DB_PARTITION_RETENTION_DAYS (default 30, 0 keeps everything), DB_PARTITION_DROP_DETACHED (default false),
+ * DB_CITUS_DISTRIBUTE (default false; distributes on underlying when the citus extension is installed).
+ */
+public class OptionChainPartitions {
+
+  static final String TABLE = "openalgo_optionchain";
+  private static final String PARTITION_PREFIX = TABLE + "_p";
+  private static final DateTimeFormatter SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+  // Previous-OI lookups that find nothing on the snapshot's day look back this many days (a long weekend)
+  static final int PREVIOUS_OI_LOOKBACK_DAYS = 4;
+
+  private final boolean enabled;
+  private final int precreateDays;
+  private final int retentionDays;
+  private final boolean dropDetached;
+  private final boolean citusDistribute;
+
+  private volatile LocalDate maintainedFor = null;
+  // Days whose partition this worker created or found, so each later insert for them skips the DDL
+  private final Set<LocalDate> readyDays = ConcurrentHashMap.newKeySet();
+  // Set once the table turns out to be a plain (unpartitioned) table, e.g. one created before partitioning was
+  // enabled: there is nothing to maintain until a restart after migrating it
+  private volatile boolean unpartitionedTable = false;
+
+  public OptionChainPartitions(boolean enabled, int precreateDays, int retentionDays,
+                               boolean dropDetached, boolean citusDistribute) {
+    this.enabled = enabled;
+    this.precreateDays = Math.max(0, precreateDays);
+    this.retentionDays = Math.max(0, retentionDays);
+    this.dropDetached = dropDetached;
+    this.citusDistribute = citusDistribute;
+  }
+
+  public static OptionChainPartitions fromEnv() {
+    return new OptionChainPartitions(
+        Boolean.parseBoolean(System.getenv().getOrDefault("DB_PARTITIONING_ENABLED", "false")),
+        Integer.parseInt(System.getenv().getOrDefault("DB_PARTITION_PRECREATE_DAYS", "3")),
+        Integer.parseInt(System.getenv().getOrDefault("DB_PARTITION_RETENTION_DAYS", "30")),
+        Boolean.parseBoolean(System.getenv().getOrDefault("DB_PARTITION_DROP_DETACHED", "false")),
+        Boolean.parseBoolean(System.getenv().getOrDefault("DB_CITUS_DISTRIBUTE", "false")));
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Clause appended to CREATE TABLE openalgo_optionchain (...) when partitioning is on, empty otherwise. */
+  public String partitionClause() {
+    return enabled ? " PARTITION BY RANGE (datetime)" : "";
+  }
+
+  /**
+   * Leading id column of openalgo_optionchain. A partitioned or distributed table cannot have a primary key
+   * on id alone, so those layouts keep id as a plain sequence-backed column.
+   */
+  public String idColumn() {
+    return idColumn(enabled);
+  }
+
+  /** Leading id column of a table that is partitioned or not, distributed when DB_CITUS_DISTRIBUTE is set. */
+  public String idColumn(boolean partitioned) {
+    return partitioned || citusDistribute ? "id BIGSERIAL, " : "id BIGSERIAL PRIMARY KEY, ";
+  }
+
+  /** True when the existing table is a partitioned parent (relkind 'p'). */
+  public static boolean isPartitioned(Connection conn) {
+    return Boolean.TRUE.equals(checkPartitioned(conn));
+  }
+
+  /** Whether the table is a partitioned parent, or null if the check itself failed. */
+  private static Boolean checkPartitioned(Connection conn) {
+    try (PreparedStatement pstmt = conn.prepareStatement(
+        "SELECT relkind FROM pg_class WHERE relname = ? AND relnamespace = 'public'::regnamespace")) {
+      pstmt.setString(1, TABLE);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        return rs.next() && "p".equals(rs.getString(1));
+      }
+    } catch (Exception e) {
+      System.err.println("⚠️ Failed to check partitioning of " + TABLE + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  /** Distribute openalgo_optionchain on underlying if requested and Citus is installed. Safe to call repeatedly. */
+  public void distributeIfRequested(Connection conn) {
+    distributeIfRequested(conn, TABLE);
+  }
+
+  /**
+   * Distribute a table on underlying, co-located with openalgo_optionchain, if requested and Citus is installed.
+   * A primary key on id alone (tables created before DB_CITUS_DISTRIBUTE was set) is dropped first, since Citus
+   * rejects unique keys without the distribution column; the table's snapshot key still identifies its rows.
+   */
+  public void distributeIfRequested(Connection conn, String table) {
+    if (!citusDistribute) {
+      return;
+    }
+    try (Statement stmt = conn.createStatement()) {
+      try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM pg_extension WHERE extname = 'citus'")) {
+        if (!rs.next()) {
+          System.out.println("⚠️ DB_CITUS_DISTRIBUTE is set but the citus extension is not installed - skipping");
+          return;
+        }
+      }
+      try (ResultSet rs = stmt.executeQuery(
+          "SELECT 1 FROM pg_dist_partition WHERE logicalrelid = '" + table + "'::regclass")) {
+        if (rs.next()) {
+          return;
+        }
+      }
+      String idKey = primaryKeyWithoutUnderlying(conn, table);
+      if (idKey != null) {
+        stmt.execute("ALTER TABLE " + table + " DROP CONSTRAINT " + idKey);
+        System.out.println("🔑 Dropped primary key " + idKey + " of '" + table + "' (it does not include underlying)");
+      }
+      stmt.execute("SELECT create_distributed_table('" + table + "', 'underlying', colocate_with => '"
+          + (table.equals(TABLE) ? "default" : TABLE) + "')");
+      System.out.println("✅ Distributed '" + table + "' on underlying");
+    } catch (Exception e) {
+      System.err.println("⚠️ Failed to distribute " + table + ": " + e.getMessage());
+      // Don't throw - the table still works as a local table
+    }
+  }
+
+  /** Name of the table's primary key constraint if it exists and does not cover underlying, else null. */
+  private static String primaryKeyWithoutUnderlying(Connection conn, String table) throws java.sql.SQLException {
+    String sql = "SELECT con.conname FROM pg_constraint con " +
+        "WHERE con.conrelid = ?::regclass AND con.contype = 'p' AND NOT EXISTS (" +
+        "SELECT 1 FROM pg_attribute a WHERE a.attrelid = con.conrelid AND a.attnum = ANY (con.conkey) " +
+        "AND a.attname = 'underlying')";
+    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+      pstmt.setString(1, table);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        return rs.next() ? rs.getString(1) : null;
+      }
+    }
+  }
+
+  /** Run {@link #maintain} if it has not run yet for today's date. Cheap enough to call before every insert. */
+  public void ensureCurrent(Connection conn) {
+    if (!enabled || unpartitionedTable) {
+      return;
+    }
+    LocalDate today = LocalDate.now();
+    if (today.equals(maintainedFor)) {
+      return;
+    }
+    synchronized (this) {
+      if (!today.equals(maintainedFor)) {
+        maintain(conn, today);
+      }
+    }
+  }
+
+  /**
+   * Make sure rows of a snapshot taken on the given day have a partition: runs {@link #ensureCurrent}, then
+   * creates the day's partition if it is outside the pre-created range (a late, replayed or backfilled snapshot).
+   * Returns false, creating nothing, when the day is older than the retention window, whose partitions are
+   * detached; the caller must not insert such rows. Always true when partitioning is off.
+   */
+  public boolean ensureDay(Connection conn, LocalDate day) {
+    if (!enabled) {
+      return true;
+    }
+    ensureCurrent(conn);
+    if (unpartitionedTable) {
+      return true;
+    }
+    if (isExpired(day)) {
+      return false;
+    }
+    if (!readyDays.contains(day)) {
+      synchronized (this) {
+        if (!readyDays.contains(day)) {
+          try (Statement stmt = conn.createStatement()) {
+            createPartition(stmt, day);
+            System.out.println("✅ Partition " + partitionName(day) + " of '" + TABLE + "' ready for a snapshot of that day");
+          } catch (Exception e) {
+            System.err.println("⚠️ Failed to create partition " + partitionName(day) + ": " + e.getMessage());
+            // Don't throw - the insert reports the missing partition itself
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  /** True when the day is older than the retention window, so its partition is (or is about to be) detached. */
+  public boolean isExpired(LocalDate day) {
+    return enabled && !unpartitionedTable && retentionDays > 0 && day.isBefore(LocalDate.now().minusDays(retentionDays));
+  }
+
+  /** Create partitions for today .. today + precreateDays and retire the ones older than the retention window. */
+  public void maintain(Connection conn, LocalDate today) {
+    if (!enabled) {
+      return;
+    }
+    Boolean partitioned = checkPartitioned(conn);
+    if (partitioned == null) {
+      // Check failed: try again at the next insert
+      return;
+    }
+    if (!partitioned) {
+      unpartitionedTable = true;
+      System.out.println("⚠️ DB_PARTITIONING_ENABLED is set but '" + TABLE + "' is not partitioned - skipping partition maintenance");
+      return;
+    }
+    try (Statement stmt = conn.createStatement()) {
+      for (int i = 0; i <= precreateDays; i++) {
+        createPartition(stmt, today.plusDays(i));
+      }
+      maintainedFor = today;
+      System.out.println("✅ Partitions of '" + TABLE + "' ready through " + today.plusDays(precreateDays));
+    } catch (Exception e) {
+      System.err.println("⚠️ Failed to create partitions of " + TABLE + ": " + e.getMessage());
+      return;
+    }
+    if (retentionDays > 0) {
+      retireOlderThan(conn, today.minusDays(retentionDays));
+    }
+  }
+
+  private void createPartition(Statement stmt, LocalDate day) throws java.sql.SQLException {
+    stmt.execute("CREATE TABLE IF NOT EXISTS " + partitionName(day) + " PARTITION OF " + TABLE +
+        " FOR VALUES FROM ('" + day + " 00:00:00') TO ('" + day.plusDays(1) + " 00:00:00')");
+    readyDays.add(day);
+  }
+
+  private void retireOlderThan(Connection conn, LocalDate cutoff) {
+    readyDays.removeIf(day -> day.isBefore(cutoff));
+    for (String partition : listPartitions(conn)) {
+      LocalDate day = partitionDay(partition);
+      if (day == null || !day.isBefore(cutoff)) {
+        continue;
+      }
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("ALTER TABLE " + TABLE + " DETACH PARTITION " + partition);
+        if (dropDetached) {
+          stmt.execute("DROP TABLE " + partition);
+          System.out.println("🗑️ Dropped partition " + partition);
+        } else {
+          System.out.println("📦 Detached partition " + partition);
+        }
+      } catch (Exception e) {
+        System.err.println("⚠️ Failed to retire partition " + partition + ": " + e.getMessage());
+        // Don't throw - try again at the next maintenance run
+      }
+    }
+  }
+
+  private static List<String> listPartitions(Connection conn) {
+    List<String> partitions = new ArrayList<>();
+    String sql = "SELECT c.relname FROM pg_inherits i " +
+        "JOIN pg_class c ON c.oid = i.inhrelid " +
+        "JOIN pg_class p ON p.oid = i.inhparent " +
+        "WHERE p.relname = ?";
+    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+      pstmt.setString(1, TABLE);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        while (rs.next()) {
+          partitions.add(rs.getString(1));
+        }
+      }
+    } catch (Exception e) {
+      System.err.println("⚠️ Failed to list partitions of " + TABLE + ": " + e.getMessage());
+    }
+    return partitions;
+  }
+
+  /** Midnight starting the snapshot's day: the lower bound of the first previous-OI lookup. */
+  static Timestamp startOfDay(Timestamp snapshotTime) {
+    return Timestamp.valueOf(snapshotTime.toLocalDateTime().toLocalDate().atStartOfDay());
+  }
+
+  /**
+   * Lower bound of the fallback previous-OI lookup: {@link #PREVIOUS_OI_LOOKBACK_DAYS} days before the snapshot's
+   * day, so it prunes to a handful of partitions (and an index range) instead of scanning the whole history.
+   */
+  static Timestamp previousOiFloor(Timestamp snapshotTime) {
+    return Timestamp.valueOf(snapshotTime.toLocalDateTime().toLocalDate()
+        .minusDays(PREVIOUS_OI_LOOKBACK_DAYS).atStartOfDay());
+  }
+
+  static String partitionName(LocalDate day) {
+    return PARTITION_PREFIX + day.format(SUFFIX);
+  }
+
+  /** Day encoded in a partition name, or null for anything not created by this class. */
+  static LocalDate partitionDay(String partition) {
+    if (!partition.startsWith(PARTITION_PREFIX)) {
+      return null;
+    }
+    try {
+      return LocalDate.parse(partition.substring(PARTITION_PREFIX.length()), SUFFIX);
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,573 @@
+package com.nigam.temporal.ltp;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time-bucketed OHLC / OI rollups of option chain snapshots, kept in memory per
+ * (server, underlying, expiry, bucket size) and written when the bucket closes.
+ *
+ * Tables (created on first flush):
+ *   openalgo_optionchain_rollup         - per strike: CE/PE LTP OHLC, OI open/close, volume close
+ *   openalgo_optionchain_summary_rollup - per expiry: underlying OHLC, total OI open/close, volume close,
+ *                                         closing PCR and max pain
+ * Rows are upserted and merge with what is already there (high/low widened), so a bucket can be written in
+ * several parts: idle daily buckets are flushed partially, a restart mid-bucket continues the same row,
+ * out-of-order snapshots land in their own bucket, and several workers write the same rows. Each row carries
+ * the snapshot times of its first and last sample (first_sample_at, last_sample_at); open values are only
+ * replaced by a part that starts earlier and close values by one that ends later, so the OHLC follows snapshot
+ * time whatever order the parts arrive in. Volumes are the cumulative value at the close, never summed.
+ * Samples are only added for a part that lies wholly before or after the row's sample times; a part that
+ * overlaps them (a flush retried after it committed, a replay, a second worker) keeps the larger count, so
+ * writing the same snapshots twice changes nothing. A late snapshot inside an already written range is
+ * therefore not counted, though it still widens high/low. In memory each series does the same, and each open
+ * bucket remembers the snapshot times it holds so a retried snapshot is counted once.
+ *
+ * Env: ROLLUP_ENABLED (default true), ROLLUP_BUCKETS (default 5m,15m,1d; any Nm or 1d),
+ * ROLLUP_FLUSH_INTERVAL_SECONDS (default 15), ROLLUP_IDLE_FLUSH_MINUTES (default 10).
+ */
+public class OptionChainRollups implements AutoCloseable {
+
+  private static final int MAX_PENDING_BUCKETS = 10_000;
+
+  /** Bucket size; one day is aligned to local midnight, minute sizes to the hour. */
+  static final class BucketSize {
+    final String name;
+    final int minutes;
+
+    BucketSize(String name, int minutes) {
+      this.name = name;
+      this.minutes = minutes;
+    }
+
+    static BucketSize parse(String name) {
+      String trimmed = name.trim().toLowerCase();
+      if (trimmed.equals("1d")) {
+        return new BucketSize(trimmed, 24 * 60);
+      }
+      if (trimmed.endsWith("m")) {
+        int minutes = Integer.parseInt(trimmed.substring(0, trimmed.length() - 1));
+        if (minutes > 0 && 60 % minutes == 0) {
+          return new BucketSize(trimmed, minutes);
+        }
+      }
+      throw new IllegalArgumentException("Unsupported rollup bucket '" + name + "' (use a divisor of 60 like 5m, or 1d)");
+    }
+
+    LocalDateTime start(LocalDateTime time) {
+      if (minutes >= 24 * 60) {
+        return time.toLocalDate().atStartOfDay();
+      }
+      return time.truncatedTo(ChronoUnit.HOURS).plusMinutes((time.getMinute() / minutes) * minutes);
+    }
+
+    LocalDateTime end(LocalDateTime start) {
+      return start.plusMinutes(minutes);
+    }
+  }
+
+  /** Open/high/low/close of one value by snapshot time; NaN until the first sample. */
+  static final class Series {
+    double open = Double.NaN;
+    double high = Double.NaN;
+    double low = Double.NaN;
+    double close = Double.NaN;
+    long firstMillis;
+    long lastMillis;
+
+    void add(double value, long sampleMillis) {
+      if (Double.isNaN(value)) {
+        return;
+      }
+      if (Double.isNaN(open)) {
+        open = value;
+        high = value;
+        low = value;
+        close = value;
+        firstMillis = sampleMillis;
+        lastMillis = sampleMillis;
+        return;
+      }
+      high = Math.max(high, value);
+      low = Math.min(low, value);
+      if (sampleMillis < firstMillis) {
+        open = value;
+        firstMillis = sampleMillis;
+      }
+      if (sampleMillis > lastMillis) {
+        close = value;
+        lastMillis = sampleMillis;
+      }
+    }
+  }
+
+  /** Snapshot times of the first and last sample of a row. */
+  static final class SampleTimes {
+    long first = Long.MAX_VALUE;
+    long last = Long.MIN_VALUE;
+
+    void add(long sampleMillis) {
+      first = Math.min(first, sampleMillis);
+      last = Math.max(last, sampleMillis);
+    }
+  }
+
+  static final class StrikeAccumulator {
+    final Series ceLtp = new Series();
+    final Series ceOi = new Series();
+    final Series ceVolume = new Series();
+    final Series peLtp = new Series();
+    final Series peOi = new Series();
+    final Series peVolume = new Series();
+    final SampleTimes times = new SampleTimes();
+    int samples;
+  }
+
+  static final class BucketAccumulator {
+    final String serverName;
+    final String underlying;
+    final String expiry;
+    final BucketSize size;
+    final LocalDateTime start;
+    final Series underlyingLtp = new Series();
+    final Series totalCeOi = new Series();
+    final Series totalPeOi = new Series();
+    final Series totalCeVolume = new Series();
+    final Series totalPeVolume = new Series();
+    final Series pcrOi = new Series();
+    final Series maxPainStrike = new Series();
+    final Map<Integer, StrikeAccumulator> strikes = new TreeMap<>();
+    final SampleTimes times = new SampleTimes();
+    // Snapshot times already folded into this bucket, kept across partial flushes
+    final Set<Long> snapshotTimes;
+    int samples;
+    long lastSampleMillis;
+
+    BucketAccumulator(String serverName, String underlying, String expiry, BucketSize size, LocalDateTime start) {
+      this(serverName, underlying, expiry, size, start, new HashSet<>());
+    }
+
+    private BucketAccumulator(String serverName, String underlying, String expiry, BucketSize size,
+                              LocalDateTime start, Set<Long> snapshotTimes) {
+      this.serverName = serverName;
+      this.underlying = underlying;
+      this.expiry = expiry;
+      this.size = size;
+      this.start = start;
+      this.snapshotTimes = snapshotTimes;
+    }
+
+    /** Empty accumulator for the rest of this bucket, after a partial flush. */
+    BucketAccumulator fresh() {
+      return new BucketAccumulator(serverName, underlying, expiry, size, start, snapshotTimes);
+    }
+  }
+
+  private final Callable<Connection> connectionFactory;
+  private final List<BucketSize> sizes;
+  private final long idleFlushMillis;
+  private final Map<String, BucketAccumulator> open = new HashMap<>();
+  private final List<BucketAccumulator> closed = new ArrayList<>();
+  private final ScheduledExecutorService flusher;
+  private Connection connection;
+  private boolean tablesCreated;
+
+  public OptionChainRollups(Callable<Connection> connectionFactory, List<BucketSize> sizes,
+                            long flushIntervalSeconds, long idleFlushMinutes) {
+    this.connectionFactory = connectionFactory;
+    this.sizes = sizes;
+    this.idleFlushMillis = TimeUnit.MINUTES.toMillis(Math.max(1, idleFlushMinutes));
+    this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "optionchain-rollup-flusher");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long interval = Math.max(1, flushIntervalSeconds);
+    flusher.scheduleWithFixedDelay(() -> flush(false), interval, interval, TimeUnit.SECONDS);
+    List<String> names = new ArrayList<>();
+    for (BucketSize size : sizes) {
+      names.add(size.name);
+    }
+    System.out.println("✅ Option chain rollups enabled for buckets " + names);
+  }
+
+  public static boolean isEnabledInEnv() {
+    return Boolean.parseBoolean(System.getenv().getOrDefault("ROLLUP_ENABLED", "true"));
+  }
+
+  public static OptionChainRollups fromEnv(Callable<Connection> connectionFactory) {
+    List<BucketSize> sizes = new ArrayList<>();
+    for (String name : System.getenv().getOrDefault("ROLLUP_BUCKETS", "5m,15m,1d").split(",")) {
+      if (!name.trim().isEmpty()) {
+        sizes.add(BucketSize.parse(name));
+      }
+    }
+    return new OptionChainRollups(connectionFactory, sizes,
+        Long.parseLong(System.getenv().getOrDefault("ROLLUP_FLUSH_INTERVAL_SECONDS", "15")),
+        Long.parseLong(System.getenv().getOrDefault("ROLLUP_IDLE_FLUSH_MINUTES", "10")));
+  }
+
+  /**
+   * Fold one snapshot into every bucket size. Cheap: no I/O, the flusher thread does the writes.
+   * A snapshot already in its open bucket (same snapshot time, e.g. an activity retry) is ignored.
+   */
+  public void add(String serverName, String underlying, String expiry, Timestamp timestamp,
+                  double underlyingLtp, JsonArray chain, OptionChainSummary summary) {
+    LocalDateTime time = timestamp.toLocalDateTime();
+    long sampleMillis = timestamp.getTime();
+    OptionChainAnalytics analytics = summary.analytics();
+    synchronized (this) {
+      for (BucketSize size : sizes) {
+        LocalDateTime start = size.start(time);
+        String key = serverName + "|" + underlying + "|" + expiry + "|" + size.name;
+        BucketAccumulator acc = open.get(key);
+        BucketAccumulator target;
+        if (acc == null || start.isAfter(acc.start)) {
+          if (acc != null) {
+            closed.add(acc);
+          }
+          target = new BucketAccumulator(serverName, underlying, expiry, size, start);
+          open.put(key, target);
+        } else if (start.isBefore(acc.start)) {
+          // Late snapshot for an earlier bucket: write it on its own, the upsert merges it
+          target = new BucketAccumulator(serverName, underlying, expiry, size, start);
+          closed.add(target);
+        } else {
+          target = acc;
+        }
+        if (target.snapshotTimes.add(sampleMillis)) {
+          addSample(target, sampleMillis, underlyingLtp, chain, summary, analytics);
+        }
+      }
+    }
+  }
+
+  private static void addSample(BucketAccumulator acc, long sampleMillis, double underlyingLtp, JsonArray chain,
+                                OptionChainSummary summary, OptionChainAnalytics analytics) {
+    acc.samples++;
+    acc.lastSampleMillis = System.currentTimeMillis();
+    acc.times.add(sampleMillis);
+    acc.underlyingLtp.add(underlyingLtp, sampleMillis);
+    acc.totalCeOi.add(summary.totalCeOi, sampleMillis);
+    acc.totalPeOi.add(summary.totalPeOi, sampleMillis);
+    acc.totalCeVolume.add(summary.totalCeVolume, sampleMillis);
+    acc.totalPeVolume.add(summary.totalPeVolume, sampleMillis);
+    acc.pcrOi.add(analytics.pcrOi != null ? analytics.pcrOi : Double.NaN, sampleMillis);
+    acc.maxPainStrike.add(analytics.maxPainStrike != null ? analytics.maxPainStrike : Double.NaN, sampleMillis);
+    for (int i = 0; i < chain.size(); i++) {
+      JsonObject chainEntry = chain.get(i).getAsJsonObject();
+      if (!chainEntry.has("strike")) {
+        continue;
+      }
+      StrikeAccumulator strike = acc.strikes.computeIfAbsent(chainEntry.get("strike").getAsInt(), s -> new StrikeAccumulator());
+      strike.samples++;
+      strike.times.add(sampleMillis);
+      JsonObject ce = chainEntry.has("ce") && chainEntry.get("ce").isJsonObject() ? chainEntry.getAsJsonObject("ce") : null;
+      JsonObject pe = chainEntry.has("pe") && chainEntry.get("pe").isJsonObject() ? chainEntry.getAsJsonObject("pe") : null;
+      strike.ceLtp.add(number(ce, "ltp"), sampleMillis);
+      strike.ceOi.add(number(ce, "oi"), sampleMillis);
+      strike.ceVolume.add(number(ce, "volume"), sampleMillis);
+      strike.peLtp.add(number(pe, "ltp"), sampleMillis);
+      strike.peOi.add(number(pe, "oi"), sampleMillis);
+      strike.peVolume.add(number(pe, "volume"), sampleMillis);
+    }
+  }
+
+  /**
+   * Write closed buckets, buckets whose end has passed, and (partially) buckets idle for longer than
+   * the idle threshold. With all=true every open bucket is written, as on shutdown.
+   */
+  void flush(boolean all) {
+    List<BucketAccumulator> batch;
+    synchronized (this) {
+      batch = new ArrayList<>(closed);
+      closed.clear();
+      LocalDateTime now = LocalDateTime.now();
+      long idleBefore = System.currentTimeMillis() - idleFlushMillis;
+      Iterator<Map.Entry<String, BucketAccumulator>> it = open.entrySet().iterator();
+      while (it.hasNext()) {
+        Map.Entry<String, BucketAccumulator> entry = it.next();
+        BucketAccumulator acc = entry.getValue();
+        if (!now.isBefore(acc.size.end(acc.start))) {
+          batch.add(acc);
+          it.remove();
+        } else if ((all || acc.lastSampleMillis < idleBefore) && acc.samples > 0) {
+          batch.add(acc);
+          entry.setValue(acc.fresh());
+        }
+      }
+    }
+    if (batch.isEmpty()) {
+      return;
+    }
+    try {
+      write(batch);
+      System.out.println("✅ Flushed " + batch.size() + " option chain rollup buckets");
+    } catch (Exception e) {
+      System.err.println("⚠️ Failed to flush " + batch.size() + " rollup buckets, will retry: " + e.getMessage());
+      closeConnection();
+      synchronized (this) {
+        closed.addAll(0, batch);
+        if (closed.size() > MAX_PENDING_BUCKETS) {
+          int dropped = closed.size() - MAX_PENDING_BUCKETS;
+          closed.subList(0, dropped).clear();
+          System.err.println("⚠️ Dropped " + dropped + " oldest rollup buckets, database unavailable for too long");
+        }
+      }
+    }
+  }
+
+  private void write(List<BucketAccumulator> batch) throws Exception {
+    Connection conn = connection();
+    conn.setAutoCommit(false);
+    try (PreparedStatement strikeStmt = conn.prepareStatement(UPSERT_STRIKE_SQL);
+         PreparedStatement summaryStmt = conn.prepareStatement(UPSERT_SUMMARY_SQL)) {
+      for (BucketAccumulator acc : batch) {
+        if (acc.samples == 0) {
+          continue;
+        }
+        Timestamp start = Timestamp.valueOf(acc.start);
+        int p = 1;
+        summaryStmt.setString(p++, acc.serverName);
+        summaryStmt.setString(p++, acc.underlying);
+        summaryStmt.setString(p++, acc.expiry);
+        summaryStmt.setString(p++, acc.size.name);
+        summaryStmt.setTimestamp(p++, start);
+        p = setOhlc(summaryStmt, p, acc.underlyingLtp);
+        p = setOpenClose(summaryStmt, p, acc.totalCeOi);
+        p = setOpenClose(summaryStmt, p, acc.totalPeOi);
+        p = setLong(summaryStmt, p, acc.totalCeVolume.close);
+        p = setLong(summaryStmt, p, acc.totalPeVolume.close);
+        p = setDouble(summaryStmt, p, acc.pcrOi.close);
+        p = setLong(summaryStmt, p, acc.maxPainStrike.close);
+        p = setTimes(summaryStmt, p, acc.times);
+        summaryStmt.setInt(p, acc.samples);
+        summaryStmt.addBatch();
+
+        for (Map.Entry<Integer, StrikeAccumulator> entry : acc.strikes.entrySet()) {
+          StrikeAccumulator strike = entry.getValue();
+          p = 1;
+          strikeStmt.setString(p++, acc.serverName);
+          strikeStmt.setString(p++, acc.underlying);
+          strikeStmt.setString(p++, acc.expiry);
+          strikeStmt.setString(p++, acc.size.name);
+          strikeStmt.setTimestamp(p++, start);
+          strikeStmt.setInt(p++, entry.getKey());
+          p = setOhlc(strikeStmt, p, strike.ceLtp);
+          p = setOpenClose(strikeStmt, p, strike.ceOi);
+          p = setLong(strikeStmt, p, strike.ceVolume.close);
+          p = setOhlc(strikeStmt, p, strike.peLtp);
+          p = setOpenClose(strikeStmt, p, strike.peOi);
+          p = setLong(strikeStmt, p, strike.peVolume.close);
+          p = setTimes(strikeStmt, p, strike.times);
+          strikeStmt.setInt(p, strike.samples);
+          strikeStmt.addBatch();
+        }
+      }
+      summaryStmt.executeBatch();
+      strikeStmt.executeBatch();
+      conn.commit();
+    } catch (Exception e) {
+      try {
+        conn.rollback();
+      } catch (Exception ignored) {
+        // connection is discarded by the caller
+      }
+      throw e;
+    } finally {
+      try {
+        conn.setAutoCommit(true);
+      } catch (Exception ignored) {
+        // connection is discarded by the caller
+      }
+    }
+  }
+
+  private Connection connection() throws Exception {
+    if (connection == null || connection.isClosed()) {
+      connection = connectionFactory.call();
+      if (!tablesCreated) {
+        createTables(connection);
+        tablesCreated = true;
+      }
+    }
+    return connection;
+  }
+
+  private void closeConnection() {
+    try {
+      if (connection != null) {
+        connection.close();
+      }
+    } catch (Exception ignored) {
+      // nothing useful to do
+    }
+    connection = null;
+  }
+
+  /** Flush every open bucket (partially) and stop the flusher. */
+  @Override
+  public void close() {
+    flusher.shutdown();
+    try {
+      flusher.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flush(true);
+    closeConnection();
+  }
+
+  static void createTables(Connection conn) throws Exception {
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("CREATE TABLE IF NOT EXISTS openalgo_optionchain_rollup (" +
+          "server_name VARCHAR(100) NOT NULL, " +
+          "underlying VARCHAR(50) NOT NULL, " +
+          "expiry_date VARCHAR(20) NOT NULL, " +
+          "bucket VARCHAR(8) NOT NULL, " +
+          "bucket_start TIMESTAMP NOT NULL, " +
+          "strike INTEGER NOT NULL, " +
+          "ce_open NUMERIC(15, 2), ce_high NUMERIC(15, 2), ce_low NUMERIC(15, 2), ce_close NUMERIC(15, 2), " +
+          "ce_oi_open BIGINT, ce_oi_close BIGINT, ce_volume BIGINT, " +
+          "pe_open NUMERIC(15, 2), pe_high NUMERIC(15, 2), pe_low NUMERIC(15, 2), pe_close NUMERIC(15, 2), " +
+          "pe_oi_open BIGINT, pe_oi_close BIGINT, pe_volume BIGINT, " +
+          "first_sample_at TIMESTAMP, last_sample_at TIMESTAMP, " +
+          "samples INTEGER NOT NULL, " +
+          "PRIMARY KEY (server_name, underlying, expiry_date, bucket, bucket_start, strike)" +
+          ")");
+      stmt.execute("CREATE TABLE IF NOT EXISTS openalgo_optionchain_summary_rollup (" +
+          "server_name VARCHAR(100) NOT NULL, " +
+          "underlying VARCHAR(50) NOT NULL, " +
+          "expiry_date VARCHAR(20) NOT NULL, " +
+          "bucket VARCHAR(8) NOT NULL, " +
+          "bucket_start TIMESTAMP NOT NULL, " +
+          "underlying_open NUMERIC(15, 2), underlying_high NUMERIC(15, 2), " +
+          "underlying_low NUMERIC(15, 2), underlying_close NUMERIC(15, 2), " +
+          "total_ce_oi_open BIGINT, total_ce_oi_close BIGINT, total_pe_oi_open BIGINT, total_pe_oi_close BIGINT, " +
+          "total_ce_volume BIGINT, total_pe_volume BIGINT, " +
+          "pcr_oi_close NUMERIC(10, 4), max_pain_strike_close INTEGER, " +
+          "first_sample_at TIMESTAMP, last_sample_at TIMESTAMP, " +
+          "samples INTEGER NOT NULL, " +
+          "PRIMARY KEY (server_name, underlying, expiry_date, bucket, bucket_start)" +
+          ")");
+      // Tables created before the sample times were tracked; their existing rows keep NULL times
+      for (String table : new String[] {"openalgo_optionchain_rollup", "openalgo_optionchain_summary_rollup"}) {
+        stmt.execute("ALTER TABLE " + table + " ADD COLUMN IF NOT EXISTS first_sample_at TIMESTAMP, " +
+            "ADD COLUMN IF NOT EXISTS last_sample_at TIMESTAMP");
+      }
+      System.out.println("✅ Rollup tables created or already exist");
+    }
+  }
+
+  // Samples add up only for a part disjoint from the row's sample times; an overlapping part (the same snapshots
+  // written again) keeps the larger count. Rows without sample times never add.
+  private static final String MERGE_SAMPLES = "first_sample_at = LEAST(r.first_sample_at, EXCLUDED.first_sample_at), " +
+      "last_sample_at = GREATEST(r.last_sample_at, EXCLUDED.last_sample_at), " +
+      "samples = CASE WHEN EXCLUDED.last_sample_at < r.first_sample_at OR EXCLUDED.first_sample_at > r.last_sample_at " +
+      "THEN r.samples + EXCLUDED.samples ELSE GREATEST(r.samples, EXCLUDED.samples) END";
+
+  // Merge with an existing row: open values from whichever part has the earlier first sample, close values from
+  // the one with the later last sample (rows without sample times keep their open and take the new close),
+  // high/low widened, samples merged as above
+  private static final String UPSERT_STRIKE_SQL = "INSERT INTO openalgo_optionchain_rollup AS r (" +
+      "server_name, underlying, expiry_date, bucket, bucket_start, strike, " +
+      "ce_open, ce_high, ce_low, ce_close, ce_oi_open, ce_oi_close, ce_volume, " +
+      "pe_open, pe_high, pe_low, pe_close, pe_oi_open, pe_oi_close, pe_volume, " +
+      "first_sample_at, last_sample_at, samples" +
+      ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+      "ON CONFLICT (server_name, underlying, expiry_date, bucket, bucket_start, strike) DO UPDATE SET " +
+      mergeOpen("ce_open") + ", ce_high = GREATEST(r.ce_high, EXCLUDED.ce_high), " +
+      "ce_low = LEAST(r.ce_low, EXCLUDED.ce_low), " + mergeClose("ce_close") + ", " +
+      mergeOpen("ce_oi_open") + ", " + mergeClose("ce_oi_close") + ", " + mergeClose("ce_volume") + ", " +
+      mergeOpen("pe_open") + ", pe_high = GREATEST(r.pe_high, EXCLUDED.pe_high), " +
+      "pe_low = LEAST(r.pe_low, EXCLUDED.pe_low), " + mergeClose("pe_close") + ", " +
+      mergeOpen("pe_oi_open") + ", " + mergeClose("pe_oi_close") + ", " + mergeClose("pe_volume") + ", " +
+      MERGE_SAMPLES;
+
+  private static final String UPSERT_SUMMARY_SQL = "INSERT INTO openalgo_optionchain_summary_rollup AS r (" +
+      "server_name, underlying, expiry_date, bucket, bucket_start, " +
+      "underlying_open, underlying_high, underlying_low, underlying_close, " +
+      "total_ce_oi_open, total_ce_oi_close, total_pe_oi_open, total_pe_oi_close, " +
+      "total_ce_volume, total_pe_volume, pcr_oi_close, max_pain_strike_close, " +
+      "first_sample_at, last_sample_at, samples" +
+      ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+      "ON CONFLICT (server_name, underlying, expiry_date, bucket, bucket_start) DO UPDATE SET " +
+      mergeOpen("underlying_open") + ", " +
+      "underlying_high = GREATEST(r.underlying_high, EXCLUDED.underlying_high), " +
+      "underlying_low = LEAST(r.underlying_low, EXCLUDED.underlying_low), " +
+      mergeClose("underlying_close") + ", " +
+      mergeOpen("total_ce_oi_open") + ", " + mergeClose("total_ce_oi_close") + ", " +
+      mergeOpen("total_pe_oi_open") + ", " + mergeClose("total_pe_oi_close") + ", " +
+      mergeClose("total_ce_volume") + ", " + mergeClose("total_pe_volume") + ", " +
+      mergeClose("pcr_oi_close") + ", " + mergeClose("max_pain_strike_close") + ", " +
+      MERGE_SAMPLES;
+
+  private static String mergeOpen(String column) {
+    return column + " = CASE WHEN EXCLUDED.first_sample_at < r.first_sample_at " +
+        "THEN COALESCE(EXCLUDED." + column + ", r." + column + ") ELSE COALESCE(r." + column + ", EXCLUDED." + column + ") END";
+  }
+
+  private static String mergeClose(String column) {
+    return column + " = CASE WHEN r.last_sample_at IS NULL OR EXCLUDED.last_sample_at > r.last_sample_at " +
+        "THEN COALESCE(EXCLUDED." + column + ", r." + column + ") ELSE COALESCE(r." + column + ", EXCLUDED." + column + ") END";
+  }
+
+  private static int setOhlc(PreparedStatement pstmt, int p, Series series) throws Exception {
+    p = setDouble(pstmt, p, series.open);
+    p = setDouble(pstmt, p, series.high);
+    p = setDouble(pstmt, p, series.low);
+    return setDouble(pstmt, p, series.close);
+  }
+
+  private static int setTimes(PreparedStatement pstmt, int p, SampleTimes times) throws Exception {
+    pstmt.setTimestamp(p++, new Timestamp(times.first));
+    pstmt.setTimestamp(p++, new Timestamp(times.last));
+    return p;
+  }
+
+  private static int setOpenClose(PreparedStatement pstmt, int p, Series series) throws Exception {
+    p = setLong(pstmt, p, series.open);
+    return setLong(pstmt, p, series.close);
+  }
+
+  private static int setDouble(PreparedStatement pstmt, int p, double value) throws Exception {
+    if (Double.isNaN(value)) {
+      pstmt.setNull(p, java.sql.Types.DOUBLE);
+    } else {
+      pstmt.setDouble(p, value);
+    }
+    return p + 1;
+  }
+
+  private static int setLong(PreparedStatement pstmt, int p, double value) throws Exception {
+    if (Double.isNaN(value)) {
+      pstmt.setNull(p, java.sql.Types.BIGINT);
+    } else {
+      pstmt.setLong(p, (long) value);
+    }
+    return p + 1;
+  }
+
+  private static double number(JsonObject option, String name) {
+    return option != null && option.has(name) && !option.get(name).isJsonNull() ? option.get(name).getAsDouble() : Double.NaN;
+  }
+}
@@ -0,0 +1,214 @@
+package com.nigam.temporal.ltp;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.Map;
+
+/**
+ * Aggregated volume, OI and OI change for one option chain snapshot.
+ * Totals cover all strikes; above/below are split by the underlying LTP (the ATM strike itself is in neither).
+ * PCR, max pain, ATM straddle and buildup counts are collected alongside in {@link OptionChainAnalytics}.
+ */
+public class OptionChainSummary {
+
+  private final double underlyingLtp;
+
+  // Total sums (all strikes)
+  long totalCeVolume, totalPeVolume;
+  long totalCeOi, totalPeOi;
+  long totalCeOiChange, totalPeOiChange;
+
+  // Above underlying sums
+  long aboveCeVolume, abovePeVolume;
+  long aboveCeOi, abovePeOi;
+  long aboveCeOiChange, abovePeOiChange;
+
+  // Below underlying sums
+  long belowCeVolume, belowPeVolume;
+  long belowCeOi, belowPeOi;
+  long belowCeOiChange, belowPeOiChange;
+
+  private OptionChainAnalytics analytics = new OptionChainAnalytics();
+
+  public OptionChainSummary(double underlyingLtp) {
+    this.underlyingLtp = underlyingLtp;
+  }
+
+  /** Aggregate a whole chain array in one pass. */
+  public static OptionChainSummary fromChain(JsonArray chain, double underlyingLtp,
+                                             Map<String, Long> previousCeOi, Map<String, Long> previousPeOi) {
+    OptionChainSummary summary = new OptionChainSummary(underlyingLtp);
+    for (int i = 0; i < chain.size(); i++) {
+      summary.addStrike(chain.get(i).getAsJsonObject(), previousCeOi, previousPeOi);
+    }
+    return summary;
+  }
+
+  /** Add one chain entry ({"strike":..,"ce":{..},"pe":{..}}); OI change is measured against the previous OI per symbol. */
+  public void addStrike(JsonObject chainEntry, Map<String, Long> previousCeOi, Map<String, Long> previousPeOi) {
+    int strike = chainEntry.has("strike") ? chainEntry.get("strike").getAsInt() : 0;
+
+    JsonObject ce = null;
+    JsonObject pe = null;
+    if (chainEntry.has("ce") && chainEntry.get("ce").isJsonObject()) {
+      ce = chainEntry.getAsJsonObject("ce");
+    }
+    if (chainEntry.has("pe") && chainEntry.get("pe").isJsonObject()) {
+      pe = chainEntry.getAsJsonObject("pe");
+    }
+
+    long ceVolume = longField(ce, "volume");
+    long peVolume = longField(pe, "volume");
+    long ceOi = longField(ce, "oi");
+    long peOi = longField(pe, "oi");
+
+    // Calculate change in OI (current OI - previous OI)
+    String ceSymbol = (ce != null && ce.has("symbol") && !ce.get("symbol").isJsonNull())
+        ? ce.get("symbol").getAsString() : null;
+    String peSymbol = (pe != null && pe.has("symbol") && !pe.get("symbol").isJsonNull())
+        ? pe.get("symbol").getAsString() : null;
+
+    Long prevCeOi = ceSymbol != null ? previousCeOi.get(ceSymbol) : null;
+    Long prevPeOi = peSymbol != null ? previousPeOi.get(peSymbol) : null;
+
+    double ceLtp = doubleField(ce, "ltp");
+    double peLtp = doubleField(pe, "ltp");
+    add(strike, ceVolume, peVolume, ceOi, peOi,
+        prevCeOi != null ? ceOi - prevCeOi : OptionChainAnalytics.NO_PREVIOUS_OI,
+        prevPeOi != null ? peOi - prevPeOi : OptionChainAnalytics.NO_PREVIOUS_OI,
+        ceLtp, peLtp, ceLtp - doubleField(ce, "prev_close"), peLtp - doubleField(pe, "prev_close"));
+  }
+
+  /** Add already-extracted values for one strike. */
+  public void add(int strike, long ceVolume, long peVolume, long ceOi, long peOi, long ceOiChange, long peOiChange) {
+    add(strike, ceVolume, peVolume, ceOi, peOi, ceOiChange, peOiChange, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+  }
+
+  /**
+   * Add already-extracted values for one strike, with LTPs and price changes for the analytics (NaN if missing).
+   * An OI change of {@link OptionChainAnalytics#NO_PREVIOUS_OI} (no previous OI for the symbol) is left out of
+   * the buildup counts and counts as the full OI in the OI change totals.
+   */
+  public void add(int strike, long ceVolume, long peVolume, long ceOi, long peOi, long ceOiChange, long peOiChange,
+                  double ceLtp, double peLtp, double cePriceChange, double pePriceChange) {
+    analytics.addStrike(strike, ceOi, peOi, ceLtp, peLtp, cePriceChange, pePriceChange, ceOiChange, peOiChange);
+    if (ceOiChange == OptionChainAnalytics.NO_PREVIOUS_OI) {
+      ceOiChange = ceOi;
+    }
+    if (peOiChange == OptionChainAnalytics.NO_PREVIOUS_OI) {
+      peOiChange = peOi;
+    }
+    totalCeVolume += ceVolume;
+    totalPeVolume += peVolume;
+    totalCeOi += ceOi;
+    totalPeOi += peOi;
+    totalCeOiChange += ceOiChange;
+    totalPeOiChange += peOiChange;
+
+    if (strike > underlyingLtp) {
+      aboveCeVolume += ceVolume;
+      abovePeVolume += peVolume;
+      aboveCeOi += ceOi;
+      abovePeOi += peOi;
+      aboveCeOiChange += ceOiChange;
+      abovePeOiChange += peOiChange;
+    } else if (strike < underlyingLtp) {
+      belowCeVolume += ceVolume;
+      belowPeVolume += peVolume;
+      belowCeOi += ceOi;
+      belowPeOi += peOi;
+      belowCeOiChange += ceOiChange;
+      belowPeOiChange += peOiChange;
+    }
+  }
+
+  /** Summary document stored under the :current:summary Redis key. */
+  public JsonObject toJson(String serverName, String underlying, String expiry, String datetime) {
+    JsonObject summaryJson = new JsonObject();
+    summaryJson.addProperty("server_name", serverName);
+    summaryJson.addProperty("underlying", underlying);
+    summaryJson.addProperty("underlying_ltp", underlyingLtp);
+    summaryJson.addProperty("expiry_date", expiry);
+    summaryJson.addProperty("datetime", datetime);
+
+    // Total sums
+    JsonObject totalSums = new JsonObject();
+    totalSums.addProperty("ce_volume", totalCeVolume);
+    totalSums.addProperty("pe_volume", totalPeVolume);
+    totalSums.addProperty("ce_oi", totalCeOi);
+    totalSums.addProperty("pe_oi", totalPeOi);
+    totalSums.addProperty("ce_oi_change", totalCeOiChange);
+    totalSums.addProperty("pe_oi_change", totalPeOiChange);
+    summaryJson.add("total", totalSums);
+
+    // Above underlying sums
+    JsonObject aboveSums = new JsonObject();
+    aboveSums.addProperty("ce_volume", aboveCeVolume);
+    aboveSums.addProperty("pe_volume", abovePeVolume);
+    aboveSums.addProperty("ce_oi", aboveCeOi);
+    aboveSums.addProperty("pe_oi", abovePeOi);
+    aboveSums.addProperty("ce_oi_change", aboveCeOiChange);
+    aboveSums.addProperty("pe_oi_change", abovePeOiChange);
+    summaryJson.add("above_underlying", aboveSums);
+
+    // Below underlying sums
+    JsonObject belowSums = new JsonObject();
+    belowSums.addProperty("ce_volume", belowCeVolume);
+    belowSums.addProperty("pe_volume", belowPeVolume);
+    belowSums.addProperty("ce_oi", belowCeOi);
+    belowSums.addProperty("pe_oi", belowPeOi);
+    belowSums.addProperty("ce_oi_change", belowCeOiChange);
+    belowSums.addProperty("pe_oi_change", belowPeOiChange);
+    summaryJson.add("below_underlying", belowSums);
+
+    summaryJson.add("analytics", analytics().toJson());
+    return summaryJson;
+  }
+
+  /** Rebuild a summary from {@link #toJson} output (used when replaying spilled write-behind snapshots). */
+  public static OptionChainSummary fromJson(JsonObject summaryJson) {
+    OptionChainSummary summary = new OptionChainSummary(summaryJson.get("underlying_ltp").getAsDouble());
+    JsonObject total = summaryJson.getAsJsonObject("total");
+    summary.totalCeVolume = longField(total, "ce_volume");
+    summary.totalPeVolume = longField(total, "pe_volume");
+    summary.totalCeOi = longField(total, "ce_oi");
+    summary.totalPeOi = longField(total, "pe_oi");
+    summary.totalCeOiChange = longField(total, "ce_oi_change");
+    summary.totalPeOiChange = longField(total, "pe_oi_change");
+    JsonObject above = summaryJson.getAsJsonObject("above_underlying");
+    summary.aboveCeVolume = longField(above, "ce_volume");
+    summary.abovePeVolume = longField(above, "pe_volume");
+    summary.aboveCeOi = longField(above, "ce_oi");
+    summary.abovePeOi = longField(above, "pe_oi");
+    summary.aboveCeOiChange = longField(above, "ce_oi_change");
+    summary.abovePeOiChange = longField(above, "pe_oi_change");
+    JsonObject below = summaryJson.getAsJsonObject("below_underlying");
+    summary.belowCeVolume = longField(below, "ce_volume");
+    summary.belowPeVolume = longField(below, "pe_volume");
+    summary.belowCeOi = longField(below, "ce_oi");
+    summary.belowPeOi = longField(below, "pe_oi");
+    summary.belowCeOiChange = longField(below, "ce_oi_change");
+    summary.belowPeOiChange = longField(below, "pe_oi_change");
+    summary.analytics = OptionChainAnalytics.fromJson(summaryJson.getAsJsonObject("analytics"));
+    return summary;
+  }
+
+  private static long longField(JsonObject option, String name) {
+    return (option != null && option.has(name) && !option.get(name).isJsonNull()) ? option.get(name).getAsLong() : 0;
+  }
+
+  private static double doubleField(JsonObject option, String name) {
+    return (option != null && option.has(name) && !option.get(name).isJsonNull()) ? option.get(name).getAsDouble() : Double.NaN;
+  }
+
+  /** Analytics for the strikes added so far; computed on first call, so call it after the last strike. */
+  public OptionChainAnalytics analytics() {
+    analytics.finish(underlyingLtp, totalCeOi, totalPeOi, totalCeVolume, totalPeVolume);
+    return analytics;
+  }
+
+  public double getUnderlyingLtp() {
+    return underlyingLtp;
+  }
+}
@@ -0,0 +1,551 @@
+package com.nigam.temporal.ltp;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded write-behind queue for option chain rows, so fetchOptionChain returns once Redis is updated.
+ *
+ * A single writer thread takes snapshots off the queue and coalesces up to maxBatchSnapshots of them
+ * into one transaction (one JDBC batch for the strike rows, one for the summary rows). When the queue is
+ * full, {@link #submit} blocks for up to offerTimeoutMs (backpressure on the activity) and then spills.
+ * When a transaction fails because the database is unreachable (SQLState class 08, pool timeouts, anything
+ * not recognised as a data error) the batch is appended to a local JSON-lines spill file and the DB is left
+ * alone for retryMs; the spill file is replayed after the next successful write and at startup.
+ * When it fails on the data (SQLState class 22 or 23, e.g. a value out of range or no partition for the row)
+ * the batch is retried one snapshot at a time and the snapshots that still fail are appended, with the
+ * error, to a dead-letter file next to the spill file. They are logged and never spilled or replayed, so
+ * one bad snapshot cannot hold back the ones queued or spilled after it.
+ * Delivery is at-least-once: a crash in the middle of a replay can insert a replayed batch twice.
+ *
+ * Env: DB_WRITE_BEHIND_ENABLED (default false), DB_WRITE_BEHIND_QUEUE_CAPACITY (snapshots, default 256),
+ * DB_WRITE_BEHIND_BATCH_SNAPSHOTS (default 32), DB_WRITE_BEHIND_OFFER_TIMEOUT_MS (default 5000),
+ * DB_WRITE_BEHIND_RETRY_MS (default 30000), DB_WRITE_BEHIND_SPILL_DIR (default ./spill).
+ */
+public class OptionChainWriteBehind implements AutoCloseable {
+
+  private static final String SPILL_FILE = "optionchain-writebehind.jsonl";
+  private static final String REPLAY_GLOB = "optionchain-writebehind-*.replay";
+  private static final String DEAD_LETTER_FILE = "optionchain-writebehind-deadletter.jsonl";
+
+  /** How {@link #write} ended: committed, failed on the connection (retry later) or failed on the data. */
+  private enum WriteResult { WRITTEN, UNAVAILABLE, REJECTED }
+
+  /** One option chain snapshot waiting to be written. */
+  public static final class Snapshot {
+    final String serverName;
+    final String underlying;
+    final double underlyingLtp;
+    final double underlyingPrevClose;
+    final String expiry;
+    final int atmStrike;
+    final JsonArray chain;
+    final Timestamp timestamp;
+    final OptionChainSummary summary;
+
+    public Snapshot(String serverName, String underlying, double underlyingLtp, double underlyingPrevClose,
+                    String expiry, int atmStrike, JsonArray chain, Timestamp timestamp, OptionChainSummary summary) {
+      this.serverName = serverName;
+      this.underlying = underlying;
+      this.underlyingLtp = underlyingLtp;
+      this.underlyingPrevClose = underlyingPrevClose;
+      this.expiry = expiry;
+      this.atmStrike = atmStrike;
+      this.chain = chain;
+      this.timestamp = timestamp;
+      this.summary = summary;
+    }
+
+    JsonObject toJson() {
+      JsonObject json = new JsonObject();
+      json.addProperty("server_name", serverName);
+      json.addProperty("underlying", underlying);
+      json.addProperty("underlying_ltp", underlyingLtp);
+      json.addProperty("underlying_prev_close", underlyingPrevClose);
+      json.addProperty("expiry_date", expiry);
+      json.addProperty("atm_strike", atmStrike);
+      json.addProperty("datetime", timestamp.toString());
+      json.add("chain", chain);
+      json.add("summary", summary.toJson(serverName, underlying, expiry, timestamp.toString()));
+      return json;
+    }
+
+    static Snapshot fromJson(JsonObject json) {
+      return new Snapshot(
+          json.get("server_name").getAsString(),
+          json.get("underlying").getAsString(),
+          json.get("underlying_ltp").getAsDouble(),
+          json.get("underlying_prev_close").getAsDouble(),
+          json.get("expiry_date").getAsString(),
+          json.get("atm_strike").getAsInt(),
+          json.getAsJsonArray("chain"),
+          Timestamp.valueOf(json.get("datetime").getAsString()),
+          OptionChainSummary.fromJson(json.getAsJsonObject("summary")));
+    }
+  }
+
+  private final Callable<Connection> connectionFactory;
+  private final OptionChainPartitions partitions;
+  private final OptionChainCompactTable compact;
+  private final BlockingQueue<Snapshot> queue;
+  private final int maxBatchSnapshots;
+  private final long offerTimeoutMs;
+  private final long retryMs;
+  private final Path spillDir;
+  private final Path spillFile;
+  private final Path deadLetterFile;
+  private final Object spillLock = new Object();
+  private final Thread writer;
+
+  private volatile boolean running = true;
+  private Connection connection;
+  private long dbRetryAt = 0;
+  // Error of the last failed write, recorded with dead-lettered snapshots
+  private String lastFailure = null;
+  private int deadLettered = 0;
+
+  public OptionChainWriteBehind(Callable<Connection> connectionFactory, OptionChainPartitions partitions,
+                                OptionChainCompactTable compact, int queueCapacity, int maxBatchSnapshots, long offerTimeoutMs, long retryMs,
+                                Path spillDir) {
+    this.connectionFactory = connectionFactory;
+    this.partitions = partitions;
+    this.compact = compact;
+    this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+    this.maxBatchSnapshots = Math.max(1, maxBatchSnapshots);
+    this.offerTimeoutMs = Math.max(0, offerTimeoutMs);
+    this.retryMs = Math.max(0, retryMs);
+    this.spillDir = spillDir;
+    this.spillFile = spillDir.resolve(SPILL_FILE);
+    this.deadLetterFile = spillDir.resolve(DEAD_LETTER_FILE);
+    this.writer = new Thread(this::run, "optionchain-writer");
+    this.writer.setDaemon(true);
+    this.writer.start();
+    System.out.println("✅ Database write-behind started (queue: " + queueCapacity + " snapshots, batch: "
+        + this.maxBatchSnapshots + ", spill: " + spillFile.toAbsolutePath() + ")");
+  }
+
+  public static boolean isEnabledInEnv() {
+    return Boolean.parseBoolean(System.getenv().getOrDefault("DB_WRITE_BEHIND_ENABLED", "false"));
+  }
+
+  public static OptionChainWriteBehind fromEnv(Callable<Connection> connectionFactory, OptionChainPartitions partitions,
+                                               OptionChainCompactTable compact) {
+    return new OptionChainWriteBehind(connectionFactory, partitions, compact,
+        Integer.parseInt(System.getenv().getOrDefault("DB_WRITE_BEHIND_QUEUE_CAPACITY", "256")),
+        Integer.parseInt(System.getenv().getOrDefault("DB_WRITE_BEHIND_BATCH_SNAPSHOTS", "32")),
+        Long.parseLong(System.getenv().getOrDefault("DB_WRITE_BEHIND_OFFER_TIMEOUT_MS", "5000")),
+        Long.parseLong(System.getenv().getOrDefault("DB_WRITE_BEHIND_RETRY_MS", "30000")),
+        Paths.get(System.getenv().getOrDefault("DB_WRITE_BEHIND_SPILL_DIR", "spill")));
+  }
+
+  /** Queue a snapshot, waiting up to offerTimeoutMs for space; spills it to disk if the queue stays full. */
+  public void submit(Snapshot snapshot) {
+    try {
+      if (running && queue.offer(snapshot, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+        return;
+      }
+      System.err.println("⚠️ Write-behind queue full for " + offerTimeoutMs + " ms, spilling snapshot to disk");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    spill(List.of(snapshot));
+  }
+
+  /** Snapshots waiting in memory. */
+  public int pending() {
+    return queue.size();
+  }
+
+  /** Stop accepting snapshots, give the writer up to graceMs to drain the queue and spill whatever is left. */
+  public void close(long graceMs) {
+    running = false;
+    try {
+      writer.join(graceMs);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    List<Snapshot> left = new ArrayList<>();
+    queue.drainTo(left);
+    if (!left.isEmpty()) {
+      System.out.println("💾 Spilling " + left.size() + " unwritten snapshots on shutdown");
+      spill(left);
+    }
+    if (!writer.isAlive()) {
+      closeConnection();
+    }
+  }
+
+  @Override
+  public void close() {
+    close(10_000);
+  }
+
+  private void run() {
+    replaySpill();
+    while (running || !queue.isEmpty()) {
+      try {
+        Snapshot first = queue.poll(1, TimeUnit.SECONDS);
+        if (first == null) {
+          replaySpill();
+          continue;
+        }
+        List<Snapshot> batch = new ArrayList<>(maxBatchSnapshots);
+        batch.add(first);
+        queue.drainTo(batch, maxBatchSnapshots - 1);
+
+        if (System.currentTimeMillis() < dbRetryAt) {
+          // DB failed recently: don't hold the queue waiting for connect timeouts
+          spill(batch);
+          continue;
+        }
+        List<Snapshot> unwritten = deliver(batch);
+        if (unwritten.isEmpty()) {
+          replaySpill();
+        } else {
+          spill(unwritten);
+          dbRetryAt = System.currentTimeMillis() + retryMs;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (Exception e) {
+        System.err.println("⚠️ Write-behind writer error: " + e.getMessage());
+        e.printStackTrace();
+        // Don't throw - keep the writer alive
+      }
+    }
+  }
+
+  /**
+   * Write a batch, falling back to one snapshot at a time when it is rejected on the data; snapshots that are
+   * rejected on their own go to the dead-letter file. Returns the snapshots left unwritten because the database
+   * became unavailable, in order (empty when everything was written or dead-lettered).
+   */
+  private List<Snapshot> deliver(List<Snapshot> batch) {
+    // Past the partition retention window: there is no partition to write into, now or later
+    List<Snapshot> current = new ArrayList<>(batch.size());
+    for (Snapshot snapshot : batch) {
+      if (partitions.isExpired(snapshot.timestamp.toLocalDateTime().toLocalDate())) {
+        deadLetter(snapshot.toJson(), "snapshot older than DB_PARTITION_RETENTION_DAYS");
+      } else {
+        current.add(snapshot);
+      }
+    }
+    if (current.isEmpty()) {
+      return List.of();
+    }
+    batch = current;
+    WriteResult result = write(batch);
+    if (result == WriteResult.WRITTEN) {
+      return List.of();
+    }
+    if (result == WriteResult.UNAVAILABLE) {
+      return batch;
+    }
+    if (batch.size() == 1) {
+      deadLetter(batch.get(0).toJson(), lastFailure);
+      return List.of();
+    }
+    System.out.println("🔍 Retrying rejected write-behind batch one snapshot at a time");
+    for (int s = 0; s < batch.size(); s++) {
+      Snapshot snapshot = batch.get(s);
+      WriteResult single = write(List.of(snapshot));
+      if (single == WriteResult.UNAVAILABLE) {
+        return new ArrayList<>(batch.subList(s, batch.size()));
+      }
+      if (single == WriteResult.REJECTED) {
+        deadLetter(snapshot.toJson(), lastFailure);
+      }
+    }
+    return List.of();
+  }
+
+  /** Write snapshots in one transaction, rolling back if anything failed. */
+  private WriteResult write(List<Snapshot> batch) {
+    long started = System.nanoTime();
+    int rows = 0;
+    int skipped = 0;
+    try {
+      Connection conn = connection();
+      for (Snapshot snapshot : batch) {
+        partitions.ensureDay(conn, snapshot.timestamp.toLocalDateTime().toLocalDate());
+      }
+      // Series ids are resolved (and created) before the transaction, so a rollback cannot undo a cached id
+      int[] seriesIds = new int[batch.size()];
+      if (compact.writesCompact()) {
+        for (int s = 0; s < batch.size(); s++) {
+          Snapshot snapshot = batch.get(s);
+          seriesIds[s] = compact.seriesId(conn, snapshot.serverName, snapshot.underlying, snapshot.expiry);
+        }
+      }
+      conn.setAutoCommit(false);
+      try (PreparedStatement chainStmt = compact.writesWide() ? conn.prepareStatement(LtpCalculatorActivitiesImpl.INSERT_CHAIN_SQL) : null;
+           PreparedStatement compactStmt = compact.writesCompact() ? conn.prepareStatement(OptionChainCompactTable.INSERT_SQL) : null;
+           PreparedStatement summaryStmt = conn.prepareStatement(LtpCalculatorActivitiesImpl.INSERT_SUMMARY_SQL)) {
+        for (int s = 0; s < batch.size(); s++) {
+          Snapshot snapshot = batch.get(s);
+          for (int i = 0; i < snapshot.chain.size(); i++) {
+            JsonObject chainEntry = snapshot.chain.get(i).getAsJsonObject();
+            int strike = chainEntry.has("strike") ? chainEntry.get("strike").getAsInt() : 0;
+            JsonObject ce = chainEntry.has("ce") && chainEntry.get("ce").isJsonObject() ? chainEntry.getAsJsonObject("ce") : null;
+            JsonObject pe = chainEntry.has("pe") && chainEntry.get("pe").isJsonObject() ? chainEntry.getAsJsonObject("pe") : null;
+            if (chainStmt != null) {
+              LtpCalculatorActivitiesImpl.insertStrikeRow(chainStmt, snapshot.serverName, snapshot.underlying,
+                  snapshot.underlyingLtp, snapshot.underlyingPrevClose, snapshot.expiry, snapshot.atmStrike, strike,
+                  ce, pe, snapshot.timestamp);
+            }
+            if (compactStmt != null) {
+              OptionChainCompactTable.addStrikeRow(compactStmt, seriesIds[s], snapshot.timestamp, snapshot.underlyingLtp,
+                  snapshot.underlyingPrevClose, snapshot.atmStrike, strike, ce, pe);
+            }
+            rows++;
+          }
+          LtpCalculatorActivitiesImpl.bindSummaryRow(summaryStmt, snapshot.serverName, snapshot.underlying,
+              snapshot.expiry, snapshot.timestamp, snapshot.summary);
+          summaryStmt.addBatch();
+        }
+        // Rows of snapshots already stored (activity retry, spill replayed twice) are skipped by ON CONFLICT
+        if (chainStmt != null) {
+          skipped = LtpCalculatorActivitiesImpl.countSkipped(chainStmt.executeBatch());
+        }
+        if (compactStmt != null) {
+          int skippedCompact = LtpCalculatorActivitiesImpl.countSkipped(compactStmt.executeBatch());
+          skipped = chainStmt != null ? skipped : skippedCompact;
+        }
+        summaryStmt.executeBatch();
+        conn.commit();
+      } finally {
+        conn.setAutoCommit(true);
+      }
+      System.out.println("✅ Write-behind committed " + batch.size() + " snapshots (" + rows + " rows"
+          + (skipped > 0 ? ", " + skipped + " already stored" : "") + ") in "
+          + (System.nanoTime() - started) / 1_000_000 + " ms, pending: " + queue.size());
+      return WriteResult.WRITTEN;
+    } catch (Exception e) {
+      lastFailure = String.valueOf(e.getMessage());
+      rollbackQuietly();
+      if (isDataError(e)) {
+        System.err.println("⚠️ Write-behind batch of " + batch.size() + " snapshots rejected: " + e.getMessage());
+        return WriteResult.REJECTED;
+      }
+      System.err.println("⚠️ Write-behind batch of " + batch.size() + " snapshots failed: " + e.getMessage());
+      closeConnection();
+      return WriteResult.UNAVAILABLE;
+    }
+  }
+
+  /**
+   * True when retrying the same rows can never succeed: SQLState class 22 (data exception) or 23 (integrity
+   * constraint, including "no partition of relation found for row"), or a snapshot that cannot be bound at all.
+   * Connection errors (class 08), pool timeouts and anything unrecognised count as the database being away.
+   */
+  static boolean isDataError(Exception e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof java.sql.SQLException) {
+        for (java.sql.SQLException sql = (java.sql.SQLException) cause; sql != null; sql = sql.getNextException()) {
+          String state = sql.getSQLState();
+          if (state != null && (state.startsWith("22") || state.startsWith("23"))) {
+            return true;
+          }
+          String message = sql.getMessage();
+          if (message != null && message.contains("no partition")) {
+            return true;
+          }
+        }
+        return false;
+      }
+    }
+    // JSON that does not bind (missing or malformed fields) fails the same way on every attempt
+    return e instanceof RuntimeException;
+  }
+
+  private Connection connection() throws Exception {
+    if (connection == null || connection.isClosed()) {
+      connection = connectionFactory.call();
+    }
+    return connection;
+  }
+
+  private void rollbackQuietly() {
+    try {
+      if (connection != null && !connection.isClosed()) {
+        connection.rollback();
+      }
+    } catch (Exception ignored) {
+      // connection is discarded below anyway
+    }
+  }
+
+  private void closeConnection() {
+    try {
+      if (connection != null) {
+        connection.close();
+      }
+    } catch (Exception ignored) {
+      // nothing useful to do
+    }
+    connection = null;
+  }
+
+  /** Append snapshots to the spill file, one JSON document per line. */
+  private void spill(List<Snapshot> snapshots) {
+    synchronized (spillLock) {
+      try {
+        Files.createDirectories(spillDir);
+        StringBuilder lines = new StringBuilder();
+        for (Snapshot snapshot : snapshots) {
+          lines.append(snapshot.toJson()).append('\n');
+        }
+        Files.write(spillFile, lines.toString().getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+        System.out.println("💾 Spilled " + snapshots.size() + " snapshots to " + spillFile);
+      } catch (IOException e) {
+        System.err.println("❌ Failed to spill " + snapshots.size() + " snapshots, they are lost: " + e.getMessage());
+      }
+    }
+  }
+
+  /** Append a snapshot (or an unreadable spill line) the database rejected to the dead-letter file, with the error. */
+  private void deadLetter(JsonObject snapshot, String error) {
+    JsonObject entry = new JsonObject();
+    entry.addProperty("failed_at", new Timestamp(System.currentTimeMillis()).toString());
+    entry.addProperty("error", error);
+    entry.add("snapshot", snapshot);
+    synchronized (spillLock) {
+      try {
+        Files.createDirectories(spillDir);
+        Files.write(deadLetterFile, (entry + "\n").getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+        deadLettered++;
+        System.err.println("☠️ Dead-lettered snapshot " + describe(snapshot) + " to " + deadLetterFile + ": " + error);
+      } catch (IOException e) {
+        System.err.println("❌ Failed to dead-letter snapshot " + describe(snapshot) + ", it is lost: " + e.getMessage());
+      }
+    }
+  }
+
+  private static String describe(JsonObject snapshot) {
+    if (!snapshot.has("underlying")) {
+      return "(unreadable)";
+    }
+    return snapshot.get("server_name").getAsString() + "/" + snapshot.get("underlying").getAsString() + "/"
+        + snapshot.get("expiry_date").getAsString() + " @ " + snapshot.get("datetime").getAsString();
+  }
+
+  /**
+   * Move the spill file aside and write its snapshots in batches. Once the database is unavailable the unwritten
+   * remainder is appended back to the spill file for the next attempt; snapshots it rejects are dead-lettered
+   * and the replay carries on. Leftover .replay files from a crash are replayed too.
+   */
+  private void replaySpill() {
+    if (System.currentTimeMillis() < dbRetryAt) {
+      return;
+    }
+    synchronized (spillLock) {
+      try {
+        if (Files.exists(spillFile) && Files.size(spillFile) > 0) {
+          Files.move(spillFile, spillDir.resolve("optionchain-writebehind-" + System.currentTimeMillis() + ".replay"),
+              StandardCopyOption.ATOMIC_MOVE);
+        }
+      } catch (IOException e) {
+        System.err.println("⚠️ Failed to rotate spill file: " + e.getMessage());
+        return;
+      }
+    }
+    if (!Files.isDirectory(spillDir)) {
+      return;
+    }
+    List<Path> replayFiles = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(spillDir, REPLAY_GLOB)) {
+      stream.forEach(replayFiles::add);
+    } catch (IOException e) {
+      System.err.println("⚠️ Failed to list spill directory: " + e.getMessage());
+      return;
+    }
+    replayFiles.sort(null);
+    for (Path replayFile : replayFiles) {
+      if (!replay(replayFile)) {
+        dbRetryAt = System.currentTimeMillis() + retryMs;
+        return;
+      }
+    }
+  }
+
+  private boolean replay(Path replayFile) {
+    List<Snapshot> batch = new ArrayList<>(maxBatchSnapshots);
+    List<Snapshot> unwritten = new ArrayList<>();
+    int replayed = 0;
+    int deadLetteredBefore = deadLettered;
+    try (BufferedReader reader = Files.newBufferedReader(replayFile, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          continue;
+        }
+        Snapshot snapshot;
+        try {
+          snapshot = Snapshot.fromJson(JsonParser.parseString(line).getAsJsonObject());
+        } catch (Exception e) {
+          JsonObject raw = new JsonObject();
+          raw.addProperty("line", line);
+          deadLetter(raw, "unreadable spilled snapshot in " + replayFile.getFileName() + ": " + e.getMessage());
+          continue;
+        }
+        if (!unwritten.isEmpty()) {
+          unwritten.add(snapshot);
+          continue;
+        }
+        batch.add(snapshot);
+        if (batch.size() == maxBatchSnapshots) {
+          int rejectedBefore = deadLettered;
+          List<Snapshot> left = deliver(batch);
+          replayed += batch.size() - left.size() - (deadLettered - rejectedBefore);
+          unwritten.addAll(left);
+          batch = new ArrayList<>(maxBatchSnapshots);
+        }
+      }
+    } catch (IOException e) {
+      System.err.println("⚠️ Failed to read spill file " + replayFile + ": " + e.getMessage());
+      return false;
+    }
+    if (!batch.isEmpty()) {
+      int rejectedBefore = deadLettered;
+      List<Snapshot> left = deliver(batch);
+      replayed += batch.size() - left.size() - (deadLettered - rejectedBefore);
+      unwritten.addAll(left);
+    }
+    if (!unwritten.isEmpty()) {
+      spill(unwritten);
+    }
+    try {
+      Files.delete(replayFile);
+    } catch (IOException e) {
+      System.err.println("⚠️ Failed to delete replayed spill file " + replayFile + ": " + e.getMessage());
+    }
+    if (replayed > 0) {
+      System.out.println("✅ Replayed " + replayed + " spilled snapshots from " + replayFile.getFileName()
+          + (deadLettered > deadLetteredBefore ? " (" + (deadLettered - deadLetteredBefore) + " dead-lettered)" : ""));
+    }
+    return unwritten.isEmpty();
+  }
+}
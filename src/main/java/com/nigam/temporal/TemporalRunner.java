@@ -1,5 +1,6 @@
 package com.nigam.temporal;
 
+import com.nigam.temporal.common.WorkerResources;
 import com.nigam.temporal.ltp.LtpCalculatorActivitiesImpl;
 import com.nigam.temporal.ltp.LtpCalculatorWorkflowImpl;
 import com.nigam.temporal.ltp.LtpSchedulerWorkflowImpl;
@@ -18,6 +19,7 @@ import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
 
 public class TemporalRunner {
 
@@ -93,6 +95,10 @@ public class TemporalRunner {
                   System.out.println("⚡ Creating WorkerFactory...");
                   WorkerFactory factory = WorkerFactory.newInstance(client);
                   
+                  // Shared Redis pool, Kafka producer, HTTP client and DataSource, connected before any task arrives
+                  System.out.println("⚡ Warming up worker resources...");
+                  WorkerResources.shared().warmUp();
+                  
                   getGreetingWorker(factory);
                   getLtpWorker(factory);
                   
@@ -106,12 +112,10 @@ public class TemporalRunner {
                   System.out.println("   - ltpCalculator");
                   System.out.println("   - downloadNseData");
 
-                  // Add shutdown hook
-                  Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                        System.out.println("🛑 Shutting down Temporal worker...");
-                        service.shutdown();
-                        channel.shutdownNow();
-                  }));
+                  // Graceful drain on shutdown: stop polling and let in-flight activities finish within the grace
+                  // period; WorkerResources' hook then flushes write-behind/rollups/Kafka and closes the pools
+                  long graceSeconds = Long.parseLong(System.getenv().getOrDefault("WORKER_SHUTDOWN_GRACE_SECONDS", "30"));
+                  WorkerResources.shared().addDrainStep("temporal-workers", () -> drainWorkers(factory, service, channel, graceSeconds));
 
             } catch (Exception e) {
                   System.err.println("❌ TemporalWorker failed to start");
@@ -119,6 +123,22 @@ public class TemporalRunner {
             }
       }
 
+      private static void drainWorkers(WorkerFactory factory, WorkflowServiceStubs service, ManagedChannel channel, long graceSeconds) {
+            System.out.println("🛑 Shutting down Temporal worker: no new tasks, waiting up to " + graceSeconds + "s for running activities...");
+            long start = System.nanoTime();
+            factory.shutdown();
+            factory.awaitTermination(graceSeconds, TimeUnit.SECONDS);
+            if (factory.isTerminated()) {
+                  System.out.println("✅ Workers drained in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+            } else {
+                  System.err.println("⚠️ Activities still running after " + graceSeconds + "s, interrupting them");
+                  factory.shutdownNow();
+                  factory.awaitTermination(5, TimeUnit.SECONDS);
+            }
+            service.shutdown();
+            channel.shutdownNow();
+      }
+
       private static void getGreetingWorker(WorkerFactory factory) {
             // Create and configure Greeting Worker
             System.out.println("⚡ Creating Greeting Worker...");
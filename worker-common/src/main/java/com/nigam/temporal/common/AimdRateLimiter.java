@@ -0,0 +1,117 @@
+package com.nigam.temporal.common;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request pacing for one upstream host that adapts to throttling (additive increase, multiplicative decrease).
+ *
+ * Callers are spaced 1/rate apart. Every successful call adds {@code increasePerSecond / rate} so the rate
+ * climbs by roughly increasePerSecond each second of healthy traffic, up to maxRps. A throttled call
+ * (HTTP 429/403, or an OpenAlgo rate-limit message) cuts the rate to decreaseFactor times the lower of the
+ * current rate and the rate actually observed, so the cut bites even when callers were already slower
+ * than the limit. The rate never drops below minRps.
+ *
+ * {@link #acquire} fails fast when the wait would exceed the caller's budget instead of tying up the thread.
+ */
+public class AimdRateLimiter {
+
+  private static final Logger log = LogManager.getLogger(AimdRateLimiter.class);
+
+  private final String name;
+  private final double minRps;
+  private final double maxRps;
+  private final double increasePerSecond;
+  private final double decreaseFactor;
+
+  private double rate;
+  private long nextFreeNanos = System.nanoTime();
+  private long lastAcquireNanos = 0;
+  private double observedRps = 0;
+
+  public AimdRateLimiter(String name, double initialRps, double minRps, double maxRps,
+                         double increasePerSecond, double decreaseFactor) {
+    this.name = name;
+    this.minRps = Math.max(0.01, minRps);
+    this.maxRps = Math.max(this.minRps, maxRps);
+    this.increasePerSecond = Math.max(0, increasePerSecond);
+    this.decreaseFactor = Math.min(Math.max(decreaseFactor, 0.05), 1.0);
+    this.rate = Math.min(Math.max(initialRps, this.minRps), this.maxRps);
+  }
+
+  /**
+   * Env (prefix is e.g. "NSE" or "OPENALGO"; the unprefixed name is the fallback for both):
+   *   {prefix}_RATE_INITIAL_RPS (default 5), {prefix}_RATE_MIN_RPS (0.2), {prefix}_RATE_MAX_RPS (20),
+   *   {prefix}_RATE_INCREASE_RPS (0.5), {prefix}_RATE_DECREASE_FACTOR (0.5)
+   */
+  public static AimdRateLimiter fromEnv(String name, String prefix) {
+    AimdRateLimiter limiter = new AimdRateLimiter(name,
+        UpstreamGuard.envDouble(prefix, "RATE_INITIAL_RPS", 5),
+        UpstreamGuard.envDouble(prefix, "RATE_MIN_RPS", 0.2),
+        UpstreamGuard.envDouble(prefix, "RATE_MAX_RPS", 20),
+        UpstreamGuard.envDouble(prefix, "RATE_INCREASE_RPS", 0.5),
+        UpstreamGuard.envDouble(prefix, "RATE_DECREASE_FACTOR", 0.5));
+    log.info("AimdRateLimiter {} rate={} rps, min={}, max={}", name, limiter.rate, limiter.minRps, limiter.maxRps);
+    return limiter;
+  }
+
+  /**
+   * Reserve the next slot and sleep until it. Returns false without waiting (and without reserving)
+   * if the slot is more than maxWaitMs away.
+   */
+  public boolean acquire(long maxWaitMs) throws InterruptedException {
+    long waitNanos;
+    synchronized (this) {
+      long now = System.nanoTime();
+      long slot = Math.max(now, nextFreeNanos);
+      waitNanos = slot - now;
+      if (waitNanos > TimeUnit.MILLISECONDS.toNanos(maxWaitMs)) {
+        return false;
+      }
+      nextFreeNanos = slot + (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+      if (lastAcquireNanos != 0 && slot > lastAcquireNanos) {
+        double instantRps = TimeUnit.SECONDS.toNanos(1) / (double) (slot - lastAcquireNanos);
+        observedRps = observedRps == 0 ? instantRps : 0.8 * observedRps + 0.2 * instantRps;
+      }
+      lastAcquireNanos = slot;
+    }
+    if (waitNanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+    return true;
+  }
+
+  /** Additive increase. */
+  public synchronized void onSuccess() {
+    if (rate < maxRps) {
+      rate = Math.min(maxRps, rate + increasePerSecond / rate);
+    }
+  }
+
+  /** Multiplicative decrease after a throttling response. */
+  public void onThrottled() {
+    double before;
+    double after;
+    synchronized (this) {
+      before = rate;
+      double base = observedRps > 0 ? Math.min(rate, observedRps) : rate;
+      rate = Math.max(minRps, base * decreaseFactor);
+      after = rate;
+      // Push the next slot out so callers already queued feel the new rate
+      nextFreeNanos = Math.max(nextFreeNanos, System.nanoTime() + (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+    }
+    System.out.println("🐢 RATE LIMIT: " + name + " throttled, rate " + String.format("%.2f", before) + " -> "
+        + String.format("%.2f", after) + " req/s");
+    log.warn("onThrottled() {} rate {} -> {} req/s", name, before, after);
+  }
+
+  public synchronized double rate() {
+    return rate;
+  }
+
+  public String name() {
+    return name;
+  }
+}
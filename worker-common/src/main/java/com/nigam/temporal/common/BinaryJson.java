@@ -0,0 +1,255 @@
+package com.nigam.temporal.common;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of a JSON document, streamed both ways with Gson's JsonReader/JsonWriter.
+ * Object keys and short string values are written once and then referenced by index, integers are
+ * zigzag varints, other numbers are 8-byte doubles, and objects/arrays are closed by an end tag.
+ * Option-chain payloads repeat the same dozen keys for every strike, so this alone removes most of
+ * their size; ZSTD on top removes the rest.
+ *
+ * Decoding yields equivalent JSON, not the original text: whitespace is dropped and non-integral
+ * numbers are printed by Double.toString.
+ */
+public final class BinaryJson {
+
+  private static final int TAG_NULL = 0;
+  private static final int TAG_FALSE = 1;
+  private static final int TAG_TRUE = 2;
+  private static final int TAG_INT = 3;
+  private static final int TAG_DOUBLE = 4;
+  private static final int TAG_STRING_NEW = 5;
+  private static final int TAG_STRING_REF = 6;
+  private static final int TAG_OBJECT = 7;
+  private static final int TAG_ARRAY = 8;
+  private static final int TAG_STRING_INLINE = 9;
+  private static final int TAG_END = 10;
+
+  /** Strings longer than this are written inline instead of being added to the string table. */
+  private static final int MAX_INTERNED_BYTES = 64;
+
+  private BinaryJson() {
+  }
+
+  /** Encode a JSON document. Throws IllegalArgumentException if the text is not JSON. */
+  public static byte[] encode(String json) {
+    try (JsonReader reader = new JsonReader(new StringReader(json))) {
+      reader.setLenient(true);
+      Encoder encoder = new Encoder(json.length() / 3);
+      encoder.writeValue(reader);
+      if (reader.peek() != JsonToken.END_DOCUMENT) {
+        throw new IllegalArgumentException("Trailing content after JSON document");
+      }
+      return encoder.out.toByteArray();
+    } catch (IOException | IllegalStateException e) {
+      throw new IllegalArgumentException("Not a JSON document: " + e.getMessage(), e);
+    }
+  }
+
+  /** Decode bytes produced by {@link #encode(String)} back to JSON text. */
+  public static String decode(byte[] data, int offset, int length) {
+    try {
+      StringWriter text = new StringWriter(length * 3);
+      JsonWriter writer = new JsonWriter(text);
+      writer.setLenient(true);
+      writer.setSerializeNulls(true);
+      new Decoder(ByteBuffer.wrap(data, offset, length)).readValue(writer);
+      writer.flush();
+      return text.toString();
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Corrupt binary JSON: " + e.getMessage(), e);
+    }
+  }
+
+  private static final class Encoder {
+    private final ByteArrayOutputStream out;
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    Encoder(int expectedSize) {
+      out = new ByteArrayOutputStream(Math.max(expectedSize, 64));
+    }
+
+    void writeValue(JsonReader reader) throws IOException {
+      switch (reader.peek()) {
+        case BEGIN_OBJECT:
+          reader.beginObject();
+          out.write(TAG_OBJECT);
+          while (reader.hasNext()) {
+            writeString(reader.nextName());
+            writeValue(reader);
+          }
+          reader.endObject();
+          out.write(TAG_END);
+          break;
+        case BEGIN_ARRAY:
+          reader.beginArray();
+          out.write(TAG_ARRAY);
+          while (reader.hasNext()) {
+            writeValue(reader);
+          }
+          reader.endArray();
+          out.write(TAG_END);
+          break;
+        case STRING:
+          writeString(reader.nextString());
+          break;
+        case NUMBER:
+          writeNumber(reader.nextString());
+          break;
+        case BOOLEAN:
+          out.write(reader.nextBoolean() ? TAG_TRUE : TAG_FALSE);
+          break;
+        case NULL:
+          reader.nextNull();
+          out.write(TAG_NULL);
+          break;
+        default:
+          throw new IllegalStateException("Unexpected token " + reader.peek());
+      }
+    }
+
+    private void writeNumber(String text) {
+      if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0) {
+        try {
+          long value = Long.parseLong(text);
+          out.write(TAG_INT);
+          writeVarint(out, (value << 1) ^ (value >> 63));
+          return;
+        } catch (NumberFormatException ignored) {
+          // too large for a long, fall through to double
+        }
+      }
+      long bits = Double.doubleToRawLongBits(Double.parseDouble(text));
+      out.write(TAG_DOUBLE);
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        out.write((int) (bits >>> shift));
+      }
+    }
+
+    private void writeString(String value) {
+      Integer ref = strings.get(value);
+      if (ref != null) {
+        out.write(TAG_STRING_REF);
+        writeVarint(out, ref);
+        return;
+      }
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      if (bytes.length <= MAX_INTERNED_BYTES) {
+        strings.put(value, strings.size());
+        out.write(TAG_STRING_NEW);
+      } else {
+        out.write(TAG_STRING_INLINE);
+      }
+      writeVarint(out, bytes.length);
+      out.write(bytes, 0, bytes.length);
+    }
+  }
+
+  private static final class Decoder {
+    private final ByteBuffer in;
+    private final List<String> strings = new ArrayList<>();
+
+    Decoder(ByteBuffer in) {
+      this.in = in;
+    }
+
+    void readValue(JsonWriter writer) throws IOException {
+      int tag = in.get();
+      switch (tag) {
+        case TAG_NULL:
+          writer.nullValue();
+          break;
+        case TAG_FALSE:
+          writer.value(false);
+          break;
+        case TAG_TRUE:
+          writer.value(true);
+          break;
+        case TAG_INT: {
+          long zigzag = readVarint();
+          writer.value((zigzag >>> 1) ^ -(zigzag & 1));
+          break;
+        }
+        case TAG_DOUBLE:
+          writer.value(in.getDouble());
+          break;
+        case TAG_STRING_NEW:
+        case TAG_STRING_REF:
+        case TAG_STRING_INLINE:
+          writer.value(readString(tag));
+          break;
+        case TAG_OBJECT: {
+          writer.beginObject();
+          int keyTag;
+          while ((keyTag = in.get()) != TAG_END) {
+            writer.name(readString(keyTag));
+            readValue(writer);
+          }
+          writer.endObject();
+          break;
+        }
+        case TAG_ARRAY:
+          writer.beginArray();
+          while (in.get(in.position()) != TAG_END) {
+            readValue(writer);
+          }
+          in.get();
+          writer.endArray();
+          break;
+        default:
+          throw new IOException("Unknown tag " + tag + " at offset " + (in.position() - 1));
+      }
+    }
+
+    private String readString(int tag) throws IOException {
+      if (tag == TAG_STRING_REF) {
+        return strings.get((int) readVarint());
+      }
+      if (tag != TAG_STRING_NEW && tag != TAG_STRING_INLINE) {
+        throw new IOException("Expected string, got tag " + tag);
+      }
+      int length = (int) readVarint();
+      String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+      in.position(in.position() + length);
+      if (tag == TAG_STRING_NEW) {
+        strings.add(value);
+      }
+      return value;
+    }
+
+    private long readVarint() {
+      long value = 0;
+      int shift = 0;
+      while (true) {
+        int b = in.get();
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+        shift += 7;
+      }
+    }
+  }
+
+  private static void writeVarint(ByteArrayOutputStream out, long value) {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+}
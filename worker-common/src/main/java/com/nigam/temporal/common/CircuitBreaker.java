@@ -0,0 +1,140 @@
+package com.nigam.temporal.common;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Circuit breaker for one upstream endpoint.
+ *
+ * CLOSED: calls pass; failureThreshold consecutive failures open the circuit.
+ * OPEN: calls are rejected immediately until the open period ends.
+ * HALF_OPEN: one probe call at a time is let through. A successful probe closes the circuit. A failed
+ * probe reopens it for twice as long (capped at maxOpenMs). The next successful close resets the period.
+ * A probe that never reports back (e.g. its thread died) is replaced by a new probe after one open period.
+ */
+public class CircuitBreaker {
+
+  private static final Logger log = LogManager.getLogger(CircuitBreaker.class);
+
+  public enum State { CLOSED, OPEN, HALF_OPEN }
+
+  private final String name;
+  private final int failureThreshold;
+  private final long baseOpenMs;
+  private final long maxOpenMs;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures = 0;
+  private long openMs;
+  private long openedAt = 0;
+  private long probeStartedAt = 0;
+
+  public CircuitBreaker(String name, int failureThreshold, long openMs, long maxOpenMs) {
+    this.name = name;
+    this.failureThreshold = Math.max(1, failureThreshold);
+    this.baseOpenMs = Math.max(1, openMs);
+    this.maxOpenMs = Math.max(this.baseOpenMs, maxOpenMs);
+    this.openMs = this.baseOpenMs;
+  }
+
+  /**
+   * Env (prefix is e.g. "NSE" or "OPENALGO"; the unprefixed name is the fallback for both):
+   *   {prefix}_CIRCUIT_FAILURE_THRESHOLD (default 5), {prefix}_CIRCUIT_OPEN_MS (30000),
+   *   {prefix}_CIRCUIT_MAX_OPEN_MS (300000)
+   */
+  public static CircuitBreaker fromEnv(String name, String prefix) {
+    return new CircuitBreaker(name,
+        (int) UpstreamGuard.envDouble(prefix, "CIRCUIT_FAILURE_THRESHOLD", 5),
+        (long) UpstreamGuard.envDouble(prefix, "CIRCUIT_OPEN_MS", 30000),
+        (long) UpstreamGuard.envDouble(prefix, "CIRCUIT_MAX_OPEN_MS", 300000));
+  }
+
+  /** True if a call may go ahead now; in HALF_OPEN the caller that gets true is the probe. */
+  public synchronized boolean allowRequest() {
+    long now = System.currentTimeMillis();
+    switch (state) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        if (now - openedAt < openMs) {
+          return false;
+        }
+        transition(State.HALF_OPEN);
+        probeStartedAt = now;
+        return true;
+      case HALF_OPEN:
+      default:
+        if (now - probeStartedAt < openMs) {
+          return false;
+        }
+        probeStartedAt = now;
+        return true;
+    }
+  }
+
+  /** Give back a half-open probe slot that was granted but not used (e.g. the rate limiter refused the call). */
+  public synchronized void releaseProbe() {
+    if (state == State.HALF_OPEN) {
+      probeStartedAt = 0;
+    }
+  }
+
+  public synchronized void onSuccess() {
+    consecutiveFailures = 0;
+    if (state != State.CLOSED) {
+      openMs = baseOpenMs;
+      transition(State.CLOSED);
+    }
+  }
+
+  public synchronized void onFailure(String reason) {
+    consecutiveFailures++;
+    if (state == State.HALF_OPEN) {
+      openMs = Math.min(maxOpenMs, openMs * 2);
+      open(reason);
+    } else if (state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+      open(reason);
+    }
+  }
+
+  private void open(String reason) {
+    openedAt = System.currentTimeMillis();
+    transition(State.OPEN);
+    System.out.println("⛔ CIRCUIT: " + name + " open for " + openMs + "ms after " + consecutiveFailures
+        + " consecutive failures (last: " + reason + ")");
+    log.warn("open() {} open for {}ms, consecutiveFailures={}, reason={}", name, openMs, consecutiveFailures, reason);
+  }
+
+  private void transition(State next) {
+    if (state == next) {
+      return;
+    }
+    log.info("transition() {} {} -> {}", name, state, next);
+    if (next == State.CLOSED) {
+      System.out.println("✅ CIRCUIT: " + name + " closed");
+    } else if (next == State.HALF_OPEN) {
+      System.out.println("🔎 CIRCUIT: " + name + " half-open, probing");
+    }
+    state = next;
+  }
+
+  public synchronized State state() {
+    return state;
+  }
+
+  /** Milliseconds until the next probe is allowed; 0 when calls pass. */
+  public synchronized long retryAfterMs() {
+    long now = System.currentTimeMillis();
+    if (state == State.OPEN) {
+      return Math.max(0, openedAt + openMs - now);
+    }
+    if (state == State.HALF_OPEN) {
+      return Math.max(0, probeStartedAt + openMs - now);
+    }
+    return 0;
+  }
+
+  public String name() {
+    return name;
+  }
+}
@@ -0,0 +1,303 @@
+package com.nigam.temporal.common;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.PipeliningBase;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A group of Redis snapshot keys (each rotated to its previous key and optionally appended to its history
+ * stream), written together on one pool checkout in two round trips: a pipelined WATCH and GET of the current
+ * values and their snapshot times, then one MULTI/EXEC (or plain pipeline) holding the previous and current
+ * SETs and the XADDs. Queuing the same key twice keeps the last value. Both workers publish through it: the
+ * LTP worker queues an option chain and its summary and flushes once, after the summary is computed and before
+ * the rows are inserted, so only the previous-OI read is ahead of them; the NSE worker flushes each download's
+ * :data key on its own.
+ *
+ * Each current key has a time key holding its snapshot time, rotated with it: {key}:timestamp with epoch
+ * millis for {@link #put(String, byte[], long)}, or any key and text (the NSE worker's ISO-8601 :timestamp)
+ * for the explicit variant. Writing a snapshot whose time equals the stored one (an activity retry after a
+ * flush) only overwrites the current value: the previous key keeps the snapshot before it and no second
+ * history entry is added. A snapshot older than the stored one (a late retry) is not written at all. In
+ * transaction mode the WATCH makes this check and the writes atomic; a batch that loses the race to another
+ * writer re-reads and tries again.
+ *
+ * Env REDIS_SNAPSHOT_BATCH: transaction (default; a batch's keys become visible together) or pipeline
+ * (no MULTI/EXEC or WATCH, for proxies that reject transactions; the time check is then not atomic).
+ */
+public class RedisSnapshotBatch {
+
+  public enum Mode { TRANSACTION, PIPELINE }
+
+  public static final String TIMESTAMP_SUFFIX = ":timestamp";
+  private static final int MAX_ATTEMPTS = 3;
+
+  private static final class Write {
+    final String previousKey;
+    final String timeKey;
+    final String previousTimeKey;
+    final byte[] value;
+    final long timestampMillis;
+    final byte[] storedTime;
+    final String historyStream;
+
+    Write(String previousKey, String timeKey, String previousTimeKey, byte[] value, long timestampMillis,
+          byte[] storedTime, String historyStream) {
+      this.previousKey = previousKey;
+      this.timeKey = timeKey;
+      this.previousTimeKey = previousTimeKey;
+      this.value = value;
+      this.timestampMillis = timestampMillis;
+      this.storedTime = storedTime;
+      this.historyStream = historyStream;
+    }
+  }
+
+  /** What the flush did with one key, decided from the value and snapshot time it read. */
+  private enum Outcome { WRITTEN, ROTATED, REPEATED, STALE }
+
+  private final Mode mode;
+  private final SnapshotHistory history;
+  private final Map<String, Write> writes = new LinkedHashMap<>();
+
+  public RedisSnapshotBatch(Mode mode, SnapshotHistory history) {
+    this.mode = mode;
+    this.history = history;
+  }
+
+  public static Mode modeFromEnv() {
+    String name = System.getenv().getOrDefault("REDIS_SNAPSHOT_BATCH", "transaction").trim().toUpperCase(Locale.ROOT);
+    try {
+      return Mode.valueOf(name);
+    } catch (IllegalArgumentException e) {
+      System.err.println("⚠️ Unknown REDIS_SNAPSHOT_BATCH '" + name + "', using transaction");
+      return Mode.TRANSACTION;
+    }
+  }
+
+  /**
+   * Queue a ...:current:... key and its encoded value; on flush the old value moves to ...:previous:..., both
+   * with a {key}:timestamp in epoch millis, and the value is appended to the key's history stream.
+   */
+  public void put(String currentKey, byte[] encodedValue, long timestampMillis) {
+    String previousKey = currentKey.replace(":current:", ":previous:");
+    put(currentKey, previousKey, currentKey + TIMESTAMP_SUFFIX, previousKey + TIMESTAMP_SUFFIX, encodedValue,
+        timestampMillis, Long.toString(timestampMillis), SnapshotHistory.streamKeyFor(currentKey));
+  }
+
+  /**
+   * Queue a value with explicit keys: storedTime is what goes under timeKey (epoch millis or ISO-8601 text,
+   * compared by the instant it denotes), historyStream is null for no history entry.
+   */
+  public void put(String currentKey, String previousKey, String timeKey, String previousTimeKey, byte[] encodedValue,
+                  long timestampMillis, String storedTime, String historyStream) {
+    writes.put(currentKey, new Write(previousKey, timeKey, previousTimeKey, encodedValue, timestampMillis,
+        bytes(storedTime), historyStream));
+  }
+
+  public int size() {
+    return writes.size();
+  }
+
+  /**
+   * Write everything queued and clear the batch (also when the flush fails). Returns the flush time in
+   * microseconds, 0 for an empty batch.
+   */
+  public long flush(JedisPool pool) {
+    if (writes.isEmpty()) {
+      return 0;
+    }
+    long start = System.nanoTime();
+    List<String> keys = new ArrayList<>(writes.keySet());
+    List<Outcome> outcomes = null;
+    int attempts = 0;
+    try (Jedis jedis = pool.getResource()) {
+      List<Response<byte[]>> historyAppends = null;
+      while (outcomes == null && attempts < MAX_ATTEMPTS) {
+        attempts++;
+        boolean watching = false;
+        try {
+          List<Response<byte[]>> currents = new ArrayList<>(keys.size());
+          List<Response<byte[]>> storedTimes = new ArrayList<>(keys.size());
+          try (Pipeline reads = jedis.pipelined()) {
+            if (mode == Mode.TRANSACTION) {
+              reads.sendCommand(Protocol.Command.WATCH, watchedKeys(keys));
+              watching = true;
+            }
+            for (String key : keys) {
+              currents.add(reads.get(bytes(key)));
+              storedTimes.add(reads.get(bytes(writes.get(key).timeKey)));
+            }
+            reads.sync();
+          }
+          List<Outcome> planned = plan(keys, currents, storedTimes);
+
+          if (mode == Mode.TRANSACTION) {
+            try (Transaction tx = jedis.multi()) {
+              historyAppends = queueWrites(tx, keys, planned, currents, storedTimes);
+              watching = false;
+              if (tx.exec() != null) {
+                outcomes = planned;
+              }
+            }
+          } else {
+            try (Pipeline pipeline = jedis.pipelined()) {
+              historyAppends = queueWrites(pipeline, keys, planned, currents, storedTimes);
+              pipeline.sync();
+            }
+            outcomes = planned;
+          }
+        } finally {
+          if (watching) {
+            unwatchQuietly(jedis);
+          }
+        }
+      }
+      if (outcomes == null) {
+        System.err.println("⚠️ Redis snapshot batch not written: " + keys + " changed by another writer on each of "
+            + attempts + " attempts");
+        return (System.nanoTime() - start) / 1_000;
+      }
+
+      // A rejected history id (later entry already in the stream) falls back to a server id, as in SnapshotHistory.append
+      for (int i = 0; i < historyAppends.size(); i++) {
+        Response<byte[]> appended = historyAppends.get(i);
+        if (appended == null) {
+          continue;
+        }
+        try {
+          appended.get();
+        } catch (JedisDataException e) {
+          Write write = writes.get(keys.get(i));
+          history.appendWithServerId(jedis, write.historyStream, write.timestampMillis, write.value);
+        }
+      }
+    } finally {
+      writes.clear();
+    }
+    long micros = (System.nanoTime() - start) / 1_000;
+    int rotated = 0;
+    int repeated = 0;
+    int stale = 0;
+    for (Outcome outcome : outcomes) {
+      if (outcome == Outcome.ROTATED) {
+        rotated++;
+      } else if (outcome == Outcome.REPEATED) {
+        repeated++;
+      } else if (outcome == Outcome.STALE) {
+        stale++;
+      }
+    }
+    System.out.println("⚡ Redis snapshot batch flushed: " + keys.size() + " keys (" + rotated + " rotated to previous"
+        + (repeated > 0 ? ", " + repeated + " same snapshot rewritten" : "")
+        + (stale > 0 ? ", " + stale + " older than current skipped" : "") + ") in "
+        + String.format("%.2f", micros / 1000.0) + " ms (" + mode.name().toLowerCase(Locale.ROOT)
+        + (attempts > 1 ? ", " + attempts + " attempts" : "") + ")");
+    return micros;
+  }
+
+  /** Compare each queued snapshot time with the one stored next to the key. */
+  private List<Outcome> plan(List<String> keys, List<Response<byte[]>> currents, List<Response<byte[]>> storedTimes) {
+    List<Outcome> planned = new ArrayList<>(keys.size());
+    for (int i = 0; i < keys.size(); i++) {
+      Long stored = parseMillis(storedTimes.get(i).get());
+      long timestamp = writes.get(keys.get(i)).timestampMillis;
+      if (stored != null && stored == timestamp) {
+        planned.add(Outcome.REPEATED);
+      } else if (stored != null && stored > timestamp) {
+        planned.add(Outcome.STALE);
+      } else {
+        planned.add(currents.get(i).get() != null ? Outcome.ROTATED : Outcome.WRITTEN);
+      }
+    }
+    return planned;
+  }
+
+  /**
+   * Per key, in key order: a repeated snapshot only SETs current; a new one SETs previous (value and time),
+   * current and its time and XADDs; a stale one writes nothing. Returns the history responses by key index.
+   */
+  private List<Response<byte[]>> queueWrites(PipeliningBase target, List<String> keys, List<Outcome> planned,
+                                             List<Response<byte[]>> currents, List<Response<byte[]>> storedTimes) {
+    List<Response<byte[]>> historyAppends = new ArrayList<>(keys.size());
+    for (int i = 0; i < keys.size(); i++) {
+      String key = keys.get(i);
+      Write write = writes.get(key);
+      Outcome outcome = planned.get(i);
+      if (outcome == Outcome.STALE) {
+        historyAppends.add(null);
+        continue;
+      }
+      target.set(bytes(key), write.value);
+      if (outcome == Outcome.REPEATED) {
+        historyAppends.add(null);
+        continue;
+      }
+      if (outcome == Outcome.ROTATED) {
+        target.set(bytes(write.previousKey), currents.get(i).get());
+        byte[] storedTime = storedTimes.get(i).get();
+        if (storedTime != null) {
+          target.set(bytes(write.previousTimeKey), storedTime);
+        } else {
+          target.del(bytes(write.previousTimeKey));
+        }
+      }
+      target.set(bytes(write.timeKey), write.storedTime);
+      historyAppends.add(write.historyStream != null
+          ? history.append(target, write.historyStream, write.timestampMillis, write.value) : null);
+    }
+    return historyAppends;
+  }
+
+  private byte[][] watchedKeys(List<String> keys) {
+    byte[][] watched = new byte[keys.size() * 2][];
+    for (int i = 0; i < keys.size(); i++) {
+      watched[2 * i] = bytes(keys.get(i));
+      watched[2 * i + 1] = bytes(writes.get(keys.get(i)).timeKey);
+    }
+    return watched;
+  }
+
+  private static void unwatchQuietly(Jedis jedis) {
+    try {
+      jedis.unwatch();
+    } catch (Exception e) {
+      // The connection is broken; the pool discards it
+    }
+  }
+
+  /** Stored snapshot time as epoch millis: written as millis by this class, as ISO-8601 by the NSE worker. */
+  private static Long parseMillis(byte[] value) {
+    if (value == null) {
+      return null;
+    }
+    String text = new String(value, StandardCharsets.UTF_8).trim();
+    try {
+      return Long.parseLong(text);
+    } catch (NumberFormatException e) {
+      // Not millis, try an instant
+    }
+    try {
+      return Instant.parse(text).toEpochMilli();
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+}
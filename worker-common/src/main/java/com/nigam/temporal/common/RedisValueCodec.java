@@ -0,0 +1,145 @@
+package com.nigam.temporal.common;
+
+import com.github.luben.zstd.Zstd;
+import net.jpountz.lz4.LZ4Factory;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Encoding used for snapshot values stored in Redis. Select with env REDIS_VALUE_CODEC
+ * (raw | lz4 | zstd | binary | binary-zstd, default raw).
+ *
+ * RAW values are stored as plain UTF-8 text exactly as before. Every other codec prefixes an 8-byte header:
+ *   0x00 'N' 'V' codecId, then the payload's decompressed length as a big-endian int
+ *   (the UTF-8 length for LZ4/ZSTD, the BinaryJson length for the binary codecs).
+ * Text payloads never start with a NUL byte, so {@link #decode(byte[])} tells encoded values from
+ * legacy raw ones and readers don't need to know which codec the writer was configured with.
+ */
+public enum RedisValueCodec {
+  RAW(0),
+  LZ4(1),
+  ZSTD(2),
+  /** {@link BinaryJson}; falls back to RAW for values that aren't JSON (e.g. CSV). */
+  BINARY(3),
+  /** {@link BinaryJson} then ZSTD; falls back to ZSTD for values that aren't JSON. */
+  BINARY_ZSTD(4);
+
+  private static final Logger log = LogManager.getLogger(RedisValueCodec.class);
+
+  private static final byte[] MAGIC = {0x00, 'N', 'V'};
+  public static final int HEADER_LENGTH = MAGIC.length + 1 + Integer.BYTES;
+
+  private static final int ZSTD_LEVEL = Integer.parseInt(System.getenv().getOrDefault("REDIS_VALUE_ZSTD_LEVEL", "3"));
+
+  private final byte id;
+
+  RedisValueCodec(int id) {
+    this.id = (byte) id;
+  }
+
+  /** Codec named by env REDIS_VALUE_CODEC, RAW if unset or unknown. */
+  public static RedisValueCodec fromEnv() {
+    return fromName(System.getenv().getOrDefault("REDIS_VALUE_CODEC", "raw"));
+  }
+
+  public static RedisValueCodec fromName(String name) {
+    if (name == null || name.trim().isEmpty()) {
+      return RAW;
+    }
+    try {
+      return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    } catch (IllegalArgumentException e) {
+      log.warn("Unknown REDIS_VALUE_CODEC '{}', using raw", name);
+      return RAW;
+    }
+  }
+
+  /** Encode a value for SET. */
+  public byte[] encode(String value) {
+    byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+    switch (this) {
+      case LZ4:
+        return withHeader(LZ4, utf8.length, LZ4Factory.fastestInstance().fastCompressor().compress(utf8));
+      case ZSTD:
+        return withHeader(ZSTD, utf8.length, Zstd.compress(utf8, ZSTD_LEVEL));
+      case BINARY:
+      case BINARY_ZSTD: {
+        byte[] binary;
+        try {
+          binary = BinaryJson.encode(value);
+        } catch (IllegalArgumentException e) {
+          log.debug("Value is not JSON, {} falling back: {}", this, e.getMessage());
+          return this == BINARY ? utf8 : ZSTD.encode(value);
+        }
+        if (this == BINARY) {
+          return withHeader(BINARY, binary.length, binary);
+        }
+        return withHeader(BINARY_ZSTD, binary.length, Zstd.compress(binary, ZSTD_LEVEL));
+      }
+      default:
+        return utf8;
+    }
+  }
+
+  /** Decode a value read with GET, whichever codec (or none) it was written with. Null stays null. */
+  public static String decode(byte[] stored) {
+    if (stored == null) {
+      return null;
+    }
+    RedisValueCodec codec = detect(stored);
+    if (codec == RAW) {
+      return new String(stored, StandardCharsets.UTF_8);
+    }
+    int length = ByteBuffer.wrap(stored, MAGIC.length + 1, Integer.BYTES).getInt();
+    int payloadLength = stored.length - HEADER_LENGTH;
+    switch (codec) {
+      case LZ4: {
+        byte[] utf8 = new byte[length];
+        LZ4Factory.fastestInstance().safeDecompressor().decompress(stored, HEADER_LENGTH, payloadLength, utf8, 0);
+        return new String(utf8, StandardCharsets.UTF_8);
+      }
+      case ZSTD: {
+        byte[] utf8 = new byte[length];
+        Zstd.decompressByteArray(utf8, 0, length, stored, HEADER_LENGTH, payloadLength);
+        return new String(utf8, StandardCharsets.UTF_8);
+      }
+      case BINARY:
+        return BinaryJson.decode(stored, HEADER_LENGTH, payloadLength);
+      case BINARY_ZSTD: {
+        byte[] binary = new byte[length];
+        Zstd.decompressByteArray(binary, 0, length, stored, HEADER_LENGTH, payloadLength);
+        return BinaryJson.decode(binary, 0, length);
+      }
+      default:
+        throw new IllegalStateException("Unhandled codec " + codec);
+    }
+  }
+
+  /** Codec a stored value was written with; RAW when there is no header. */
+  public static RedisValueCodec detect(byte[] stored) {
+    if (stored == null || stored.length < HEADER_LENGTH
+        || stored[0] != MAGIC[0] || stored[1] != MAGIC[1] || stored[2] != MAGIC[2]) {
+      return RAW;
+    }
+    byte codecId = stored[MAGIC.length];
+    for (RedisValueCodec codec : values()) {
+      if (codec.id == codecId && codec != RAW) {
+        return codec;
+      }
+    }
+    throw new IllegalArgumentException("Unknown Redis value codec id " + codecId);
+  }
+
+  private static byte[] withHeader(RedisValueCodec codec, int decodedLength, byte[] payload) {
+    return ByteBuffer.allocate(HEADER_LENGTH + payload.length)
+        .put(MAGIC)
+        .put(codec.id)
+        .putInt(decodedLength)
+        .put(payload)
+        .array();
+  }
+}
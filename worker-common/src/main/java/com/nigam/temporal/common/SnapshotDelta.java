@@ -0,0 +1,179 @@
+package com.nigam.temporal.common;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Field-level delta encoding of consecutive snapshots of the same document (e.g. one symbol/expiry option chain).
+ *
+ * Documents are flattened to path -> primitive, where array elements carrying a strike ("strikePrice" or
+ * "strike") are addressed by strike instead of position, so a strike appearing or disappearing does not shift
+ * every other path: records.data[22700].CE.lastPrice, chain[25200].pe.oi. Arrays of primitives are leaves.
+ *
+ * {@link #next} returns one of
+ *   {"type":"keyframe","seq":n}                            - consumer reloads the full document
+ *   {"type":"delta","seq":n,"baseTimestamp":"...","set":{path:value,..},"remove":[path,..]}
+ * A keyframe is emitted for the first snapshot of a key in this process and every keyframeInterval snapshots;
+ * a delta only applies on top of the snapshot whose timestamp equals baseTimestamp.
+ *
+ * Env: SNAPSHOT_DELTA_ENABLED (default true), SNAPSHOT_DELTA_KEYFRAME_INTERVAL (default 30).
+ */
+public class SnapshotDelta {
+
+  private static final Logger log = LogManager.getLogger(SnapshotDelta.class);
+
+  private final boolean enabled;
+  private final int keyframeInterval;
+  private final Map<String, State> states = new HashMap<>();
+
+  public SnapshotDelta(boolean enabled, int keyframeInterval) {
+    this.enabled = enabled;
+    this.keyframeInterval = Math.max(1, keyframeInterval);
+  }
+
+  public static SnapshotDelta fromEnv() {
+    SnapshotDelta delta = new SnapshotDelta(
+        Boolean.parseBoolean(System.getenv().getOrDefault("SNAPSHOT_DELTA_ENABLED", "true")),
+        Integer.parseInt(System.getenv().getOrDefault("SNAPSHOT_DELTA_KEYFRAME_INTERVAL", "30")));
+    log.info("SnapshotDelta enabled={}, keyframeInterval={}", delta.enabled, delta.keyframeInterval);
+    return delta;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Diff a new snapshot of {@code key} against the previous one seen by this process.
+   * Returns null when disabled or when the document is not JSON (caller publishes as before).
+   */
+  public JsonObject next(String key, String json, String timestamp) {
+    if (!enabled || json == null) {
+      return null;
+    }
+    Map<String, JsonElement> current;
+    try {
+      current = flatten(JsonParser.parseString(json));
+    } catch (Exception e) {
+      log.warn("SnapshotDelta next() {} is not JSON, skipping delta: {}", key, e.getMessage());
+      return null;
+    }
+
+    State previous;
+    long seq;
+    synchronized (states) {
+      previous = states.get(key);
+      seq = previous == null ? 0 : previous.seq + 1;
+      states.put(key, new State(current, seq, timestamp));
+    }
+
+    JsonObject result = new JsonObject();
+    if (previous == null || seq % keyframeInterval == 0) {
+      result.addProperty("type", "keyframe");
+      result.addProperty("seq", seq);
+      return result;
+    }
+
+    JsonObject set = new JsonObject();
+    JsonArray remove = new JsonArray();
+    for (Map.Entry<String, JsonElement> entry : current.entrySet()) {
+      JsonElement before = previous.fields.get(entry.getKey());
+      if (before == null || !before.equals(entry.getValue())) {
+        set.add(entry.getKey(), entry.getValue());
+      }
+    }
+    for (String path : previous.fields.keySet()) {
+      if (!current.containsKey(path)) {
+        remove.add(path);
+      }
+    }
+    result.addProperty("type", "delta");
+    result.addProperty("seq", seq);
+    result.addProperty("baseTimestamp", previous.timestamp);
+    result.add("set", set);
+    result.add("remove", remove);
+    return result;
+  }
+
+  /** Flatten a document to path -> leaf value (see class comment for the path syntax). */
+  public static Map<String, JsonElement> flatten(JsonElement root) {
+    Map<String, JsonElement> fields = new LinkedHashMap<>();
+    flatten("", root, fields);
+    return fields;
+  }
+
+  /** Apply a delta produced by {@link #next} to a flattened document in place. Keyframes are ignored. */
+  public static void apply(Map<String, JsonElement> fields, JsonObject delta) {
+    if (!"delta".equals(delta.get("type").getAsString())) {
+      return;
+    }
+    for (Map.Entry<String, JsonElement> entry : delta.getAsJsonObject("set").entrySet()) {
+      fields.put(entry.getKey(), entry.getValue());
+    }
+    for (JsonElement path : delta.getAsJsonArray("remove")) {
+      fields.remove(path.getAsString());
+    }
+  }
+
+  private static void flatten(String path, JsonElement element, Map<String, JsonElement> fields) {
+    if (element == null || element.isJsonNull()) {
+      fields.put(path, JsonNull.INSTANCE);
+    } else if (element.isJsonObject()) {
+      for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+        flatten(path.isEmpty() ? entry.getKey() : path + "." + entry.getKey(), entry.getValue(), fields);
+      }
+    } else if (element.isJsonArray()) {
+      JsonArray array = element.getAsJsonArray();
+      if (array.size() == 0 || !array.get(0).isJsonObject()) {
+        fields.put(path, array);
+        return;
+      }
+      Set<String> seen = new HashSet<>();
+      for (int i = 0; i < array.size(); i++) {
+        JsonElement item = array.get(i);
+        String key = elementKey(item, i);
+        if (!seen.add(key)) {
+          // same strike twice in one array: fall back to position so neither is lost
+          key = "#" + i;
+        }
+        flatten(path + "[" + key + "]", item, fields);
+      }
+    } else {
+      fields.put(path, element);
+    }
+  }
+
+  private static String elementKey(JsonElement item, int index) {
+    if (item.isJsonObject()) {
+      JsonObject object = item.getAsJsonObject();
+      JsonElement strike = object.has("strikePrice") ? object.get("strikePrice") : object.get("strike");
+      if (strike != null && strike.isJsonPrimitive()) {
+        return strike.getAsString();
+      }
+    }
+    return "#" + index;
+  }
+
+  private static final class State {
+    final Map<String, JsonElement> fields;
+    final long seq;
+    final String timestamp;
+
+    State(Map<String, JsonElement> fields, long seq, String timestamp) {
+      this.fields = fields;
+      this.seq = seq;
+      this.timestamp = timestamp;
+    }
+  }
+}
@@ -0,0 +1,193 @@
+package com.nigam.temporal.common;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.PipeliningBase;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.params.XAddParams;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional per-symbol/expiry history of snapshots in a capped Redis Stream, next to the current/previous keys.
+ * Each entry id is the snapshot time in epoch millis, so XRANGE by timestamp returns the chain evolution
+ * for a time window straight from memory.
+ *
+ * Env:
+ *   REDIS_HISTORY_ENABLED            true to XADD every snapshot (default false)
+ *   REDIS_HISTORY_MAXLEN             approximate cap on entries per stream (default 500; 0 = no MAXLEN)
+ *   REDIS_HISTORY_RETENTION_MINUTES  trim entries older than this with MINID instead of MAXLEN (default 0 = off)
+ *
+ * Entry fields: "ts" (epoch millis as text) and "data" (the value exactly as stored under :current, i.e.
+ * encoded with REDIS_VALUE_CODEC; use {@link RedisValueCodec#decode(byte[])}).
+ */
+public class SnapshotHistory {
+
+  private static final Logger log = LogManager.getLogger(SnapshotHistory.class);
+
+  private static final byte[] FIELD_TS = "ts".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] FIELD_DATA = "data".getBytes(StandardCharsets.UTF_8);
+
+  private final boolean enabled;
+  private final long maxLen;
+  private final long retentionMillis;
+
+  public SnapshotHistory(boolean enabled, long maxLen, long retentionMinutes) {
+    this.enabled = enabled;
+    this.maxLen = maxLen;
+    this.retentionMillis = TimeUnit.MINUTES.toMillis(retentionMinutes);
+  }
+
+  public static SnapshotHistory fromEnv() {
+    SnapshotHistory history = new SnapshotHistory(
+        Boolean.parseBoolean(System.getenv().getOrDefault("REDIS_HISTORY_ENABLED", "false")),
+        Long.parseLong(System.getenv().getOrDefault("REDIS_HISTORY_MAXLEN", "500")),
+        Long.parseLong(System.getenv().getOrDefault("REDIS_HISTORY_RETENTION_MINUTES", "0")));
+    log.info("SnapshotHistory enabled={}, maxLen={}, retentionMinutes={}",
+        history.enabled, history.maxLen, TimeUnit.MILLISECONDS.toMinutes(history.retentionMillis));
+    return history;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Stream key for a current-value key: "...:current:optionchain" -> "...:history:optionchain", "...:current" -> "...:history". */
+  public static String streamKeyFor(String currentKey) {
+    if (currentKey.contains(":current:")) {
+      return currentKey.replace(":current:", ":history:");
+    }
+    if (currentKey.endsWith(":current")) {
+      return currentKey.substring(0, currentKey.length() - ":current".length()) + ":history";
+    }
+    return currentKey + ":history";
+  }
+
+  /**
+   * XADD one snapshot with id {timestampMillis}-* and trim per the configured retention.
+   * Falls back to a server-assigned id if the stream already holds a later entry (clock skew, late retry).
+   * No-op when history is disabled.
+   */
+  public void append(Jedis jedis, String streamKey, long timestampMillis, byte[] storedValue) {
+    if (!enabled) {
+      return;
+    }
+    try {
+      jedis.xadd(streamKey.getBytes(StandardCharsets.UTF_8), trimParams(timestampMillis).id(timestampMillis + "-*"),
+          fields(timestampMillis, storedValue));
+    } catch (JedisDataException e) {
+      log.debug("SnapshotHistory append() id {} rejected for {} ({}), using server id", timestampMillis, streamKey, e.getMessage());
+      appendWithServerId(jedis, streamKey, timestampMillis, storedValue);
+    }
+  }
+
+  /**
+   * Queue the XADD of {@link #append(Jedis, String, long, byte[])} on a pipeline or transaction. If the returned
+   * response fails once synced (id rejected), call {@link #appendWithServerId}. Returns null when disabled.
+   */
+  public Response<byte[]> append(PipeliningBase pipeline, String streamKey, long timestampMillis, byte[] storedValue) {
+    if (!enabled) {
+      return null;
+    }
+    return pipeline.xadd(streamKey.getBytes(StandardCharsets.UTF_8), trimParams(timestampMillis).id(timestampMillis + "-*"),
+        fields(timestampMillis, storedValue));
+  }
+
+  /** XADD with a server-assigned id, for entries whose timestamp id was rejected. */
+  public void appendWithServerId(Jedis jedis, String streamKey, long timestampMillis, byte[] storedValue) {
+    jedis.xadd(streamKey.getBytes(StandardCharsets.UTF_8), trimParams(timestampMillis), fields(timestampMillis, storedValue));
+  }
+
+  private static Map<byte[], byte[]> fields(long timestampMillis, byte[] storedValue) {
+    Map<byte[], byte[]> fields = new HashMap<>(4);
+    fields.put(FIELD_TS, Long.toString(timestampMillis).getBytes(StandardCharsets.UTF_8));
+    fields.put(FIELD_DATA, storedValue);
+    return fields;
+  }
+
+  private XAddParams trimParams(long timestampMillis) {
+    XAddParams params = XAddParams.xAddParams();
+    if (retentionMillis > 0) {
+      params.minId(Long.toString(Math.max(0, timestampMillis - retentionMillis))).approximateTrimming();
+    } else if (maxLen > 0) {
+      params.maxLen(maxLen).approximateTrimming();
+    }
+    return params;
+  }
+
+  /** XRANGE between two epoch-millis timestamps (inclusive), oldest first; count <= 0 means no limit. */
+  public static List<Entry> range(Jedis jedis, String streamKey, long fromMillis, long toMillis, int count) {
+    byte[] key = streamKey.getBytes(StandardCharsets.UTF_8);
+    byte[] start = Long.toString(fromMillis).getBytes(StandardCharsets.UTF_8);
+    byte[] end = Long.toString(toMillis).getBytes(StandardCharsets.UTF_8);
+    List<Object> raw = count > 0 ? jedis.xrange(key, start, end, count) : jedis.xrange(key, start, end);
+    return parseEntries(raw);
+  }
+
+  /** Entries from the last {@code minutes} minutes up to now. */
+  public static List<Entry> lastMinutes(Jedis jedis, String streamKey, long minutes) {
+    long now = System.currentTimeMillis();
+    return range(jedis, streamKey, now - TimeUnit.MINUTES.toMillis(minutes), now, 0);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Entry> parseEntries(List<Object> raw) {
+    List<Entry> entries = new ArrayList<>(raw != null ? raw.size() : 0);
+    if (raw == null) {
+      return entries;
+    }
+    for (Object item : raw) {
+      List<Object> entry = (List<Object>) item;
+      String id = new String((byte[]) entry.get(0), StandardCharsets.UTF_8);
+      List<Object> fieldValues = (List<Object>) entry.get(1);
+      long ts = Long.parseLong(id.substring(0, id.indexOf('-')));
+      byte[] data = null;
+      for (int i = 0; i + 1 < fieldValues.size(); i += 2) {
+        String field = new String((byte[]) fieldValues.get(i), StandardCharsets.UTF_8);
+        if ("data".equals(field)) {
+          data = (byte[]) fieldValues.get(i + 1);
+        } else if ("ts".equals(field)) {
+          ts = Long.parseLong(new String((byte[]) fieldValues.get(i + 1), StandardCharsets.UTF_8));
+        }
+      }
+      entries.add(new Entry(id, ts, data));
+    }
+    return entries;
+  }
+
+  /** One history entry; {@link #decode()} turns the stored value back into text. */
+  public static final class Entry {
+    private final String id;
+    private final long timestampMillis;
+    private final byte[] data;
+
+    Entry(String id, long timestampMillis, byte[] data) {
+      this.id = id;
+      this.timestampMillis = timestampMillis;
+      this.data = data;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public long getTimestampMillis() {
+      return timestampMillis;
+    }
+
+    public byte[] getData() {
+      return data;
+    }
+
+    public String decode() {
+      return RedisValueCodec.decode(data);
+    }
+  }
+}
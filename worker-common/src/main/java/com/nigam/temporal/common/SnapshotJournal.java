@@ -0,0 +1,413 @@
+package com.nigam.temporal.common;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Local append-only journal of every snapshot a worker downloads or enriches, for replays, backtests and
+ * as a recovery source when Redis or Postgres were down.
+ *
+ * Records go into memory-mapped segment files {dir}/{yyyyMMdd}-{seq}.journal, rolled at midnight
+ * (JOURNAL_ZONE, default Asia/Kolkata) and whenever a segment is full. Each segment has a sidecar
+ * {yyyyMMdd}-{seq}.index of fixed-size entries, so lookups by key and time read the small index and then
+ * jump straight to the records.
+ *
+ * Record layout (big-endian, 8-byte aligned):
+ * <pre>
+ *   0  int    magic 'SJR1' (written last, so a torn write is never read back)
+ *   4  int    record bytes including header and padding
+ *   8  long   timestamp, epoch millis
+ *  16  byte   kind (KIND_*)
+ *  17  byte   flags (0; reserved)
+ *  18  short  key length
+ *  20  int    payload length
+ *  24  int    CRC32 of key + payload
+ *  28  int    key hash (String.hashCode)
+ *  32  key (UTF-8), payload, zero padding
+ * </pre>
+ * Index entry (24 bytes): long timestamp, int key hash, byte kind, 3 bytes padding, long record offset.
+ *
+ * On reopen the current segment is scanned, the first record that fails its magic/length/CRC check marks
+ * the end, and the index is rebuilt from what survived. Records reach the page cache immediately and the
+ * OS writes them out; {@link #close} forces them to disk.
+ *
+ * Env: JOURNAL_ENABLED (default false), JOURNAL_DIR (default journal; one subdirectory per worker),
+ * JOURNAL_SEGMENT_MB (default 256), JOURNAL_ZONE.
+ */
+public class SnapshotJournal implements AutoCloseable {
+
+  private static final Logger log = LogManager.getLogger(SnapshotJournal.class);
+
+  public static final byte KIND_NSE_ALL_INDICES = 1;
+  public static final byte KIND_NSE_EQUITY = 2;
+  public static final byte KIND_NSE_OPTION_CHAIN = 3;
+  public static final byte KIND_OPENALGO_OPTION_CHAIN = 4;
+
+  static final int MAGIC = 0x534A5231; // "SJR1"
+  static final int HEADER_BYTES = 32;
+  static final int INDEX_ENTRY_BYTES = 24;
+  private static final DateTimeFormatter DAY = DateTimeFormatter.BASIC_ISO_DATE;
+  private static final String SEGMENT_SUFFIX = ".journal";
+  private static final String INDEX_SUFFIX = ".index";
+
+  private static final Map<String, SnapshotJournal> SHARED = new ConcurrentHashMap<>();
+
+  private final boolean enabled;
+  private final Path dir;
+  private final int segmentBytes;
+  private final ZoneId zone;
+
+  private LocalDate day;
+  private int seq;
+  private FileChannel segmentChannel;
+  private MappedByteBuffer segment;
+  private FileChannel indexChannel;
+  private int position;
+  private final ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+  private final CRC32 crc = new CRC32();
+
+  public SnapshotJournal(boolean enabled, Path dir, int segmentBytes, ZoneId zone) {
+    this.enabled = enabled;
+    this.dir = dir;
+    this.segmentBytes = segmentBytes;
+    this.zone = zone;
+  }
+
+  /** The JVM-wide journal of a worker (journal directory JOURNAL_DIR/{workerName}); closed on shutdown. */
+  public static SnapshotJournal shared(String workerName) {
+    return SHARED.computeIfAbsent(workerName, name -> {
+      SnapshotJournal journal = new SnapshotJournal(
+          Boolean.parseBoolean(System.getenv().getOrDefault("JOURNAL_ENABLED", "false")),
+          Paths.get(System.getenv().getOrDefault("JOURNAL_DIR", "journal")).resolve(name),
+          Integer.parseInt(System.getenv().getOrDefault("JOURNAL_SEGMENT_MB", "256")) * 1024 * 1024,
+          ZoneId.of(System.getenv().getOrDefault("JOURNAL_ZONE", "Asia/Kolkata")));
+      log.info("SnapshotJournal {} enabled={}, dir={}, segmentBytes={}", name, journal.enabled, journal.dir, journal.segmentBytes);
+      if (journal.enabled) {
+        WorkerResources.shared().register("journal-" + name, journal::close);
+      }
+      return journal;
+    });
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public Path dir() {
+    return dir;
+  }
+
+  /** Journal kind for an NSE taskName, or 0 if it is not journaled. */
+  public static byte kindForNseTask(String taskName) {
+    switch (taskName) {
+      case "allIndices":
+        return KIND_NSE_ALL_INDICES;
+      case "equityData":
+        return KIND_NSE_EQUITY;
+      case "optionchain":
+        return KIND_NSE_OPTION_CHAIN;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Append one snapshot. Returns false (after logging) if the journal is disabled, the record is larger than
+   * a segment, or the write failed - journaling never fails the caller.
+   */
+  public synchronized boolean append(byte kind, String key, long timestampMillis, byte[] payload) {
+    if (!enabled) {
+      return false;
+    }
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    int recordBytes = align8(HEADER_BYTES + keyBytes.length + payload.length);
+    if (keyBytes.length > Short.MAX_VALUE || recordBytes > segmentBytes) {
+      log.warn("append() {} record of {} bytes does not fit a {} byte segment, skipped", key, recordBytes, segmentBytes);
+      return false;
+    }
+    try {
+      LocalDate today = LocalDate.now(zone);
+      if (!today.equals(day)) {
+        openDay(today);
+      } else if (position + recordBytes > segment.capacity()) {
+        openSegment(seq + 1, true);
+      }
+      crc.reset();
+      crc.update(keyBytes);
+      crc.update(payload);
+      int offset = position;
+      segment.putInt(offset + 4, recordBytes);
+      segment.putLong(offset + 8, timestampMillis);
+      segment.put(offset + 16, kind);
+      segment.put(offset + 17, (byte) 0);
+      segment.putShort(offset + 18, (short) keyBytes.length);
+      segment.putInt(offset + 20, payload.length);
+      segment.putInt(offset + 24, (int) crc.getValue());
+      segment.putInt(offset + 28, key.hashCode());
+      segment.put(offset + HEADER_BYTES, keyBytes);
+      segment.put(offset + HEADER_BYTES + keyBytes.length, payload);
+      segment.putInt(offset, MAGIC);
+      position = offset + recordBytes;
+      writeIndexEntry(timestampMillis, key.hashCode(), kind, offset);
+      return true;
+    } catch (IOException e) {
+      System.err.println("⚠️ JOURNAL: append failed for " + key + ": " + e.getMessage());
+      log.warn("append() {} failed: {}", key, e.getMessage());
+      // Don't throw - the snapshot is still published to Redis/Kafka
+      return false;
+    }
+  }
+
+  private void openDay(LocalDate today) throws IOException {
+    Files.createDirectories(dir);
+    int last = -1;
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, today.format(DAY) + "-*" + SEGMENT_SUFFIX)) {
+      for (Path file : files) {
+        last = Math.max(last, segmentSeq(file));
+      }
+    }
+    day = today;
+    if (last < 0) {
+      openSegment(0, true);
+    } else {
+      openSegment(last, false);
+    }
+  }
+
+  private void openSegment(int newSeq, boolean fresh) throws IOException {
+    closeSegment(false);
+    seq = newSeq;
+    Path segmentPath = segmentPath(dir, day, seq);
+    Path indexPath = indexPathFor(segmentPath);
+    segmentChannel = FileChannel.open(segmentPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    long size = fresh ? segmentBytes : Math.max(segmentChannel.size(), HEADER_BYTES);
+    segment = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    segment.order(ByteOrder.BIG_ENDIAN);
+    indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    indexChannel.truncate(0);
+    position = 0;
+    if (!fresh) {
+      // Recover: keep every intact record, rebuild the index, and stop readers at the first broken one
+      position = scan(segment, record -> writeIndexEntryQuietly(record.timestampMillis, record.key.hashCode(), record.kind, record.offset));
+      if (position + 4 <= segment.capacity()) {
+        segment.putInt(position, 0);
+      }
+      System.out.println("📼 JOURNAL: Reopened " + segmentPath + " at offset " + position);
+    }
+    log.info("openSegment() {} position={}, capacity={}", segmentPath, position, segment.capacity());
+  }
+
+  private void writeIndexEntry(long timestampMillis, int keyHash, byte kind, long offset) throws IOException {
+    indexEntry.clear();
+    indexEntry.putLong(timestampMillis).putInt(keyHash).put(kind).put((byte) 0).putShort((short) 0).putLong(offset);
+    indexEntry.flip();
+    while (indexEntry.hasRemaining()) {
+      indexChannel.write(indexEntry);
+    }
+  }
+
+  private void writeIndexEntryQuietly(long timestampMillis, int keyHash, byte kind, long offset) {
+    try {
+      writeIndexEntry(timestampMillis, keyHash, kind, offset);
+    } catch (IOException e) {
+      throw new java.io.UncheckedIOException(e);
+    }
+  }
+
+  private void closeSegment(boolean force) {
+    try {
+      if (segment != null && force) {
+        segment.force();
+      }
+      if (segmentChannel != null) {
+        segmentChannel.close();
+      }
+      if (indexChannel != null) {
+        if (force) {
+          indexChannel.force(false);
+        }
+        indexChannel.close();
+      }
+    } catch (IOException e) {
+      log.warn("closeSegment() failed: {}", e.getMessage());
+    }
+    segment = null;
+    segmentChannel = null;
+    indexChannel = null;
+  }
+
+  @Override
+  public synchronized void close() {
+    closeSegment(true);
+    day = null;
+  }
+
+  // ---- Reading -------------------------------------------------------------------------------------------------
+
+  /** One journaled snapshot. The payload is a read-only view into the mapped segment (no copy). */
+  public static final class Record {
+    public final byte kind;
+    public final long timestampMillis;
+    public final String key;
+    public final ByteBuffer payload;
+    public final int offset;
+
+    Record(byte kind, long timestampMillis, String key, ByteBuffer payload, int offset) {
+      this.kind = kind;
+      this.timestampMillis = timestampMillis;
+      this.key = key;
+      this.payload = payload;
+      this.offset = offset;
+    }
+
+    public String payloadString() {
+      return StandardCharsets.UTF_8.decode(payload.duplicate()).toString();
+    }
+
+    public byte[] payloadBytes() {
+      byte[] bytes = new byte[payload.remaining()];
+      payload.duplicate().get(bytes);
+      return bytes;
+    }
+  }
+
+  /** Segment files of the given days in write order. */
+  public static List<Path> segments(Path dir, LocalDate from, LocalDate to) throws IOException {
+    List<Path> result = new ArrayList<>();
+    if (!Files.isDirectory(dir)) {
+      return result;
+    }
+    for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+      List<Path> dayFiles = new ArrayList<>();
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, date.format(DAY) + "-*" + SEGMENT_SUFFIX)) {
+        files.forEach(dayFiles::add);
+      }
+      dayFiles.sort((a, b) -> Integer.compare(segmentSeq(a), segmentSeq(b)));
+      result.addAll(dayFiles);
+    }
+    return result;
+  }
+
+  /** Map a segment read-only and pass every intact record to consumer, in write order. */
+  public static void read(Path segmentPath, Consumer<Record> consumer) throws IOException {
+    try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.READ)) {
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      scan(mapped, consumer);
+    }
+  }
+
+  /**
+   * Records with this key and timestampMillis in [fromMillis, toMillis], found through the segment indexes
+   * of the days the range covers (days in the journal's zone).
+   */
+  public static List<Record> find(Path dir, ZoneId zone, String key, long fromMillis, long toMillis) throws IOException {
+    List<Record> result = new ArrayList<>();
+    int keyHash = key.hashCode();
+    LocalDate from = Instant.ofEpochMilli(fromMillis).atZone(zone).toLocalDate();
+    LocalDate to = Instant.ofEpochMilli(toMillis).atZone(zone).toLocalDate();
+    for (Path segmentPath : segments(dir, from, to)) {
+      Path indexPath = indexPathFor(segmentPath);
+      if (!Files.exists(indexPath)) {
+        continue;
+      }
+      try (FileChannel segmentChannel = FileChannel.open(segmentPath, StandardOpenOption.READ);
+           FileChannel indexChannel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+        MappedByteBuffer mapped = segmentChannel.map(FileChannel.MapMode.READ_ONLY, 0, segmentChannel.size());
+        MappedByteBuffer index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+        for (int entry = 0; entry + INDEX_ENTRY_BYTES <= index.capacity(); entry += INDEX_ENTRY_BYTES) {
+          long timestamp = index.getLong(entry);
+          if (index.getInt(entry + 8) != keyHash || timestamp < fromMillis || timestamp > toMillis) {
+            continue;
+          }
+          Record record = recordAt(mapped, (int) index.getLong(entry + 16));
+          if (record != null && record.key.equals(key)) {
+            result.add(record);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /** Pass every intact record from the start of buffer to consumer; returns the offset just past the last one. */
+  static int scan(ByteBuffer buffer, Consumer<Record> consumer) {
+    int offset = 0;
+    Record record;
+    while ((record = recordAt(buffer, offset)) != null) {
+      consumer.accept(record);
+      offset += buffer.getInt(offset + 4);
+    }
+    return offset;
+  }
+
+  /** The record at offset, or null if there is none (end of data, torn write or CRC mismatch). */
+  static Record recordAt(ByteBuffer buffer, int offset) {
+    if (offset < 0 || offset + HEADER_BYTES > buffer.capacity() || buffer.getInt(offset) != MAGIC) {
+      return null;
+    }
+    int recordBytes = buffer.getInt(offset + 4);
+    int keyLength = buffer.getShort(offset + 18);
+    int payloadLength = buffer.getInt(offset + 20);
+    if (recordBytes < HEADER_BYTES || keyLength < 0 || payloadLength < 0
+        || (long) offset + recordBytes > buffer.capacity()
+        || HEADER_BYTES + (long) keyLength + payloadLength > recordBytes) {
+      return null;
+    }
+    ByteBuffer keyView = buffer.duplicate();
+    keyView.limit(offset + HEADER_BYTES + keyLength).position(offset + HEADER_BYTES);
+    ByteBuffer payloadView = buffer.duplicate();
+    payloadView.limit(offset + HEADER_BYTES + keyLength + payloadLength).position(offset + HEADER_BYTES + keyLength);
+    CRC32 check = new CRC32();
+    check.update(keyView.duplicate());
+    check.update(payloadView.duplicate());
+    if ((int) check.getValue() != buffer.getInt(offset + 24)) {
+      return null;
+    }
+    String key = StandardCharsets.UTF_8.decode(keyView).toString();
+    return new Record(buffer.get(offset + 16), buffer.getLong(offset + 8), key, payloadView.slice().asReadOnlyBuffer(), offset);
+  }
+
+  static Path segmentPath(Path dir, LocalDate day, int seq) {
+    return dir.resolve(day.format(DAY) + "-" + String.format("%04d", seq) + SEGMENT_SUFFIX);
+  }
+
+  static Path indexPathFor(Path segmentPath) {
+    String name = segmentPath.getFileName().toString();
+    return segmentPath.resolveSibling(name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + INDEX_SUFFIX);
+  }
+
+  private static int segmentSeq(Path segmentPath) {
+    String name = segmentPath.getFileName().toString();
+    try {
+      return Integer.parseInt(name.substring(name.indexOf('-') + 1, name.length() - SEGMENT_SUFFIX.length()));
+    } catch (RuntimeException e) {
+      return -1;
+    }
+  }
+
+  private static int align8(int bytes) {
+    return (bytes + 7) & ~7;
+  }
+}
@@ -0,0 +1,52 @@
+package com.nigam.temporal.common;
+
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.utils.Utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Partitions by snapshot stream: the record key with a trailing ":current" / ":previous" removed, so
+ * nse:optionchain:NIFTY:27-Feb-2026:current (nse.data) and nse:optionchain:NIFTY:27-Feb-2026 (inline and
+ * latest topics) land on the same partition number. Every (task, symbol, expiry) therefore keeps its order
+ * and co-partitions across topics with the same partition count, while different streams spread over all
+ * partitions (murmur2, as Kafka's default). Records without a key are spread round-robin.
+ */
+public class SnapshotKeyPartitioner implements Partitioner {
+
+  private final AtomicInteger roundRobin = new AtomicInteger();
+
+  @Override
+  public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes, Cluster cluster) {
+    int partitions = cluster.partitionsForTopic(topic).size();
+    if (key == null) {
+      return Utils.toPositive(roundRobin.getAndIncrement()) % partitions;
+    }
+    return partitionFor(streamKey(key.toString()), partitions);
+  }
+
+  static int partitionFor(String streamKey, int partitions) {
+    return Utils.toPositive(Utils.murmur2(streamKey.getBytes(StandardCharsets.UTF_8))) % partitions;
+  }
+
+  static String streamKey(String key) {
+    if (key.endsWith(":current")) {
+      return key.substring(0, key.length() - ":current".length());
+    }
+    if (key.endsWith(":previous")) {
+      return key.substring(0, key.length() - ":previous".length());
+    }
+    return key;
+  }
+
+  @Override
+  public void configure(Map<String, ?> configs) {
+  }
+
+  @Override
+  public void close() {
+  }
+}
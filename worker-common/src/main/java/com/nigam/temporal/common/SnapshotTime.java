@@ -0,0 +1,31 @@
+package com.nigam.temporal.common;
+
+/**
+ * Canonical snapshot times. A workflow floors its Workflow.currentTimeMillis() to the start of a fixed-size
+ * bucket (one minute by default) and passes the result to its activities, which store it as the snapshot's
+ * time instead of reading the clock. Snapshots of different indices, servers and NSE tasks taken for the same
+ * scheduled minute then carry the same timestamp and join on equality, and a retried activity keeps it.
+ *
+ * Buckets are aligned to the epoch (UTC), so any size that divides 30 minutes also starts on IST boundaries.
+ */
+public final class SnapshotTime {
+
+  public static final int DEFAULT_BUCKET_SECONDS = 60;
+
+  private SnapshotTime() {
+  }
+
+  /** Start of the bucket holding epochMillis; a bucket size of 0 or less returns epochMillis unchanged. */
+  public static long align(long epochMillis, int bucketSeconds) {
+    if (bucketSeconds <= 0) {
+      return epochMillis;
+    }
+    long bucketMillis = bucketSeconds * 1000L;
+    return epochMillis - Math.floorMod(epochMillis, bucketMillis);
+  }
+
+  /** The bucket size from a workflow input, {@link #DEFAULT_BUCKET_SECONDS} when it is not set. */
+  public static int bucketSeconds(Integer configured) {
+    return configured != null ? configured : DEFAULT_BUCKET_SECONDS;
+  }
+}
@@ -0,0 +1,174 @@
+package com.nigam.temporal.common;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Circuit breaker per upstream endpoint plus an AIMD rate limiter shared by all endpoints of the same
+ * upstream host, looked up by name so every activity instance in the worker sees the same state.
+ *
+ * Usage around one call:
+ * <pre>
+ *   UpstreamGuard guard = UpstreamGuard.of("NSE", "www.nseindia.com", "optionchain");
+ *   String rejected = guard.tryAcquire();
+ *   if (rejected != null) return "Error: " + rejected;           // fail fast, no upstream call
+ *   ... send ...
+ *   guard.recordHttp(statusCode, body);                            // or recordFailure / recordThrottled
+ * </pre>
+ *
+ * Outcomes: 429 and 403 are throttling (rate cut, breaker failure); 401, 5xx, an empty body or "{}" and
+ * exceptions are breaker failures; anything else counts as success. Other 4xx responses (e.g. 404) are
+ * the request's fault, not the upstream's, so they close the breaker like a success.
+ */
+public class UpstreamGuard {
+
+  private static final Map<String, UpstreamGuard> GUARDS = new ConcurrentHashMap<>();
+  private static final Map<String, AimdRateLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+  /** Thrown by {@link #acquireOrThrow} when the guard refuses a call; nothing was sent upstream. */
+  public static class RejectedException extends Exception {
+    public RejectedException(String message) {
+      super(message);
+    }
+  }
+
+  private final CircuitBreaker breaker;
+  private final AimdRateLimiter limiter;
+  private final long maxWaitMs;
+
+  public UpstreamGuard(CircuitBreaker breaker, AimdRateLimiter limiter, long maxWaitMs) {
+    this.breaker = breaker;
+    this.limiter = limiter;
+    this.maxWaitMs = maxWaitMs;
+  }
+
+  /**
+   * Shared guard for an endpoint of an upstream host.
+   * Env: {prefix}_RATE_MAX_WAIT_MS - longest a caller waits for a rate-limit slot (default 5000).
+   * @param envPrefix "NSE" or "OPENALGO" - selects the {prefix}_CIRCUIT_* / {prefix}_RATE_* settings
+   * @param host      upstream host (one rate limiter per host)
+   * @param endpoint  logical endpoint (one circuit breaker per host + endpoint)
+   */
+  public static UpstreamGuard of(String envPrefix, String host, String endpoint) {
+    String limiterName = envPrefix + ":" + host;
+    return GUARDS.computeIfAbsent(limiterName + ":" + endpoint, name -> new UpstreamGuard(
+        CircuitBreaker.fromEnv(name, envPrefix),
+        LIMITERS.computeIfAbsent(limiterName, n -> AimdRateLimiter.fromEnv(n, envPrefix)),
+        (long) envDouble(envPrefix, "RATE_MAX_WAIT_MS", 5000)));
+  }
+
+  /** {@link #tryAcquire(long)} with the configured max wait, throwing instead of returning the reason. */
+  public void acquireOrThrow() throws RejectedException {
+    String rejected = tryAcquire(maxWaitMs);
+    if (rejected != null) {
+      throw new RejectedException(rejected);
+    }
+  }
+
+  /**
+   * Null if the call may proceed (after waiting for its rate-limit slot), otherwise the reason it was
+   * refused: circuit open, or the slot is more than maxWaitMs away.
+   */
+  public String tryAcquire() {
+    return tryAcquire(maxWaitMs);
+  }
+
+  public String tryAcquire(long maxWaitMs) {
+    if (!breaker.allowRequest()) {
+      return breaker.name() + " circuit open, retry in " + breaker.retryAfterMs() + "ms";
+    }
+    try {
+      if (!limiter.acquire(maxWaitMs)) {
+        breaker.releaseProbe();
+        return limiter.name() + " rate limited (" + String.format(Locale.ROOT, "%.2f", limiter.rate())
+            + " req/s), no slot within " + maxWaitMs + "ms";
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      breaker.releaseProbe();
+      return breaker.name() + " interrupted while waiting for rate limit";
+    }
+    return null;
+  }
+
+  /** Classify an HTTP response (see class doc). */
+  public void recordHttp(int statusCode, byte[] body) {
+    if (statusCode == 429 || statusCode == 403) {
+      recordThrottled("HTTP " + statusCode);
+    } else if (statusCode == 401 || statusCode >= 500) {
+      recordFailure("HTTP " + statusCode);
+    } else if (statusCode == 200 && isEmptyBody(body)) {
+      recordFailure("empty body");
+    } else {
+      recordSuccess();
+    }
+  }
+
+  public void recordSuccess() {
+    breaker.onSuccess();
+    limiter.onSuccess();
+  }
+
+  public void recordThrottled(String reason) {
+    limiter.onThrottled();
+    breaker.onFailure(reason);
+  }
+
+  public void recordFailure(String reason) {
+    breaker.onFailure(reason);
+  }
+
+  /** For clients that surface errors as exceptions or messages: throttled if it looks like a rate limit. */
+  public void recordError(String message) {
+    if (looksThrottled(message)) {
+      recordThrottled(message);
+    } else {
+      recordFailure(message);
+    }
+  }
+
+  public static boolean looksThrottled(String message) {
+    if (message == null) {
+      return false;
+    }
+    String lower = message.toLowerCase(Locale.ROOT);
+    return lower.contains("429") || lower.contains("too many requests") || lower.contains("rate limit")
+        || lower.contains("ratelimit") || lower.contains("throttl");
+  }
+
+  private static boolean isEmptyBody(byte[] body) {
+    if (body == null) {
+      return true;
+    }
+    int start = 0;
+    int end = body.length;
+    while (start < end && body[start] <= ' ') {
+      start++;
+    }
+    while (end > start && body[end - 1] <= ' ') {
+      end--;
+    }
+    return end == start || (end - start == 2 && body[start] == '{' && body[start + 1] == '}');
+  }
+
+  public CircuitBreaker.State state() {
+    return breaker.state();
+  }
+
+  public double rate() {
+    return limiter.rate();
+  }
+
+  /** {prefix}_{key}, then {key}, then the default. */
+  static double envDouble(String prefix, String key, double defaultValue) {
+    String value = System.getenv(prefix + "_" + key);
+    if (value == null || value.trim().isEmpty()) {
+      value = System.getenv(key);
+    }
+    if (value == null || value.trim().isEmpty()) {
+      return defaultValue;
+    }
+    return Double.parseDouble(value.trim());
+  }
+}
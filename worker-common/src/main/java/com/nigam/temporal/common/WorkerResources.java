@@ -0,0 +1,307 @@
+package com.nigam.temporal.common;
+
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.postgresql.ds.PGSimpleDataSource;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import javax.sql.DataSource;
+import java.net.CookieManager;
+import java.net.CookiePolicy;
+import java.net.http.HttpClient;
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connection resources shared by every worker in the process: one sized Redis pool, one Kafka producer,
+ * one HTTP client and one DataSource, so the number of connections per process stays fixed no matter how
+ * many activities and task types use them.
+ *
+ * {@link #warmUp()} (TemporalRunner, before the workers start) creates all of them and opens warm-up
+ * connections; elsewhere (benchmarks, tools) each is created on first use.
+ *
+ * This is also the process's only shutdown hook. {@link #shutdown()} first runs the drain steps added with
+ * {@link #addDrainStep} (TemporalRunner: stop polling and wait for in-flight activities), then {@link #close()}
+ * releases, in order: resources handed over with {@link #register} (last registered first: write-behind
+ * queues, rollups, journals, activity connections), the Kafka producer (sending what is still buffered),
+ * the HTTP client's threads, the Redis pool.
+ *
+ * Env:
+ *   REDIS_HOST, REDIS_PORT, REDIS_PASSWORD; REDIS_POOL_MAX_TOTAL (default 16), REDIS_POOL_MAX_IDLE (default 8),
+ *   REDIS_POOL_MIN_IDLE (default 2, opened by warmUp)
+ *   KAFKA_BOOTSTRAP_SERVERS, KAFKA_COMPRESSION_TYPE; records are partitioned by {@link SnapshotKeyPartitioner}
+ *   HTTP_CLIENT_THREADS (default NSE_HTTP_THREADS, else 4)
+ *   DB_HOST, DB_PORT, DB_NAME, DB_USER, DB_PASSWORD
+ */
+public final class WorkerResources implements AutoCloseable {
+
+  private static final Logger log = LogManager.getLogger(WorkerResources.class);
+
+  private static final WorkerResources SHARED = new WorkerResources();
+
+  private final String redisHost = System.getenv().getOrDefault("REDIS_HOST", "localhost");
+  private final int redisPort = Integer.parseInt(System.getenv().getOrDefault("REDIS_PORT", "6379"));
+  private final String redisPassword = System.getenv().getOrDefault("REDIS_PASSWORD", "");
+  private final String kafkaBootstrapServers =
+      System.getenv().getOrDefault("KAFKA_BOOTSTRAP_SERVERS", "localhost:29092,localhost:29093,localhost:29094");
+  private final String dbHost = System.getenv().getOrDefault("DB_HOST", "localhost");
+  private final String dbPort = System.getenv().getOrDefault("DB_PORT", "5432");
+  private final String dbName = System.getenv().getOrDefault("DB_NAME", "pgdb");
+
+  private final List<Map.Entry<String, Runnable>> drainSteps = new ArrayList<>();
+  private final Deque<Map.Entry<String, AutoCloseable>> registered = new ArrayDeque<>();
+  private JedisPool redisPool;
+  private Producer<String, byte[]> kafkaProducer;
+  private HttpClient httpClient;
+  private ExecutorService httpExecutor;
+  private DataSource dataSource;
+  private boolean draining;
+  private boolean closed;
+
+  private WorkerResources() {
+    Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "worker-resources-shutdown"));
+  }
+
+  /** The process-wide instance. */
+  public static WorkerResources shared() {
+    return SHARED;
+  }
+
+  public String redisHost() {
+    return redisHost;
+  }
+
+  public int redisPort() {
+    return redisPort;
+  }
+
+  public String redisPassword() {
+    return redisPassword;
+  }
+
+  public String kafkaBootstrapServers() {
+    return kafkaBootstrapServers;
+  }
+
+  /** host:port/database of {@link #dataSource()}, for log lines. */
+  public String dataSourceDescription() {
+    return dbHost + ":" + dbPort + "/" + dbName;
+  }
+
+  public synchronized JedisPool redisPool() {
+    if (redisPool == null) {
+      JedisPoolConfig poolConfig = new JedisPoolConfig();
+      poolConfig.setMaxTotal(Integer.parseInt(System.getenv().getOrDefault("REDIS_POOL_MAX_TOTAL", "16")));
+      poolConfig.setMaxIdle(Integer.parseInt(System.getenv().getOrDefault("REDIS_POOL_MAX_IDLE", "8")));
+      poolConfig.setMinIdle(Integer.parseInt(System.getenv().getOrDefault("REDIS_POOL_MIN_IDLE", "2")));
+      if (!redisPassword.isEmpty()) {
+        redisPool = new JedisPool(poolConfig, redisHost, redisPort, 2000, redisPassword);
+      } else {
+        redisPool = new JedisPool(poolConfig, redisHost, redisPort, 2000);
+      }
+      log.info("WorkerResources Redis pool {}:{} maxTotal={}, maxIdle={}, minIdle={}", redisHost, redisPort,
+          poolConfig.getMaxTotal(), poolConfig.getMaxIdle(), poolConfig.getMinIdle());
+      System.out.println("✅ Redis connection pool created: " + redisHost + ":" + redisPort + " (max " + poolConfig.getMaxTotal() + ")");
+    }
+    return redisPool;
+  }
+
+  public synchronized Producer<String, byte[]> kafkaProducer() {
+    if (kafkaProducer == null) {
+      Properties props = new Properties();
+      props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, kafkaBootstrapServers);
+      props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+      props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+      props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, System.getenv().getOrDefault("KAFKA_COMPRESSION_TYPE", "none"));
+      props.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, SnapshotKeyPartitioner.class.getName());
+      kafkaProducer = new KafkaProducer<>(props);
+      log.info("WorkerResources Kafka producer bootstrapServers={}", kafkaBootstrapServers);
+    }
+    return kafkaProducer;
+  }
+
+  /**
+   * HTTP/2-preferring client with a cookie store (NSE session cookies) on a small daemon pool instead of the
+   * JDK's unbounded default.
+   */
+  public synchronized HttpClient httpClient() {
+    if (httpClient == null) {
+      String threadsSetting = System.getenv("HTTP_CLIENT_THREADS");
+      if (threadsSetting == null || threadsSetting.trim().isEmpty()) {
+        threadsSetting = System.getenv().getOrDefault("NSE_HTTP_THREADS", "4");
+      }
+      int threads = Integer.parseInt(threadsSetting.trim());
+      AtomicInteger count = new AtomicInteger();
+      httpExecutor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+        Thread thread = new Thread(r, "worker-http-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+      CookieManager cookies = new CookieManager();
+      cookies.setCookiePolicy(CookiePolicy.ACCEPT_ALL);
+      httpClient = HttpClient.newBuilder()
+          .version(HttpClient.Version.HTTP_2)
+          .connectTimeout(Duration.ofSeconds(15))
+          .followRedirects(HttpClient.Redirect.NORMAL)
+          .cookieHandler(cookies)
+          .executor(httpExecutor)
+          .build();
+      log.info("WorkerResources HTTP client threads={}", threads);
+    }
+    return httpClient;
+  }
+
+  /** The HTTP client's executor, for background work tied to it (e.g. connection warm-up). */
+  public synchronized ExecutorService httpExecutor() {
+    httpClient();
+    return httpExecutor;
+  }
+
+  /** PostgreSQL/Citus DataSource from DB_* env. Connections are owned (and closed) by whoever opens them. */
+  public synchronized DataSource dataSource() {
+    if (dataSource == null) {
+      PGSimpleDataSource pg = new PGSimpleDataSource();
+      pg.setServerNames(new String[] {dbHost});
+      pg.setPortNumbers(new int[] {Integer.parseInt(dbPort)});
+      pg.setDatabaseName(dbName);
+      pg.setUser(System.getenv().getOrDefault("DB_USER", "pguser"));
+      pg.setPassword(System.getenv().getOrDefault("DB_PASSWORD", "pgpass"));
+      dataSource = pg;
+      log.info("WorkerResources DataSource {}", dataSourceDescription());
+    }
+    return dataSource;
+  }
+
+  /** Close resource during {@link #close()}, before the shared connections; last registered closes first. */
+  public synchronized void register(String name, AutoCloseable resource) {
+    registered.push(new AbstractMap.SimpleEntry<>(name, resource));
+  }
+
+  /**
+   * Run step at shutdown before anything is closed, e.g. stop taking work and wait for what is in flight.
+   * Steps run in the order added; each should bound its own wait.
+   */
+  public synchronized void addDrainStep(String name, Runnable step) {
+    drainSteps.add(new AbstractMap.SimpleEntry<>(name, step));
+  }
+
+  /** Drain, then {@link #close()}. Runs once, from the JVM shutdown hook or an explicit call. */
+  public void shutdown() {
+    List<Map.Entry<String, Runnable>> steps;
+    synchronized (this) {
+      if (draining) {
+        return;
+      }
+      draining = true;
+      steps = new ArrayList<>(drainSteps);
+    }
+    long start = System.nanoTime();
+    for (Map.Entry<String, Runnable> step : steps) {
+      try {
+        step.getValue().run();
+        log.info("WorkerResources drain step {} done", step.getKey());
+      } catch (Exception e) {
+        log.warn("WorkerResources drain step {} failed: {}", step.getKey(), e.getMessage());
+        // Don't throw - still flush and close everything
+      }
+    }
+    close();
+    log.info("WorkerResources shutdown() took {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+  }
+
+  /**
+   * Create every resource and open warm-up connections: the Redis pool's minimum idle connections (plus a
+   * PING) and one validated database connection. Failures are logged, never thrown, so a worker still starts
+   * with a dependency down and connects on first use.
+   */
+  public void warmUp() {
+    long start = System.nanoTime();
+    try {
+      JedisPool pool = redisPool();
+      pool.preparePool();
+      try (Jedis jedis = pool.getResource()) {
+        jedis.ping();
+      }
+      System.out.println("✅ Redis pool warmed up: " + pool.getNumIdle() + " idle connections");
+    } catch (Exception e) {
+      System.err.println("⚠️ Redis warm-up failed: " + e.getMessage());
+      // Don't throw - connections are opened on first use
+    }
+    try {
+      kafkaProducer();
+    } catch (Exception e) {
+      System.err.println("⚠️ Kafka producer creation failed: " + e.getMessage());
+    }
+    httpClient();
+    try (Connection connection = dataSource().getConnection()) {
+      boolean valid = connection.isValid(5);
+      System.out.println("✅ Database reachable: " + dataSourceDescription() + " (valid=" + valid + ")");
+    } catch (Exception e) {
+      System.err.println("⚠️ Database warm-up failed: " + e.getMessage());
+    }
+    log.info("WorkerResources warmUp() took {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+  }
+
+  /** Release everything in order (see class doc); later calls do nothing. */
+  @Override
+  public void close() {
+    Deque<Map.Entry<String, AutoCloseable>> toClose;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      toClose = new ArrayDeque<>(registered);
+      registered.clear();
+    }
+    for (Map.Entry<String, AutoCloseable> entry : toClose) {
+      closeQuietly(entry.getKey(), entry.getValue());
+    }
+    Producer<String, byte[]> producer;
+    ExecutorService executor;
+    JedisPool pool;
+    synchronized (this) {
+      producer = kafkaProducer;
+      executor = httpExecutor;
+      pool = redisPool;
+    }
+    if (producer != null) {
+      closeQuietly("kafka-producer", () -> producer.close(Duration.ofSeconds(10)));
+    }
+    if (executor != null) {
+      executor.shutdown();
+    }
+    if (pool != null) {
+      closeQuietly("redis-pool", pool::close);
+    }
+    System.out.println("🛑 Worker resources closed");
+  }
+
+  private static void closeQuietly(String name, AutoCloseable resource) {
+    try {
+      resource.close();
+      log.info("WorkerResources closed {}", name);
+    } catch (Exception e) {
+      log.warn("WorkerResources failed to close {}: {}", name, e.getMessage());
+      // Don't throw - keep closing the rest
+    }
+  }
+}